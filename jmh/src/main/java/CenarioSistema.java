@@ -0,0 +1,223 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import spotifum.jmh.Cenario;
+
+/**
+ * Cenário dos benchmarks JMH sobre um Sistema gerado por {@link GeradorDados}, com os mesmos
+ * argumentos que {@link BenchmarkSistema} usa para as mesmas operações
+ */
+public class CenarioSistema implements Cenario {
+    private static final String[] GENEROS_CONSULTA = {"Rock", "Jazz", "Fado", "Samba"};
+    private static final int NUMERO_LOTES = 1024; // Lotes diferentes percorridos em ciclo
+    private static final int REPRODUCOES_POR_UTILIZADOR_LOTE = 16; // Reproduções seguidas de cada utilizador num lote
+
+    private Sistema sistema;
+    private List<Musica> musicas;
+    private List<Utilizador> utilizadores;
+    private List<Utilizador> premiumTop;
+    private String[] nomesAlbuns;
+    private Utilizador[][] lotesUtilizadores;
+    private Musica[][] lotesMusicas;
+    private long[][] lotesInstantes;
+    private LocalDateTime agora;
+    private Path diretorio;
+    private String arquivo;
+
+    @Override
+    public void preparar(long semente, int numeroMusicas, int numeroUtilizadores, int reproducoes) throws IOException {
+        GeradorDados gerador = new GeradorDados(semente, numeroMusicas, numeroUtilizadores, reproducoes);
+        sistema = gerador.gerar();
+        musicas = gerador.getMusicas();
+        utilizadores = gerador.getUtilizadores();
+        premiumTop = new ArrayList<>();
+        for (Utilizador utilizador : utilizadores) {
+            if (utilizador.getPlano() instanceof PlanoPremiumTop) {
+                premiumTop.add(utilizador);
+            }
+        }
+        nomesAlbuns = sistema.getAlbuns().keySet().toArray(new String[0]);
+        lotesUtilizadores = new Utilizador[NUMERO_LOTES][TAMANHO_LOTE];
+        lotesMusicas = new Musica[NUMERO_LOTES][TAMANHO_LOTE];
+        lotesInstantes = new long[NUMERO_LOTES][TAMANHO_LOTE];
+        long instante = System.currentTimeMillis();
+        for (int lote = 0; lote < NUMERO_LOTES; lote++) {
+            Random random = new Random(lote);
+            for (int j = 0; j < TAMANHO_LOTE; j++) {
+                long reproducao = (long) lote * TAMANHO_LOTE + j;
+                lotesUtilizadores[lote][j] = utilizadores.get(
+                    (int) ((reproducao / REPRODUCOES_POR_UTILIZADOR_LOTE) % utilizadores.size()));
+                lotesMusicas[lote][j] = gerador.sortearMusica(random);
+                lotesInstantes[lote][j] = instante;
+            }
+        }
+        agora = LocalDateTime.now();
+        diretorio = Files.createTempDirectory("spotifum-jmh");
+        arquivo = diretorio.resolve("estado.dat").toString();
+    }
+
+    @Override
+    public Object registrarReproducao(long execucao) {
+        // Passo primo para percorrer utilizadores e músicas sem padrão de cache fixo
+        Utilizador utilizador = utilizadores.get((int) (execucao % utilizadores.size()));
+        sistema.registrarReproducao(utilizador, musicas.get((int) ((execucao * 7919) % musicas.size())));
+        return utilizador;
+    }
+
+    @Override
+    public Object registrarReproducoesLaco(long execucao) {
+        int lote = (int) (execucao % NUMERO_LOTES);
+        for (int j = 0; j < TAMANHO_LOTE; j++) {
+            sistema.registrarReproducao(lotesUtilizadores[lote][j], lotesMusicas[lote][j]);
+        }
+        return lotesUtilizadores[lote];
+    }
+
+    @Override
+    public Object registrarReproducoesLote(long execucao) {
+        int lote = (int) (execucao % NUMERO_LOTES);
+        sistema.registrarReproducoes(lotesUtilizadores[lote], lotesMusicas[lote], lotesInstantes[lote]);
+        return lotesUtilizadores[lote];
+    }
+
+    @Override
+    public Object buscarMusicasPorGenero(long execucao) {
+        return sistema.buscarMusicasPorGenero(GENEROS_CONSULTA[(int) (execucao % GENEROS_CONSULTA.length)]);
+    }
+
+    @Override
+    public Object pesquisarMusicas(long execucao) {
+        return sistema.pesquisarMusicas("musica " + (execucao * 7919 % musicas.size()), 10);
+    }
+
+    @Override
+    public Object completarMusicas(long execucao) {
+        return sistema.completarMusicas("musica " + (execucao % 1000), 10);
+    }
+
+    @Override
+    public Object gerarPlaylistPreferencias(long execucao) {
+        return premiumTop.isEmpty() ? null
+            : sistema.gerarPlaylistPreferencias(premiumTop.get((int) (execucao % premiumTop.size())));
+    }
+
+    @Override
+    public Object gerarPlaylistPreferenciasTempo(long execucao) {
+        return premiumTop.isEmpty() ? null
+            : sistema.gerarPlaylistPreferenciasTempo(premiumTop.get((int) (execucao % premiumTop.size())), 3600);
+    }
+
+    @Override
+    public Object gerarPlaylistAleatoria(long execucao) {
+        return sistema.gerarPlaylistAleatoria();
+    }
+
+    @Override
+    public Object getMusicaMaisReproduzida(long execucao) {
+        return sistema.getMusicaMaisReproduzida();
+    }
+
+    @Override
+    public Object getMusicasMaisReproduzidas(long execucao) {
+        return sistema.getMusicasMaisReproduzidas(10);
+    }
+
+    @Override
+    public Object getInterpreteMaisEscutado(long execucao) {
+        return sistema.getInterpreteMaisEscutado();
+    }
+
+    @Override
+    public Object getUtilizadorQueMaisOuviu(long execucao) {
+        return sistema.getUtilizadorQueMaisOuviu();
+    }
+
+    @Override
+    public Object getUtilizadorQueMaisOuviuPeriodo(long execucao) {
+        return sistema.getUtilizadorQueMaisOuviuPeriodo(agora.minusHours(1 + execucao % 24), agora.plusMinutes(1));
+    }
+
+    @Override
+    public Object getUtilizadorComMaisPontos(long execucao) {
+        return sistema.getUtilizadorComMaisPontos();
+    }
+
+    @Override
+    public Object getGeneroMaisReproduzido(long execucao) {
+        return sistema.getGeneroMaisReproduzido();
+    }
+
+    @Override
+    public Object getNumeroPlaylistsPublicas(long execucao) {
+        return sistema.getNumeroPlaylistsPublicas();
+    }
+
+    @Override
+    public Object getUtilizadorComMaisPlaylists(long execucao) {
+        return sistema.getUtilizadorComMaisPlaylists();
+    }
+
+    @Override
+    public Object listarPlaylistsPublicas(long execucao) {
+        return sistema.listarPlaylistsPublicas(null, 10);
+    }
+
+    @Override
+    public Object musicaMaisLongaVista(long execucao) {
+        Album album = sistema.getAlbuns().get(nomesAlbuns[(int) (execucao % nomesAlbuns.length)]);
+        return maisLonga(album.getMusicas());
+    }
+
+    @Override
+    public Object musicaMaisLongaCopia(long execucao) {
+        // Sistema.getAlbuns copiava o mapa e Album.getMusicas clonava cada música
+        Map<String, Album> albuns = new HashMap<>(sistema.getAlbuns());
+        Album album = albuns.get(nomesAlbuns[(int) (execucao % nomesAlbuns.length)]);
+        Map<String, Musica> copias = new HashMap<>();
+        for (Map.Entry<String, Musica> entry : album.getMusicas().entrySet()) {
+            copias.put(entry.getKey(), entry.getValue().clone());
+        }
+        return maisLonga(copias);
+    }
+
+    private static Musica maisLonga(Map<String, Musica> musicas) {
+        Musica maisLonga = null;
+        for (Musica musica : musicas.values()) {
+            if (maisLonga == null || musica.getDuracao() > maisLonga.getDuracao()) {
+                maisLonga = musica;
+            }
+        }
+        return maisLonga;
+    }
+
+    @Override
+    public Object salvarEstado() {
+        return sistema.salvarEstado(arquivo);
+    }
+
+    @Override
+    public Object carregarEstado() {
+        Sistema carregado = Sistema.carregarEstado(arquivo);
+        if (carregado != null) {
+            carregado.fechar(); // Liberta o arquivo, que a próxima gravação substitui
+        }
+        return carregado;
+    }
+
+    @Override
+    public void terminar() throws IOException {
+        try (var arquivos = Files.list(diretorio)) {
+            for (Path caminho : (Iterable<Path>) arquivos::iterator) {
+                Files.deleteIfExists(caminho);
+            }
+        }
+        Files.deleteIfExists(diretorio);
+    }
+}
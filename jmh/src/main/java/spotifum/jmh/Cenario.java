@@ -0,0 +1,76 @@
+package spotifum.jmh;
+
+/**
+ * Operações do Sistema medidas pelos benchmarks. As classes do Sistema estão no pacote
+ * por omissão, que o JMH não aceita nos benchmarks e que não pode ser importado de um
+ * pacote com nome; a implementação ({@code CenarioSistema}, no pacote por omissão)
+ * é carregada por reflexão e chamada através desta interface.
+ * Cada operação recebe o número da execução para variar os argumentos.
+ */
+public interface Cenario {
+    int TAMANHO_LOTE = 256; // Reproduções por lote
+
+    /**
+     * Gera os dados do cenário
+     * @param semente Semente do gerador
+     * @param musicas Número de músicas do catálogo
+     * @param utilizadores Número de utilizadores
+     * @param reproducoes Reproduções geradas por utilizador
+     */
+    void preparar(long semente, int musicas, int utilizadores, int reproducoes) throws Exception;
+
+    Object registrarReproducao(long execucao);
+
+    /** Regista um lote de {@link #TAMANHO_LOTE} reproduções, uma a uma */
+    Object registrarReproducoesLaco(long execucao);
+
+    /** Regista o mesmo lote de {@link #TAMANHO_LOTE} reproduções de uma só vez */
+    Object registrarReproducoesLote(long execucao);
+
+    Object buscarMusicasPorGenero(long execucao);
+
+    Object pesquisarMusicas(long execucao);
+
+    Object completarMusicas(long execucao);
+
+    Object gerarPlaylistPreferencias(long execucao);
+
+    Object gerarPlaylistPreferenciasTempo(long execucao);
+
+    Object gerarPlaylistAleatoria(long execucao);
+
+    Object getMusicaMaisReproduzida(long execucao);
+
+    Object getMusicasMaisReproduzidas(long execucao);
+
+    Object getInterpreteMaisEscutado(long execucao);
+
+    Object getUtilizadorQueMaisOuviu(long execucao);
+
+    Object getUtilizadorQueMaisOuviuPeriodo(long execucao);
+
+    Object getUtilizadorComMaisPontos(long execucao);
+
+    Object getGeneroMaisReproduzido(long execucao);
+
+    Object getNumeroPlaylistsPublicas(long execucao);
+
+    Object getUtilizadorComMaisPlaylists(long execucao);
+
+    Object listarPlaylistsPublicas(long execucao);
+
+    /** Procura a música mais longa de um álbum através das vistas de {@code getAlbuns} e {@code getMusicas} */
+    Object musicaMaisLongaVista(long execucao);
+
+    /** O mesmo sobre cópias profundas, como os getters as devolviam antes das vistas */
+    Object musicaMaisLongaCopia(long execucao);
+
+    /** Grava o estado num arquivo temporário */
+    Object salvarEstado() throws Exception;
+
+    /** Carrega o estado gravado pela última chamada a {@link #salvarEstado()} */
+    Object carregarEstado() throws Exception;
+
+    /** Apaga os arquivos temporários */
+    void terminar() throws Exception;
+}
@@ -0,0 +1,101 @@
+package spotifum.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Consultas ao catálogo, geração de playlists e estatísticas
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConsultasBenchmark {
+    @Benchmark
+    public Object buscarMusicasPorGenero(EstadoCenario estado, ExecucaoThread execucao) {
+        return estado.cenario.buscarMusicasPorGenero(execucao.proxima());
+    }
+
+    @Benchmark
+    public Object pesquisarMusicas(EstadoCenario estado, ExecucaoThread execucao) {
+        return estado.cenario.pesquisarMusicas(execucao.proxima());
+    }
+
+    @Benchmark
+    public Object completarMusicas(EstadoCenario estado, ExecucaoThread execucao) {
+        return estado.cenario.completarMusicas(execucao.proxima());
+    }
+
+    @Benchmark
+    public Object gerarPlaylistPreferencias(EstadoCenario estado, ExecucaoThread execucao) {
+        return estado.cenario.gerarPlaylistPreferencias(execucao.proxima());
+    }
+
+    @Benchmark
+    public Object gerarPlaylistPreferenciasTempo(EstadoCenario estado, ExecucaoThread execucao) {
+        return estado.cenario.gerarPlaylistPreferenciasTempo(execucao.proxima());
+    }
+
+    @Benchmark
+    public Object gerarPlaylistAleatoria(EstadoCenario estado, ExecucaoThread execucao) {
+        return estado.cenario.gerarPlaylistAleatoria(execucao.proxima());
+    }
+
+    @Benchmark
+    public Object getMusicaMaisReproduzida(EstadoCenario estado, ExecucaoThread execucao) {
+        return estado.cenario.getMusicaMaisReproduzida(execucao.proxima());
+    }
+
+    @Benchmark
+    public Object getMusicasMaisReproduzidas(EstadoCenario estado, ExecucaoThread execucao) {
+        return estado.cenario.getMusicasMaisReproduzidas(execucao.proxima());
+    }
+
+    @Benchmark
+    public Object getInterpreteMaisEscutado(EstadoCenario estado, ExecucaoThread execucao) {
+        return estado.cenario.getInterpreteMaisEscutado(execucao.proxima());
+    }
+
+    @Benchmark
+    public Object getUtilizadorQueMaisOuviu(EstadoCenario estado, ExecucaoThread execucao) {
+        return estado.cenario.getUtilizadorQueMaisOuviu(execucao.proxima());
+    }
+
+    @Benchmark
+    public Object getUtilizadorQueMaisOuviuPeriodo(EstadoCenario estado, ExecucaoThread execucao) {
+        return estado.cenario.getUtilizadorQueMaisOuviuPeriodo(execucao.proxima());
+    }
+
+    @Benchmark
+    public Object getUtilizadorComMaisPontos(EstadoCenario estado, ExecucaoThread execucao) {
+        return estado.cenario.getUtilizadorComMaisPontos(execucao.proxima());
+    }
+
+    @Benchmark
+    public Object getGeneroMaisReproduzido(EstadoCenario estado, ExecucaoThread execucao) {
+        return estado.cenario.getGeneroMaisReproduzido(execucao.proxima());
+    }
+
+    @Benchmark
+    public Object getNumeroPlaylistsPublicas(EstadoCenario estado, ExecucaoThread execucao) {
+        return estado.cenario.getNumeroPlaylistsPublicas(execucao.proxima());
+    }
+
+    @Benchmark
+    public Object getUtilizadorComMaisPlaylists(EstadoCenario estado, ExecucaoThread execucao) {
+        return estado.cenario.getUtilizadorComMaisPlaylists(execucao.proxima());
+    }
+
+    @Benchmark
+    public Object listarPlaylistsPublicas(EstadoCenario estado, ExecucaoThread execucao) {
+        return estado.cenario.listarPlaylistsPublicas(execucao.proxima());
+    }
+}
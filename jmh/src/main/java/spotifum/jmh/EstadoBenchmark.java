@@ -0,0 +1,41 @@
+package spotifum.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Gravação e carregamento do estado completo, cada um medido como execução única
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EstadoBenchmark {
+    @Setup(Level.Trial)
+    public void gravarInicial(EstadoCenario estado) throws Exception {
+        estado.cenario.salvarEstado();
+    }
+
+    @Benchmark
+    public Object salvarEstado(EstadoCenario estado) throws Exception {
+        return estado.cenario.salvarEstado();
+    }
+
+    @Benchmark
+    public Object carregarEstado(EstadoCenario estado) throws Exception {
+        return estado.cenario.carregarEstado();
+    }
+}
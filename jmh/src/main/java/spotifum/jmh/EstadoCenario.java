@@ -0,0 +1,39 @@
+package spotifum.jmh;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Sistema gerado uma vez por combinação de tamanhos e partilhado pelas threads do benchmark
+ */
+@State(Scope.Benchmark)
+public class EstadoCenario {
+    @Param({"1000", "100000", "1000000"})
+    public int musicas;
+
+    @Param({"10000", "1000000"})
+    public int utilizadores;
+
+    @Param({"10"})
+    public int reproducoes;
+
+    @Param({"42"})
+    public long semente;
+
+    public Cenario cenario;
+
+    @Setup(Level.Trial)
+    public void preparar() throws Exception {
+        cenario = (Cenario) Class.forName("CenarioSistema").getDeclaredConstructor().newInstance();
+        cenario.preparar(semente, musicas, utilizadores, reproducoes);
+    }
+
+    @TearDown(Level.Trial)
+    public void terminar() throws Exception {
+        cenario.terminar();
+    }
+}
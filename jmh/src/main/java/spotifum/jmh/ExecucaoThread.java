@@ -0,0 +1,24 @@
+package spotifum.jmh;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Número da execução de cada thread; as threads começam em pontos diferentes para não
+ * registarem as mesmas reproduções ao mesmo tempo
+ */
+@State(Scope.Thread)
+public class ExecucaoThread {
+    private long execucao;
+
+    @Setup
+    public void preparar(ThreadParams parametros) {
+        execucao = (long) parametros.getThreadIndex() << 32;
+    }
+
+    public long proxima() {
+        return execucao++;
+    }
+}
@@ -0,0 +1,41 @@
+package spotifum.jmh;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Ponto de entrada do jar dos benchmarks: aceita as mesmas opções que o JMH
+ * (ex.: {@code -p musicas=1000 -t 4 ConsultasBenchmark}) e junta sempre o profiler de GC,
+ * para cada benchmark reportar os bytes alocados por operação ({@code gc.alloc.rate.norm})
+ */
+public class ExecutarBenchmarks {
+    public static void main(String[] args) throws RunnerException, IOException {
+        CommandLineOptions linha;
+        try {
+            linha = new CommandLineOptions(args);
+        } catch (CommandLineOptionException e) {
+            System.err.println("Opções inválidas: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        Options opcoes = new OptionsBuilder()
+            .parent(linha)
+            .addProfiler(GCProfiler.class)
+            .build();
+        Runner runner = new Runner(opcoes);
+        if (linha.shouldHelp()) {
+            linha.showHelp();
+        } else if (linha.shouldList()) {
+            runner.list();
+        } else {
+            runner.run();
+        }
+    }
+}
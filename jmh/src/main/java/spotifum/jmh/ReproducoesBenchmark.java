@@ -0,0 +1,75 @@
+package spotifum.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Registo de reproduções: uma a uma, num laço e em lote; o profiler de GC dá os bytes alocados
+ * por reprodução. Os lotes são reportados por reprodução, para comparar com o registo de uma a uma.
+ * As variantes {@code escala*} medem o débito total com 1 a 8 threads a registar em simultâneo
+ * (cada thread começa num utilizador diferente), para ver se cresce com o número de threads
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReproducoesBenchmark {
+    @Benchmark
+    public Object registrarReproducao(EstadoCenario estado, ExecucaoThread execucao) {
+        return estado.cenario.registrarReproducao(execucao.proxima());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Cenario.TAMANHO_LOTE)
+    public Object registrarReproducoesLaco(EstadoCenario estado, ExecucaoThread execucao) {
+        return estado.cenario.registrarReproducoesLaco(execucao.proxima());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Cenario.TAMANHO_LOTE)
+    public Object registrarReproducoesLote(EstadoCenario estado, ExecucaoThread execucao) {
+        return estado.cenario.registrarReproducoesLote(execucao.proxima());
+    }
+
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Object escala1Thread(EstadoCenario estado, ExecucaoThread execucao) {
+        return estado.cenario.registrarReproducao(execucao.proxima());
+    }
+
+    @Benchmark
+    @Threads(2)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Object escala2Threads(EstadoCenario estado, ExecucaoThread execucao) {
+        return estado.cenario.registrarReproducao(execucao.proxima());
+    }
+
+    @Benchmark
+    @Threads(4)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Object escala4Threads(EstadoCenario estado, ExecucaoThread execucao) {
+        return estado.cenario.registrarReproducao(execucao.proxima());
+    }
+
+    @Benchmark
+    @Threads(8)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Object escala8Threads(EstadoCenario estado, ExecucaoThread execucao) {
+        return estado.cenario.registrarReproducao(execucao.proxima());
+    }
+}
@@ -0,0 +1,32 @@
+package spotifum.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Leitura do catálogo pelos getters: vistas só de leitura contra as cópias profundas que
+ * devolviam antes; {@code gc.alloc.rate.norm} dá os bytes por consulta
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VistasBenchmark {
+    @Benchmark
+    public Object musicaMaisLongaVista(EstadoCenario estado, ExecucaoThread execucao) {
+        return estado.cenario.musicaMaisLongaVista(execucao.proxima());
+    }
+
+    @Benchmark
+    public Object musicaMaisLongaCopia(EstadoCenario estado, ExecucaoThread execucao) {
+        return estado.cenario.musicaMaisLongaCopia(execucao.proxima());
+    }
+}
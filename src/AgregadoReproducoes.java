@@ -0,0 +1,289 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Agregados globais de reproduções por utilizador em intervalos de minuto, hora, dia, mês e
+ * ano (em UTC, com os meses e anos do calendário). Uma consulta sobre um período soma os
+ * intervalos maiores que cabem nele e conta os bordos no histórico de quem ouviu no intervalo
+ * que os contém.
+ * Os minutos, horas e dias só são guardados enquanto são recentes (ver {@link #RETENCOES}):
+ * um período antigo é coberto pelos meses e anos, e os seus bordos contados no histórico de
+ * quem ouviu nesse mês ou dia. Assim, a longo prazo, cada utilizador ocupa uma entrada por mês
+ * e por ano em que ouviu música, em vez de uma por minuto.
+ * Não é gravado: é reconstruído a partir do histórico dos utilizadores ao carregar.
+ * Pode ser atualizado e consultado por várias threads em simultâneo.
+ */
+public class AgregadoReproducoes implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int MINUTO = 0;
+    private static final int HORA = 1;
+    private static final int DIA = 2;
+    private static final int MES = 3;
+    private static final int ANO = 4;
+    private static final int NIVEIS = 5;
+    private static final long[] DURACOES = {60_000L, 3_600_000L, 86_400_000L}; // Minuto, hora, dia (meses e anos variam)
+    // Tempo para trás que cada nível guarda (0: tudo); um nível nunca guarda mais que o seguinte
+    private static final long[] RETENCOES = {6 * DURACOES[HORA], 8 * DURACOES[DIA], 62 * DURACOES[DIA], 0, 0};
+
+    /**
+     * Contagens de um intervalo de um nível
+     */
+    private static class Intervalo {
+        final long inicio; // Epoch millis (inclusivo)
+        final long fim; // Epoch millis (exclusivo)
+        final Map<String, AtomicInteger> contagens; // Email -> reproduções
+
+        Intervalo(long inicio, long fim, Map<String, AtomicInteger> contagens) {
+            this.inicio = inicio;
+            this.fim = fim;
+            this.contagens = contagens;
+        }
+    }
+
+    private transient List<ConcurrentNavigableMap<Long, Map<String, AtomicInteger>>> niveis; // Nível -> (intervalo -> email -> reproduções)
+    private transient AtomicReferenceArray<Intervalo> atuais; // Nível -> último intervalo usado, para não procurar no mapa
+    private transient AtomicLongArray horizontes; // Nível -> início do primeiro intervalo guardado
+    private transient volatile long proximaExpiracao; // Epoch millis a partir do qual voltar a expirar intervalos
+
+    public AgregadoReproducoes() {
+        iniciar();
+    }
+
+    private void iniciar() {
+        this.niveis = new ArrayList<>();
+        for (int i = 0; i < NIVEIS; i++) {
+            niveis.add(new ConcurrentSkipListMap<>());
+        }
+        this.atuais = new AtomicReferenceArray<>(NIVEIS);
+        this.horizontes = new AtomicLongArray(NIVEIS);
+        for (int i = 0; i < NIVEIS; i++) {
+            horizontes.set(i, Long.MIN_VALUE);
+        }
+        this.proximaExpiracao = Long.MIN_VALUE;
+    }
+
+    /**
+     * Registra uma reprodução de um utilizador em todos os níveis de agregação
+     * @param email Email do utilizador
+     * @param instante Epoch millis da reprodução
+     */
+    public void registrar(String email, long instante) {
+        registrar(email, instante, 1);
+    }
+
+    /**
+     * Registra várias reproduções de um utilizador caídas no mesmo minuto
+     * (ver {@link #mesmoIntervalo}) em todos os níveis de agregação
+     * @param email Email do utilizador
+     * @param instante Epoch millis de uma das reproduções
+     * @param vezes Número de reproduções
+     */
+    public void registrar(String email, long instante, int vezes) {
+        for (int nivel = 0; nivel < NIVEIS; nivel++) {
+            if (instante < horizontes.get(nivel)) {
+                continue; // Já expirado neste nível: fica só nos mais largos
+            }
+            // Quase todas as reproduções caem no intervalo atual: evitar a procura e o Long da chave
+            Intervalo intervalo = atuais.get(nivel);
+            if (intervalo == null || instante < intervalo.inicio || instante >= intervalo.fim) {
+                long numero = numero(nivel, instante);
+                intervalo = new Intervalo(inicio(nivel, numero), inicio(nivel, numero + 1),
+                    niveis.get(nivel).computeIfAbsent(numero, i -> new ConcurrentHashMap<>()));
+                atuais.set(nivel, intervalo);
+                if (nivel == MINUTO) {
+                    expirar();
+                }
+            }
+            AtomicInteger contagem = intervalo.contagens.get(email);
+            if (contagem == null) {
+                contagem = intervalo.contagens.computeIfAbsent(email, e -> new AtomicInteger());
+            }
+            contagem.addAndGet(vezes);
+        }
+    }
+
+    /**
+     * Apaga os intervalos que deixaram de ser recentes, no máximo uma vez por minuto.
+     * Só apaga os que já estavam fora do horizonte anterior, para uma consulta que tenha
+     * lido esse horizonte não perder intervalos a meio.
+     */
+    private void expirar() {
+        long agora = System.currentTimeMillis();
+        if (agora < proximaExpiracao) {
+            return;
+        }
+        proximaExpiracao = agora + DURACOES[MINUTO];
+        long limite = Long.MIN_VALUE;
+        for (int nivel = NIVEIS - 1; nivel >= 0; nivel--) {
+            if (RETENCOES[nivel] > 0) {
+                // Os limites dos níveis largos também o são dos finos
+                limite = Math.max(limite, inicio(nivel, numero(nivel, agora - RETENCOES[nivel])));
+            }
+            long anterior = horizontes.get(nivel);
+            if (limite > anterior) {
+                if (anterior != Long.MIN_VALUE) {
+                    niveis.get(nivel).headMap(numero(nivel, anterior)).clear();
+                }
+                horizontes.accumulateAndGet(nivel, limite, Math::max);
+            }
+        }
+    }
+
+    /**
+     * Indica se dois instantes caem no mesmo intervalo em todos os níveis
+     * (os limites dos níveis maiores são limites de minuto)
+     * @param a Epoch millis
+     * @param b Epoch millis
+     * @return true se as reproduções podem ser registradas juntas
+     */
+    public static boolean mesmoIntervalo(long a, long b) {
+        return Math.floorDiv(a, DURACOES[MINUTO]) == Math.floorDiv(b, DURACOES[MINUTO]);
+    }
+
+    /**
+     * Conta as reproduções de cada utilizador no período [inicio, fim)
+     * @param inicio Epoch millis inicial (inclusivo)
+     * @param fim Epoch millis final (exclusivo)
+     * @param utilizadores Utilizadores por email, usados para contar os bordos exatos
+     * @return Mapa email -> reproduções no período (só utilizadores com reproduções)
+     */
+    public Map<String, Integer> contarPorUtilizador(long inicio, long fim, Map<String, Utilizador> utilizadores) {
+        Map<String, Integer> totais = new HashMap<>();
+        if (fim > inicio) {
+            cobrir(inicio, fim, ANO, null, totais, utilizadores);
+        }
+        return totais;
+    }
+
+    /**
+     * Soma os intervalos completos do nível dado e trata as sobras nos níveis mais finos
+     * @param contentor Contagens do intervalo do nível acima que contém o período (null no topo)
+     */
+    private void cobrir(long inicio, long fim, int nivel, Map<String, AtomicInteger> contentor,
+                        Map<String, Integer> totais, Map<String, Utilizador> utilizadores) {
+        if (inicio >= fim) {
+            return;
+        }
+        if (nivel < 0) {
+            contarExato(inicio, fim, contentor, totais, utilizadores);
+            return;
+        }
+        long horizonte = horizontes.get(nivel);
+        if (inicio < horizonte) {
+            // Este nível e os mais finos já não guardam esta parte: ver quem ouviu no contentor
+            long corte = Math.min(fim, horizonte);
+            contarExato(inicio, corte, contentor, totais, utilizadores);
+            inicio = corte;
+            if (inicio >= fim) {
+                return;
+            }
+        }
+        ConcurrentNavigableMap<Long, Map<String, AtomicInteger>> intervalos = niveis.get(nivel);
+        long primeiro = numero(nivel, inicio);
+        if (inicio(nivel, primeiro) < inicio) {
+            long seguinte = inicio(nivel, primeiro + 1);
+            cobrir(inicio, Math.min(fim, seguinte), nivel - 1, intervalos.get(primeiro), totais, utilizadores);
+            inicio = seguinte;
+            primeiro++;
+            if (inicio >= fim) {
+                return;
+            }
+        }
+        long ultimo = numero(nivel, fim); // Fim (exclusivo) dos intervalos completos
+        if (primeiro < ultimo) {
+            for (Map<String, AtomicInteger> contagens : intervalos.subMap(primeiro, ultimo).values()) {
+                contagens.forEach((email, n) -> totais.merge(email, n.get(), Integer::sum));
+            }
+        }
+        cobrir(Math.max(inicio, inicio(nivel, ultimo)), fim, nivel - 1, intervalos.get(ultimo), totais, utilizadores);
+    }
+
+    /**
+     * Conta exatamente um período no histórico de quem ouviu no intervalo que o contém
+     */
+    private void contarExato(long inicio, long fim, Map<String, AtomicInteger> contentor,
+                             Map<String, Integer> totais, Map<String, Utilizador> utilizadores) {
+        if (contentor == null || inicio >= fim) {
+            return;
+        }
+        for (String email : contentor.keySet()) {
+            Utilizador utilizador = utilizadores.get(email);
+            int n = utilizador != null ? utilizador.getNumeroMusicasOuvidasEntre(inicio, fim) : 0;
+            if (n > 0) {
+                totais.merge(email, n, Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * Número do intervalo de um nível que contém um instante
+     */
+    private static long numero(int nivel, long instante) {
+        if (nivel < MES) {
+            return Math.floorDiv(instante, DURACOES[nivel]);
+        }
+        LocalDate data = LocalDate.ofEpochDay(Math.floorDiv(instante, DURACOES[DIA]));
+        return nivel == MES ? data.getYear() * 12L + data.getMonthValue() - 1 : data.getYear();
+    }
+
+    /**
+     * Epoch millis do início de um intervalo de um nível
+     */
+    private static long inicio(int nivel, long numero) {
+        if (nivel < MES) {
+            return numero * DURACOES[nivel];
+        }
+        LocalDate data = nivel == MES
+            ? LocalDate.of((int) Math.floorDiv(numero, 12), Math.floorMod(numero, 12) + 1, 1)
+            : LocalDate.of((int) numero, 1, 1);
+        return data.toEpochDay() * DURACOES[DIA];
+    }
+
+    private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+        ois.defaultReadObject(); // Estados antigos gravavam as contagens: são ignoradas
+        iniciar();
+    }
+
+    /**
+     * Converte o início exclusivo de um período para o primeiro epoch millis incluído
+     * @param inicio Data/hora inicial (exclusiva)
+     * @return Epoch millis inicial inclusivo
+     */
+    public static long inicioExclusivoEmMillis(LocalDateTime inicio) {
+        // Um instante inteiro t está depois de inicio sse t > floor(inicio)
+        return paraMillis(inicio) + 1;
+    }
+
+    /**
+     * Converte o fim exclusivo de um período para epoch millis exclusivo
+     * @param fim Data/hora final (exclusiva)
+     * @return Epoch millis final exclusivo
+     */
+    public static long fimExclusivoEmMillis(LocalDateTime fim) {
+        // t < fim sse t < floor(fim), ou t <= floor(fim) se fim tiver fração de milissegundo
+        return paraMillis(fim) + (fim.getNano() % 1_000_000 != 0 ? 1 : 0);
+    }
+
+    /**
+     * Converte uma data/hora local (fuso do sistema) para epoch millis
+     * @param data Data/hora local
+     * @return Epoch millis (sem a fração de milissegundo)
+     */
+    static long paraMillis(LocalDateTime data) {
+        return data.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
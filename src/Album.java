@@ -1,4 +1,6 @@
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -9,6 +11,8 @@ public class Album implements Serializable, Cloneable {
     private Map<String, Musica> musicas;
     private String artista;
     private int ano;
+    private Catalogo catalogo; // Catálogo cujos índices acompanham este álbum (null em cópias)
+    private transient boolean soLeitura; // Do catálogo ou de uma biblioteca: só o Sistema o altera
 
     public Album(String nome, String artista, int ano) {
         this.nome = nome;
@@ -21,12 +25,24 @@ public class Album implements Serializable, Cloneable {
      * Adiciona uma música ao álbum
      * @param musica Música a ser adicionada
      * @return true se a música foi adicionada com sucesso, false se já existia uma música com o mesmo nome
+     * @throws IllegalStateException Se o álbum é do sistema (usar {@link Sistema#adicionarMusicaAlbum})
      */
     public boolean adicionarMusica(Musica musica) {
+        verificarAlteravel();
+        return inserirMusica(musica);
+    }
+    
+    /**
+     * Adiciona uma música mesmo a um álbum só de leitura: para o Sistema, que regista a alteração
+     */
+    boolean inserirMusica(Musica musica) {
         if (musicas.containsKey(musica.getNome())) {
             return false;
         }
         musicas.put(musica.getNome(), musica);
+        if (catalogo != null) {
+            catalogo.registrarMusica(musica, this);
+        }
         return true;
     }
     
@@ -34,9 +50,48 @@ public class Album implements Serializable, Cloneable {
      * Remove uma música do álbum
      * @param nomeMusica Nome da música a ser removida
      * @return true se a música foi removida com sucesso, false se não existia
+     * @throws IllegalStateException Se o álbum é do sistema (usar {@link Sistema#removerMusicaAlbum})
      */
     public boolean removerMusica(String nomeMusica) {
-        return musicas.remove(nomeMusica) != null;
+        verificarAlteravel();
+        return retirarMusica(nomeMusica);
+    }
+    
+    /**
+     * Remove uma música mesmo de um álbum só de leitura: para o Sistema, que regista a alteração
+     */
+    boolean retirarMusica(String nomeMusica) {
+        Musica removida = musicas.remove(nomeMusica);
+        if (removida != null && catalogo != null) {
+            catalogo.removerMusica(removida);
+        }
+        return removida != null;
+    }
+    
+    /**
+     * Impede as alterações pelos métodos públicos: o álbum passou a ser partilhado pelo sistema
+     * (catálogo ou biblioteca de um utilizador), que é quem regista as alterações
+     */
+    void tornarSoLeitura() {
+        soLeitura = true;
+    }
+    
+    private void verificarAlteravel() {
+        if (soLeitura) {
+            throw new IllegalStateException("O álbum " + nome + " é do sistema e só pode ser alterado através dele");
+        }
+    }
+    
+    /**
+     * Liga o álbum a um catálogo, indexando as músicas atuais
+     * @param catalogo Catálogo do sistema
+     */
+    void ligarCatalogo(Catalogo catalogo) {
+        this.catalogo = catalogo;
+        this.soLeitura = true;
+        for (Musica musica : musicas.values()) {
+            catalogo.registrarMusica(musica, this);
+        }
     }
     
     /**
@@ -45,21 +100,15 @@ public class Album implements Serializable, Cloneable {
      * @return A música com o nome especificado ou null se não existir
      */
     public Musica getMusica(String nomeMusica) {
-        Musica musica = musicas.get(nomeMusica);
-        return musica != null ? musica.clone() : null;
+        return musicas.get(nomeMusica);
     }
 
     /**
      * Retorna todas as músicas do álbum
-     * @return Um mapa com todas as músicas (clones)
+     * @return Vista só de leitura sobre as músicas do álbum (sem cópias)
      */
     public Map<String, Musica> getMusicas() {
-        Map<String, Musica> musicasClone = new HashMap<>();
-        
-        for (Map.Entry<String, Musica> entry : this.musicas.entrySet()) {
-            musicasClone.put(entry.getKey(), entry.getValue().clone());
-        }
-        return musicasClone;
+        return Collections.unmodifiableMap(musicas);
     }
     
     /**
@@ -82,15 +131,54 @@ public class Album implements Serializable, Cloneable {
         return musicas.size();
     }
     
+    /**
+     * Escreve o álbum no formato binário do estado do sistema. Álbuns do catálogo
+     * guardam as músicas completas; cópias (ex.: bibliotecas) guardam só referências.
+     * @param saida Destino da escrita
+     * @param catalogo Catálogo do sistema, usado para resolver referências
+     */
+    void escrever(SaidaBinaria saida, Catalogo catalogo) throws IOException {
+        boolean completo = this.catalogo != null;
+        saida.escreverString(nome);
+        saida.escreverSimbolo(artista);
+        saida.escreverVarIntComSinal(ano);
+        saida.escreverBoolean(completo);
+        saida.escreverVarInt(musicas.size());
+        for (Musica musica : musicas.values()) {
+            if (completo) {
+                musica.escrever(saida);
+            } else {
+                Musica.escreverReferencia(saida, musica, catalogo);
+            }
+        }
+    }
+    
+    /**
+     * Lê um álbum escrito por {@link #escrever}, sem o ligar ao catálogo
+     * @param entrada Origem da leitura
+     * @param catalogo Catálogo do sistema
+     * @return O álbum lido
+     */
+    static Album ler(EntradaBinaria entrada, Catalogo catalogo) throws IOException {
+        Album album = new Album(entrada.lerString(), entrada.lerSimbolo(), entrada.lerVarIntComSinal());
+        boolean completo = entrada.lerBoolean();
+        int numeroMusicas = entrada.lerVarInt();
+        for (int i = 0; i < numeroMusicas; i++) {
+            Musica musica = completo ? Musica.ler(entrada, catalogo) : Musica.lerReferencia(entrada, catalogo);
+            album.musicas.put(musica.getNome(), musica);
+        }
+        return album;
+    }
+    
     @Override
     public Album clone() {
         try {
             Album clone = (Album) super.clone();
-            // Clonar mapa de músicas para evitar compartilhamento de referência
-            clone.musicas = new HashMap<>();
-            for (Map.Entry<String, Musica> entry : this.musicas.entrySet()) {
-                clone.musicas.put(entry.getKey(), entry.getValue().clone());
-            }
+            // Cópias não pertencem ao catálogo e não devem alterar os seus índices
+            clone.catalogo = null;
+            clone.soLeitura = false;
+            // Mapa próprio, mas com as músicas canônicas: a cópia não duplica letras nem conteúdo
+            clone.musicas = new HashMap<>(this.musicas);
             return clone;
         } catch (CloneNotSupportedException e) {
             // Isso não deveria acontecer já que implementamos Cloneable
@@ -105,6 +193,7 @@ public class Album implements Serializable, Cloneable {
     }
 
     public void setNome(String nome) {
+        verificarAlteravel();
         this.nome = nome;
     }
     
@@ -113,6 +202,7 @@ public class Album implements Serializable, Cloneable {
     }
 
     public void setArtista(String artista) {
+        verificarAlteravel();
         this.artista = artista;
     }
 
@@ -121,6 +211,7 @@ public class Album implements Serializable, Cloneable {
     }
 
     public void setAno(int ano) {
+        verificarAlteravel();
         this.ano = ano;
     }
     
@@ -0,0 +1,177 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Acesso preguiçoso aos textos das músicas (letra e conteúdo musical) guardados no
+ * arquivo de estado. Cada texto só é lido (por leitura posicional) e descodificado quando
+ * é pedido, sem ficar retido no heap. O arquivo não é mapeado em memória: um mapeamento só
+ * é libertado pelo coletor de lixo e, enquanto existir, impede em alguns sistemas (Windows)
+ * que o arquivo seja substituído ao salvar. O armazém pertence ao sistema que o abriu, que o
+ * fecha quando as músicas passam a ler de outro arquivo ou quando deixa de ser usado.
+ */
+public class ArmazemTexto implements Closeable {
+    private static final int TAMANHO_JANELA = 1 << 16; // Leitura antecipada: ao salvar, os textos são lidos por ordem
+
+    private final FileChannel canal;
+    private final ByteBuffer janela; // Últimos bytes lidos do arquivo
+    private long inicioJanela; // Posição no arquivo do primeiro byte da janela
+
+    public ArmazemTexto(Path arquivo) throws IOException {
+        this.canal = FileChannel.open(arquivo, StandardOpenOption.READ);
+        this.janela = ByteBuffer.allocate(TAMANHO_JANELA);
+        this.janela.flip(); // Começa vazia
+    }
+
+    /**
+     * Retorna uma cópia dos bytes de um bloco de texto
+     * @param posicao Posição do bloco no arquivo
+     * @param tamanho Tamanho do bloco em bytes
+     * @return Buffer com o bloco, que continua válido depois de o armazém ser fechado
+     */
+    public synchronized ByteBuffer ler(long posicao, int tamanho) {
+        try {
+            ByteBuffer bloco = ByteBuffer.allocate(tamanho);
+            if (tamanho > TAMANHO_JANELA) {
+                lerCompleto(bloco, posicao);
+            } else {
+                if (posicao < inicioJanela || posicao + tamanho > inicioJanela + janela.limit()) {
+                    janela.clear();
+                    inicioJanela = posicao;
+                    while (janela.position() < tamanho) {
+                        if (canal.read(janela, posicao + janela.position()) < 0) {
+                            throw new IOException("Bloco de texto fora do arquivo de estado");
+                        }
+                    }
+                    janela.flip();
+                }
+                ByteBuffer origem = janela.duplicate();
+                origem.position((int) (posicao - inicioJanela)).limit(origem.position() + tamanho);
+                bloco.put(origem);
+            }
+            bloco.flip();
+            return bloco;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Erro ao ler texto do arquivo de estado", e);
+        }
+    }
+
+    private void lerCompleto(ByteBuffer bloco, long posicao) throws IOException {
+        while (bloco.hasRemaining()) {
+            if (canal.read(bloco, posicao + bloco.position()) < 0) {
+                throw new IOException("Bloco de texto fora do arquivo de estado");
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        canal.close();
+    }
+
+    /**
+     * Codifica a letra e o conteúdo musical num bloco: a letra seguida do número de
+     * linhas e de cada linha, todos com o tamanho em varint (0 representa null)
+     * @param letra Letra da música
+     * @param linhas Linhas do conteúdo musical
+     * @return Bytes do bloco
+     */
+    public static byte[] codificar(String letra, List<String> linhas) {
+        List<byte[]> partes = new ArrayList<>(linhas.size() + 1);
+        partes.add(letra != null ? letra.getBytes(StandardCharsets.UTF_8) : null);
+        for (String linha : linhas) {
+            partes.add(linha != null ? linha.getBytes(StandardCharsets.UTF_8) : null);
+        }
+        int tamanho = tamanhoVarInt(linhas.size());
+        for (byte[] parte : partes) {
+            int n = parte != null ? parte.length + 1 : 0;
+            tamanho += tamanhoVarInt(n) + (parte != null ? parte.length : 0);
+        }
+        ByteBuffer bloco = ByteBuffer.allocate(tamanho);
+        escreverParte(bloco, partes.get(0));
+        escreverVarInt(bloco, linhas.size());
+        for (int i = 1; i < partes.size(); i++) {
+            escreverParte(bloco, partes.get(i));
+        }
+        return bloco.array();
+    }
+
+    /**
+     * Descodifica a letra de um bloco
+     * @param bloco Bloco produzido por {@link #codificar}
+     * @return A letra
+     */
+    public static String lerLetra(ByteBuffer bloco) {
+        return lerParte(bloco.duplicate());
+    }
+
+    /**
+     * Descodifica as linhas do conteúdo musical de um bloco
+     * @param bloco Bloco produzido por {@link #codificar}
+     * @return Lista com as linhas
+     */
+    public static ArrayList<String> lerLinhas(ByteBuffer bloco) {
+        ByteBuffer leitura = bloco.duplicate();
+        lerParte(leitura); // Saltar a letra
+        int n = lerVarInt(leitura);
+        ArrayList<String> linhas = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            linhas.add(lerParte(leitura));
+        }
+        return linhas;
+    }
+
+    private static void escreverParte(ByteBuffer bloco, byte[] parte) {
+        if (parte == null) {
+            escreverVarInt(bloco, 0);
+        } else {
+            escreverVarInt(bloco, parte.length + 1);
+            bloco.put(parte);
+        }
+    }
+
+    private static String lerParte(ByteBuffer bloco) {
+        int n = lerVarInt(bloco);
+        if (n == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[n - 1];
+        bloco.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void escreverVarInt(ByteBuffer bloco, int valor) {
+        while ((valor & ~0x7F) != 0) {
+            bloco.put((byte) ((valor & 0x7F) | 0x80));
+            valor >>>= 7;
+        }
+        bloco.put((byte) valor);
+    }
+
+    private static int lerVarInt(ByteBuffer bloco) {
+        int valor = 0;
+        for (int deslocamento = 0; ; deslocamento += 7) {
+            int b = bloco.get() & 0xFF;
+            valor |= (b & 0x7F) << deslocamento;
+            if ((b & 0x80) == 0) {
+                return valor;
+            }
+        }
+    }
+
+    private static int tamanhoVarInt(int valor) {
+        int bytes = 1;
+        while ((valor & ~0x7F) != 0) {
+            valor >>>= 7;
+            bytes++;
+        }
+        return bytes;
+    }
+}
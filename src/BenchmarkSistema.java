@@ -0,0 +1,284 @@
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+
+/**
+ * Medição do desempenho dos caminhos mais usados do Sistema, sobre dados gerados
+ * por {@link GeradorDados} com vários tamanhos de catálogo e de utilizadores.
+ * Cada operação é aquecida e depois medida durante um tempo fixo; para cada uma
+ * são reportados o tempo médio, a taxa, os bytes alocados e a atividade do GC.
+ * As medições de referência são as do módulo JMH (jmh/); esta classe fica como
+ * alternativa sem dependências, para correr só com o JDK.
+ *
+ * Uso: java BenchmarkSistema [--musicas=1000,100000] [--utilizadores=10000]
+ *      [--reproducoes=10] [--aquecimento=1] [--medicao=3] [--filtro=regex] [--semente=42]
+ *      [--paralelismo=1,N] (threads da geração em lote; N = processadores disponíveis)
+ */
+public class BenchmarkSistema {
+    private static final String[] GENEROS_CONSULTA = {"Rock", "Jazz", "Fado", "Samba"};
+    private static final int TAMANHO_LOTE = 256; // Reproduções por lote na ingestão em lote
+    private static final int NUMERO_LOTES = 1024; // Lotes diferentes percorridos em ciclo
+    private static final int REPRODUCOES_POR_UTILIZADOR_LOTE = 16; // Reproduções seguidas de cada utilizador num lote
+
+    private static Object sumidouro; // Impede o JIT de descartar os resultados das operações
+
+    /**
+     * Operação medida; recebe o número da execução para variar os argumentos
+     */
+    private interface Operacao {
+        Object executar(long execucao) throws Exception;
+    }
+
+    private final long aquecimentoNanos;
+    private final long medicaoNanos;
+    private final Pattern filtro;
+    private final int[] paralelismos; // Níveis de paralelismo da geração em lote
+    private final com.sun.management.ThreadMXBean threads;
+
+    public BenchmarkSistema(long aquecimentoSegundos, long medicaoSegundos, Pattern filtro, int[] paralelismos) {
+        this.aquecimentoNanos = aquecimentoSegundos * 1_000_000_000L;
+        this.medicaoNanos = medicaoSegundos * 1_000_000_000L;
+        this.filtro = filtro;
+        this.paralelismos = paralelismos;
+        this.threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        this.threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opcoes = lerOpcoes(args);
+        int[] tamanhosMusicas = lerLista(opcoes.getOrDefault("musicas", "1000,100000"));
+        int[] tamanhosUtilizadores = lerLista(opcoes.getOrDefault("utilizadores", "10000"));
+        int reproducoes = Integer.parseInt(opcoes.getOrDefault("reproducoes", "10"));
+        long semente = Long.parseLong(opcoes.getOrDefault("semente", "42"));
+        BenchmarkSistema benchmark = new BenchmarkSistema(
+            Long.parseLong(opcoes.getOrDefault("aquecimento", "1")),
+            Long.parseLong(opcoes.getOrDefault("medicao", "3")),
+            Pattern.compile(opcoes.getOrDefault("filtro", ".*")),
+            lerLista(opcoes.getOrDefault("paralelismo", "1," + Runtime.getRuntime().availableProcessors())));
+
+        System.out.printf("%-40s %9s %9s %14s %14s %12s %6s %8s%n",
+            "Operação", "Músicas", "Utiliz.", "ns/op", "op/s", "bytes/op", "GCs", "GC ms");
+        for (int musicas : tamanhosMusicas) {
+            for (int utilizadores : tamanhosUtilizadores) {
+                benchmark.executar(new GeradorDados(semente, musicas, utilizadores, reproducoes));
+            }
+        }
+        System.out.println("(sumidouro: " + System.identityHashCode(sumidouro) + ")");
+    }
+
+    /**
+     * Gera os dados e mede todas as operações que passam o filtro
+     * @param gerador Gerador configurado com os tamanhos a medir
+     */
+    public void executar(GeradorDados gerador) throws IOException {
+        Sistema sistema = gerador.gerar();
+        List<Musica> musicas = gerador.getMusicas();
+        List<Utilizador> utilizadores = gerador.getUtilizadores();
+        List<Utilizador> premiumTop = new ArrayList<>();
+        for (Utilizador utilizador : utilizadores) {
+            if (utilizador.getPlano() instanceof PlanoPremiumTop) {
+                premiumTop.add(utilizador);
+            }
+        }
+        String tamanho = String.format("%9d %9d", musicas.size(), utilizadores.size());
+        String[] emails = new String[utilizadores.size()];
+        String[] emailsMaiusculas = new String[utilizadores.size()];
+        for (int j = 0; j < emails.length; j++) {
+            emails[j] = utilizadores.get(j).getEmail();
+            emailsMaiusculas[j] = emails[j].toUpperCase(Locale.ROOT);
+        }
+        LocalDateTime agora = LocalDateTime.now();
+
+        // Só leituras primeiro, para todas verem o mesmo estado
+        medir("buscarMusicasPorGenero", tamanho,
+            i -> sistema.buscarMusicasPorGenero(GENEROS_CONSULTA[(int) (i % GENEROS_CONSULTA.length)]));
+        medir("buscarMusicasExplicitas", tamanho, i -> sistema.buscarMusicasExplicitas());
+        // Pesquisa de texto: palavra rara com palavras comuns, intérprete, e só palavras comuns
+        medir("pesquisarMusicas(rara)", tamanho,
+            i -> sistema.pesquisarMusicas("musica " + (i * 7919 % musicas.size()), 10));
+        medir("pesquisarMusicas(interprete)", tamanho,
+            i -> sistema.pesquisarMusicas("interprete " + (i % 100), 10));
+        medir("pesquisarMusicas(comuns)", tamanho, i -> sistema.pesquisarMusicas("refrao da musica", 10));
+        medir("completarMusicas(prefixo)", tamanho,
+            i -> sistema.completarMusicas("musica " + (i % 1000), 10));
+        medir("completarMusicas(curto)", tamanho, i -> sistema.completarMusicas("m", 10));
+        medir("completarAlbuns", tamanho, i -> sistema.completarAlbuns("album " + (i % 100), 10));
+        medir("completarInterpretes", tamanho, i -> sistema.completarInterpretes("interprete " + (i % 10), 10));
+        medir("completarUtilizadores", tamanho, i -> sistema.completarUtilizadores("utilizador " + (i % 100), 10));
+        if (emails.length > 0) {
+            medir("findUtilizador", tamanho, i -> sistema.findUtilizador(emails[(int) (i % emails.length)]));
+            medir("findUtilizador(maiúsculas)", tamanho,
+                i -> sistema.findUtilizador(emailsMaiusculas[(int) (i % emails.length)]));
+            medir("iniciarSessao+terminarSessao", tamanho, i -> {
+                Utilizador utilizador = sistema.iniciarSessao(emails[(int) (i % emails.length)]);
+                sistema.terminarSessao(utilizador);
+                return utilizador;
+            });
+        }
+        if (!premiumTop.isEmpty()) {
+            medir("gerarPlaylistPreferencias", tamanho,
+                i -> sistema.gerarPlaylistPreferencias(premiumTop.get((int) (i % premiumTop.size()))));
+            medir("gerarPlaylistPreferenciasTempo", tamanho,
+                i -> sistema.gerarPlaylistPreferenciasTempo(premiumTop.get((int) (i % premiumTop.size())), 3600));
+            medir("gerarPlaylistPreferenciasExplicitas", tamanho,
+                i -> sistema.gerarPlaylistPreferenciasExplicitas(premiumTop.get((int) (i % premiumTop.size()))));
+        }
+        // Mix diário: uma operação gera as playlists de todos os utilizadores Premium Top
+        for (int paralelismo : paralelismos) {
+            ForkJoinPool pool = new ForkJoinPool(paralelismo);
+            try {
+                medir("gerarPlaylistsPreferenciasEmLote(p=" + paralelismo + ")", tamanho,
+                    i -> sistema.gerarPlaylistsPreferenciasEmLote(pool, (utilizador, playlist) -> sumidouro = playlist, null));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        medir("gerarPlaylistAleatoria", tamanho, i -> sistema.gerarPlaylistAleatoria());
+        medir("getMusicaMaisReproduzida", tamanho, i -> sistema.getMusicaMaisReproduzida());
+        medir("getInterpreteMaisEscutado", tamanho, i -> sistema.getInterpreteMaisEscutado());
+        medir("getUtilizadorQueMaisOuviu", tamanho, i -> sistema.getUtilizadorQueMaisOuviu());
+        medir("getUtilizadorQueMaisOuviuPeriodo", tamanho,
+            i -> sistema.getUtilizadorQueMaisOuviuPeriodo(agora.minusHours(1 + i % 24), agora.plusMinutes(1)));
+        medir("getUtilizadorComMaisPontos", tamanho, i -> sistema.getUtilizadorComMaisPontos());
+        medir("getGeneroMaisReproduzido", tamanho, i -> sistema.getGeneroMaisReproduzido());
+        medir("getNumeroPlaylistsPublicas", tamanho, i -> sistema.getNumeroPlaylistsPublicas());
+        String segundaPagina = sistema.listarPlaylistsPublicas(null, 10).getCursor();
+        medir("listarPlaylistsPublicas(10)", tamanho, i -> sistema.listarPlaylistsPublicas(null, 10));
+        medir("listarPlaylistsPublicas(seguinte)", tamanho, i -> sistema.listarPlaylistsPublicas(segundaPagina, 10));
+        medir("procurarPlaylistsPublicas(10)", tamanho,
+            i -> sistema.procurarPlaylistsPublicas("playlist de utilizador " + (i % 100), null, 10));
+        medir("getPlaylistsPublicas", tamanho, i -> sistema.getPlaylistsPublicas());
+        medir("getUtilizadorComMaisPlaylists", tamanho, i -> sistema.getUtilizadorComMaisPlaylists());
+        medir("getMusicasMaisReproduzidas(10)", tamanho, i -> sistema.getMusicasMaisReproduzidas(10));
+
+        if (!utilizadores.isEmpty() && !musicas.isEmpty()) {
+            medir("registrarReproducao", tamanho, i -> {
+                // Passo primo para percorrer utilizadores e músicas sem padrão de cache fixo
+                Utilizador utilizador = utilizadores.get((int) (i % utilizadores.size()));
+                sistema.registrarReproducao(utilizador, musicas.get((int) ((i * 7919) % musicas.size())));
+                return utilizador;
+            });
+            // Rajadas de clientes: cada lote tem reproduções seguidas de poucos utilizadores,
+            // gerado antes da medição para as duas variantes medirem só o registro
+            Utilizador[][] lotesUtilizadores = new Utilizador[NUMERO_LOTES][TAMANHO_LOTE];
+            Musica[][] lotesMusicas = new Musica[NUMERO_LOTES][TAMANHO_LOTE];
+            long[][] lotesInstantes = new long[NUMERO_LOTES][TAMANHO_LOTE];
+            for (int lote = 0; lote < NUMERO_LOTES; lote++) {
+                preencherLote(lote, gerador, utilizadores, lotesUtilizadores[lote], lotesMusicas[lote], lotesInstantes[lote]);
+            }
+            medir("registrarReproducao(laço de " + TAMANHO_LOTE + ")", tamanho, i -> {
+                int lote = (int) (i % NUMERO_LOTES);
+                for (int j = 0; j < TAMANHO_LOTE; j++) {
+                    sistema.registrarReproducao(lotesUtilizadores[lote][j], lotesMusicas[lote][j]);
+                }
+                return lotesUtilizadores[lote];
+            });
+            medir("registrarReproducoes(lote de " + TAMANHO_LOTE + ")", tamanho, i -> {
+                int lote = (int) (i % NUMERO_LOTES);
+                sistema.registrarReproducoes(lotesUtilizadores[lote], lotesMusicas[lote], lotesInstantes[lote]);
+                return lotesUtilizadores[lote];
+            });
+        }
+    }
+
+    /**
+     * Preenche o lote número dado com REPRODUCOES_POR_UTILIZADOR_LOTE reproduções seguidas
+     * por utilizador, de músicas sorteadas pela popularidade (o mesmo lote para o mesmo número)
+     */
+    private static void preencherLote(long lote, GeradorDados gerador, List<Utilizador> utilizadores,
+                                      Utilizador[] loteUtilizadores, Musica[] loteMusicas, long[] loteInstantes) {
+        Random random = new Random(lote);
+        long agora = System.currentTimeMillis();
+        for (int j = 0; j < loteUtilizadores.length; j++) {
+            long reproducao = lote * loteUtilizadores.length + j;
+            loteUtilizadores[j] = utilizadores.get((int) ((reproducao / REPRODUCOES_POR_UTILIZADOR_LOTE) % utilizadores.size()));
+            loteMusicas[j] = gerador.sortearMusica(random);
+            loteInstantes[j] = agora;
+        }
+    }
+
+    /**
+     * Aquece e mede uma operação, escrevendo uma linha de resultados
+     */
+    private void medir(String nome, String tamanho, Operacao operacao) {
+        if (!filtro.matcher(nome).find()) {
+            return;
+        }
+        try {
+            long execucao = repetir(operacao, 0, aquecimentoNanos);
+
+            long threadId = Thread.currentThread().getId();
+            long[] gcAntes = estadoGc();
+            long alocadoAntes = threads.getThreadAllocatedBytes(threadId);
+            long inicio = System.nanoTime();
+            long fim = repetir(operacao, execucao, medicaoNanos);
+            long decorrido = System.nanoTime() - inicio;
+            long alocado = threads.getThreadAllocatedBytes(threadId) - alocadoAntes;
+            long[] gcDepois = estadoGc();
+
+            long execucoes = fim - execucao;
+            System.out.printf("%-40s %s %14.1f %14.1f %12d %6d %8d%n", nome, tamanho,
+                (double) decorrido / execucoes, execucoes * 1e9 / decorrido, alocado / execucoes,
+                gcDepois[0] - gcAntes[0], gcDepois[1] - gcAntes[1]);
+        } catch (Exception e) {
+            System.out.printf("%-40s %s falhou: %s%n", nome, tamanho, e);
+        }
+    }
+
+    /**
+     * Executa a operação até passar o tempo dado (pelo menos uma vez)
+     * @return Número da próxima execução
+     */
+    private static long repetir(Operacao operacao, long execucao, long duracaoNanos) throws Exception {
+        long inicio = System.nanoTime();
+        do {
+            sumidouro = operacao.executar(execucao++);
+        } while (System.nanoTime() - inicio < duracaoNanos);
+        return execucao;
+    }
+
+    /**
+     * Retorna o número total de recolhas e o tempo total de GC em milissegundos
+     */
+    private static long[] estadoGc() {
+        long recolhas = 0;
+        long tempo = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            recolhas += Math.max(0, gc.getCollectionCount());
+            tempo += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[] {recolhas, tempo};
+    }
+
+    private static Map<String, String> lerOpcoes(String[] args) {
+        Map<String, String> opcoes = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Opção inválida: " + arg);
+            }
+            int igual = arg.indexOf('=');
+            opcoes.put(arg.substring(2, igual), arg.substring(igual + 1));
+        }
+        return opcoes;
+    }
+
+    private static int[] lerLista(String valores) {
+        String[] partes = valores.split(",");
+        int[] lista = new int[partes.length];
+        for (int i = 0; i < partes.length; i++) {
+            lista[i] = Integer.parseInt(partes[i].trim().replace("_", ""));
+        }
+        return lista;
+    }
+}
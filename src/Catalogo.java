@@ -0,0 +1,605 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+public class Catalogo implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Músicas ativas sem buracos. Depois de publicado, as primeiras {@code numero} posições
+     * do array não mudam: acrescentar escreve depois delas e remover copia o array
+     */
+    private static final class Ativas {
+        final Musica[] musicas;
+        final int numero;
+
+        Ativas(Musica[] musicas, int numero) {
+            this.musicas = musicas;
+            this.numero = numero;
+        }
+    }
+
+    private Map<String, Set<Musica>> musicasPorGenero; // Gênero (minúsculas) -> Músicas
+    private List<Musica> musicasPorId; // Id -> Música canônica (null se removida)
+    private transient TabelaSimbolos simbolos; // Gêneros, intérpretes e editoras das músicas registradas
+    private int[] contagemReproducoes; // Forma serializada das contagens (null fora da serialização Java)
+    private transient ContadoresReproducoes contagens; // Id -> Número de reproduções
+    // As classificações só refletem as contagens alteradas desde a última consulta quando são consultadas
+    private Classificacao<Integer> classificacao; // Músicas ativas ordenadas por reproduções
+    private transient Map<String, Classificacao<Integer>> classificacaoPorGenero; // Gênero (minúsculas) -> Ids
+    private transient Map<String, Classificacao<Integer>> classificacaoExplicitasPorGenero; // Só músicas explícitas
+    // Código do gênero na tabela de símbolos -> classificação do gênero, para evitar normalizar o nome a cada reprodução
+    private transient List<Classificacao<Integer>> classificacaoPorCodigoGenero;
+    private transient List<Classificacao<Integer>> classificacaoExplicitasPorCodigoGenero;
+    private transient volatile Ativas ativas; // Músicas ativas, lidas pelo sorteio sem bloqueio
+    private transient int[] posicaoAtiva; // Id -> Posição em ativas (-1 se inativa)
+    // Construído na primeira pesquisa, para carregar o estado sem ler a letra de todas as músicas
+    private transient IndicePesquisa indicePesquisa; // Texto das músicas -> ids (null até à primeira pesquisa)
+    private transient List<Album> albumPorId; // Id -> álbum da música (null se não tiver), para a pesquisa
+    private transient CompletacaoCatalogo completacao; // Início dos nomes -> músicas, álbuns e intérpretes
+
+    public Catalogo() {
+        this.musicasPorGenero = new HashMap<>();
+        this.musicasPorId = new ArrayList<>();
+        this.simbolos = new TabelaSimbolos();
+        this.contagens = new ContadoresReproducoes(ContadoresReproducoes.FAIXAS_POR_PROCESSADOR);
+        this.classificacao = new Classificacao<>();
+        this.classificacaoPorGenero = new HashMap<>();
+        this.classificacaoExplicitasPorGenero = new HashMap<>();
+        this.classificacaoPorCodigoGenero = new ArrayList<>();
+        this.classificacaoExplicitasPorCodigoGenero = new ArrayList<>();
+        this.albumPorId = new ArrayList<>();
+        this.completacao = new CompletacaoCatalogo();
+        reiniciarAtivas(16);
+    }
+
+    /**
+     * Registra todas as músicas de um álbum no catálogo e liga o álbum ao catálogo,
+     * para que músicas adicionadas ou removidas mais tarde mantenham os índices atualizados
+     * @param album Álbum a ser registrado
+     */
+    public synchronized void registrarAlbum(Album album) {
+        completacao.registrarAlbum(album);
+        album.ligarCatalogo(this);
+    }
+
+    /**
+     * Adiciona uma música aos índices do catálogo
+     * @param musica Música a ser indexada
+     */
+    public void registrarMusica(Musica musica) {
+        registrarMusica(musica, null);
+    }
+
+    /**
+     * Adiciona uma música de um álbum aos índices do catálogo, incluindo os de pesquisa
+     * @param musica Música a ser indexada
+     * @param album Álbum da música, também pesquisável (null se não tiver)
+     */
+    public synchronized void registrarMusica(Musica musica, Album album) {
+        if (!musica.pertenceA(this)) {
+            int id = musicasPorId.size();
+            // Preservar reproduções contadas antes do registro (ex.: estados antigos)
+            contagens.definir(id, musica.getContagemReproducoes());
+            musicasPorId.add(musica);
+            musica.ligarCatalogo(this, id);
+        } else {
+            // Identificador já atribuído (estado carregado ou evento do diário reaplicado)
+            int id = musica.getId();
+            while (musicasPorId.size() <= id) {
+                musicasPorId.add(null);
+            }
+            musicasPorId.set(id, musica);
+        }
+        int contagem = contagens.getValor(musica.getId());
+        ativar(musica);
+        definirContagem(classificacao, musica.getId(), contagem);
+        classificarPorGenero(musica, contagem);
+        musicasPorGenero.computeIfAbsent(chaveGenero(musica.getGenero()), g -> new LinkedHashSet<>())
+            .add(musica);
+        indexarTexto(musica, album);
+    }
+
+    /**
+     * Indexa para a completação (e guarda para a pesquisa) as músicas de álbuns já registrados
+     * (ex.: depois de carregar um estado com serialização Java, em que os índices não são gravados)
+     * @param albuns Álbuns do sistema
+     */
+    synchronized void indexarAlbuns(Collection<Album> albuns) {
+        for (Album album : albuns) {
+            completacao.registrarAlbum(album);
+            for (Musica musica : album.getMusicas().values()) {
+                if (musica.pertenceA(this)) {
+                    indexarTexto(musica, album);
+                }
+            }
+        }
+    }
+
+    /**
+     * Indexa o nome de uma música na completação e guarda o seu álbum para a pesquisa; o texto
+     * só é indexado já se a pesquisa tiver sido usada (sem efeito se já estiver indexada)
+     */
+    private void indexarTexto(Musica musica, Album album) {
+        int id = musica.getId();
+        while (albumPorId.size() <= id) {
+            albumPorId.add(null);
+        }
+        if (album != null) {
+            albumPorId.set(id, album);
+        }
+        if (indicePesquisa != null) {
+            indicePesquisa.indexar(musica, album != null ? album.getNome() : null);
+        }
+        completacao.indexar(musica, album, contagens.getValor(id));
+    }
+
+    /**
+     * Indexa para pesquisa o texto de todas as músicas ativas, na primeira pesquisa
+     */
+    private IndicePesquisa getIndicePesquisa() {
+        if (indicePesquisa == null) {
+            IndicePesquisa indice = new IndicePesquisa();
+            for (int id = 0; id < musicasPorId.size(); id++) {
+                Musica musica = musicasPorId.get(id);
+                if (musica != null) {
+                    Album album = id < albumPorId.size() ? albumPorId.get(id) : null;
+                    indice.indexar(musica, album != null ? album.getNome() : null);
+                }
+            }
+            indicePesquisa = indice;
+        }
+        return indicePesquisa;
+    }
+
+    /**
+     * Pesquisa músicas pelo nome, intérprete, álbum, letra e conteúdo musical, ignorando
+     * acentos e maiúsculas. Músicas com todas as palavras aparecem primeiro, por relevância (BM25);
+     * se nenhuma as tiver todas, retorna as que têm alguma. A primeira pesquisa indexa o texto
+     * de todas as músicas; as registradas depois são indexadas ao serem adicionadas
+     * @param consulta Palavras a procurar
+     * @param k Número máximo de resultados
+     * @return Músicas por relevância decrescente
+     */
+    public synchronized List<Musica> pesquisar(String consulta, int k) {
+        int[] ids = getIndicePesquisa().pesquisar(consulta, k);
+        List<Musica> resultado = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Musica musica = musicasPorId.get(id);
+            if (musica != null) {
+                resultado.add(musica);
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Sugere músicas cujo nome começa pelo prefixo (sem acentos nem maiúsculas), das mais reproduzidas
+     * para as menos, em tempo proporcional ao prefixo e ao limite
+     * @param prefixo Início do nome
+     * @param limite Número máximo de sugestões (até {@value CompletacaoCatalogo#MAXIMO_SUGESTOES})
+     * @return Músicas sugeridas
+     */
+    public synchronized List<Musica> completarMusicas(String prefixo, int limite) {
+        atualizarClassificacoes();
+        return completacao.completarMusicas(prefixo, limite, contagens);
+    }
+
+    /**
+     * Sugere álbuns cujo nome começa pelo prefixo, dos que têm mais reproduções somadas para os que têm menos
+     * @param prefixo Início do nome
+     * @param limite Número máximo de sugestões (até {@value CompletacaoCatalogo#MAXIMO_SUGESTOES})
+     * @return Álbuns sugeridos
+     */
+    public synchronized List<Album> completarAlbuns(String prefixo, int limite) {
+        atualizarClassificacoes();
+        return completacao.completarAlbuns(prefixo, limite, contagens);
+    }
+
+    /**
+     * Sugere intérpretes cujo nome começa pelo prefixo, dos que têm mais reproduções somadas para os que têm menos
+     * @param prefixo Início do nome
+     * @param limite Número máximo de sugestões (até {@value CompletacaoCatalogo#MAXIMO_SUGESTOES})
+     * @return Nomes dos intérpretes sugeridos
+     */
+    public synchronized List<String> completarInterpretes(String prefixo, int limite) {
+        atualizarClassificacoes();
+        return completacao.completarInterpretes(prefixo, limite, contagens);
+    }
+
+    /**
+     * Remove uma música dos índices do catálogo
+     * @param musica Música a ser removida
+     */
+    public synchronized void removerMusica(Musica musica) {
+        // O identificador e a contagem mantêm-se para referências existentes (ex.: playlists)
+        if (musica.pertenceA(this)) {
+            musicasPorId.set(musica.getId(), null);
+            classificacao.remover(musica.getId());
+            desativar(musica);
+            if (indicePesquisa != null) {
+                indicePesquisa.remover(musica.getId());
+            }
+            if (musica.getId() < albumPorId.size()) {
+                albumPorId.set(musica.getId(), null);
+            }
+            completacao.remover(musica);
+        }
+        String chave = chaveGenero(musica.getGenero());
+        removerClassificacao(classificacaoPorGenero, chave, musica.getId());
+        removerClassificacao(classificacaoExplicitasPorGenero, chave, musica.getId());
+        Set<Musica> musicas = musicasPorGenero.get(chave);
+        if (musicas != null) {
+            musicas.remove(musica);
+            if (musicas.isEmpty()) {
+                musicasPorGenero.remove(chave);
+            }
+        }
+    }
+
+    /**
+     * Retorna as músicas de um gênero, sem distinguir maiúsculas de minúsculas
+     * @param genero Gênero musical
+     * @return Vista só de leitura das músicas do gênero (vazia se não existir); não deve ser
+     *         percorrida enquanto outra thread registra músicas, ver {@link #listarMusicasPorGenero}
+     */
+    public Set<Musica> getMusicasPorGenero(String genero) {
+        Set<Musica> musicas = musicasPorGenero.get(chaveGenero(genero));
+        return musicas != null ? Collections.unmodifiableSet(musicas) : Collections.emptySet();
+    }
+
+    /**
+     * Retorna uma cópia das músicas de um gênero, segura com registros em simultâneo
+     * @param genero Gênero musical
+     * @return Lista com as músicas do gênero
+     */
+    public synchronized List<Musica> listarMusicasPorGenero(String genero) {
+        return new ArrayList<>(getMusicasPorGenero(genero));
+    }
+
+    /**
+     * Registra uma reprodução da música com o identificador dado, sem bloqueios nem alocações
+     * @param id Identificador da música
+     */
+    public void incrementarContagem(int id) {
+        incrementarContagem(id, 1);
+    }
+
+    /**
+     * Soma várias reproduções à contagem de uma música. As classificações são atualizadas
+     * na consulta seguinte, uma vez por música alterada
+     * @param id Identificador da música
+     * @param vezes Número de reproduções a somar
+     */
+    public void incrementarContagem(int id, int vezes) {
+        contagens.incrementar(id, vezes);
+    }
+
+    /**
+     * Retorna o número de reproduções de uma música
+     * @param id Identificador da música
+     * @return Número de reproduções
+     */
+    public int getContagemReproducoes(int id) {
+        return contagens.getValor(id);
+    }
+
+    /**
+     * Reflete nas classificações e na completação as contagens alteradas desde a última consulta
+     */
+    private void atualizarClassificacoes() {
+        contagens.paraCadaAlterado(this::aplicarContagem);
+    }
+
+    private void aplicarContagem(int id, int contagem) {
+        Musica musica = id < musicasPorId.size() ? musicasPorId.get(id) : null;
+        if (musica != null) {
+            definirContagem(classificacao, id, contagem);
+            classificarPorGenero(musica, contagem);
+            completacao.marcarReproducao(id);
+        }
+    }
+
+    /**
+     * Retorna a música canônica com o identificador dado
+     * @param id Identificador da música
+     * @return A música ou null se não existir ou tiver sido removida
+     */
+    public synchronized Musica getMusica(int id) {
+        return id >= 0 && id < musicasPorId.size() ? musicasPorId.get(id) : null;
+    }
+
+    /**
+     * Prepara um catálogo vazio para receber músicas com identificadores já atribuídos,
+     * como ao carregar o estado do sistema
+     * @param contagens Contagem de reproduções por identificador
+     */
+    synchronized void prepararRestauro(int[] contagens) {
+        musicasPorId = new ArrayList<>(Collections.nCopies(contagens.length, null));
+        this.contagens = new ContadoresReproducoes(ContadoresReproducoes.FAIXAS_POR_PROCESSADOR);
+        for (int id = 0; id < contagens.length; id++) {
+            this.contagens.definir(id, contagens[id]);
+        }
+        reiniciarAtivas(Math.max(16, contagens.length));
+    }
+
+    /**
+     * Sorteia músicas distintas do catálogo pelo algoritmo de Floyd, em tempo O(k²) (k é
+     * pequeno), sem percorrer nem copiar o catálogo. Não bloqueia: lê a última versão
+     * publicada das músicas ativas, pelo que vários sorteios correm em simultâneo entre si
+     * e com as pesquisas e estatísticas
+     * @param k Número de músicas pretendido
+     * @param random Gerador pseudoaleatório a usar (ex.: ThreadLocalRandom.current())
+     * @return Lista com min(k, músicas ativas) músicas distintas, por ordem aleatória
+     */
+    public List<Musica> sortearMusicas(int k, Random random) {
+        Ativas atuais = ativas;
+        int n = atuais.numero;
+        k = Math.min(k, n);
+        List<Musica> resultado = new ArrayList<>(k);
+        int[] escolhidas = new int[k]; // Posições já sorteadas, procuradas por ordem
+        for (int j = n - k, i = 0; j < n; j++, i++) {
+            int posicao = random.nextInt(j + 1);
+            for (int anterior = 0; anterior < i; anterior++) {
+                if (escolhidas[anterior] == posicao) {
+                    posicao = j; // j ainda não pode ter sido escolhida
+                    break;
+                }
+            }
+            escolhidas[i] = posicao;
+            resultado.add(atuais.musicas[posicao]);
+        }
+        // O algoritmo de Floyd escolhe um conjunto uniforme, mas não uma ordem uniforme
+        Collections.shuffle(resultado, random);
+        return resultado;
+    }
+
+    /**
+     * Retorna as músicas mais reproduzidas do catálogo
+     * @param k Número máximo de músicas
+     * @return Lista com até K músicas por ordem decrescente de reproduções
+     */
+    public synchronized List<Musica> getMusicasMaisReproduzidas(int k) {
+        atualizarClassificacoes();
+        List<Musica> resultado = new ArrayList<>();
+        for (Integer id : classificacao.getTop(k)) {
+            resultado.add(musicasPorId.get(id));
+        }
+        return resultado;
+    }
+
+    /**
+     * Retorna as músicas mais reproduzidas de um gênero, sem percorrer nem ordenar o gênero
+     * @param genero Gênero musical (sem distinguir maiúsculas de minúsculas)
+     * @param k Número máximo de músicas
+     * @param apenasExplicitas true para considerar só músicas explícitas
+     * @return Lista com até K músicas por ordem decrescente de reproduções
+     */
+    public synchronized List<Musica> getMusicasMaisReproduzidasPorGenero(String genero, int k, boolean apenasExplicitas) {
+        atualizarClassificacoes();
+        Classificacao<Integer> porGenero = (apenasExplicitas ? classificacaoExplicitasPorGenero : classificacaoPorGenero)
+            .get(chaveGenero(genero));
+        List<Musica> resultado = new ArrayList<>();
+        if (porGenero != null) {
+            for (Integer id : porGenero.getTop(k)) {
+                resultado.add(musicasPorId.get(id));
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Retorna um instantâneo das músicas mais reproduzidas de todos os gêneros, tirado de uma
+     * só vez para ser consultado sem bloqueios (ex.: por várias threads)
+     * @param k Número máximo de músicas por gênero
+     * @return Mapa só de leitura gênero (chave normalizada, ver {@link #chaveGenero}) -> músicas
+     */
+    public synchronized Map<String, List<Musica>> getMusicasMaisReproduzidasPorGenero(int k) {
+        Map<String, List<Musica>> instantaneo = new HashMap<>();
+        for (String chave : classificacaoPorGenero.keySet()) {
+            instantaneo.put(chave, Collections.unmodifiableList(getMusicasMaisReproduzidasPorGenero(chave, k, false)));
+        }
+        return Collections.unmodifiableMap(instantaneo);
+    }
+
+    /**
+     * Retorna a tabela dos códigos de gênero e intérprete das músicas deste catálogo
+     * @return Tabela de símbolos do catálogo
+     */
+    TabelaSimbolos getSimbolos() {
+        return simbolos;
+    }
+
+    /**
+     * Retorna o número de identificadores já atribuídos
+     * @return Quantidade de identificadores (inclui músicas removidas)
+     */
+    public synchronized int getNumeroIds() {
+        return musicasPorId.size();
+    }
+
+    /**
+     * Retorna o id de cada música do catálogo pela sua chave ("nome-intérprete"), para ligar
+     * aos ids as contagens dos estados antigos, gravadas pela chave
+     * @return Mapa chave -> id (com chaves repetidas, fica a música de menor id)
+     */
+    synchronized Map<String, Integer> getIdsPorChave() {
+        Map<String, Integer> ids = new HashMap<>();
+        for (Musica musica : musicasPorId) {
+            if (musica != null) {
+                ids.putIfAbsent(musica.getChave(), musica.getId());
+            }
+        }
+        return ids;
+    }
+
+    private void classificarPorGenero(Musica musica, int contagem) {
+        definirContagem(classificacaoDoGenero(classificacaoPorGenero, classificacaoPorCodigoGenero, musica),
+                        musica.getId(), contagem);
+        if (musica instanceof MusicaExplicita) {
+            definirContagem(classificacaoDoGenero(classificacaoExplicitasPorGenero,
+                                                  classificacaoExplicitasPorCodigoGenero, musica),
+                            musica.getId(), contagem);
+        }
+    }
+
+    /**
+     * Retorna a classificação do gênero da música, criando-a se preciso
+     */
+    private static Classificacao<Integer> classificacaoDoGenero(Map<String, Classificacao<Integer>> porGenero,
+                                                                List<Classificacao<Integer>> porCodigo, Musica musica) {
+        int codigo = musica.getCodigoGenero();
+        Classificacao<Integer> classificacaoGenero = codigo >= 0 && codigo < porCodigo.size() ? porCodigo.get(codigo) : null;
+        if (classificacaoGenero == null) {
+            // Gêneros com nomes que só diferem em maiúsculas partilham a mesma classificação
+            classificacaoGenero = porGenero.computeIfAbsent(chaveGenero(musica.getGenero()), g -> new Classificacao<>());
+            if (codigo >= 0) {
+                while (porCodigo.size() <= codigo) {
+                    porCodigo.add(null);
+                }
+                porCodigo.set(codigo, classificacaoGenero);
+            }
+        }
+        return classificacaoGenero;
+    }
+
+    /**
+     * Define a contagem de uma música pelo seu id, sem criar um Integer depois da primeira vez
+     */
+    private static void definirContagem(Classificacao<Integer> classificacao, int id, int contagem) {
+        if (!classificacao.definirPorIndice(id, contagem)) {
+            classificacao.definir(id, id, contagem);
+        }
+    }
+
+    private static void removerClassificacao(Map<String, Classificacao<Integer>> porGenero, String chave, int id) {
+        // Classificações vazias ficam no mapa: podem estar em cache pelo código do gênero
+        Classificacao<Integer> classificacaoGenero = porGenero.get(chave);
+        if (classificacaoGenero != null) {
+            classificacaoGenero.remover(id);
+        }
+    }
+
+    private void reiniciarAtivas(int capacidade) {
+        ativas = new Ativas(new Musica[capacidade], 0);
+        posicaoAtiva = new int[capacidade];
+        Arrays.fill(posicaoAtiva, -1);
+    }
+
+    /**
+     * Acrescenta uma música às ativas (só com o monitor do catálogo, como as outras alterações)
+     */
+    private void ativar(Musica musica) {
+        int id = musica.getId();
+        if (id >= posicaoAtiva.length) {
+            int capacidade = Math.max(id + 1, posicaoAtiva.length * 2);
+            int anterior = posicaoAtiva.length;
+            posicaoAtiva = Arrays.copyOf(posicaoAtiva, capacidade);
+            Arrays.fill(posicaoAtiva, anterior, capacidade, -1);
+        }
+        Ativas atuais = ativas;
+        Musica[] musicas = atuais.musicas;
+        int posicao = posicaoAtiva[id];
+        if (posicao >= 0) {
+            if (musicas[posicao] != musica) {
+                // Outra instância com o mesmo id (evento do diário reaplicado): não mexer no publicado
+                musicas = musicas.clone();
+                musicas[posicao] = musica;
+                ativas = new Ativas(musicas, atuais.numero);
+            }
+            return;
+        }
+        if (atuais.numero == musicas.length) {
+            musicas = Arrays.copyOf(musicas, Math.max(16, atuais.numero * 2));
+        }
+        musicas[atuais.numero] = musica;
+        posicaoAtiva[id] = atuais.numero;
+        ativas = new Ativas(musicas, atuais.numero + 1);
+    }
+
+    /**
+     * Retira uma música das ativas numa cópia do array, que um sorteio pode estar a ler
+     */
+    private void desativar(Musica musica) {
+        int id = musica.getId();
+        int posicao = id < posicaoAtiva.length ? posicaoAtiva[id] : -1;
+        if (posicao < 0) {
+            return;
+        }
+        Ativas atuais = ativas;
+        Musica[] musicas = atuais.musicas.clone();
+        // A última música ativa ocupa o lugar da removida
+        Musica ultima = musicas[atuais.numero - 1];
+        musicas[posicao] = ultima;
+        musicas[atuais.numero - 1] = null;
+        posicaoAtiva[ultima.getId()] = posicao;
+        posicaoAtiva[id] = -1;
+        ativas = new Ativas(musicas, atuais.numero - 1);
+    }
+
+    /**
+     * Os índices transientes só podem ser reconstruídos depois de lido todo o grafo:
+     * as músicas referenciam o catálogo e ainda estão incompletas quando ele é lido
+     */
+    private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+        ois.defaultReadObject();
+        simbolos = new TabelaSimbolos(); // As músicas lêem dela os códigos no primeiro uso
+        contagens = new ContadoresReproducoes(ContadoresReproducoes.FAIXAS_POR_PROCESSADOR);
+        for (int id = 0; id < contagemReproducoes.length; id++) {
+            contagens.definir(id, contagemReproducoes[id]);
+        }
+        contagemReproducoes = null;
+        classificacaoPorGenero = new HashMap<>();
+        classificacaoExplicitasPorGenero = new HashMap<>();
+        classificacaoPorCodigoGenero = new ArrayList<>();
+        classificacaoExplicitasPorCodigoGenero = new ArrayList<>();
+        albumPorId = new ArrayList<>();
+        completacao = new CompletacaoCatalogo();
+        reiniciarAtivas(Math.max(16, musicasPorId.size()));
+        ois.registerValidation(this::reconstruirIndices, 0);
+    }
+
+    private synchronized void reconstruirIndices() {
+        for (int id = 0; id < musicasPorId.size(); id++) {
+            Musica musica = musicasPorId.get(id);
+            if (musica != null) {
+                ativar(musica);
+                classificarPorGenero(musica, contagens.getValor(id));
+            }
+        }
+    }
+
+    private synchronized void writeObject(ObjectOutputStream oos) throws IOException {
+        atualizarClassificacoes();
+        contagemReproducoes = new int[musicasPorId.size()];
+        for (int id = 0; id < contagemReproducoes.length; id++) {
+            contagemReproducoes[id] = contagens.getValor(id);
+        }
+        try {
+            oos.defaultWriteObject();
+        } finally {
+            contagemReproducoes = null;
+        }
+    }
+
+    /**
+     * Normaliza o nome de um gênero, que não distingue maiúsculas de minúsculas
+     * @param genero Gênero musical
+     * @return Chave usada nos índices por gênero
+     */
+    static String chaveGenero(String genero) {
+        return genero.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,213 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Catálogo das playlists públicas, sem repetições, indexado por nome, por dono e por
+ * popularidade (quantos outros utilizadores guardaram uma cópia). As listagens são paginadas
+ * por cursor: cada página custa O(log n + tamanho da página), independentemente do total.
+ * Os nomes e donos são indexados quando a playlist é publicada.
+ */
+public class CatalogoPlaylists {
+    /**
+     * Uma página de uma listagem
+     */
+    public static class Pagina {
+        private final List<Playlist> playlists;
+        private final String cursor;
+
+        Pagina(List<Playlist> playlists, String cursor) {
+            this.playlists = playlists;
+            this.cursor = cursor;
+        }
+
+        /**
+         * Retorna as playlists da página, pela ordem da listagem
+         * @return Vista só de leitura das playlists
+         */
+        public List<Playlist> getPlaylists() {
+            return Collections.unmodifiableList(playlists);
+        }
+
+        /**
+         * Retorna o cursor a passar para obter a página seguinte
+         * @return Cursor ou null se esta for a última página
+         */
+        public String getCursor() {
+            return cursor;
+        }
+    }
+
+    private static class Entrada {
+        final Playlist playlist;
+        final String id; // Ordem de publicação, em hexadecimal
+        String chavePopularidade;
+        int guardadas;
+
+        Entrada(Playlist playlist, String id) {
+            this.playlist = playlist;
+            this.id = id;
+            this.chavePopularidade = hexadecimal(Integer.MAX_VALUE) + id;
+        }
+    }
+
+    private final List<Playlist> publicas; // Por ordem de publicação (a lista gravada com o sistema)
+    private final Map<Playlist, Entrada> entradas; // Playlist publicada -> entrada (por identidade)
+    private final Map<String, Entrada> porOrigem; // Dono + nome exato -> entrada, para contar cópias guardadas
+    // Chaves ordenáveis terminadas pelo id de publicação, que desempata e torna cada chave única
+    private final NavigableMap<String, Entrada> porNome; // Nome normalizado + id
+    private final NavigableMap<String, Entrada> porDono; // Email do dono + id
+    private final NavigableMap<String, Entrada> porPopularidade; // (MAX - guardadas) + id
+
+    /**
+     * Cria o catálogo sobre a lista de playlists públicas do sistema, indexando as que já
+     * lá estiverem (as repetidas são retiradas)
+     * @param publicas Lista gravada com o sistema, que o catálogo passa a manter
+     */
+    public CatalogoPlaylists(List<Playlist> publicas) {
+        this.publicas = publicas;
+        this.entradas = new IdentityHashMap<>();
+        this.porOrigem = new HashMap<>();
+        this.porNome = new TreeMap<>();
+        this.porDono = new TreeMap<>();
+        this.porPopularidade = new TreeMap<>();
+        List<Playlist> existentes = new ArrayList<>(publicas);
+        publicas.clear();
+        for (Playlist playlist : existentes) {
+            adicionar(playlist);
+        }
+    }
+
+    /**
+     * Publica uma playlist
+     * @param playlist Playlist pública
+     * @return true se foi adicionada, false se não é pública ou já estava no catálogo
+     */
+    public synchronized boolean adicionar(Playlist playlist) {
+        if (!playlist.isPublica() || entradas.containsKey(playlist)) {
+            return false;
+        }
+        playlist.tornarSoLeitura();
+        Entrada entrada = new Entrada(playlist, hexadecimal(publicas.size()));
+        publicas.add(playlist);
+        entradas.put(playlist, entrada);
+        String dono = playlist.getDono();
+        if (dono != null) {
+            porOrigem.putIfAbsent(chaveOrigem(dono, playlist.getNome()), entrada);
+            porDono.put(dono + '\0' + entrada.id, entrada);
+        }
+        porNome.put(IndiceCompletacao.normalizar(playlist.getNome()) + '\0' + entrada.id, entrada);
+        porPopularidade.put(entrada.chavePopularidade, entrada);
+        return true;
+    }
+
+    /**
+     * Conta (ou desconta) uma cópia guardada por um utilizador na playlist publicada de onde veio.
+     * Cópias do próprio dono e de playlists que não estão no catálogo não contam
+     * @param copia Cópia guardada na biblioteca (null não conta)
+     * @param email Email de quem a guardou
+     * @param delta +1 ao guardar, -1 ao substituir
+     */
+    public synchronized void contarCopia(Playlist copia, String email, int delta) {
+        if (copia == null || copia.getDono() == null || copia.getDono().equals(email)) {
+            return;
+        }
+        Entrada entrada = porOrigem.get(chaveOrigem(copia.getDono(), copia.getNome()));
+        if (entrada == null) {
+            return;
+        }
+        porPopularidade.remove(entrada.chavePopularidade);
+        entrada.guardadas = Math.max(0, entrada.guardadas + delta);
+        entrada.chavePopularidade = hexadecimal(Integer.MAX_VALUE - entrada.guardadas) + entrada.id;
+        porPopularidade.put(entrada.chavePopularidade, entrada);
+    }
+
+    /**
+     * Lista as playlists das mais para as menos guardadas (em empate, pela ordem de publicação)
+     * @param cursor null para a primeira página, ou o cursor da página anterior
+     * @param tamanho Número máximo de playlists por página
+     * @return Página pedida
+     */
+    public synchronized Pagina listarPorPopularidade(String cursor, int tamanho) {
+        return paginar(porPopularidade, cursor, tamanho);
+    }
+
+    /**
+     * Lista por ordem alfabética as playlists cujo nome começa pelo prefixo,
+     * ignorando acentos e maiúsculas
+     * @param prefixo Início do nome (vazio para todas)
+     * @param cursor null para a primeira página, ou o cursor da página anterior
+     * @param tamanho Número máximo de playlists por página
+     * @return Página pedida
+     */
+    public synchronized Pagina listarPorNome(String prefixo, String cursor, int tamanho) {
+        String inicio = IndiceCompletacao.normalizar(prefixo);
+        NavigableMap<String, Entrada> intervalo = inicio.isEmpty() ? porNome
+            : porNome.subMap(inicio, true, inicio + Character.MAX_VALUE, false);
+        return paginar(intervalo, cursor, tamanho);
+    }
+
+    /**
+     * Lista as playlists publicadas por um utilizador, pela ordem de publicação
+     * @param email Email do dono
+     * @param cursor null para a primeira página, ou o cursor da página anterior
+     * @param tamanho Número máximo de playlists por página
+     * @return Página pedida
+     */
+    public synchronized Pagina listarPorDono(String email, String cursor, int tamanho) {
+        return paginar(porDono.subMap(email + '\0', true, email + '\1', false), cursor, tamanho);
+    }
+
+    /**
+     * Retorna quantos outros utilizadores guardaram uma playlist publicada
+     * @param playlist Playlist do catálogo
+     * @return Número de cópias guardadas (0 se não estiver no catálogo)
+     */
+    public synchronized int getGuardadas(Playlist playlist) {
+        Entrada entrada = entradas.get(playlist);
+        return entrada != null ? entrada.guardadas : 0;
+    }
+
+    /**
+     * Retorna uma cópia da lista de playlists públicas, por ordem de publicação
+     * @return Lista com todas as playlists públicas
+     */
+    public synchronized List<Playlist> listar() {
+        return new ArrayList<>(publicas);
+    }
+
+    public synchronized int getTamanho() {
+        return publicas.size();
+    }
+
+    private static Pagina paginar(NavigableMap<String, Entrada> intervalo, String cursor, int tamanho) {
+        NavigableMap<String, Entrada> restantes = cursor != null ? intervalo.tailMap(cursor, false) : intervalo;
+        List<Playlist> playlists = new ArrayList<>(Math.min(tamanho, 64));
+        String ultima = null;
+        Iterator<Map.Entry<String, Entrada>> it = restantes.entrySet().iterator();
+        while (playlists.size() < tamanho && it.hasNext()) {
+            Map.Entry<String, Entrada> entry = it.next();
+            playlists.add(entry.getValue().playlist);
+            ultima = entry.getKey();
+        }
+        return new Pagina(playlists, it.hasNext() ? ultima : null);
+    }
+
+    private static String chaveOrigem(String dono, String nome) {
+        return dono + '\0' + nome;
+    }
+
+    /**
+     * Hexadecimal com 8 dígitos, para a ordem das chaves seguir a dos números
+     */
+    private static String hexadecimal(int valor) {
+        String digitos = Integer.toHexString(valor);
+        return "00000000".substring(digitos.length()) + digitos;
+    }
+}
@@ -0,0 +1,294 @@
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Classificação incremental (heap máximo indexado) de chaves por valor.
+ * Atualizar um valor custa O(log n), consultar o primeiro custa O(1)
+ * e os K primeiros custam O(K log K), independentemente do número de chaves.
+ * Em caso de empate fica à frente a chave registrada primeiro.
+ * Cada classificação tem o seu próprio bloqueio, para poder ser atualizada por várias threads.
+ * @param <K> Tipo das chaves classificadas
+ */
+public class Classificacao<K> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private Map<K, Integer> posicoes; // Chave -> posição nas tabelas
+    private List<K> chaves; // Posição -> chave (null se removida)
+    private int[] valores; // Posição -> valor
+    private int[] heap; // Heap -> posição
+    private int[] indiceNoHeap; // Posição -> índice no heap (-1 se removida)
+    private int tamanho; // Número de elementos no heap
+    private transient int[] posicaoPorIndice; // Índice externo da chave -> posição + 1 (0 se desconhecido)
+
+    public Classificacao() {
+        this.posicoes = new HashMap<>();
+        this.chaves = new ArrayList<>();
+        this.valores = new int[16];
+        this.heap = new int[16];
+        this.indiceNoHeap = new int[16];
+        this.tamanho = 0;
+    }
+
+    /**
+     * Define o valor de uma chave, inserindo-a se ainda não existir
+     * @param chave Chave a atualizar
+     * @param valor Novo valor
+     */
+    public synchronized void definir(K chave, int valor) {
+        Integer posicao = posicoes.get(chave);
+        if (posicao == null) {
+            inserir(chave, valor);
+            return;
+        }
+        atualizar(posicao, valor);
+    }
+
+    /**
+     * Soma um valor ao valor atual de uma chave (0 se ainda não existir)
+     * @param chave Chave a atualizar
+     * @param delta Valor a somar
+     */
+    public synchronized void incrementar(K chave, int delta) {
+        definir(chave, getValor(chave) + delta);
+    }
+
+    /**
+     * Define o valor de uma chave que também tem um índice inteiro denso
+     * (ex.: o seu código na {@link TabelaSimbolos} ou o id no catálogo). Depois da
+     * primeira vez a chave é encontrada pelo índice, sem calcular hashes nem alocar.
+     * @param indice Índice da chave (não negativo), sempre o mesmo para a mesma chave
+     * @param chave Chave a atualizar
+     * @param valor Novo valor
+     */
+    public synchronized void definir(int indice, K chave, int valor) {
+        if (!definirPorIndice(indice, valor)) {
+            definir(chave, valor);
+            memorizarIndice(indice, chave);
+        }
+    }
+
+    /**
+     * Soma um valor ao valor de uma chave que também tem um índice inteiro denso,
+     * como em {@link #definir(int, Object, int)}
+     * @param indice Índice da chave (não negativo), sempre o mesmo para a mesma chave
+     * @param chave Chave a atualizar
+     * @param delta Valor a somar
+     */
+    public synchronized void incrementar(int indice, K chave, int delta) {
+        int posicao = posicaoDoIndice(indice);
+        if (posicao >= 0) {
+            atualizar(posicao, valores[posicao] + delta);
+        } else {
+            incrementar(chave, delta);
+            memorizarIndice(indice, chave);
+        }
+    }
+
+    /**
+     * Define o valor da chave associada a um índice, sem precisar da chave
+     * (evita, por exemplo, criar um Integer para a chave)
+     * @param indice Índice da chave
+     * @param valor Novo valor
+     * @return false se o índice ainda não tiver chave classificada; nesse caso
+     *         deve usar-se {@link #definir(int, Object, int)}
+     */
+    public synchronized boolean definirPorIndice(int indice, int valor) {
+        int posicao = posicaoDoIndice(indice);
+        if (posicao < 0) {
+            return false;
+        }
+        atualizar(posicao, valor);
+        return true;
+    }
+
+    /**
+     * Remove uma chave da classificação
+     * @param chave Chave a remover
+     */
+    public synchronized void remover(K chave) {
+        Integer posicao = posicoes.remove(chave);
+        if (posicao == null) {
+            return;
+        }
+        int i = indiceNoHeap[posicao];
+        tamanho--;
+        if (i != tamanho) {
+            trocar(i, tamanho);
+            subir(i);
+            descer(i);
+        }
+        indiceNoHeap[posicao] = -1;
+        chaves.set(posicao, null);
+    }
+
+    /**
+     * Retorna o valor de uma chave
+     * @param chave Chave a consultar
+     * @return Valor atual ou 0 se a chave não existir
+     */
+    public synchronized int getValor(K chave) {
+        Integer posicao = posicoes.get(chave);
+        return posicao != null ? valores[posicao] : 0;
+    }
+
+    /**
+     * Retorna a chave com maior valor
+     * @return A primeira chave ou null se a classificação estiver vazia
+     */
+    public synchronized K getPrimeiro() {
+        return tamanho > 0 ? chaves.get(heap[0]) : null;
+    }
+
+    /**
+     * Retorna o maior valor da classificação
+     * @return O valor da primeira chave ou 0 se estiver vazia
+     */
+    public synchronized int getValorPrimeiro() {
+        return tamanho > 0 ? valores[heap[0]] : 0;
+    }
+
+    /**
+     * Retorna as K chaves com maior valor, por ordem decrescente
+     * @param k Número máximo de chaves a retornar
+     * @return Lista com até K chaves
+     */
+    public synchronized List<K> getTop(int k) {
+        List<K> resultado = new ArrayList<>(Math.min(Math.max(k, 0), tamanho));
+        if (k <= 0 || tamanho == 0) {
+            return resultado;
+        }
+        // Percorrer o heap por ordem usando uma fila de candidatos (filhos dos já escolhidos)
+        PriorityQueue<Integer> candidatos = new PriorityQueue<>((a, b) -> comparar(heap[a], heap[b]));
+        candidatos.add(0);
+        while (resultado.size() < k && !candidatos.isEmpty()) {
+            int i = candidatos.poll();
+            resultado.add(chaves.get(heap[i]));
+            if (2 * i + 1 < tamanho) candidatos.add(2 * i + 1);
+            if (2 * i + 2 < tamanho) candidatos.add(2 * i + 2);
+        }
+        return resultado;
+    }
+
+    /**
+     * Retorna todas as chaves e respetivos valores
+     * @return Mapa chave -> valor
+     */
+    public synchronized Map<K, Integer> paraMapa() {
+        Map<K, Integer> mapa = new LinkedHashMap<>();
+        for (int i = 0; i < tamanho; i++) {
+            mapa.put(chaves.get(heap[i]), valores[heap[i]]);
+        }
+        return mapa;
+    }
+
+    /**
+     * Retorna o número de chaves classificadas
+     * @return Quantidade de chaves
+     */
+    public synchronized int getTamanho() {
+        return tamanho;
+    }
+
+    /**
+     * Retorna a posição da chave associada a um índice (-1 se não houver ou tiver sido removida)
+     */
+    private int posicaoDoIndice(int indice) {
+        if (indice < 0 || posicaoPorIndice == null || indice >= posicaoPorIndice.length) {
+            return -1;
+        }
+        int posicao = posicaoPorIndice[indice] - 1;
+        return posicao >= 0 && chaves.get(posicao) != null ? posicao : -1;
+    }
+
+    private void memorizarIndice(int indice, K chave) {
+        if (indice < 0) {
+            return;
+        }
+        if (posicaoPorIndice == null || indice >= posicaoPorIndice.length) {
+            int[] maior = new int[Math.max(indice + 1, posicaoPorIndice == null ? 16 : posicaoPorIndice.length * 2)];
+            if (posicaoPorIndice != null) {
+                System.arraycopy(posicaoPorIndice, 0, maior, 0, posicaoPorIndice.length);
+            }
+            posicaoPorIndice = maior;
+        }
+        posicaoPorIndice[indice] = posicoes.get(chave) + 1;
+    }
+
+    private void atualizar(int posicao, int valor) {
+        int anterior = valores[posicao];
+        valores[posicao] = valor;
+        if (valor > anterior) {
+            subir(indiceNoHeap[posicao]);
+        } else if (valor < anterior) {
+            descer(indiceNoHeap[posicao]);
+        }
+    }
+
+    private void inserir(K chave, int valor) {
+        int posicao = chaves.size();
+        if (posicao == valores.length) {
+            valores = Arrays.copyOf(valores, posicao * 2);
+            indiceNoHeap = Arrays.copyOf(indiceNoHeap, posicao * 2);
+        }
+        if (tamanho == heap.length) {
+            heap = Arrays.copyOf(heap, tamanho * 2);
+        }
+        chaves.add(chave);
+        posicoes.put(chave, posicao);
+        valores[posicao] = valor;
+        heap[tamanho] = posicao;
+        indiceNoHeap[posicao] = tamanho;
+        tamanho++;
+        subir(tamanho - 1);
+    }
+
+    /**
+     * Compara duas posições: maior valor primeiro, e em empate a mais antiga
+     */
+    private int comparar(int posicaoA, int posicaoB) {
+        if (valores[posicaoA] != valores[posicaoB]) {
+            return valores[posicaoA] > valores[posicaoB] ? -1 : 1;
+        }
+        return Integer.compare(posicaoA, posicaoB);
+    }
+
+    private void subir(int i) {
+        while (i > 0) {
+            int pai = (i - 1) / 2;
+            if (comparar(heap[i], heap[pai]) >= 0) {
+                break;
+            }
+            trocar(i, pai);
+            i = pai;
+        }
+    }
+
+    private void descer(int i) {
+        while (true) {
+            int maior = i;
+            int esquerdo = 2 * i + 1;
+            int direito = esquerdo + 1;
+            if (esquerdo < tamanho && comparar(heap[esquerdo], heap[maior]) < 0) maior = esquerdo;
+            if (direito < tamanho && comparar(heap[direito], heap[maior]) < 0) maior = direito;
+            if (maior == i) {
+                break;
+            }
+            trocar(i, maior);
+            i = maior;
+        }
+    }
+
+    private void trocar(int i, int j) {
+        int posicaoI = heap[i];
+        heap[i] = heap[j];
+        heap[j] = posicaoI;
+        indiceNoHeap[heap[i]] = i;
+        indiceNoHeap[heap[j]] = j;
+    }
+}
@@ -0,0 +1,208 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Completação por prefixo dos nomes de músicas, álbuns e intérpretes do catálogo,
+ * ordenada por reproduções: as de cada música, e a soma das das suas músicas para
+ * álbuns e intérpretes. As reproduções só são marcadas no momento (um bit por música)
+ * e refletidas nas sugestões na pesquisa seguinte, para não pesarem em cada reprodução.
+ * Não é thread-safe: o catálogo sincroniza os acessos.
+ */
+public class CompletacaoCatalogo {
+    public static final int MAXIMO_SUGESTOES = 20;
+
+    private final IndiceCompletacao<Musica> musicas;
+    private final IndiceCompletacao<Album> albuns;
+    private final IndiceCompletacao<String> interpretes;
+    private final Map<Album, Integer> entradaAlbum; // Álbum -> entrada em albuns
+    private int[] entradaMusica; // Id da música -> entrada em musicas (-1 se não indexada)
+    private int[] entradaAlbumDaMusica; // Id da música -> entrada do seu álbum (-1 se nenhum)
+    private int[] entradaInterpreteDaMusica; // Id da música -> entrada do seu intérprete (-1 se nenhum)
+    private int[] entradaInterprete; // Código do intérprete -> entrada em interpretes (-1 se nenhuma)
+    private final ContadorInteiros musicasPorInterprete; // Código do intérprete -> músicas indexadas
+    private final BitSet alteradas; // Ids de músicas com reproduções ainda por refletir
+
+    public CompletacaoCatalogo() {
+        this.musicas = new IndiceCompletacao<>(MAXIMO_SUGESTOES);
+        this.albuns = new IndiceCompletacao<>(MAXIMO_SUGESTOES);
+        this.interpretes = new IndiceCompletacao<>(MAXIMO_SUGESTOES);
+        this.entradaAlbum = new IdentityHashMap<>();
+        this.entradaMusica = novaTabela(16);
+        this.entradaAlbumDaMusica = novaTabela(16);
+        this.entradaInterpreteDaMusica = novaTabela(16);
+        this.entradaInterprete = novaTabela(16);
+        this.musicasPorInterprete = new ContadorInteiros();
+        this.alteradas = new BitSet();
+    }
+
+    /**
+     * Adiciona um álbum às sugestões, se ainda não estiver
+     * @param album Álbum do catálogo
+     * @return Entrada do álbum
+     */
+    public int registrarAlbum(Album album) {
+        Integer entrada = entradaAlbum.get(album);
+        if (entrada == null) {
+            entrada = albuns.adicionar(album.getNome(), album, 0);
+            entradaAlbum.put(album, entrada);
+        }
+        return entrada;
+    }
+
+    /**
+     * Adiciona uma música às sugestões, somando as suas reproduções às do álbum e do intérprete
+     * @param musica Música já registrada no catálogo (com id)
+     * @param album Álbum da música (null se não tiver)
+     * @param reproducoes Reproduções atuais da música
+     */
+    public void indexar(Musica musica, Album album, int reproducoes) {
+        int id = musica.getId();
+        if (id < 0 || (id < entradaMusica.length && entradaMusica[id] >= 0)) {
+            return;
+        }
+        if (id >= entradaMusica.length) {
+            int capacidade = Math.max(id + 1, entradaMusica.length * 2);
+            entradaMusica = crescer(entradaMusica, capacidade);
+            entradaAlbumDaMusica = crescer(entradaAlbumDaMusica, capacidade);
+            entradaInterpreteDaMusica = crescer(entradaInterpreteDaMusica, capacidade);
+        }
+        entradaMusica[id] = musicas.adicionar(musica.getNome(), musica, reproducoes);
+        if (album != null) {
+            int entrada = registrarAlbum(album);
+            entradaAlbumDaMusica[id] = entrada;
+            somar(albuns, entrada, reproducoes);
+        }
+        int codigo = musica.getCodigoInterprete();
+        if (codigo >= 0) {
+            if (codigo >= entradaInterprete.length) {
+                entradaInterprete = crescer(entradaInterprete, Math.max(codigo + 1, entradaInterprete.length * 2));
+            }
+            if (musicasPorInterprete.incrementar(codigo, 1) == 1) {
+                entradaInterprete[codigo] = interpretes.adicionar(musica.getInterprete(), musica.getInterprete(), 0);
+            }
+            entradaInterpreteDaMusica[id] = entradaInterprete[codigo];
+            somar(interpretes, entradaInterprete[codigo], reproducoes);
+        }
+    }
+
+    /**
+     * Retira uma música das sugestões, descontando as suas reproduções do álbum e do intérprete
+     * @param musica Música a retirar
+     */
+    public void remover(Musica musica) {
+        int id = musica.getId();
+        if (id < 0 || id >= entradaMusica.length || entradaMusica[id] < 0) {
+            return;
+        }
+        int entrada = entradaMusica[id];
+        long reproducoes = musicas.getPopularidade(entrada);
+        musicas.remover(entrada);
+        entradaMusica[id] = -1;
+        alteradas.clear(id);
+        if (entradaAlbumDaMusica[id] >= 0) {
+            somar(albuns, entradaAlbumDaMusica[id], -reproducoes);
+            entradaAlbumDaMusica[id] = -1;
+        }
+        if (entradaInterpreteDaMusica[id] >= 0) {
+            int codigo = musica.getCodigoInterprete();
+            if (musicasPorInterprete.incrementar(codigo, -1) == 0) {
+                interpretes.remover(entradaInterprete[codigo]);
+                entradaInterprete[codigo] = -1;
+            } else {
+                somar(interpretes, entradaInterpreteDaMusica[id], -reproducoes);
+            }
+            entradaInterpreteDaMusica[id] = -1;
+        }
+    }
+
+    /**
+     * Marca que uma música teve reproduções, sem alocar
+     * @param id Id da música
+     */
+    public void marcarReproducao(int id) {
+        alteradas.set(id);
+    }
+
+    /**
+     * Retorna as músicas cujo nome começa pelo prefixo, das mais para as menos reproduzidas
+     * @param prefixo Início do nome
+     * @param limite Número máximo de sugestões (até {@value #MAXIMO_SUGESTOES})
+     * @param reproducoes Reproduções atuais de cada id de música
+     * @return Músicas sugeridas
+     */
+    public List<Musica> completarMusicas(String prefixo, int limite, ContadoresReproducoes reproducoes) {
+        aplicarReproducoes(reproducoes);
+        return musicas.completar(prefixo, limite);
+    }
+
+    /**
+     * Retorna os álbuns cujo nome começa pelo prefixo, dos mais para os menos reproduzidos
+     * @param prefixo Início do nome
+     * @param limite Número máximo de sugestões (até {@value #MAXIMO_SUGESTOES})
+     * @param reproducoes Reproduções atuais de cada id de música
+     * @return Álbuns sugeridos
+     */
+    public List<Album> completarAlbuns(String prefixo, int limite, ContadoresReproducoes reproducoes) {
+        aplicarReproducoes(reproducoes);
+        return albuns.completar(prefixo, limite);
+    }
+
+    /**
+     * Retorna os intérpretes cujo nome começa pelo prefixo, dos mais para os menos reproduzidos
+     * @param prefixo Início do nome
+     * @param limite Número máximo de sugestões (até {@value #MAXIMO_SUGESTOES})
+     * @param reproducoes Reproduções atuais de cada id de música
+     * @return Nomes dos intérpretes sugeridos
+     */
+    public List<String> completarInterpretes(String prefixo, int limite, ContadoresReproducoes reproducoes) {
+        aplicarReproducoes(reproducoes);
+        return interpretes.completar(prefixo, limite);
+    }
+
+    /**
+     * Reflete nas sugestões as reproduções marcadas desde a última pesquisa
+     */
+    private void aplicarReproducoes(ContadoresReproducoes reproducoes) {
+        for (int id = alteradas.nextSetBit(0); id >= 0; id = alteradas.nextSetBit(id + 1)) {
+            int entrada = id < entradaMusica.length ? entradaMusica[id] : -1;
+            if (entrada < 0) {
+                continue;
+            }
+            int contagem = reproducoes.getValor(id);
+            long diferenca = contagem - musicas.getPopularidade(entrada);
+            if (diferenca == 0) {
+                continue;
+            }
+            musicas.definirPopularidade(entrada, contagem);
+            if (entradaAlbumDaMusica[id] >= 0) {
+                somar(albuns, entradaAlbumDaMusica[id], diferenca);
+            }
+            if (entradaInterpreteDaMusica[id] >= 0) {
+                somar(interpretes, entradaInterpreteDaMusica[id], diferenca);
+            }
+        }
+        alteradas.clear();
+    }
+
+    private static <T> void somar(IndiceCompletacao<T> indice, int entrada, long diferenca) {
+        if (diferenca != 0) {
+            indice.definirPopularidade(entrada, indice.getPopularidade(entrada) + diferenca);
+        }
+    }
+
+    private static int[] novaTabela(int capacidade) {
+        int[] tabela = new int[capacidade];
+        Arrays.fill(tabela, -1);
+        return tabela;
+    }
+
+    private static int[] crescer(int[] tabela, int capacidade) {
+        int anterior = tabela.length;
+        int[] maior = Arrays.copyOf(tabela, capacidade);
+        Arrays.fill(maior, anterior, capacidade, -1);
+        return maior;
+    }
+}
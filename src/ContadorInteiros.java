@@ -0,0 +1,167 @@
+import java.util.Arrays;
+
+/**
+ * Contadores int -> int em endereçamento aberto (sondagem linear), sem objetos por entrada:
+ * duas tabelas de inteiros paralelas, alocadas apenas na primeira contagem.
+ * Cerca de 8 a 16 bytes por chave, em vez dos ~50 de um HashMap&lt;Integer, Integer&gt;.
+ * Não é thread-safe: quem o usa deve sincronizar os acessos.
+ */
+public class ContadorInteiros {
+    private static final int VAZIO = Integer.MIN_VALUE; // Marca de posição livre (não pode ser chave)
+    private static final int CAPACIDADE_INICIAL = 8;
+
+    /**
+     * Recebe cada chave com o seu valor
+     */
+    public interface Visitante {
+        void visitar(int chave, int valor);
+    }
+
+    private int[] chaves; // null enquanto não houver contagens
+    private int[] valores;
+    private int tamanho;
+
+    public ContadorInteiros() {
+    }
+
+    /**
+     * Cria um contador já com espaço para o número de chaves dado, sem crescer até lá
+     * @param chavesEsperadas Número de chaves previsto
+     */
+    public ContadorInteiros(int chavesEsperadas) {
+        if (chavesEsperadas > 0) {
+            int capacidade = CAPACIDADE_INICIAL;
+            while (chavesEsperadas * 4 > capacidade * 3) {
+                capacidade *= 2;
+            }
+            reservar(capacidade);
+        }
+    }
+
+    /**
+     * Cria uma cópia independente de outro contador
+     * @param outro Contador a copiar
+     */
+    public ContadorInteiros(ContadorInteiros outro) {
+        if (outro.chaves != null) {
+            this.chaves = outro.chaves.clone();
+            this.valores = outro.valores.clone();
+            this.tamanho = outro.tamanho;
+        }
+    }
+
+    /**
+     * Soma um valor ao contador de uma chave (0 se ainda não existir)
+     * @param chave Chave a atualizar (diferente de Integer.MIN_VALUE)
+     * @param delta Valor a somar
+     * @return O novo valor
+     */
+    public int incrementar(int chave, int delta) {
+        if (chave == VAZIO) {
+            throw new IllegalArgumentException("Chave inválida: " + chave);
+        }
+        if (chaves == null || (tamanho + 1) * 4 > chaves.length * 3) {
+            crescer();
+        }
+        int i = procurar(chave);
+        if (chaves[i] == VAZIO) {
+            chaves[i] = chave;
+            tamanho++;
+        }
+        return valores[i] += delta;
+    }
+
+    /**
+     * Retorna o valor de uma chave
+     * @param chave Chave a consultar
+     * @return Valor atual ou 0 se a chave não existir
+     */
+    public int getValor(int chave) {
+        if (chaves == null || chave == VAZIO) {
+            return 0;
+        }
+        int i = procurar(chave);
+        return chaves[i] == VAZIO ? 0 : valores[i];
+    }
+
+    /**
+     * Retorna o número de chaves com contador
+     * @return Quantidade de chaves
+     */
+    public int getTamanho() {
+        return tamanho;
+    }
+
+    /**
+     * Retorna uma cópia das chaves com contador, sem ordem definida
+     * @return Array com as chaves
+     */
+    public int[] getChaves() {
+        int[] resultado = new int[tamanho];
+        int n = 0;
+        if (chaves != null) {
+            for (int chave : chaves) {
+                if (chave != VAZIO) {
+                    resultado[n++] = chave;
+                }
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Percorre todas as chaves, sem ordem definida
+     * @param visitante Recebe cada chave e o seu valor
+     */
+    public void paraCada(Visitante visitante) {
+        if (chaves == null) {
+            return;
+        }
+        for (int i = 0; i < chaves.length; i++) {
+            if (chaves[i] != VAZIO) {
+                visitante.visitar(chaves[i], valores[i]);
+            }
+        }
+    }
+
+    /**
+     * Retorna a posição da chave ou a posição livre onde ela deve ficar
+     */
+    private int procurar(int chave) {
+        int mascara = chaves.length - 1;
+        int i = espalhar(chave) & mascara;
+        while (chaves[i] != VAZIO && chaves[i] != chave) {
+            i = (i + 1) & mascara;
+        }
+        return i;
+    }
+
+    private void crescer() {
+        reservar(chaves == null ? CAPACIDADE_INICIAL : chaves.length * 2);
+    }
+
+    private void reservar(int capacidade) {
+        int[] antigasChaves = chaves;
+        int[] antigosValores = valores;
+        chaves = new int[capacidade];
+        valores = new int[capacidade];
+        Arrays.fill(chaves, VAZIO);
+        if (antigasChaves != null) {
+            for (int j = 0; j < antigasChaves.length; j++) {
+                if (antigasChaves[j] != VAZIO) {
+                    int i = procurar(antigasChaves[j]);
+                    chaves[i] = antigasChaves[j];
+                    valores[i] = antigosValores[j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Espalha os bits da chave (códigos e ids são sequenciais)
+     */
+    private static int espalhar(int chave) {
+        int h = chave * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,167 @@
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Contadores de reproduções indexados por inteiro (id da música, código do gênero ou do
+ * intérprete), incrementados por várias threads sem bloqueios nem alocações. Com mais de uma
+ * faixa, cada thread soma na sua (escolhida pelo id da thread) e o valor é a soma das faixas:
+ * reproduções da mesma música em processadores diferentes não disputam a mesma linha de cache.
+ * Cada incremento marca o índice como alterado, para as classificações só serem atualizadas
+ * quando forem consultadas (ver {@link #paraCadaAlterado}).
+ * Os blocos são criados na primeira contagem de um dos seus índices, pelo que índices esparsos
+ * (como os códigos da TabelaSimbolos) não reservam memória para os intervalos sem contagens.
+ */
+public class ContadoresReproducoes {
+    /** Faixas para contadores disputados: uma por processador, até 4 */
+    public static final int FAIXAS_POR_PROCESSADOR =
+        Math.min(4, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private static final int BITS_BLOCO = 10;
+    private static final int TAMANHO_BLOCO = 1 << BITS_BLOCO;
+    private static final int MASCARA_BLOCO = TAMANHO_BLOCO - 1;
+
+    private static class Bloco {
+        final AtomicIntegerArray[] faixas; // Faixa -> contagens parciais dos índices do bloco
+        final AtomicLongArray alterados; // Um bit por índice com contagens ainda não visitadas
+
+        Bloco(int numeroFaixas) {
+            this.faixas = new AtomicIntegerArray[numeroFaixas];
+            for (int f = 0; f < numeroFaixas; f++) {
+                faixas[f] = new AtomicIntegerArray(TAMANHO_BLOCO);
+            }
+            this.alterados = new AtomicLongArray(TAMANHO_BLOCO / Long.SIZE);
+        }
+    }
+
+    private final int mascaraFaixa;
+    private volatile Bloco[] blocos; // Índice >> BITS_BLOCO -> bloco (null até à primeira contagem)
+
+    /**
+     * Cria contadores com uma única faixa, para índices em que as reproduções se espalham
+     * por muitos valores (ex.: intérpretes)
+     */
+    public ContadoresReproducoes() {
+        this(1);
+    }
+
+    /**
+     * Cria contadores com o número de faixas dado
+     * @param faixas Potência de dois (ex.: {@link #FAIXAS_POR_PROCESSADOR} para músicas e gêneros)
+     */
+    public ContadoresReproducoes(int faixas) {
+        if (faixas <= 0 || Integer.bitCount(faixas) != 1) {
+            throw new IllegalArgumentException("Número de faixas não é potência de dois: " + faixas);
+        }
+        this.mascaraFaixa = faixas - 1;
+        this.blocos = new Bloco[0];
+    }
+
+    /**
+     * Soma reproduções a um índice e marca-o como alterado
+     * @param indice Índice não negativo
+     * @param vezes Reproduções a somar
+     */
+    public void incrementar(int indice, int vezes) {
+        Bloco bloco = bloco(indice);
+        int posicao = indice & MASCARA_BLOCO;
+        bloco.faixas[faixa()].getAndAdd(posicao, vezes);
+        // Depois da soma: quem limpar a marca a seguir já lê o valor com esta reprodução
+        int palavra = posicao >>> 6;
+        long bit = 1L << posicao;
+        if ((bloco.alterados.get(palavra) & bit) == 0) {
+            bloco.alterados.getAndAccumulate(palavra, bit, (atual, novo) -> atual | novo);
+        }
+    }
+
+    /**
+     * Retorna o total de um índice
+     * @param indice Índice não negativo
+     * @return Soma das faixas (0 se nunca foi contado)
+     */
+    public int getValor(int indice) {
+        Bloco[] atuais = blocos;
+        int numero = indice >>> BITS_BLOCO;
+        Bloco bloco = numero < atuais.length ? atuais[numero] : null;
+        if (bloco == null) {
+            return 0;
+        }
+        int posicao = indice & MASCARA_BLOCO;
+        int total = 0;
+        for (AtomicIntegerArray faixa : bloco.faixas) {
+            total += faixa.get(posicao);
+        }
+        return total;
+    }
+
+    /**
+     * Substitui o total de um índice sem o marcar como alterado, ao restaurar um estado
+     * (quem restaura define as classificações). Não deve concorrer com incrementos do mesmo índice
+     * @param indice Índice não negativo
+     * @param valor Novo total
+     */
+    public void definir(int indice, int valor) {
+        if (valor == 0 && getValor(indice) == 0) {
+            return; // Não criar blocos só para zeros
+        }
+        Bloco bloco = bloco(indice);
+        int posicao = indice & MASCARA_BLOCO;
+        bloco.faixas[0].set(posicao, valor);
+        for (int f = 1; f < bloco.faixas.length; f++) {
+            bloco.faixas[f].set(posicao, 0);
+        }
+    }
+
+    /**
+     * Visita os índices alterados desde a última visita, com o total atual de cada um, e
+     * limpa as marcas. Incrementos em simultâneo são vistos agora ou voltam a marcar o índice.
+     * Quem chama deve impedir duas visitas em simultâneo, para um total antigo não ser
+     * aplicado depois de um mais recente
+     * @param visitante Recebe o índice e o seu total
+     */
+    public void paraCadaAlterado(ContadorInteiros.Visitante visitante) {
+        Bloco[] atuais = blocos;
+        for (int numero = 0; numero < atuais.length; numero++) {
+            Bloco bloco = atuais[numero];
+            if (bloco == null) {
+                continue;
+            }
+            for (int palavra = 0; palavra < bloco.alterados.length(); palavra++) {
+                if (bloco.alterados.get(palavra) == 0) {
+                    continue;
+                }
+                long bits = bloco.alterados.getAndSet(palavra, 0);
+                while (bits != 0) {
+                    int posicao = palavra * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    int indice = (numero << BITS_BLOCO) + posicao;
+                    visitante.visitar(indice, getValor(indice));
+                }
+            }
+        }
+    }
+
+    private int faixa() {
+        return (int) Thread.currentThread().getId() & mascaraFaixa;
+    }
+
+    private Bloco bloco(int indice) {
+        Bloco[] atuais = blocos;
+        int numero = indice >>> BITS_BLOCO;
+        Bloco bloco = numero < atuais.length ? atuais[numero] : null;
+        return bloco != null ? bloco : criarBloco(numero);
+    }
+
+    private synchronized Bloco criarBloco(int numero) {
+        Bloco[] atuais = blocos;
+        if (numero >= atuais.length) {
+            Bloco[] maiores = new Bloco[Math.max(numero + 1, atuais.length * 2)];
+            System.arraycopy(atuais, 0, maiores, 0, atuais.length);
+            atuais = maiores;
+        }
+        if (atuais[numero] == null) {
+            atuais[numero] = new Bloco(mascaraFaixa + 1);
+        }
+        blocos = atuais; // Publica o bloco (e o array maior, se cresceu)
+        return atuais[numero];
+    }
+}
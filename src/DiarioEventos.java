@@ -0,0 +1,423 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Diário (write-ahead log) dos eventos que alteram o sistema. Cada evento é acrescentado
+ * ao arquivo da geração atual com o seu tamanho e CRC; uma thread de escrita junta os
+ * eventos pendentes e grava-os com um único fsync por lote (group commit).
+ * Anexar um evento só acorda a thread de escrita (e só se estiver parada); quem espera pela
+ * gravação é acordado uma vez por lote gravado, e não a cada evento anexado.
+ * A cada checkpoint abre-se uma nova geração, e as anteriores deixam de ser necessárias
+ * assim que o estado completo é salvo.
+ */
+public class DiarioEventos implements Closeable {
+    private static final int ASSINATURA_DIARIO = 0x5350554A; // "SPUJ"
+    private static final String SUFIXO_GERACAO = ".diario-";
+    private static final int TAMANHO_CABECALHO_EVENTO = 8; // Tamanho + CRC
+    private static final int TAMANHO_EVENTO_RETIDO = 1 << 16; // Buffer maior que isto não fica na thread
+
+    /**
+     * Saída em memória e CRC de uma thread, reutilizados em todos os eventos que ela anexa
+     */
+    private static final class EventoThread {
+        SaidaBinaria saida = new SaidaBinaria(256);
+        final CRC32 crc = new CRC32();
+    }
+
+    private static final ThreadLocal<EventoThread> EVENTOS = ThreadLocal.withInitial(EventoThread::new);
+
+    /**
+     * Recebe cada evento lido do diário
+     */
+    public interface Leitor {
+        void aplicar(EntradaBinaria evento) throws IOException;
+    }
+
+    private final Path base; // Arquivo de estado a que o diário pertence
+    private final Object trinco; // Protege os eventos pendentes e a sequência anexada
+    private final Object gravacao; // Monitor de quem espera pela gravação, notificado uma vez por lote
+    private final Object trincoCanal; // Protege o canal durante a escrita e a rotação
+    private final Thread escritor;
+    private FileChannel canal;
+    private volatile long geracao; // Alterada com o trinco, lida sem ele
+    private volatile long tamanho; // Bytes de eventos na geração atual (alterado com o trinco)
+    private ByteBuffer pendentes; // Eventos anexados ainda não escritos
+    private ByteBuffer emEscrita; // Lote a ser escrito pela thread de escrita
+    private long sequenciaAnexada;
+    private volatile long sequenciaDuravel;
+    private boolean escritorParado; // A thread de escrita não tem eventos e tem de ser acordada
+    private volatile IOException erro;
+    private volatile boolean fechado;
+
+    /**
+     * Abre uma nova geração do diário e inicia a thread de escrita
+     * @param base Arquivo de estado a que o diário pertence
+     * @param geracao Geração a criar (não pode existir ainda)
+     */
+    public DiarioEventos(Path base, long geracao) throws IOException {
+        this.base = base;
+        this.trinco = new Object();
+        this.gravacao = new Object();
+        this.trincoCanal = new Object();
+        this.canal = criarGeracao(base, geracao);
+        this.geracao = geracao;
+        this.pendentes = ByteBuffer.allocate(1 << 16);
+        this.emEscrita = ByteBuffer.allocate(1 << 16);
+        this.escritor = new Thread(this::escreverLotes, "spotifum-diario");
+        this.escritor.setDaemon(true);
+        this.escritor.start();
+    }
+
+    /**
+     * Começa um evento na saída em memória da thread atual, reutilizada de evento para evento
+     * @return Saída onde escrever o evento, anexado depois com {@link #anexarEvento()}
+     */
+    public SaidaBinaria iniciarEvento() {
+        EventoThread evento = EVENTOS.get();
+        if (evento.saida.getCapacidade() > TAMANHO_EVENTO_RETIDO) {
+            evento.saida = new SaidaBinaria(256); // Não reter o buffer de um evento grande (ex.: um álbum)
+        }
+        evento.saida.reiniciar();
+        return evento.saida;
+    }
+
+    /**
+     * Anexa ao diário o evento escrito pela thread atual desde {@link #iniciarEvento()}, sem
+     * esperar que seja gravado. O CRC é calculado antes do trinco, que só protege a cópia
+     * @return Número de sequência do evento, para {@link #aguardar}
+     */
+    public long anexarEvento() {
+        EventoThread evento = EVENTOS.get();
+        byte[] bytes = evento.saida.getBytesEscritos();
+        int tamanhoEvento = (int) evento.saida.getPosicao();
+        evento.crc.reset();
+        evento.crc.update(bytes, 0, tamanhoEvento);
+        int soma = (int) evento.crc.getValue();
+        long sequencia;
+        boolean acordar;
+        synchronized (trinco) {
+            if (erro != null) {
+                throw new UncheckedIOException("Diário de eventos indisponível", erro);
+            }
+            if (fechado) {
+                throw new IllegalStateException("Diário de eventos fechado");
+            }
+            int necessario = TAMANHO_CABECALHO_EVENTO + tamanhoEvento;
+            if (pendentes.remaining() < necessario) {
+                ByteBuffer maior = ByteBuffer.allocate(Math.max(pendentes.capacity() * 2, pendentes.position() + necessario));
+                pendentes.flip();
+                maior.put(pendentes);
+                pendentes = maior;
+            }
+            pendentes.putInt(tamanhoEvento).putInt(soma).put(bytes, 0, tamanhoEvento);
+            tamanho += necessario;
+            sequencia = ++sequenciaAnexada;
+            acordar = escritorParado;
+            escritorParado = false;
+        }
+        if (acordar) {
+            LockSupport.unpark(escritor);
+        }
+        return sequencia;
+    }
+
+    /**
+     * Espera até que um evento anexado esteja gravado em disco
+     * @param sequencia Número de sequência retornado por {@link #anexarEvento}
+     */
+    public void aguardar(long sequencia) {
+        try {
+            esperarGravacao(sequencia);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException("Interrompido à espera do diário"));
+        }
+        if (sequenciaDuravel < sequencia) {
+            throw new UncheckedIOException("Erro ao gravar o diário de eventos", erro);
+        }
+    }
+
+    /**
+     * Espera que a thread de escrita grave até à sequência dada ou falhe
+     */
+    private void esperarGravacao(long sequencia) throws InterruptedException {
+        if (sequenciaDuravel >= sequencia) {
+            return; // Já gravado por um lote anterior: sem bloqueio
+        }
+        synchronized (gravacao) {
+            while (sequenciaDuravel < sequencia && erro == null) {
+                gravacao.wait();
+            }
+        }
+    }
+
+    /**
+     * Grava os eventos pendentes e passa a escrever numa nova geração. Quem chama
+     * deve impedir novos eventos até o estado correspondente estar salvo.
+     * @return A nova geração
+     */
+    public long rodar() throws IOException {
+        long anexada;
+        synchronized (trinco) {
+            anexada = sequenciaAnexada;
+        }
+        try {
+            // Sem o trinco: a thread de escrita precisa dele para pegar nos eventos pendentes
+            esperarGravacao(anexada);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrompido à espera do diário");
+        }
+        synchronized (trinco) {
+            if (erro != null) {
+                throw erro;
+            }
+            synchronized (trincoCanal) {
+                FileChannel novo = criarGeracao(base, geracao + 1);
+                canal.close();
+                canal = novo;
+                geracao++;
+                tamanho = 0;
+            }
+            return geracao;
+        }
+    }
+
+    /**
+     * Thread de escrita: grava tudo o que foi anexado desde o último lote e faz um fsync.
+     * Sem eventos, fica parada até um evento a acordar.
+     */
+    private void escreverLotes() {
+        while (true) {
+            long alvo;
+            synchronized (trinco) {
+                if (pendentes.position() == 0) {
+                    if (fechado) {
+                        return; // Fechado e sem eventos pendentes
+                    }
+                    escritorParado = true;
+                    alvo = -1;
+                } else {
+                    ByteBuffer lote = pendentes;
+                    pendentes = emEscrita;
+                    emEscrita = lote;
+                    alvo = sequenciaAnexada;
+                }
+            }
+            if (alvo < 0) {
+                // Um unpark feito entre sair do trinco e parar faz o park retornar logo
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                emEscrita.flip();
+                synchronized (trincoCanal) {
+                    while (emEscrita.hasRemaining()) {
+                        canal.write(emEscrita);
+                    }
+                    canal.force(false);
+                }
+                emEscrita.clear();
+                sequenciaDuravel = alvo;
+            } catch (IOException e) {
+                erro = e;
+            }
+            synchronized (gravacao) {
+                gravacao.notifyAll(); // Uma vez por lote, para todos os eventos gravados nele
+            }
+            if (erro != null) {
+                return;
+            }
+        }
+    }
+
+    public Path getBase() {
+        return base;
+    }
+
+    public long getGeracao() {
+        return geracao;
+    }
+
+    /**
+     * Retorna o número de bytes de eventos na geração atual
+     * @return Tamanho da geração atual
+     */
+    public long getTamanho() {
+        return tamanho;
+    }
+
+    /**
+     * Grava os eventos pendentes e fecha o diário
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (trinco) {
+            fechado = true;
+        }
+        LockSupport.unpark(escritor);
+        try {
+            escritor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (trincoCanal) {
+            canal.close();
+        }
+        if (erro != null) {
+            throw erro;
+        }
+    }
+
+    /**
+     * Reaplica, por ordem, os eventos de todas as gerações a partir de uma dada.
+     * A leitura de cada geração para no primeiro evento incompleto ou corrompido
+     * (ex.: a última escrita antes de uma falha). Um evento que o leitor não consegue aplicar
+     * (ex.: refere uma música ou um utilizador desconhecidos) é tratado como o fim do diário:
+     * os eventos seguintes podem depender dele e também são ignorados.
+     * @param base Arquivo de estado a que o diário pertence
+     * @param desde Primeira geração ainda não incluída no estado
+     * @param leitor Recebe cada evento; deve validar o evento antes de alterar o estado
+     * @return A geração seguinte à última reaplicada (ou desde, se não houver nenhuma)
+     */
+    public static long reaplicar(Path base, long desde, Leitor leitor) throws IOException {
+        long proxima = desde;
+        List<Long> geracoes = listarGeracoes(base);
+        for (long geracao : geracoes) {
+            if (geracao < desde) {
+                continue;
+            }
+            // Lido para o heap, não mapeado: um mapeamento só é libertado pelo coletor de lixo
+            // e impediria (em Windows) que o checkpoint seguinte apagasse a geração
+            try (FileChannel canal = FileChannel.open(arquivoGeracao(base, geracao), StandardOpenOption.READ)) {
+                if (canal.size() > Integer.MAX_VALUE) {
+                    throw new IOException("Arquivo de diário demasiado grande: " + arquivoGeracao(base, geracao));
+                }
+                ByteBuffer dados = ByteBuffer.allocate((int) canal.size());
+                while (dados.hasRemaining()) {
+                    if (canal.read(dados) < 0) {
+                        break;
+                    }
+                }
+                dados.flip();
+                if (dados.remaining() < 4 || dados.getInt() != ASSINATURA_DIARIO) {
+                    throw new IOException("Arquivo de diário inválido: " + arquivoGeracao(base, geracao));
+                }
+                CRC32 crc = new CRC32();
+                while (dados.remaining() >= TAMANHO_CABECALHO_EVENTO) {
+                    int tamanho = dados.getInt();
+                    int soma = dados.getInt();
+                    if (tamanho < 0 || tamanho > dados.remaining()) {
+                        break;
+                    }
+                    ByteBuffer evento = dados.slice();
+                    evento.limit(tamanho);
+                    crc.reset();
+                    crc.update(evento.duplicate());
+                    if ((int) crc.getValue() != soma) {
+                        break;
+                    }
+                    try {
+                        leitor.aplicar(new EntradaBinaria(evento));
+                    } catch (IOException | RuntimeException e) {
+                        System.err.println("Evento inválido no diário " + arquivoGeracao(base, geracao) + ": "
+                            + e.getMessage() + "; os eventos seguintes são ignorados");
+                        return geracoes.get(geracoes.size() - 1) + 1;
+                    }
+                    dados.position(dados.position() + tamanho);
+                }
+            }
+            proxima = geracao + 1;
+        }
+        return proxima;
+    }
+
+    /**
+     * Retorna a geração seguinte à maior existente em disco
+     * @param base Arquivo de estado a que o diário pertence
+     * @return Próxima geração livre (0 se não houver diário)
+     */
+    public static long proximaGeracao(Path base) throws IOException {
+        List<Long> geracoes = listarGeracoes(base);
+        return geracoes.isEmpty() ? 0 : geracoes.get(geracoes.size() - 1) + 1;
+    }
+
+    /**
+     * Indica se existe algum arquivo de diário para o estado dado
+     * @param base Arquivo de estado a que o diário pertence
+     * @return true se houver pelo menos uma geração
+     */
+    public static boolean existe(Path base) throws IOException {
+        return !listarGeracoes(base).isEmpty();
+    }
+
+    /**
+     * Apaga as gerações anteriores a uma dada, já incluídas no estado salvo
+     * @param base Arquivo de estado a que o diário pertence
+     * @param geracao Primeira geração a manter
+     */
+    public static void apagarAnteriores(Path base, long geracao) throws IOException {
+        for (long anterior : listarGeracoes(base)) {
+            if (anterior < geracao) {
+                Files.deleteIfExists(arquivoGeracao(base, anterior));
+            }
+        }
+    }
+
+    private static List<Long> listarGeracoes(Path base) throws IOException {
+        Path pasta = base.toAbsolutePath().getParent();
+        String prefixo = base.getFileName() + SUFIXO_GERACAO;
+        List<Long> geracoes = new ArrayList<>();
+        try (DirectoryStream<Path> arquivos = Files.newDirectoryStream(pasta)) {
+            for (Path arquivo : arquivos) {
+                String nome = arquivo.getFileName().toString();
+                if (nome.startsWith(prefixo)) {
+                    try {
+                        geracoes.add(Long.parseLong(nome.substring(prefixo.length())));
+                    } catch (NumberFormatException e) {
+                        // Não é um arquivo do diário
+                    }
+                }
+            }
+        }
+        Collections.sort(geracoes);
+        return geracoes;
+    }
+
+    private static Path arquivoGeracao(Path base, long geracao) {
+        return base.resolveSibling(base.getFileName() + SUFIXO_GERACAO + geracao);
+    }
+
+    private static FileChannel criarGeracao(Path base, long geracao) throws IOException {
+        FileChannel canal = FileChannel.open(arquivoGeracao(base, geracao),
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer cabecalho = ByteBuffer.allocate(4).putInt(ASSINATURA_DIARIO);
+            cabecalho.flip();
+            while (cabecalho.hasRemaining()) {
+                canal.write(cabecalho);
+            }
+            canal.force(true);
+            return canal;
+        } catch (IOException e) {
+            canal.close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Distribuição de Zipf sobre as posições 0..n-1: a posição k é sorteada com
+ * probabilidade proporcional a 1/(k+1)^s. Usa a função de distribuição acumulada
+ * pré-calculada, pelo que cada sorteio custa O(log n).
+ */
+public class DistribuicaoZipf {
+    private final double[] acumulada; // Probabilidade acumulada até cada posição
+
+    /**
+     * @param n Número de posições (pelo menos 1)
+     * @param expoente Expoente s (0 dá a distribuição uniforme)
+     */
+    public DistribuicaoZipf(int n, double expoente) {
+        if (n < 1) {
+            throw new IllegalArgumentException("A distribuição precisa de pelo menos uma posição");
+        }
+        this.acumulada = new double[n];
+        double soma = 0;
+        for (int k = 0; k < n; k++) {
+            soma += 1.0 / Math.pow(k + 1, expoente);
+            acumulada[k] = soma;
+        }
+        for (int k = 0; k < n; k++) {
+            acumulada[k] /= soma;
+        }
+    }
+
+    /**
+     * Sorteia uma posição
+     * @param random Gerador pseudoaleatório a usar
+     * @return Posição entre 0 e n-1 (as primeiras são as mais prováveis)
+     */
+    public int sortear(Random random) {
+        int posicao = Arrays.binarySearch(acumulada, random.nextDouble());
+        posicao = posicao >= 0 ? posicao : -posicao - 1;
+        return Math.min(posicao, acumulada.length - 1);
+    }
+
+    /**
+     * Retorna o número de posições
+     * @return Tamanho da distribuição
+     */
+    public int getTamanho() {
+        return acumulada.length;
+    }
+}
@@ -0,0 +1,157 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Leitura do formato escrito por SaidaBinaria a partir de um FileChannel ou de bytes em memória
+ */
+public class EntradaBinaria {
+    private static final int TAMANHO_BUFFER = 1 << 16;
+
+    private final FileChannel canal;
+    private final ByteBuffer buffer;
+    private final List<String> simbolos; // Índice -> símbolo do dicionário
+    private ArmazemTexto armazemTexto; // Se definido, os textos das músicas ficam por ler
+
+    public EntradaBinaria(FileChannel canal) {
+        this.canal = canal;
+        this.buffer = ByteBuffer.allocateDirect(TAMANHO_BUFFER);
+        this.buffer.flip(); // Começa vazio
+        this.simbolos = new ArrayList<>();
+    }
+
+    /**
+     * Cria uma entrada sobre bytes já em memória (ex.: um evento do diário)
+     * @param dados Bytes a ler, da posição ao limite
+     */
+    public EntradaBinaria(ByteBuffer dados) {
+        this.canal = null;
+        this.buffer = dados;
+        this.simbolos = new ArrayList<>();
+    }
+
+    public int lerByte() throws IOException {
+        garantir(1);
+        return buffer.get() & 0xFF;
+    }
+
+    public boolean lerBoolean() throws IOException {
+        return lerByte() != 0;
+    }
+
+    public int lerVarInt() throws IOException {
+        int valor = 0;
+        for (int deslocamento = 0; deslocamento < 35; deslocamento += 7) {
+            int b = lerByte();
+            valor |= (b & 0x7F) << deslocamento;
+            if ((b & 0x80) == 0) {
+                return valor;
+            }
+        }
+        throw new IOException("Varint inválido");
+    }
+
+    public int lerVarIntComSinal() throws IOException {
+        int zigzag = lerVarInt();
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    public long lerVarLong() throws IOException {
+        long zigzag = 0;
+        for (int deslocamento = 0; deslocamento < 70; deslocamento += 7) {
+            int b = lerByte();
+            zigzag |= (long) (b & 0x7F) << deslocamento;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IOException("Varint inválido");
+    }
+
+    public String lerString() throws IOException {
+        int tamanho = lerVarInt();
+        if (tamanho == 0) {
+            return null;
+        }
+        return new String(lerBytes(tamanho - 1), StandardCharsets.UTF_8);
+    }
+
+    public String lerSimbolo() throws IOException {
+        int codigo = lerVarInt();
+        if (codigo > 0) {
+            return simbolos.get(codigo - 1);
+        }
+        String simbolo = lerString();
+        simbolos.add(simbolo);
+        return simbolo;
+    }
+
+    public byte[] lerBytes(int tamanho) throws IOException {
+        byte[] bytes = new byte[tamanho];
+        int posicao = 0;
+        while (posicao < tamanho) {
+            if (!buffer.hasRemaining()) {
+                encher();
+            }
+            int n = Math.min(buffer.remaining(), tamanho - posicao);
+            buffer.get(bytes, posicao, n);
+            posicao += n;
+        }
+        return bytes;
+    }
+
+    /**
+     * Salta bytes sem os ler
+     * @param tamanho Número de bytes a saltar
+     */
+    public void saltar(int tamanho) throws IOException {
+        if (tamanho <= buffer.remaining()) {
+            buffer.position(buffer.position() + tamanho);
+            return;
+        }
+        if (canal == null) {
+            throw new EOFException("Fim inesperado dos dados");
+        }
+        canal.position(canal.position() + tamanho - buffer.remaining());
+        buffer.clear();
+        buffer.flip();
+    }
+
+    /**
+     * Retorna a posição no arquivo do próximo byte a ler
+     * @return Posição absoluta
+     */
+    public long getPosicao() throws IOException {
+        return canal != null ? canal.position() - buffer.remaining() : buffer.position();
+    }
+
+    public ArmazemTexto getArmazemTexto() {
+        return armazemTexto;
+    }
+
+    public void setArmazemTexto(ArmazemTexto armazemTexto) {
+        this.armazemTexto = armazemTexto;
+    }
+
+    private void garantir(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            encher();
+        }
+    }
+
+    private void encher() throws IOException {
+        if (canal == null) {
+            throw new EOFException("Fim inesperado dos dados");
+        }
+        buffer.compact();
+        int lidos = canal.read(buffer);
+        buffer.flip();
+        if (lidos < 0 && !buffer.hasRemaining()) {
+            throw new EOFException("Fim inesperado do ficheiro de estado");
+        }
+    }
+}
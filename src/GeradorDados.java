@@ -0,0 +1,189 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Gerador determinístico de dados sintéticos para medir o desempenho do sistema.
+ * A mesma semente e os mesmos tamanhos produzem sempre o mesmo catálogo, os mesmos
+ * utilizadores e as mesmas reproduções iniciais.
+ * A popularidade de gêneros, intérpretes, músicas e utilizadores segue distribuições
+ * de Zipf, como num serviço real: poucos concentram a maior parte da atividade.
+ */
+public class GeradorDados {
+    private static final String[] GENEROS = {
+        "Rock", "Pop", "Jazz", "Fado", "Hip-Hop", "Metal", "Blues", "Electronic",
+        "Classical", "Reggae", "Country", "Funk", "Soul", "Punk", "Folk", "Samba"
+    };
+    private static final int MUSICAS_POR_ALBUM = 10;
+    private static final int MUSICAS_POR_INTERPRETE = 50; // Em média
+    private static final double EXPOENTE_PADRAO = 1.0;
+
+    private final long semente;
+    private final int numeroMusicas;
+    private final int numeroUtilizadores;
+    private final int reproducoesPorUtilizador;
+    private final double expoente;
+    private final List<Musica> musicas;
+    private final List<Utilizador> utilizadores;
+    private final DistribuicaoZipf distribuicaoGeneros;
+    private int[] ordemPopularidade; // Posição de popularidade -> índice da música
+    private DistribuicaoZipf distribuicaoMusicas;
+    private DistribuicaoZipf distribuicaoUtilizadores;
+
+    /**
+     * @param semente Semente do gerador pseudoaleatório
+     * @param numeroMusicas Número de músicas do catálogo
+     * @param numeroUtilizadores Número de utilizadores
+     * @param reproducoesPorUtilizador Reproduções iniciais por utilizador, em média
+     */
+    public GeradorDados(long semente, int numeroMusicas, int numeroUtilizadores, int reproducoesPorUtilizador) {
+        this(semente, numeroMusicas, numeroUtilizadores, reproducoesPorUtilizador, EXPOENTE_PADRAO);
+    }
+
+    /**
+     * @param semente Semente do gerador pseudoaleatório
+     * @param numeroMusicas Número de músicas do catálogo
+     * @param numeroUtilizadores Número de utilizadores
+     * @param reproducoesPorUtilizador Reproduções iniciais por utilizador, em média
+     * @param expoente Expoente das distribuições de Zipf (0 para distribuições uniformes)
+     */
+    public GeradorDados(long semente, int numeroMusicas, int numeroUtilizadores, int reproducoesPorUtilizador,
+                        double expoente) {
+        this.semente = semente;
+        this.numeroMusicas = numeroMusicas;
+        this.numeroUtilizadores = numeroUtilizadores;
+        this.reproducoesPorUtilizador = reproducoesPorUtilizador;
+        this.expoente = expoente;
+        this.musicas = new ArrayList<>(numeroMusicas);
+        this.utilizadores = new ArrayList<>(numeroUtilizadores);
+        this.distribuicaoGeneros = new DistribuicaoZipf(GENEROS.length, expoente);
+    }
+
+    /**
+     * Gera um sistema completo: álbuns, utilizadores dos três planos, playlists
+     * dos utilizadores Premium e reproduções iniciais
+     * @return O sistema gerado
+     */
+    public Sistema gerar() {
+        Random random = new Random(semente);
+        Sistema sistema = new Sistema();
+        musicas.clear();
+        utilizadores.clear();
+
+        // Intérpretes populares ficam com mais álbuns
+        DistribuicaoZipf distribuicaoInterpretes =
+            new DistribuicaoZipf(Math.max(1, numeroMusicas / MUSICAS_POR_INTERPRETE), expoente);
+        for (int inicio = 0; inicio < numeroMusicas; inicio += MUSICAS_POR_ALBUM) {
+            int numeroAlbum = inicio / MUSICAS_POR_ALBUM;
+            String interprete = "Intérprete " + distribuicaoInterpretes.sortear(random);
+            Album album = new Album("Álbum " + numeroAlbum, interprete, 1960 + random.nextInt(65));
+            for (int i = inicio; i < Math.min(inicio + MUSICAS_POR_ALBUM, numeroMusicas); i++) {
+                Musica musica = gerarMusica(random, i, interprete);
+                album.adicionarMusica(musica);
+                musicas.add(musica);
+            }
+            sistema.adicionarAlbum(album);
+        }
+
+        // A popularidade das músicas não depende da ordem de criação
+        ordemPopularidade = new int[musicas.size()];
+        for (int i = 0; i < ordemPopularidade.length; i++) {
+            int j = random.nextInt(i + 1);
+            ordemPopularidade[i] = ordemPopularidade[j];
+            ordemPopularidade[j] = i;
+        }
+        distribuicaoMusicas = musicas.isEmpty() ? null : new DistribuicaoZipf(musicas.size(), expoente);
+
+        for (int i = 0; i < numeroUtilizadores; i++) {
+            Utilizador utilizador = new Utilizador("Utilizador " + i, "utilizador" + i + "@spotifum.com",
+                                                   "Rua " + random.nextInt(1000), gerarPlano(random));
+            sistema.registrarUtilizador(utilizador);
+            utilizadores.add(utilizador);
+            Playlist playlist = sistema.criarPlaylist(utilizador, "Playlist de " + utilizador.getNome());
+            if (playlist != null) {
+                for (int j = 0; j < 10 && !musicas.isEmpty(); j++) {
+                    sistema.adicionarMusicaPlaylist(utilizador, playlist, sortearMusica(random));
+                }
+                if (random.nextInt(10) == 0) {
+                    sistema.publicarPlaylist(utilizador, playlist);
+                }
+            }
+        }
+        distribuicaoUtilizadores = utilizadores.isEmpty() ? null : new DistribuicaoZipf(utilizadores.size(), expoente);
+
+        if (!musicas.isEmpty()) {
+            for (long j = (long) reproducoesPorUtilizador * utilizadores.size(); j > 0; j--) {
+                sistema.registrarReproducao(sortearUtilizador(random), sortearMusica(random));
+            }
+        }
+        return sistema;
+    }
+
+    private Musica gerarMusica(Random random, int indice, String interprete) {
+        String nome = "Música " + indice;
+        String editora = "Editora " + (indice % 97);
+        String letra = "Letra da " + nome + "\nRefrão da " + nome;
+        String genero = sortearGenero(random);
+        int duracao = 90 + random.nextInt(360);
+        Musica musica = random.nextInt(10) == 0
+            ? new MusicaExplicita(nome, interprete, editora, letra, genero, duracao, "Linguagem explícita")
+            : new Musica(nome, interprete, editora, letra, genero, duracao);
+        musica.adicionarLinhaMusical("♪ " + nome + " ♪");
+        return musica;
+    }
+
+    /**
+     * Distribuição dos planos: 60% Free, 25% Premium Base e 15% Premium Top
+     */
+    private PlanoSubscricao gerarPlano(Random random) {
+        int sorteio = random.nextInt(100);
+        if (sorteio < 60) {
+            return new PlanoFree();
+        }
+        return sorteio < 85 ? new PlanoPremiumBase() : new PlanoPremiumTop();
+    }
+
+    /**
+     * Sorteia uma música segundo a sua popularidade
+     * @param random Gerador pseudoaleatório a usar
+     * @return Uma música gerada pela última chamada a {@link #gerar}
+     */
+    public Musica sortearMusica(Random random) {
+        return musicas.get(ordemPopularidade[distribuicaoMusicas.sortear(random)]);
+    }
+
+    /**
+     * Sorteia um utilizador segundo a sua atividade
+     * @param random Gerador pseudoaleatório a usar
+     * @return Um utilizador gerado pela última chamada a {@link #gerar}
+     */
+    public Utilizador sortearUtilizador(Random random) {
+        return utilizadores.get(distribuicaoUtilizadores.sortear(random));
+    }
+
+    /**
+     * Sorteia um gênero segundo a sua popularidade
+     * @param random Gerador pseudoaleatório a usar
+     * @return Nome do gênero
+     */
+    public String sortearGenero(Random random) {
+        return GENEROS[distribuicaoGeneros.sortear(random)];
+    }
+
+    /**
+     * Retorna as músicas geradas pela última chamada a {@link #gerar}, pela ordem de criação
+     * @return Lista das músicas
+     */
+    public List<Musica> getMusicas() {
+        return Collections.unmodifiableList(musicas);
+    }
+
+    /**
+     * Retorna os utilizadores gerados pela última chamada a {@link #gerar}, pela ordem de criação
+     * @return Lista dos utilizadores
+     */
+    public List<Utilizador> getUtilizadores() {
+        return Collections.unmodifiableList(utilizadores);
+    }
+}
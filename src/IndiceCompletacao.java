@@ -0,0 +1,356 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Completação de nomes por prefixo (árvore ternária de pesquisa), com as sugestões
+ * ordenadas por popularidade. Cada nó cuja subárvore tem mais de N nomes guarda os N
+ * mais populares dela, de modo que completar um prefixo custa o comprimento do prefixo
+ * mais N, independentemente do número de nomes. Inserir, remover e mudar a popularidade
+ * de um nome atualiza só os nós no caminho até ele.
+ * Os nomes são comparados sem acentos nem maiúsculas, como na {@link IndicePesquisa}.
+ * Não é thread-safe: quem o usa deve sincronizar os acessos.
+ * @param <T> Tipo dos objetos sugeridos
+ */
+public class IndiceCompletacao<T> {
+    private static final int SEM_NO = -1;
+    private static final char FIM = '\0'; // Fecha cada nome: menor que qualquer letra
+
+    private final int maximo; // N: sugestões guardadas por nó
+
+    // Nós, em tabelas paralelas
+    private char[] letras;
+    private int[] esquerdo;
+    private int[] meio;
+    private int[] direito;
+    private int[] pai;
+    private int[] primeiraEntrada; // Nó FIM -> primeira entrada com esse nome (-1 se nenhuma)
+    private int[] contagem; // Entradas na subárvore do nó
+    private int[][] melhores; // As N melhores entradas da subárvore (null se tiver no máximo N)
+    private int numeroNos;
+    private int raiz = SEM_NO;
+
+    // Entradas
+    private final List<T> alvos; // Entrada -> objeto sugerido (null se removida)
+    private long[] popularidades;
+    private int[] noDaEntrada; // Entrada -> nó FIM do nome (-1 se removida)
+    private int[] proximaEntrada; // Entrada seguinte com o mesmo nome (-1 se última)
+    private int entradasAtivas;
+
+    /**
+     * Cria um índice vazio
+     * @param maximo Número máximo de sugestões por pesquisa
+     */
+    public IndiceCompletacao(int maximo) {
+        if (maximo <= 0) {
+            throw new IllegalArgumentException("Número de sugestões inválido: " + maximo);
+        }
+        this.maximo = maximo;
+        this.letras = new char[16];
+        this.esquerdo = new int[16];
+        this.meio = new int[16];
+        this.direito = new int[16];
+        this.pai = new int[16];
+        this.primeiraEntrada = new int[16];
+        this.contagem = new int[16];
+        this.melhores = new int[16][];
+        this.alvos = new ArrayList<>();
+        this.popularidades = new long[16];
+        this.noDaEntrada = new int[16];
+        this.proximaEntrada = new int[16];
+    }
+
+    /**
+     * Adiciona um nome ao índice (o mesmo nome pode ter vários objetos)
+     * @param nome Nome a completar
+     * @param alvo Objeto sugerido para o nome
+     * @param popularidade Popularidade inicial
+     * @return Identificador da entrada, para remover ou mudar a popularidade
+     */
+    public int adicionar(String nome, T alvo, long popularidade) {
+        String chave = normalizar(nome) + FIM;
+        int entrada = alvos.size();
+        if (entrada == popularidades.length) {
+            int capacidade = entrada * 2;
+            popularidades = Arrays.copyOf(popularidades, capacidade);
+            noDaEntrada = Arrays.copyOf(noDaEntrada, capacidade);
+            proximaEntrada = Arrays.copyOf(proximaEntrada, capacidade);
+        }
+        alvos.add(alvo);
+        popularidades[entrada] = popularidade;
+        entradasAtivas++;
+
+        if (raiz == SEM_NO) {
+            raiz = novoNo(chave.charAt(0), SEM_NO);
+        }
+        int no = raiz;
+        int i = 0;
+        while (true) {
+            char letra = chave.charAt(i);
+            if (letra < letras[no]) {
+                if (esquerdo[no] == SEM_NO) {
+                    int novo = novoNo(letra, no); // Pode substituir as tabelas
+                    esquerdo[no] = novo;
+                }
+                no = esquerdo[no];
+            } else if (letra > letras[no]) {
+                if (direito[no] == SEM_NO) {
+                    int novo = novoNo(letra, no);
+                    direito[no] = novo;
+                }
+                no = direito[no];
+            } else if (i == chave.length() - 1) {
+                break;
+            } else {
+                i++;
+                if (meio[no] == SEM_NO) {
+                    int novo = novoNo(chave.charAt(i), no);
+                    meio[no] = novo;
+                }
+                no = meio[no];
+            }
+        }
+        noDaEntrada[entrada] = no;
+        proximaEntrada[entrada] = primeiraEntrada[no];
+        primeiraEntrada[no] = entrada;
+
+        // Dos filhos para a raiz, para cada nó ver os filhos já atualizados
+        for (int x = no; x != SEM_NO; x = pai[x]) {
+            contagem[x]++;
+            if (melhores[x] != null) {
+                oferecer(melhores[x], entrada);
+            } else if (contagem[x] > maximo) {
+                melhores[x] = calcularMelhores(x);
+            }
+        }
+        return entrada;
+    }
+
+    /**
+     * Remove uma entrada do índice
+     * @param entrada Identificador retornado por {@link #adicionar}
+     */
+    public void remover(int entrada) {
+        int no = noDaEntrada[entrada];
+        if (no == SEM_NO) {
+            return;
+        }
+        if (primeiraEntrada[no] == entrada) {
+            primeiraEntrada[no] = proximaEntrada[entrada];
+        } else {
+            int anterior = primeiraEntrada[no];
+            while (proximaEntrada[anterior] != entrada) {
+                anterior = proximaEntrada[anterior];
+            }
+            proximaEntrada[anterior] = proximaEntrada[entrada];
+        }
+        noDaEntrada[entrada] = SEM_NO;
+        entradasAtivas--;
+
+        for (int x = no; x != SEM_NO; x = pai[x]) {
+            contagem[x]--;
+            if (melhores[x] != null && contem(melhores[x], entrada)) {
+                // Com N ou menos entradas a subárvore deixa de precisar da lista
+                melhores[x] = contagem[x] > maximo ? calcularMelhores(x) : null;
+            }
+        }
+        alvos.set(entrada, null);
+    }
+
+    /**
+     * Muda a popularidade de uma entrada, reordenando as sugestões onde ela aparece
+     * @param entrada Identificador retornado por {@link #adicionar}
+     * @param popularidade Nova popularidade
+     */
+    public void definirPopularidade(int entrada, long popularidade) {
+        long anterior = popularidades[entrada];
+        int no = noDaEntrada[entrada];
+        if (popularidade == anterior || no == SEM_NO) {
+            popularidades[entrada] = popularidade;
+            return;
+        }
+        popularidades[entrada] = popularidade;
+        for (int x = no; x != SEM_NO; x = pai[x]) {
+            if (melhores[x] == null) {
+                continue;
+            }
+            if (popularidade > anterior) {
+                oferecer(melhores[x], entrada);
+            } else if (contem(melhores[x], entrada)) {
+                // Ao descer pode ser ultrapassada por entradas que não estão na lista
+                melhores[x] = calcularMelhores(x);
+            }
+        }
+    }
+
+    /**
+     * Retorna os objetos cujo nome começa pelo prefixo, do mais para o menos popular
+     * (em empate, o adicionado primeiro)
+     * @param prefixo Início do nome (vazio para os mais populares de todos)
+     * @param limite Número máximo de sugestões (no máximo o N do índice)
+     * @return Sugestões por ordem
+     */
+    public List<T> completar(String prefixo, int limite) {
+        String chave = normalizar(prefixo);
+        int inicio = raiz;
+        if (!chave.isEmpty()) {
+            int no = raiz;
+            int i = 0;
+            while (no != SEM_NO) {
+                char letra = chave.charAt(i);
+                if (letra < letras[no]) {
+                    no = esquerdo[no];
+                } else if (letra > letras[no]) {
+                    no = direito[no];
+                } else if (i == chave.length() - 1) {
+                    break;
+                } else {
+                    i++;
+                    no = meio[no];
+                }
+            }
+            inicio = no == SEM_NO ? SEM_NO : meio[no];
+        }
+        List<T> resultado = new ArrayList<>();
+        if (inicio == SEM_NO) {
+            return resultado;
+        }
+        int[] topo = topo(inicio);
+        for (int i = 0; i < topo.length && i < limite; i++) {
+            resultado.add(alvos.get(topo[i]));
+        }
+        return resultado;
+    }
+
+    /**
+     * Retorna a popularidade atual de uma entrada
+     * @param entrada Identificador retornado por {@link #adicionar}
+     * @return Popularidade
+     */
+    public long getPopularidade(int entrada) {
+        return popularidades[entrada];
+    }
+
+    /**
+     * Retorna o número de nomes no índice
+     * @return Quantidade de entradas ativas
+     */
+    public int getTamanho() {
+        return entradasAtivas;
+    }
+
+    /**
+     * Normaliza um nome para comparação: sem acentos, em minúsculas e com os espaços simplificados
+     * @param nome Nome a normalizar (null conta como vazio)
+     * @return Nome normalizado
+     */
+    public static String normalizar(String nome) {
+        return IndicePesquisa.normalizarTexto(nome).replace(FIM, ' ').trim().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * As melhores entradas da subárvore: a lista guardada ou, em subárvores pequenas, todas
+     */
+    private int[] topo(int no) {
+        return melhores[no] != null ? melhores[no] : calcularMelhores(no);
+    }
+
+    /**
+     * Junta as entradas do nó e as melhores de cada filho
+     */
+    private int[] calcularMelhores(int no) {
+        int[] lista = new int[Math.min(contagem[no], maximo)];
+        if (lista.length == 0) {
+            return lista;
+        }
+        int tamanho = 0;
+        for (int entrada = primeiraEntrada[no]; entrada != SEM_NO; entrada = proximaEntrada[entrada]) {
+            tamanho = inserir(lista, tamanho, entrada);
+        }
+        for (int filho : new int[] {esquerdo[no], meio[no], direito[no]}) {
+            if (filho != SEM_NO && contagem[filho] > 0) {
+                for (int entrada : topo(filho)) {
+                    tamanho = inserir(lista, tamanho, entrada);
+                }
+            }
+        }
+        return lista;
+    }
+
+    /**
+     * Insere uma entrada numa lista ordenada com capacidade fixa (descarta a pior se cheia)
+     * @return Novo tamanho da lista
+     */
+    private int inserir(int[] lista, int tamanho, int entrada) {
+        if (tamanho == lista.length) {
+            if (!melhor(entrada, lista[tamanho - 1])) {
+                return tamanho;
+            }
+            tamanho--;
+        }
+        int i = tamanho;
+        while (i > 0 && melhor(entrada, lista[i - 1])) {
+            lista[i] = lista[i - 1];
+            i--;
+        }
+        lista[i] = entrada;
+        return tamanho + 1;
+    }
+
+    /**
+     * Coloca uma entrada nova ou mais popular no lugar certo de uma lista cheia
+     */
+    private void oferecer(int[] lista, int entrada) {
+        int i = indice(lista, entrada);
+        if (i < 0) {
+            i = lista.length - 1;
+            if (!melhor(entrada, lista[i])) {
+                return;
+            }
+        }
+        while (i > 0 && melhor(entrada, lista[i - 1])) {
+            lista[i] = lista[i - 1];
+            i--;
+        }
+        lista[i] = entrada;
+    }
+
+    private boolean melhor(int a, int b) {
+        return popularidades[a] != popularidades[b] ? popularidades[a] > popularidades[b] : a < b;
+    }
+
+    private static boolean contem(int[] lista, int entrada) {
+        return indice(lista, entrada) >= 0;
+    }
+
+    private static int indice(int[] lista, int entrada) {
+        for (int i = 0; i < lista.length; i++) {
+            if (lista[i] == entrada) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int novoNo(char letra, int noPai) {
+        int no = numeroNos++;
+        if (no == letras.length) {
+            int capacidade = no * 2;
+            letras = Arrays.copyOf(letras, capacidade);
+            esquerdo = Arrays.copyOf(esquerdo, capacidade);
+            meio = Arrays.copyOf(meio, capacidade);
+            direito = Arrays.copyOf(direito, capacidade);
+            pai = Arrays.copyOf(pai, capacidade);
+            primeiraEntrada = Arrays.copyOf(primeiraEntrada, capacidade);
+            contagem = Arrays.copyOf(contagem, capacidade);
+            melhores = Arrays.copyOf(melhores, capacidade);
+        }
+        letras[no] = letra;
+        esquerdo[no] = SEM_NO;
+        meio[no] = SEM_NO;
+        direito[no] = SEM_NO;
+        pai[no] = noPai;
+        primeiraEntrada[no] = SEM_NO;
+        return no;
+    }
+}
@@ -0,0 +1,502 @@
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Índice invertido de texto das músicas (nome, intérprete, álbum, letra e conteúdo musical),
+ * construído pelo catálogo na primeira pesquisa e atualizado à medida que as músicas são
+ * registradas ou removidas.
+ * As palavras são normalizadas sem acentos nem maiúsculas ("Canção" encontra "cancao").
+ * Cada palavra guarda a sua lista de documentos comprimida: diferenças entre documentos
+ * consecutivos e frequências em varint, com um salto a cada {@value #INTERVALO_SALTOS} documentos
+ * para avançar sem descodificar a lista toda.
+ * Os resultados são ordenados por BM25, com pesos por campo (o nome conta mais que a letra).
+ * Cada bloco guarda também a maior frequência e o menor comprimento dos seus documentos,
+ * um limite da pontuação que permite saltar blocos que não chegam aos K melhores.
+ * Não é thread-safe: o catálogo sincroniza os acessos.
+ */
+public class IndicePesquisa {
+    private static final int PESO_NOME = 3;
+    private static final int PESO_INTERPRETE = 2;
+    private static final int PESO_ALBUM = 2;
+    private static final int PESO_TEXTO = 1; // Letra e conteúdo musical
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int INTERVALO_SALTOS = 64; // Documentos por bloco da lista de uma palavra
+    private static final Pattern ACENTOS = Pattern.compile("\\p{M}+");
+
+    /**
+     * Documentos de uma palavra, por ordem crescente
+     */
+    private static class Lista {
+        byte[] dados = new byte[8]; // (diferença para o documento anterior, frequência) em varint
+        int bytes;
+        int numeroDocumentos;
+        int ultimoDocumento = -1;
+        int[] saltos; // Pares (último documento antes do bloco, posição do bloco em dados); null se curta
+        int[] limites; // Blocos fechados: pares (maior frequência, menor comprimento); null se curta
+        int maiorFrequenciaBloco; // Do bloco ainda aberto
+        int menorComprimentoBloco = Integer.MAX_VALUE;
+        int maiorFrequencia; // Da lista toda
+        int menorComprimento = Integer.MAX_VALUE;
+
+        void acrescentar(int documento, int frequencia, int comprimento) {
+            if (numeroDocumentos > 0 && numeroDocumentos % INTERVALO_SALTOS == 0) {
+                int bloco = numeroDocumentos / INTERVALO_SALTOS;
+                if (saltos == null) {
+                    saltos = new int[8];
+                    limites = new int[8];
+                } else if (2 * bloco > saltos.length) {
+                    saltos = Arrays.copyOf(saltos, saltos.length * 2);
+                    limites = Arrays.copyOf(limites, limites.length * 2);
+                }
+                saltos[2 * bloco - 2] = ultimoDocumento;
+                saltos[2 * bloco - 1] = bytes;
+                limites[2 * bloco - 2] = maiorFrequenciaBloco;
+                limites[2 * bloco - 1] = menorComprimentoBloco;
+                maiorFrequenciaBloco = 0;
+                menorComprimentoBloco = Integer.MAX_VALUE;
+            }
+            maiorFrequenciaBloco = Math.max(maiorFrequenciaBloco, frequencia);
+            menorComprimentoBloco = Math.min(menorComprimentoBloco, comprimento);
+            maiorFrequencia = Math.max(maiorFrequencia, frequencia);
+            menorComprimento = Math.min(menorComprimento, comprimento);
+            if (bytes + 10 > dados.length) {
+                dados = Arrays.copyOf(dados, Math.max(dados.length * 2, bytes + 10));
+            }
+            escreverVarInt(documento - ultimoDocumento);
+            escreverVarInt(frequencia);
+            ultimoDocumento = documento;
+            numeroDocumentos++;
+        }
+
+        private void escreverVarInt(int valor) {
+            while ((valor & ~0x7F) != 0) {
+                dados[bytes++] = (byte) ((valor & 0x7F) | 0x80);
+                valor >>>= 7;
+            }
+            dados[bytes++] = (byte) valor;
+        }
+    }
+
+    /**
+     * Leitura sequencial de uma lista, com avanço por saltos
+     */
+    private static class Cursor {
+        final Lista lista;
+        final double peso; // idf * (K1 + 1)
+        int posicao; // Próximo byte a ler
+        int lidos; // Documentos já lidos
+        int documento = -1; // Documento atual (Integer.MAX_VALUE quando esgotada)
+        int frequencia;
+
+        Cursor(Lista lista, double idf) {
+            this.lista = lista;
+            this.peso = idf * (K1 + 1);
+        }
+
+        /**
+         * Contribuição BM25 da palavra para o documento atual
+         * @param normalizacao K1 * (1 - B + B * comprimento / comprimento médio) do documento
+         */
+        double pontuar(double normalizacao) {
+            return peso * frequencia / (frequencia + normalizacao);
+        }
+
+        /**
+         * Maior contribuição possível da palavra para um documento do bloco atual
+         */
+        double limiteBloco(double fatorComprimento) {
+            int bloco = (lidos - 1) / INTERVALO_SALTOS;
+            if (bloco < (lista.numeroDocumentos - 1) / INTERVALO_SALTOS) {
+                return limite(lista.limites[2 * bloco], lista.limites[2 * bloco + 1], fatorComprimento);
+            }
+            return limite(lista.maiorFrequenciaBloco, lista.menorComprimentoBloco, fatorComprimento);
+        }
+
+        /**
+         * Maior contribuição possível da palavra para qualquer documento
+         */
+        double limiteLista(double fatorComprimento) {
+            return limite(lista.maiorFrequencia, lista.menorComprimento, fatorComprimento);
+        }
+
+        private double limite(int frequencia, int comprimento, double fatorComprimento) {
+            // Mesmas operações, pela mesma ordem, que pontuar: sem erro de arredondamento a mais
+            return peso * frequencia / (frequencia + (K1 * (1 - B) + fatorComprimento * comprimento));
+        }
+
+        /**
+         * Passa ao primeiro documento do bloco seguinte
+         */
+        void saltarBloco() {
+            int bloco = (lidos - 1) / INTERVALO_SALTOS + 1;
+            if (bloco > (lista.numeroDocumentos - 1) / INTERVALO_SALTOS) {
+                documento = Integer.MAX_VALUE;
+                return;
+            }
+            documento = lista.saltos[2 * bloco - 2];
+            posicao = lista.saltos[2 * bloco - 1];
+            lidos = bloco * INTERVALO_SALTOS;
+            avancar();
+        }
+
+        /**
+         * Passa ao documento seguinte
+         */
+        void avancar() {
+            if (lidos == lista.numeroDocumentos) {
+                documento = Integer.MAX_VALUE;
+                return;
+            }
+            documento += lerVarInt();
+            frequencia = lerVarInt();
+            lidos++;
+        }
+
+        /**
+         * Avança até ao primeiro documento maior ou igual ao dado
+         */
+        void avancarPara(int alvo) {
+            if (documento >= alvo) {
+                return;
+            }
+            int[] saltos = lista.saltos;
+            if (saltos != null) {
+                // Último bloco que começa depois de um documento menor que o alvo
+                int blocos = (lista.numeroDocumentos - 1) / INTERVALO_SALTOS;
+                int bloco = lidos / INTERVALO_SALTOS;
+                while (bloco < blocos && saltos[2 * bloco] < alvo) {
+                    bloco++;
+                }
+                if (bloco > 0 && bloco * INTERVALO_SALTOS > lidos) {
+                    documento = saltos[2 * bloco - 2];
+                    posicao = saltos[2 * bloco - 1];
+                    lidos = bloco * INTERVALO_SALTOS;
+                }
+            }
+            while (documento < alvo) {
+                avancar();
+            }
+        }
+
+        private int lerVarInt() {
+            byte[] dados = lista.dados;
+            int valor = 0;
+            for (int deslocamento = 0; ; deslocamento += 7) {
+                byte b = dados[posicao++];
+                valor |= (b & 0x7F) << deslocamento;
+                if (b >= 0) {
+                    return valor;
+                }
+            }
+        }
+    }
+
+    private final Map<String, Lista> listas; // Palavra normalizada -> documentos
+    private int[] idPorDocumento; // Documento -> id da música no catálogo
+    private int[] comprimentos; // Documento -> soma dos pesos das palavras
+    private int[] documentoPorId; // Id da música -> documento atual (-1 se não indexada)
+    private final BitSet removidos; // Documentos de músicas removidas (ignorados nas pesquisas)
+    private int numeroDocumentos;
+    private int documentosAtivos;
+    private long comprimentoAtivo; // Soma dos comprimentos dos documentos ativos
+    private double fatorComprimento; // K1 * B / comprimento médio, fixado no início de cada pesquisa
+
+    public IndicePesquisa() {
+        this.listas = new HashMap<>();
+        this.idPorDocumento = new int[16];
+        this.comprimentos = new int[16];
+        this.documentoPorId = new int[16];
+        Arrays.fill(documentoPorId, -1);
+        this.removidos = new BitSet();
+    }
+
+    /**
+     * Indexa uma música, se ainda não estiver indexada
+     * @param musica Música já registrada no catálogo (com id)
+     * @param nomeAlbum Nome do álbum da música (null se não se souber)
+     */
+    public void indexar(Musica musica, String nomeAlbum) {
+        int id = musica.getId();
+        if (id < 0 || getDocumento(id) >= 0) {
+            return;
+        }
+        Map<String, int[]> frequencias = new HashMap<>();
+        int comprimento = 0;
+        comprimento += contarPalavras(musica.getNome(), PESO_NOME, frequencias);
+        comprimento += contarPalavras(musica.getInterprete(), PESO_INTERPRETE, frequencias);
+        comprimento += contarPalavras(nomeAlbum, PESO_ALBUM, frequencias);
+        comprimento += contarPalavras(musica.getLetra(), PESO_TEXTO, frequencias);
+        for (String linha : musica.getConteudoMusical()) {
+            comprimento += contarPalavras(linha, PESO_TEXTO, frequencias);
+        }
+
+        int documento = numeroDocumentos++;
+        if (documento == idPorDocumento.length) {
+            idPorDocumento = Arrays.copyOf(idPorDocumento, documento * 2);
+            comprimentos = Arrays.copyOf(comprimentos, documento * 2);
+        }
+        if (id >= documentoPorId.length) {
+            int anterior = documentoPorId.length;
+            documentoPorId = Arrays.copyOf(documentoPorId, Math.max(id + 1, anterior * 2));
+            Arrays.fill(documentoPorId, anterior, documentoPorId.length, -1);
+        }
+        idPorDocumento[documento] = id;
+        comprimentos[documento] = comprimento;
+        documentoPorId[id] = documento;
+        documentosAtivos++;
+        comprimentoAtivo += comprimento;
+        for (Map.Entry<String, int[]> entrada : frequencias.entrySet()) {
+            listas.computeIfAbsent(entrada.getKey(), p -> new Lista()).acrescentar(documento, entrada.getValue()[0], comprimento);
+        }
+    }
+
+    /**
+     * Deixa de retornar uma música nas pesquisas
+     * @param id Id da música no catálogo
+     */
+    public void remover(int id) {
+        int documento = getDocumento(id);
+        if (documento < 0) {
+            return;
+        }
+        removidos.set(documento);
+        documentoPorId[id] = -1;
+        documentosAtivos--;
+        comprimentoAtivo -= comprimentos[documento];
+    }
+
+    /**
+     * Pesquisa músicas por palavras. Retorna primeiro as músicas com todas as palavras
+     * da consulta; se não houver nenhuma, as que têm alguma
+     * @param consulta Texto livre (acentos e maiúsculas são ignorados)
+     * @param k Número máximo de resultados
+     * @return Ids das músicas por relevância decrescente
+     */
+    public int[] pesquisar(String consulta, int k) {
+        Set<String> palavras = new LinkedHashSet<>(normalizarPalavras(consulta));
+        if (k <= 0 || palavras.isEmpty() || documentosAtivos == 0) {
+            return new int[0];
+        }
+        List<Cursor> cursores = new ArrayList<>();
+        boolean todasConhecidas = true;
+        for (String palavra : palavras) {
+            Lista lista = listas.get(palavra);
+            if (lista == null) {
+                todasConhecidas = false;
+            } else {
+                cursores.add(new Cursor(lista, idf(lista.numeroDocumentos)));
+            }
+        }
+        if (cursores.isEmpty()) {
+            return new int[0];
+        }
+        fatorComprimento = K1 * B * documentosAtivos / Math.max(1, comprimentoAtivo);
+        // Ordem crescente de tamanho: a lista mais curta conduz a interseção
+        cursores.sort((a, b) -> Integer.compare(a.lista.numeroDocumentos, b.lista.numeroDocumentos));
+
+        PriorityQueue<long[]> melhores = new PriorityQueue<>(k + 1, IndicePesquisa::compararResultados);
+        if (todasConhecidas) {
+            pesquisarTodas(cursores, k, melhores);
+        }
+        if (melhores.isEmpty()) {
+            for (Cursor cursor : cursores) {
+                cursor.posicao = 0;
+                cursor.lidos = 0;
+                cursor.documento = -1;
+            }
+            pesquisarAlguma(cursores, k, melhores);
+        }
+
+        int[] resultado = new int[melhores.size()];
+        for (int i = resultado.length - 1; i >= 0; i--) {
+            resultado[i] = idPorDocumento[(int) melhores.poll()[1]];
+        }
+        return resultado;
+    }
+
+    /**
+     * Retorna o número de músicas indexadas (sem as removidas)
+     * @return Quantidade de músicas
+     */
+    public int getNumeroMusicas() {
+        return documentosAtivos;
+    }
+
+    /**
+     * Retorna o número de palavras distintas no índice
+     * @return Tamanho do vocabulário
+     */
+    public int getNumeroPalavras() {
+        return listas.size();
+    }
+
+    /**
+     * Divide um texto em palavras normalizadas: sem acentos, em minúsculas,
+     * separadas por tudo o que não é letra nem dígito
+     * @param texto Texto a dividir (null conta como vazio)
+     * @return Palavras pela ordem do texto, com repetições
+     */
+    public static List<String> normalizarPalavras(String texto) {
+        List<String> palavras = new ArrayList<>();
+        String normalizado = normalizarTexto(texto);
+        int inicio = -1;
+        for (int i = 0; i <= normalizado.length(); i++) {
+            boolean letra = i < normalizado.length() && Character.isLetterOrDigit(normalizado.charAt(i));
+            if (letra && inicio < 0) {
+                inicio = i;
+            } else if (!letra && inicio >= 0) {
+                palavras.add(normalizado.substring(inicio, i));
+                inicio = -1;
+            }
+        }
+        return palavras;
+    }
+
+    /**
+     * Retira os acentos e passa a minúsculas ("Canção" -> "cancao")
+     * @param texto Texto a normalizar (null conta como vazio)
+     * @return Texto normalizado
+     */
+    public static String normalizarTexto(String texto) {
+        if (texto == null || texto.isEmpty()) {
+            return "";
+        }
+        return ACENTOS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Interseção das listas: só documentos com todas as palavras
+     */
+    private void pesquisarTodas(List<Cursor> cursores, int k, PriorityQueue<long[]> melhores) {
+        Cursor condutor = cursores.get(0);
+        double[] limitesOutras = new double[cursores.size()]; // Maior contribuição de cada uma das outras palavras
+        for (int i = 1; i < cursores.size(); i++) {
+            limitesOutras[i] = cursores.get(i).limiteLista(fatorComprimento);
+        }
+        condutor.avancar();
+        proximo:
+        while (condutor.documento != Integer.MAX_VALUE) {
+            // Com os K lugares ocupados, um bloco que não passa do pior deles não pode entrar
+            // (em empate fica o documento anterior)
+            if (melhores.size() == k) {
+                double limite = condutor.limiteBloco(fatorComprimento);
+                for (int i = 1; i < limitesOutras.length; i++) {
+                    limite += limitesOutras[i];
+                }
+                if (limite <= Double.longBitsToDouble(melhores.peek()[0])) {
+                    condutor.saltarBloco();
+                    continue;
+                }
+            }
+            int documento = condutor.documento;
+            for (int i = 1; i < cursores.size(); i++) {
+                Cursor cursor = cursores.get(i);
+                cursor.avancarPara(documento);
+                if (cursor.documento == Integer.MAX_VALUE) {
+                    return;
+                }
+                if (cursor.documento > documento) {
+                    condutor.avancarPara(cursor.documento);
+                    continue proximo;
+                }
+            }
+            if (!removidos.get(documento)) {
+                double normalizacao = normalizacao(documento);
+                double pontuacao = 0;
+                for (Cursor cursor : cursores) {
+                    pontuacao += cursor.pontuar(normalizacao);
+                }
+                guardar(melhores, k, documento, pontuacao);
+            }
+            condutor.avancar();
+        }
+    }
+
+    /**
+     * União das listas, documento a documento
+     */
+    private void pesquisarAlguma(List<Cursor> cursores, int k, PriorityQueue<long[]> melhores) {
+        for (Cursor cursor : cursores) {
+            cursor.avancar();
+        }
+        while (true) {
+            int documento = Integer.MAX_VALUE;
+            for (Cursor cursor : cursores) {
+                documento = Math.min(documento, cursor.documento);
+            }
+            if (documento == Integer.MAX_VALUE) {
+                return;
+            }
+            double normalizacao = normalizacao(documento);
+            double pontuacao = 0;
+            for (Cursor cursor : cursores) {
+                if (cursor.documento == documento) {
+                    pontuacao += cursor.pontuar(normalizacao);
+                    cursor.avancar();
+                }
+            }
+            if (!removidos.get(documento)) {
+                guardar(melhores, k, documento, pontuacao);
+            }
+        }
+    }
+
+    /**
+     * Mantém os K melhores como (bits da pontuação, documento); o pior fica à cabeça da fila
+     */
+    private static void guardar(PriorityQueue<long[]> melhores, int k, int documento, double pontuacao) {
+        if (melhores.size() < k) {
+            melhores.add(new long[] {Double.doubleToLongBits(pontuacao), documento});
+        } else if (pontuacao > Double.longBitsToDouble(melhores.peek()[0])) {
+            // Em empate fica o pior atual, indexado antes (os documentos chegam por ordem crescente)
+            long[] pior = melhores.poll();
+            pior[0] = Double.doubleToLongBits(pontuacao);
+            pior[1] = documento;
+            melhores.add(pior);
+        }
+    }
+
+    /**
+     * Maior pontuação primeiro; em empate, a música indexada primeiro
+     */
+    private static int compararResultados(long[] a, long[] b) {
+        int comparacao = Double.compare(Double.longBitsToDouble(a[0]), Double.longBitsToDouble(b[0]));
+        return comparacao != 0 ? comparacao : Long.compare(b[1], a[1]);
+    }
+
+    private double normalizacao(int documento) {
+        return K1 * (1 - B) + fatorComprimento * comprimentos[documento];
+    }
+
+    private double idf(int documentosComPalavra) {
+        // A lista pode incluir músicas já removidas, por isso pode ser maior que o número de ativas
+        return Math.log(1 + (Math.max(0, documentosAtivos - documentosComPalavra) + 0.5) / (documentosComPalavra + 0.5));
+    }
+
+    private int getDocumento(int id) {
+        return id >= 0 && id < documentoPorId.length ? documentoPorId[id] : -1;
+    }
+
+    /**
+     * Soma o peso do campo à frequência de cada palavra do texto
+     * @return Peso total das palavras do texto
+     */
+    private static int contarPalavras(String texto, int peso, Map<String, int[]> frequencias) {
+        List<String> palavras = normalizarPalavras(texto);
+        for (String palavra : palavras) {
+            frequencias.computeIfAbsent(palavra, p -> new int[1])[0] += peso;
+        }
+        return palavras.size() * peso;
+    }
+}
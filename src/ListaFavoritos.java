@@ -1,3 +1,4 @@
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.List;
 
@@ -38,7 +39,7 @@ public class ListaFavoritos extends PlaylistPersonalizada implements Serializabl
      * @return true se a música foi adicionada, false caso contrário
      */
     @Override
-    public boolean adicionarMusica(Musica musica) {
+    boolean inserirMusica(Musica musica) {
         // Verificar se a música atende aos critérios de gênero
         if (genero != null && !musica.getGenero().equalsIgnoreCase(genero)) {
             return false;
@@ -54,7 +55,23 @@ public class ListaFavoritos extends PlaylistPersonalizada implements Serializabl
             return false;
         }
         
-        return super.adicionarMusica(musica);
+        return super.inserirMusica(musica);
+    }
+    
+    @Override
+    protected void escreverDados(SaidaBinaria saida) throws IOException {
+        super.escreverDados(saida);
+        saida.escreverString(genero);
+        saida.escreverVarIntComSinal(duracaoMaxima);
+        saida.escreverBoolean(apenasExplicitas);
+    }
+    
+    @Override
+    protected void lerDados(EntradaBinaria entrada) throws IOException {
+        super.lerDados(entrada);
+        genero = entrada.lerString();
+        duracaoMaxima = entrada.lerVarIntComSinal();
+        apenasExplicitas = entrada.lerBoolean();
     }
     
     @Override
@@ -0,0 +1,106 @@
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * Lista de músicas das playlists: guarda só referências às músicas canônicas num array
+ * que as cópias (ver {@link #partilhar}) partilham até uma delas ser alterada. Guardar uma
+ * playlist na biblioteca custa assim alguns bytes, e não uma cópia de cada música.
+ */
+public class ListaMusicas extends AbstractList<Musica> implements RandomAccess, Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final Musica[] VAZIO = new Musica[0];
+
+    private Musica[] musicas;
+    private int tamanho;
+    // O array pode estar a ser usado por outra lista: copiar antes de alterar.
+    // Gravado, porque a serialização Java preserva o array partilhado entre as duas listas
+    private boolean partilhada;
+
+    public ListaMusicas() {
+        this.musicas = VAZIO;
+    }
+
+    /**
+     * Cria uma lista com as músicas dadas, pela mesma ordem
+     * @param musicas Músicas a copiar
+     */
+    public ListaMusicas(Collection<Musica> musicas) {
+        this.musicas = musicas.toArray(VAZIO);
+        this.tamanho = this.musicas.length;
+    }
+
+    /**
+     * Cria uma cópia que partilha o array com esta lista até uma delas ser alterada
+     * @return Nova lista com as mesmas músicas
+     */
+    public ListaMusicas partilhar() {
+        ListaMusicas copia = new ListaMusicas();
+        copia.musicas = musicas;
+        copia.tamanho = tamanho;
+        copia.partilhada = true;
+        partilhada = true;
+        return copia;
+    }
+
+    @Override
+    public Musica get(int indice) {
+        verificarIndice(indice);
+        return musicas[indice];
+    }
+
+    @Override
+    public int size() {
+        return tamanho;
+    }
+
+    @Override
+    public Musica set(int indice, Musica musica) {
+        verificarIndice(indice);
+        separar(musicas.length);
+        Musica anterior = musicas[indice];
+        musicas[indice] = musica;
+        return anterior;
+    }
+
+    @Override
+    public void add(int indice, Musica musica) {
+        if (indice < 0 || indice > tamanho) {
+            throw new IndexOutOfBoundsException("Índice: " + indice + ", tamanho: " + tamanho);
+        }
+        separar(tamanho == musicas.length ? Math.max(8, tamanho + (tamanho >> 1)) : musicas.length);
+        System.arraycopy(musicas, indice, musicas, indice + 1, tamanho - indice);
+        musicas[indice] = musica;
+        tamanho++;
+        modCount++;
+    }
+
+    @Override
+    public Musica remove(int indice) {
+        verificarIndice(indice);
+        separar(musicas.length);
+        Musica removida = musicas[indice];
+        System.arraycopy(musicas, indice + 1, musicas, indice, tamanho - indice - 1);
+        musicas[--tamanho] = null;
+        modCount++;
+        return removida;
+    }
+
+    /**
+     * Garante que o array é só desta lista e tem a capacidade dada, antes de o alterar
+     */
+    private void separar(int capacidade) {
+        if (partilhada || capacidade != musicas.length) {
+            musicas = Arrays.copyOf(musicas, capacidade);
+            partilhada = false;
+        }
+    }
+
+    private void verificarIndice(int indice) {
+        if (indice < 0 || indice >= tamanho) {
+            throw new IndexOutOfBoundsException("Índice: " + indice + ", tamanho: " + tamanho);
+        }
+    }
+}
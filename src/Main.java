@@ -3,6 +3,9 @@ import java.util.*;
 
 
 public class Main {
+    private static final int RESULTADOS_PESQUISA = 10; // Músicas mostradas por pesquisa
+    private static final int SUGESTOES_ALBUNS = 20; // Com mais álbuns, escolhe-se pelo início do nome
+    private static final int PLAYLISTS_POR_PAGINA = 10;
     private static Sistema sistema;
     private static Utilizador utilizadorAtual;
     
@@ -26,6 +29,10 @@ public class Main {
         } else {
             ConsoleUI.exibirSucesso("Estado do sistema carregado com sucesso.");
         }
+        // A partir daqui cada alteração fica registrada no diário, sem esperar pelo "Salvar"
+        if (!sistema.ativarDiario()) {
+            ConsoleUI.exibirErro("Não foi possível ativar o diário de eventos.");
+        }
     }
     
     private static void menuPrincipal() {
@@ -76,7 +83,7 @@ public class Main {
         
         String email = ConsoleUI.lerEntrada("Email: ");
         
-        utilizadorAtual = sistema.getUtilizadores().get(email);
+        utilizadorAtual = sistema.iniciarSessao(email);
         if (utilizadorAtual == null) {
             ConsoleUI.exibirErro("Utilizador não encontrado!");
         } else {
@@ -138,6 +145,7 @@ public class Main {
                 "Gerar playlist personalizada",
                 "Estatísticas pessoais",
                 "Atualizar plano",
+                "Pesquisar música",
                 "Logout"
             };
             
@@ -170,7 +178,11 @@ public class Main {
                 case 8:
                     atualizarPlano();
                     break;
+                case 9:
+                    pesquisarMusica();
+                    break;
                 case 0:
+                    sistema.terminarSessao(utilizadorAtual);
                     utilizadorAtual = null;
                     return;
                 default:
@@ -183,14 +195,56 @@ public class Main {
     private static void reproduzirMusica() {
         ConsoleUI.exibirCabecalho("REPRODUZIR MÚSICA");
         
-        Map<String, Album> albuns = sistema.getAlbuns();
-        if (albuns.isEmpty()) {
-            ConsoleUI.exibirErro("Não há álbuns disponíveis!");
+        Album albumEscolhido = escolherAlbum();
+        if (albumEscolhido == null) {
             ConsoleUI.pausar();
             return;
         }
         
-        List<Album> listaAlbuns = new ArrayList<>(albuns.values());
+        Map<String, Musica> musicas = albumEscolhido.getMusicas();
+        
+        List<Musica> listaMusicas = new ArrayList<>(musicas.values());
+        String[] opcoesMusicas = new String[listaMusicas.size()];
+        for (int i = 0; i < listaMusicas.size(); i++) {
+            opcoesMusicas[i] = listaMusicas.get(i).toString();
+        }
+        
+        ConsoleUI.exibirMenu("Músicas do álbum " + albumEscolhido.getNome() + ":", opcoesMusicas);
+        
+        int escolhaMusica = ConsoleUI.lerInteiro("Escolha uma música: ") - 1;
+        if (escolhaMusica < 0 || escolhaMusica >= listaMusicas.size()) {
+            ConsoleUI.exibirErro("Música inválida!");
+            ConsoleUI.pausar();
+            return;
+        }
+        
+        tocarMusica(listaMusicas.get(escolhaMusica));
+    }
+    
+    /**
+     * Pede um álbum ao utilizador: mostra todos se forem poucos, senão os mais ouvidos
+     * cujo nome começa pelo que for escrito
+     * @return Álbum escolhido ou null se não houver escolha válida (o erro já foi mostrado)
+     */
+    private static Album escolherAlbum() {
+        int numeroAlbuns = sistema.getNumeroAlbuns();
+        if (numeroAlbuns == 0) {
+            ConsoleUI.exibirErro("Não há álbuns disponíveis!");
+            return null;
+        }
+        
+        List<Album> listaAlbuns;
+        if (numeroAlbuns <= SUGESTOES_ALBUNS) {
+            listaAlbuns = new ArrayList<>(sistema.getAlbuns().values());
+        } else {
+            String prefixo = ConsoleUI.lerEntrada("Início do nome do álbum: ");
+            listaAlbuns = sistema.completarAlbuns(prefixo, SUGESTOES_ALBUNS);
+            if (listaAlbuns.isEmpty()) {
+                ConsoleUI.exibirErro("Nenhum álbum começa por \"" + prefixo + "\"!");
+                return null;
+            }
+        }
+        
         String[] opcoesAlbuns = new String[listaAlbuns.size()];
         for (int i = 0; i < listaAlbuns.size(); i++) {
             opcoesAlbuns[i] = listaAlbuns.get(i).toString();
@@ -198,32 +252,49 @@ public class Main {
         
         ConsoleUI.exibirMenu("Álbuns disponíveis:", opcoesAlbuns);
         
-        int escolhaAlbum = ConsoleUI.lerInteiro("Escolha um álbum: ") - 1;
-        if (escolhaAlbum < 0 || escolhaAlbum >= listaAlbuns.size()) {
+        int escolha = ConsoleUI.lerInteiro("Escolha um álbum: ") - 1;
+        if (escolha < 0 || escolha >= listaAlbuns.size()) {
             ConsoleUI.exibirErro("Álbum inválido!");
+            return null;
+        }
+        return listaAlbuns.get(escolha);
+    }
+    
+    private static void pesquisarMusica() {
+        ConsoleUI.exibirCabecalho("PESQUISAR MÚSICA");
+        
+        String consulta = ConsoleUI.lerEntrada("Palavras (nome, intérprete, álbum ou letra): ");
+        List<Musica> resultados = sistema.pesquisarMusicas(consulta, RESULTADOS_PESQUISA);
+        if (resultados.isEmpty()) {
+            ConsoleUI.exibirErro("Nenhuma música encontrada!");
             ConsoleUI.pausar();
             return;
         }
         
-        Album albumEscolhido = listaAlbuns.get(escolhaAlbum);
-        Map<String, Musica> musicas = albumEscolhido.getMusicas();
-        
-        List<Musica> listaMusicas = new ArrayList<>(musicas.values());
-        String[] opcoesMusicas = new String[listaMusicas.size()];
-        for (int i = 0; i < listaMusicas.size(); i++) {
-            opcoesMusicas[i] = listaMusicas.get(i).toString();
+        String[] opcoesMusicas = new String[resultados.size()];
+        for (int i = 0; i < resultados.size(); i++) {
+            opcoesMusicas[i] = resultados.get(i).toString();
         }
         
-        ConsoleUI.exibirMenu("Músicas do álbum " + albumEscolhido.getNome() + ":", opcoesMusicas);
+        ConsoleUI.exibirMenu("Resultados para \"" + consulta + "\":", opcoesMusicas);
         
-        int escolhaMusica = ConsoleUI.lerInteiro("Escolha uma música: ") - 1;
-        if (escolhaMusica < 0 || escolhaMusica >= listaMusicas.size()) {
+        int escolhaMusica = ConsoleUI.lerInteiro("Escolha uma música (0 para voltar): ") - 1;
+        if (escolhaMusica == -1) {
+            return;
+        }
+        if (escolhaMusica < 0 || escolhaMusica >= resultados.size()) {
             ConsoleUI.exibirErro("Música inválida!");
             ConsoleUI.pausar();
             return;
         }
         
-        Musica musicaEscolhida = listaMusicas.get(escolhaMusica);
+        tocarMusica(resultados.get(escolhaMusica));
+    }
+    
+    /**
+     * Registra a reprodução e mostra a música a tocar
+     */
+    private static void tocarMusica(Musica musicaEscolhida) {
         sistema.registrarReproducao(utilizadorAtual, musicaEscolhida);
         
         // Reproduzir a música
@@ -283,28 +354,12 @@ public class Main {
     }
     
     private static void guardarAlbum() {
-        Map<String, Album> albuns = sistema.getAlbuns();
-        if (albuns.isEmpty()) {
-            ConsoleUI.exibirErro("Não há álbuns disponíveis!");
+        Album albumEscolhido = escolherAlbum();
+        if (albumEscolhido == null) {
             return;
         }
         
-        List<Album> listaAlbuns = new ArrayList<>(albuns.values());
-        String[] opcoesAlbuns = new String[listaAlbuns.size()];
-        for (int i = 0; i < listaAlbuns.size(); i++) {
-            opcoesAlbuns[i] = listaAlbuns.get(i).toString();
-        }
-        
-        ConsoleUI.exibirMenu("Álbuns disponíveis:", opcoesAlbuns);
-        
-        int escolha = ConsoleUI.lerInteiro("Escolha um álbum: ") - 1;
-        if (escolha < 0 || escolha >= listaAlbuns.size()) {
-            ConsoleUI.exibirErro("Álbum inválido!");
-            return;
-        }
-        
-        Album albumEscolhido = listaAlbuns.get(escolha);
-        if (utilizadorAtual.guardarAlbum(albumEscolhido)) {
+        if (sistema.guardarAlbum(utilizadorAtual, albumEscolhido)) {
             ConsoleUI.exibirSucesso("Álbum guardado com sucesso!");
         } else {
             ConsoleUI.exibirErro("Erro ao guardar álbum!");
@@ -312,27 +367,49 @@ public class Main {
     }
     
     private static void guardarPlaylist() {
-        List<Playlist> playlistsPublicas = sistema.getPlaylistsPublicas();
-        if (playlistsPublicas.isEmpty()) {
+        if (sistema.getNumeroPlaylistsPublicas() == 0) {
             ConsoleUI.exibirErro("Não há playlists públicas disponíveis!");
             return;
         }
         
-        String[] opcoesPlaylists = new String[playlistsPublicas.size()];
-        for (int i = 0; i < playlistsPublicas.size(); i++) {
-            opcoesPlaylists[i] = playlistsPublicas.get(i).toString();
-        }
-        
-        ConsoleUI.exibirMenu("Playlists públicas disponíveis:", opcoesPlaylists);
+        String prefixo = ConsoleUI.lerEntrada("Início do nome (Enter para as mais guardadas): ").trim();
         
-        int escolha = ConsoleUI.lerInteiro("Escolha uma playlist: ") - 1;
-        if (escolha < 0 || escolha >= playlistsPublicas.size()) {
-            ConsoleUI.exibirErro("Playlist inválida!");
-            return;
+        // Mostrar uma página de cada vez, a seguinte só se for pedida
+        Playlist playlistEscolhida = null;
+        String cursor = null;
+        while (playlistEscolhida == null) {
+            CatalogoPlaylists.Pagina pagina = prefixo.isEmpty()
+                ? sistema.listarPlaylistsPublicas(cursor, PLAYLISTS_POR_PAGINA)
+                : sistema.procurarPlaylistsPublicas(prefixo, cursor, PLAYLISTS_POR_PAGINA);
+            List<Playlist> playlists = pagina.getPlaylists();
+            if (playlists.isEmpty()) {
+                ConsoleUI.exibirErro("Nenhuma playlist pública encontrada!");
+                return;
+            }
+            
+            boolean haMais = pagina.getCursor() != null;
+            String[] opcoesPlaylists = new String[playlists.size() + (haMais ? 1 : 0)];
+            for (int i = 0; i < playlists.size(); i++) {
+                opcoesPlaylists[i] = playlists.get(i) + " - guardada " + sistema.getVezesGuardada(playlists.get(i)) + " vez(es)";
+            }
+            if (haMais) {
+                opcoesPlaylists[playlists.size()] = "Mais playlists...";
+            }
+            
+            ConsoleUI.exibirMenu("Playlists públicas disponíveis:", opcoesPlaylists);
+            
+            int escolha = ConsoleUI.lerInteiro("Escolha uma playlist: ") - 1;
+            if (haMais && escolha == playlists.size()) {
+                cursor = pagina.getCursor();
+            } else if (escolha < 0 || escolha >= playlists.size()) {
+                ConsoleUI.exibirErro("Playlist inválida!");
+                return;
+            } else {
+                playlistEscolhida = playlists.get(escolha);
+            }
         }
         
-        Playlist playlistEscolhida = playlistsPublicas.get(escolha);
-        if (utilizadorAtual.guardarPlaylist(playlistEscolhida)) {
+        if (sistema.guardarPlaylist(utilizadorAtual, playlistEscolhida)) {
             ConsoleUI.exibirSucesso("Playlist guardada com sucesso!");
         } else {
             ConsoleUI.exibirErro("Erro ao guardar playlist!");
@@ -407,7 +484,7 @@ public class Main {
         }
         
         if (lista != null && lista.getNumeroMusicas() > 0) {
-            utilizadorAtual.guardarPlaylist(lista);
+            sistema.guardarPlaylist(utilizadorAtual, lista);
             ConsoleUI.exibirSucesso("Playlist gerada e guardada com sucesso!");
             System.out.println("Detalhes: " + lista);
         } else {
@@ -491,7 +568,7 @@ public class Main {
                 return;
         }
         
-        utilizadorAtual.setPlano(novoPlano);
+        sistema.atualizarPlano(utilizadorAtual, novoPlano);
         ConsoleUI.exibirSucesso("Plano atualizado com sucesso para: " + novoPlano.getNome());
         ConsoleUI.pausar();
     }
@@ -523,6 +600,7 @@ public class Main {
                     "Nenhum"},
             {"🎸 Gênero mais reproduzido", 
                 generoMaisReproduzido != null ? generoMaisReproduzido : "Nenhum"},
+            {"▶️ Total de reproduções", String.valueOf(sistema.getNumeroTotalReproducoes())},
             {"📋 Playlists públicas", String.valueOf(sistema.getNumeroPlaylistsPublicas())},
             {"🏆 Utilizador com mais playlists", 
                 utilizadorMaisPlaylists != null ? 
@@ -546,7 +624,9 @@ public class Main {
     private static void carregarSistema() {
         Sistema sistemaCarregado = Sistema.carregarEstado();
         if (sistemaCarregado != null) {
+            sistema.fechar();
             sistema = sistemaCarregado;
+            sistema.ativarDiario();
             ConsoleUI.exibirSucesso("Estado do sistema carregado com sucesso!");
         } else {
             ConsoleUI.exibirErro("Erro ao carregar estado do sistema!");
@@ -558,6 +638,7 @@ public class Main {
         if (sistema.salvarEstado()) {
             ConsoleUI.exibirSucesso("Estado salvo com sucesso!");
         }
+        sistema.fechar();
         ConsoleUI.exibirInfo("Obrigado por usar o SpotifUM!");
         System.exit(0);
     }
@@ -610,11 +691,10 @@ public class Main {
         sistema.registrarUtilizador(admin);
         
         // Criar uma playlist pública de exemplo
-        Playlist playlistPublica = admin.criarPlaylist("Rock Classics");
-        playlistPublica.adicionarMusica(musica1);
-        playlistPublica.adicionarMusica(musica2);
-        playlistPublica.setPublica(true);
-        sistema.adicionarPlaylistPublica(playlistPublica);
+        Playlist playlistPublica = sistema.criarPlaylist(admin, "Rock Classics");
+        sistema.adicionarMusicaPlaylist(admin, playlistPublica, musica1);
+        sistema.adicionarMusicaPlaylist(admin, playlistPublica, musica2);
+        sistema.publicarPlaylist(admin, playlistPublica);
         
         ConsoleUI.exibirSucesso("Dados iniciais criados com sucesso!");
     }
@@ -745,7 +825,7 @@ public class Main {
         
         String nome = ConsoleUI.lerEntrada("Nome da playlist: ");
         
-        Playlist playlist = utilizadorAtual.criarPlaylist(nome);
+        Playlist playlist = sistema.criarPlaylist(utilizadorAtual, nome);
         if (playlist == null) {
             ConsoleUI.exibirErro("Erro ao criar playlist!");
             ConsoleUI.pausar();
@@ -771,8 +851,7 @@ public class Main {
                     adicionarMusicaPlaylist(playlist);
                     break;
                 case 2:
-                    if (utilizadorAtual.tornarPlaylistPublica(nome)) {
-                        sistema.adicionarPlaylistPublica(playlist);
+                    if (sistema.publicarPlaylist(utilizadorAtual, playlist)) {
                         ConsoleUI.exibirSucesso("Playlist tornada pública!");
                     } else {
                         ConsoleUI.exibirErro("Erro ao tornar playlist pública!");
@@ -784,28 +863,32 @@ public class Main {
     
     private static void adicionarMusicaPlaylist(Playlist playlist) {
         // Reutilizar código similar ao reproduzirMusica, mas adicionando à playlist
-        Map<String, Album> albuns = sistema.getAlbuns();
-        if (albuns.isEmpty()) {
-            ConsoleUI.exibirErro("Não há álbuns disponíveis!");
+        Album albumEscolhido = escolherAlbum();
+        if (albumEscolhido == null) {
             return;
         }
         
-        List<Album> listaAlbuns = new ArrayList<>(albuns.values());
-        String[] opcoesAlbuns = new String[listaAlbuns.size()];
-        for (int i = 0; i < listaAlbuns.size(); i++) {
-            opcoesAlbuns[i] = listaAlbuns.get(i).toString();
+        Map<String, Musica> musicas = albumEscolhido.getMusicas();
+        
+        List<Musica> listaMusicas = new ArrayList<>(musicas.values());
+        String[] opcoesMusicas = new String[listaMusicas.size()];
+        for (int i = 0; i < listaMusicas.size(); i++) {
+            opcoesMusicas[i] = listaMusicas.get(i).toString();
         }
         
-        ConsoleUI.exibirMenu("Álbuns disponíveis:", opcoesAlbuns);
+        ConsoleUI.exibirMenu("Músicas do álbum " + albumEscolhido.getNome() + ":", opcoesMusicas);
         
-        int escolhaAlbum = ConsoleUI.lerInteiro("Escolha um álbum: ") - 1;
-        if (escolhaAlbum < 0 || escolhaAlbum >= listaAlbuns.size()) {
-            ConsoleUI.exibirErro("Álbum inválido!");
+        int escolhaMusica = ConsoleUI.lerInteiro("Escolha uma música: ") - 1;
+        if (escolhaMusica < 0 || escolhaMusica >= listaMusicas.size()) {
+            ConsoleUI.exibirErro("Música inválida!");
             return;
         }
         
-        Album albumEscolhido = listaAlbuns.get(escolhaAlbum);
-        Map<String, Musica> musicas = albumEscolhido.getMusicas();
-
+        // Pelo sistema, para a alteração ficar registrada no diário
+        if (sistema.adicionarMusicaPlaylist(utilizadorAtual, playlist, listaMusicas.get(escolhaMusica))) {
+            ConsoleUI.exibirSucesso("Música adicionada à playlist!");
+        } else {
+            ConsoleUI.exibirErro("Erro ao adicionar música à playlist!");
+        }
     }
 }
\ No newline at end of file
@@ -1,9 +1,17 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class Musica implements Serializable, Cloneable {
     private static final long serialVersionUID = 1L;
+    private static final int TIPO_NORMAL = 0;
+    private static final int TIPO_EXPLICITA = 1;
+    private static final int NAO_CODIFICADO = -2; // Códigos ainda por ler da tabela do catálogo
     
     private String nome;
     private String interprete;
@@ -12,7 +20,16 @@ public class Musica implements Serializable, Cloneable {
     private ArrayList<String> conteudoMusical;
     private String genero;
     private int duracao; // em segundos
-    private int contagemReproducoes;
+    private int contagemReproducoes; // Usada apenas enquanto a música não pertence a um catálogo
+    private int id; // Identificador estável atribuído pelo catálogo (-1 se não registrada)
+    private Catalogo catalogo; // Registro central de reproduções (partilhado pelos clones)
+    // Quando carregada do arquivo de estado, a letra e o conteúdo musical ficam no arquivo
+    // e só são lidos a pedido (letra e conteudoMusical ficam a null)
+    private transient ArmazemTexto armazemTexto;
+    private transient long posicaoTexto;
+    private transient int tamanhoTexto;
+    private transient int codigoGenero; // Código do gênero na TabelaSimbolos do catálogo
+    private transient int codigoInterprete; // Código do intérprete na TabelaSimbolos do catálogo
 
     public Musica(String nome, String interprete, String editora, String letra, String genero, int duracao) {
         this.nome = nome;
@@ -23,9 +40,32 @@ public class Musica implements Serializable, Cloneable {
         this.genero = genero;
         this.duracao = duracao;
         this.contagemReproducoes = 0;
+        this.id = -1;
+        this.catalogo = null;
+        this.codigoGenero = -1;
+        this.codigoInterprete = -1;
+    }
+    
+    /**
+     * Lê da tabela de símbolos do catálogo os códigos do gênero e do intérprete
+     * (-1 fora de um catálogo). Pode correr em várias threads: os códigos lidos são iguais
+     */
+    private void codificarSimbolos() {
+        TabelaSimbolos simbolos = catalogo != null ? catalogo.getSimbolos() : null;
+        codigoInterprete = simbolos != null ? simbolos.codigo(interprete) : -1;
+        codigoGenero = simbolos != null ? simbolos.codigo(genero) : -1;
     }
 
+    /**
+     * Acrescenta uma linha ao conteúdo musical, antes de a música entrar no catálogo
+     * @param linha Linha do conteúdo musical
+     * @throws IllegalStateException Se a música já pertence a um catálogo (é partilhada por álbuns, playlists e bibliotecas)
+     */
     public void adicionarLinhaMusical(String linha) {
+        if (catalogo != null) {
+            throw new IllegalStateException("A música " + nome + " já está no catálogo e não pode ser alterada");
+        }
+        carregarTexto();
         this.conteudoMusical.add(linha);
     }
 
@@ -36,9 +76,10 @@ public class Musica implements Serializable, Cloneable {
         System.out.println("Duração: " + formatarDuracao());
         System.out.println("Editora: " + editora);
         System.out.println("\n--- Letra ---");
-        System.out.println(letra);
+        System.out.println(getLetra());
         
         // Exibir conteúdo musical se existir
+        List<String> conteudoMusical = getConteudoMusical();
         if (!conteudoMusical.isEmpty()) {
             System.out.println("\n--- Conteúdo Musical ---");
             for (String linha : conteudoMusical) {
@@ -47,12 +88,61 @@ public class Musica implements Serializable, Cloneable {
         }
         
         System.out.println("\n===========================\n");
-
-        incrementarContagem();
     }
 
+    /**
+     * Conta uma reprodução no registro do catálogo, de modo que clones da mesma
+     * música partilham um único contador
+     */
     public void incrementarContagem() {
-        this.contagemReproducoes++;
+        incrementarContagem(1);
+    }
+    
+    /**
+     * Conta várias reproduções de uma vez (ex.: as de um lote)
+     * @param vezes Número de reproduções a contar
+     */
+    public void incrementarContagem(int vezes) {
+        if (catalogo != null) {
+            catalogo.incrementarContagem(id, vezes);
+        } else {
+            synchronized (this) {
+                this.contagemReproducoes += vezes;
+            }
+        }
+    }
+    
+    /**
+     * Associa a música a um catálogo com o identificador dado
+     * @param catalogo Catálogo que passa a guardar a contagem de reproduções
+     * @param id Identificador da música no catálogo
+     */
+    void ligarCatalogo(Catalogo catalogo, int id) {
+        this.catalogo = catalogo;
+        this.id = id;
+        codificarSimbolos();
+        // Partilhar os atributos repetidos com as outras músicas do catálogo
+        TabelaSimbolos simbolos = catalogo.getSimbolos();
+        genero = simbolos.simbolo(codigoGenero);
+        interprete = simbolos.simbolo(codigoInterprete);
+        editora = simbolos.canonico(editora);
+    }
+    
+    /**
+     * Verifica se a música já foi registrada no catálogo indicado
+     * @param catalogo Catálogo a verificar
+     * @return true se a música tem identificador nesse catálogo
+     */
+    boolean pertenceA(Catalogo catalogo) {
+        return this.catalogo == catalogo;
+    }
+    
+    /**
+     * Retorna o catálogo que atribuiu o id da música
+     * @return Catálogo da música (null se não registrada)
+     */
+    Catalogo getCatalogo() {
+        return catalogo;
     }
 
     private String formatarDuracao() {
@@ -61,12 +151,180 @@ public class Musica implements Serializable, Cloneable {
         return String.format("%d:%02d", minutos, segundos);
     }
 
+    /**
+     * Escreve a música completa no formato binário do estado do sistema
+     * @param saida Destino da escrita
+     */
+    void escrever(SaidaBinaria saida) throws IOException {
+        boolean explicita = this instanceof MusicaExplicita;
+        saida.escreverByte(explicita ? TIPO_EXPLICITA : TIPO_NORMAL);
+        saida.escreverString(nome);
+        saida.escreverSimbolo(interprete);
+        saida.escreverSimbolo(editora);
+        saida.escreverSimbolo(genero);
+        saida.escreverVarInt(duracao);
+        // Texto num bloco próprio, para poder ficar no arquivo sem ser lido ao carregar
+        ByteBuffer guardado = lerBlocoTexto();
+        if (guardado != null) {
+            saida.escreverVarInt(guardado.remaining());
+            if (saida.getRealocacaoTextos() != null) {
+                saida.getRealocacaoTextos().registrar(this, saida.getPosicao());
+            }
+            saida.escreverBytes(guardado);
+        } else {
+            byte[] bloco = ArmazemTexto.codificar(letra, conteudoMusical);
+            saida.escreverVarInt(bloco.length);
+            saida.escreverBytes(bloco);
+        }
+        if (explicita) {
+            saida.escreverString(((MusicaExplicita) this).getAvisoConteudo());
+        }
+        saida.escreverVarIntComSinal(catalogo != null ? id : -1);
+        saida.escreverVarInt(catalogo != null ? 0 : contagemReproducoes);
+    }
+    
+    /**
+     * Lê uma música escrita por {@link #escrever}, ligando-a ao catálogo se tiver identificador.
+     * Se a entrada tiver um armazém de texto, a letra e o conteúdo musical não são lidos.
+     * @param entrada Origem da leitura
+     * @param catalogo Catálogo do sistema a ser carregado
+     * @return A música lida
+     */
+    static Musica ler(EntradaBinaria entrada, Catalogo catalogo) throws IOException {
+        int tipo = entrada.lerByte();
+        String nome = entrada.lerString();
+        String interprete = entrada.lerSimbolo();
+        String editora = entrada.lerSimbolo();
+        String genero = entrada.lerSimbolo();
+        int duracao = entrada.lerVarInt();
+        int tamanhoTexto = entrada.lerVarInt();
+        ArmazemTexto armazem = entrada.getArmazemTexto();
+        long posicaoTexto = 0;
+        ByteBuffer bloco = null;
+        if (armazem != null) {
+            posicaoTexto = entrada.getPosicao();
+            entrada.saltar(tamanhoTexto);
+        } else {
+            bloco = ByteBuffer.wrap(entrada.lerBytes(tamanhoTexto));
+        }
+        String letra = bloco != null ? ArmazemTexto.lerLetra(bloco) : null;
+        Musica musica = tipo == TIPO_EXPLICITA
+            ? new MusicaExplicita(nome, interprete, editora, letra, genero, duracao, entrada.lerString())
+            : new Musica(nome, interprete, editora, letra, genero, duracao);
+        if (bloco != null) {
+            musica.conteudoMusical = ArmazemTexto.lerLinhas(bloco);
+        } else {
+            musica.conteudoMusical = null;
+            musica.armazemTexto = armazem;
+            musica.posicaoTexto = posicaoTexto;
+            musica.tamanhoTexto = tamanhoTexto;
+        }
+        int id = entrada.lerVarIntComSinal();
+        musica.contagemReproducoes = entrada.lerVarInt();
+        if (id >= 0) {
+            musica.ligarCatalogo(catalogo, id);
+        }
+        return musica;
+    }
+    
+    /**
+     * Escreve uma referência a uma música: apenas o identificador se ela estiver ativa
+     * no catálogo, ou a música completa caso contrário
+     * @param saida Destino da escrita
+     * @param musica Música a referenciar
+     * @param catalogo Catálogo do sistema
+     */
+    static void escreverReferencia(SaidaBinaria saida, Musica musica, Catalogo catalogo) throws IOException {
+        if (musica.pertenceA(catalogo) && catalogo.getMusica(musica.id) != null) {
+            saida.escreverVarInt(musica.id + 1);
+        } else {
+            saida.escreverVarInt(0);
+            musica.escrever(saida);
+        }
+    }
+    
+    /**
+     * Lê uma referência escrita por {@link #escreverReferencia}
+     * @param entrada Origem da leitura
+     * @param catalogo Catálogo do sistema, já carregado
+     * @return A música canônica do catálogo ou a música completa lida
+     * @throws IOException Se a referência não corresponder a nenhuma música do catálogo
+     */
+    static Musica lerReferencia(EntradaBinaria entrada, Catalogo catalogo) throws IOException {
+        int referencia = entrada.lerVarInt();
+        if (referencia == 0) {
+            return ler(entrada, catalogo);
+        }
+        Musica musica = catalogo.getMusica(referencia - 1);
+        if (musica == null) {
+            throw new IOException("Referência a uma música desconhecida: " + (referencia - 1));
+        }
+        return musica;
+    }
+    
+    /**
+     * Passa a ler o texto de outro arquivo de estado, onde foi escrito ao salvar
+     * (ver {@link RealocacaoTextos})
+     * @param armazem Armazém do arquivo novo
+     * @param posicao Posição do bloco de texto no arquivo novo
+     */
+    synchronized void religarTexto(ArmazemTexto armazem, long posicao) {
+        if (armazemTexto != null) {
+            armazemTexto = armazem;
+            posicaoTexto = posicao;
+        }
+    }
+    
+    /**
+     * Lê o bloco com a letra e o conteúdo musical do armazém, se o texto ainda lá estiver.
+     * Sincronizado para não ler a posição de um arquivo com o armazém de outro
+     */
+    private synchronized ByteBuffer lerBlocoTexto() {
+        return armazemTexto != null ? armazemTexto.ler(posicaoTexto, tamanhoTexto) : null;
+    }
+    
+    /**
+     * Traz a letra e o conteúdo musical para memória, deixando de depender do arquivo de estado
+     */
+    private synchronized void carregarTexto() {
+        if (armazemTexto != null) {
+            ByteBuffer bloco = armazemTexto.ler(posicaoTexto, tamanhoTexto);
+            letra = ArmazemTexto.lerLetra(bloco);
+            conteudoMusical = ArmazemTexto.lerLinhas(bloco);
+            armazemTexto = null;
+        }
+    }
+    
+    /**
+     * Os campos do armazém de texto não são serializáveis: gravar sempre o texto completo
+     */
+    private void writeObject(ObjectOutputStream oos) throws IOException {
+        carregarTexto();
+        oos.defaultWriteObject();
+    }
+    
+    /**
+     * Estados gravados antes de existirem identificadores não trazem o campo id. Os códigos
+     * são lidos no primeiro uso, quando a tabela de símbolos do catálogo já foi reconstruída
+     */
+    private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+        ois.defaultReadObject();
+        if (catalogo == null) {
+            id = -1;
+        }
+        codigoGenero = NAO_CODIFICADO;
+        codigoInterprete = NAO_CODIFICADO;
+    }
+
     @Override
     public Musica clone() {
         try {
             Musica clone = (Musica) super.clone();
             // Clonar lista de conteúdo musical para evitar compartilhamento de referência
-            clone.conteudoMusical = new ArrayList<>(this.conteudoMusical);
+            // (o texto no armazém é só de leitura e pode ser partilhado)
+            if (this.conteudoMusical != null) {
+                clone.conteudoMusical = new ArrayList<>(this.conteudoMusical);
+            }
             return clone;
         } catch (CloneNotSupportedException e) {
             // Isso não deveria acontecer já que implementamos Cloneable
@@ -89,23 +347,70 @@ public class Musica implements Serializable, Cloneable {
     }
 
     public String getLetra() {
+        ByteBuffer guardado = lerBlocoTexto();
+        if (guardado != null) {
+            return ArmazemTexto.lerLetra(guardado); // Sem reter no heap
+        }
         return letra;
     }
 
     public List<String> getConteudoMusical() {
-        return new ArrayList<>(conteudoMusical); // Retorna uma cópia para proteger o encapsulamento
+        ByteBuffer guardado = lerBlocoTexto();
+        if (guardado != null) {
+            return Collections.unmodifiableList(ArmazemTexto.lerLinhas(guardado));
+        }
+        return Collections.unmodifiableList(conteudoMusical); // Vista só de leitura para proteger o encapsulamento
     }
 
     public String getGenero() {
         return genero;
     }
+    
+    /**
+     * Retorna o código do gênero na {@link TabelaSimbolos} do catálogo da música
+     * @return Código do gênero (-1 se não tiver gênero ou não pertencer a um catálogo)
+     */
+    public int getCodigoGenero() {
+        int codigo = codigoGenero;
+        if (codigo == NAO_CODIFICADO) {
+            codificarSimbolos();
+            codigo = codigoGenero;
+        }
+        return codigo;
+    }
+    
+    /**
+     * Retorna o código do intérprete na {@link TabelaSimbolos} do catálogo da música
+     * @return Código do intérprete (-1 se não tiver intérprete ou não pertencer a um catálogo)
+     */
+    public int getCodigoInterprete() {
+        int codigo = codigoInterprete;
+        if (codigo == NAO_CODIFICADO) {
+            codificarSimbolos();
+            codigo = codigoInterprete;
+        }
+        return codigo;
+    }
+    
+    /**
+     * Retorna a chave que identifica a música nas músicas mais ouvidas de cada utilizador
+     * ("nome-intérprete"); as contagens usam o id, e a chave só é montada ao consultá-las
+     * @return Chave da música
+     */
+    public String getChave() {
+        return nome + "-" + interprete;
+    }
 
     public int getDuracao() {
         return duracao;
     }
 
     public int getContagemReproducoes() {
-        return contagemReproducoes;
+        return catalogo != null ? catalogo.getContagemReproducoes(id) : contagemReproducoes;
+    }
+    
+    public int getId() {
+        return id;
     }
     
     @Override
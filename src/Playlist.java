@@ -1,18 +1,26 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public abstract class Playlist implements Serializable, Cloneable {
     private static final long serialVersionUID = 1L;
+    private static final int TIPO_ALEATORIA = 0;
+    private static final int TIPO_PERSONALIZADA = 1;
+    private static final int TIPO_FAVORITOS = 2;
     
     protected String nome;
-    protected List<Musica> musicas;
+    protected String dono; // Email do utilizador que a criou (null se gerada pelo sistema)
+    protected List<Musica> musicas; // Uma ListaMusicas (declarada como List para ler estados antigos)
     protected boolean publica;
     protected int indiceAtual;
+    private transient int duracaoTotal; // Soma das durações das músicas, mantida a cada alteração
+    private transient boolean soLeitura; // Criada, guardada ou publicada: só o Sistema a altera
     
     public Playlist(String nome) {
         this.nome = nome;
-        this.musicas = new ArrayList<>();
+        this.musicas = new ListaMusicas();
         this.publica = false;
         this.indiceAtual = 0;
     }
@@ -21,18 +29,59 @@ public abstract class Playlist implements Serializable, Cloneable {
      * Adiciona uma música à playlist
      * @param musica Música a ser adicionada
      * @return true se a música foi adicionada com sucesso
+     * @throws IllegalStateException Se a playlist é do sistema (usar {@link Sistema#adicionarMusicaPlaylist})
      */
     public boolean adicionarMusica(Musica musica) {
-        return musicas.add(musica);
+        verificarAlteravel();
+        return inserirMusica(musica);
+    }
+    
+    /**
+     * Adiciona uma música mesmo a uma playlist só de leitura: para o Sistema, que regista a
+     * alteração. As subclasses que filtram músicas fazem-no aqui.
+     */
+    boolean inserirMusica(Musica musica) {
+        musicas.add(musica);
+        duracaoTotal += musica.getDuracao();
+        return true;
     }
     
     /**
      * Remove uma música da playlist
      * @param musica Música a ser removida
      * @return true se a música foi removida com sucesso
+     * @throws IllegalStateException Se a playlist é do sistema (usar {@link Sistema#removerMusicaPlaylist})
      */
     public boolean removerMusica(Musica musica) {
-        return musicas.remove(musica);
+        verificarAlteravel();
+        return retirarMusica(musica);
+    }
+    
+    /**
+     * Remove uma música mesmo de uma playlist só de leitura: para o Sistema, que regista a alteração
+     */
+    boolean retirarMusica(Musica musica) {
+        int indice = musicas.indexOf(musica);
+        if (indice < 0) {
+            return false;
+        }
+        duracaoTotal -= musicas.remove(indice).getDuracao();
+        return true;
+    }
+    
+    /**
+     * Impede as alterações pelos métodos públicos: a playlist passou a ser partilhada pelo
+     * sistema (criada por um utilizador, guardada numa biblioteca ou publicada), que é quem
+     * regista as alterações
+     */
+    void tornarSoLeitura() {
+        soLeitura = true;
+    }
+    
+    protected void verificarAlteravel() {
+        if (soLeitura) {
+            throw new IllegalStateException("A playlist " + nome + " é do sistema e só pode ser alterada através dele");
+        }
     }
     
     /**
@@ -71,32 +120,111 @@ public abstract class Playlist implements Serializable, Cloneable {
     }
     
     /**
-     * Retorna a duração total da playlist em segundos
+     * Retorna a duração total da playlist em segundos, em tempo constante
      * @return Duração total em segundos
      */
     public int getDuracaoTotal() {
-        int duracaoTotal = 0;
+        return duracaoTotal;
+    }
+    
+    /**
+     * Escreve a playlist no formato binário do estado do sistema
+     * @param saida Destino da escrita
+     * @param catalogo Catálogo do sistema, usado para referenciar músicas
+     */
+    void escrever(SaidaBinaria saida, Catalogo catalogo) throws IOException {
+        int tipo = this instanceof ListaFavoritos ? TIPO_FAVORITOS
+                 : this instanceof PlaylistPersonalizada ? TIPO_PERSONALIZADA
+                 : TIPO_ALEATORIA;
+        saida.escreverByte(tipo);
+        saida.escreverString(nome);
+        saida.escreverString(dono);
+        saida.escreverBoolean(publica);
+        saida.escreverVarInt(indiceAtual);
+        escreverDados(saida);
+        saida.escreverVarInt(musicas.size());
         for (Musica musica : musicas) {
-            duracaoTotal += musica.getDuracao();
+            Musica.escreverReferencia(saida, musica, catalogo);
         }
-        return duracaoTotal;
+    }
+    
+    /**
+     * Lê uma playlist escrita por {@link #escrever}
+     * @param entrada Origem da leitura
+     * @param catalogo Catálogo do sistema, já carregado
+     * @return A playlist lida
+     */
+    static Playlist ler(EntradaBinaria entrada, Catalogo catalogo) throws IOException {
+        int tipo = entrada.lerByte();
+        String nome = entrada.lerString();
+        Playlist playlist;
+        switch (tipo) {
+            case TIPO_FAVORITOS:
+                playlist = new ListaFavoritos(nome);
+                break;
+            case TIPO_PERSONALIZADA:
+                playlist = new PlaylistPersonalizada(nome);
+                break;
+            case TIPO_ALEATORIA:
+                playlist = new PlaylistAleatoria(nome);
+                break;
+            default:
+                throw new IOException("Tipo de playlist desconhecido: " + tipo);
+        }
+        playlist.dono = entrada.lerString();
+        playlist.publica = entrada.lerBoolean();
+        playlist.indiceAtual = entrada.lerVarInt();
+        playlist.lerDados(entrada);
+        int numeroMusicas = entrada.lerVarInt();
+        for (int i = 0; i < numeroMusicas; i++) {
+            // Adicionar diretamente: os filtros das subclasses já foram aplicados quando a playlist foi criada
+            Musica musica = Musica.lerReferencia(entrada, catalogo);
+            playlist.musicas.add(musica);
+            playlist.duracaoTotal += musica.getDuracao();
+        }
+        return playlist;
+    }
+    
+    /**
+     * Escreve os campos específicos de cada tipo de playlist
+     * @param saida Destino da escrita
+     */
+    protected void escreverDados(SaidaBinaria saida) throws IOException {
+    }
+    
+    /**
+     * Lê os campos escritos por {@link #escreverDados}
+     * @param entrada Origem da leitura
+     */
+    protected void lerDados(EntradaBinaria entrada) throws IOException {
     }
     
     @Override
     public Playlist clone() {
         try {
             Playlist clone = (Playlist) super.clone();
-            // Clonar lista de músicas para evitar compartilhamento de referência
-            clone.musicas = new ArrayList<>();
-            for (Musica musica : this.musicas) {
-                clone.musicas.add(musica.clone());
-            }
+            // As músicas canônicas são partilhadas, e o array só é copiado quando uma das listas mudar
+            clone.musicas = ((ListaMusicas) musicas).partilhar();
+            clone.soLeitura = false;
             return clone;
         } catch (CloneNotSupportedException e) {
             throw new RuntimeException("Erro ao clonar Playlist", e);
         }
     }
     
+    /**
+     * Recalcula a duração total, que não é gravada, e passa estados antigos para a lista compacta
+     */
+    private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+        ois.defaultReadObject();
+        if (!(musicas instanceof ListaMusicas)) {
+            musicas = new ListaMusicas(musicas);
+        }
+        for (Musica musica : musicas) {
+            duracaoTotal += musica.getDuracao();
+        }
+    }
+    
     // Getters e Setters
     
     public String getNome() {
@@ -104,15 +232,20 @@ public abstract class Playlist implements Serializable, Cloneable {
     }
     
     public void setNome(String nome) {
+        verificarAlteravel();
         this.nome = nome;
     }
     
+    public String getDono() {
+        return dono;
+    }
+    
+    void setDono(String dono) {
+        this.dono = dono;
+    }
+    
     public List<Musica> getMusicas() {
-        List<Musica> copiaMusicas = new ArrayList<>();
-        for (Musica musica : musicas) {
-            copiaMusicas.add(musica.clone());
-        }
-        return copiaMusicas;
+        return Collections.unmodifiableList(musicas); // Vista só de leitura, sem cópias
     }
     
     public int getNumeroMusicas() {
@@ -124,9 +257,17 @@ public abstract class Playlist implements Serializable, Cloneable {
     }
     
     public void setPublica(boolean publica) {
+        verificarAlteravel(); // Publicar com Sistema.publicarPlaylist
         this.publica = publica;
     }
     
+    /**
+     * Marca como pública mesmo uma playlist só de leitura: para o Sistema, que a publica
+     */
+    void tornarPublica() {
+        this.publica = true;
+    }
+    
     @Override
     public String toString() {
         return nome + " (" + getNumeroMusicas() + " música(s), " + 
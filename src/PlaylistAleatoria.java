@@ -35,6 +35,7 @@ public class PlaylistAleatoria extends Playlist implements Serializable {
      * Embaralha a ordem das músicas na playlist
      */
     public void embaralhar() {
+        verificarAlteravel();
         Collections.shuffle(musicas, random);
         indiceAtual = 0;
     }
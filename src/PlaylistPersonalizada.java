@@ -1,3 +1,4 @@
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.Collections;
 import java.util.Random;
@@ -76,10 +77,21 @@ public class PlaylistPersonalizada extends Playlist implements Serializable {
      * Embaralha a ordem das músicas na playlist
      */
     public void embaralhar() {
+        verificarAlteravel();
         Collections.shuffle(musicas, random);
         indiceAtual = 0;
     }
     
+    @Override
+    protected void escreverDados(SaidaBinaria saida) throws IOException {
+        saida.escreverBoolean(modoAleatorio);
+    }
+    
+    @Override
+    protected void lerDados(EntradaBinaria entrada) throws IOException {
+        modoAleatorio = entrada.lerBoolean();
+    }
+    
     @Override
     public PlaylistPersonalizada clone() {
         PlaylistPersonalizada clone = (PlaylistPersonalizada) super.clone();
@@ -0,0 +1,41 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Posições, no arquivo a ser salvo, dos textos das músicas que os liam de outro arquivo
+ * de estado. Depois de o arquivo novo estar completo, as músicas passam a ler dele e o
+ * anterior pode ser fechado e substituído.
+ */
+public class RealocacaoTextos {
+    private final List<Musica> musicas;
+    private long[] posicoes;
+
+    public RealocacaoTextos() {
+        this.musicas = new ArrayList<>();
+        this.posicoes = new long[16];
+    }
+
+    /**
+     * Registra onde foi escrito o texto de uma música
+     * @param musica Música com o texto num armazém
+     * @param posicao Posição do bloco de texto no arquivo novo
+     */
+    public void registrar(Musica musica, long posicao) {
+        if (musicas.size() == posicoes.length) {
+            posicoes = Arrays.copyOf(posicoes, posicoes.length * 2);
+        }
+        posicoes[musicas.size()] = posicao;
+        musicas.add(musica);
+    }
+
+    /**
+     * Liga as músicas registradas ao armazém do arquivo novo
+     * @param armazem Armazém aberto sobre o arquivo escrito
+     */
+    public void aplicar(ArmazemTexto armazem) {
+        for (int i = 0; i < musicas.size(); i++) {
+            musicas.get(i).religarTexto(armazem, posicoes[i]);
+        }
+    }
+}
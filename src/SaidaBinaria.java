@@ -0,0 +1,293 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Escrita binária compacta sobre um canal (arquivo ou memória): inteiros em varint, texto em UTF-8
+ * e símbolos repetidos (gêneros, intérpretes, editoras...) codificados por um dicionário
+ * construído à medida que são escritos. Sem canal, escreve num buffer em memória que cresce
+ * conforme necessário e pode ser reutilizado (ex.: eventos do diário).
+ */
+public class SaidaBinaria implements Closeable {
+    private static final int TAMANHO_BUFFER = 1 << 16;
+    private static final int TEXTO_CURTO = 64; // Textos até este tamanho são codificados sem criar um byte[]
+
+    private final WritableByteChannel canal; // null numa saída em memória
+    private ByteBuffer buffer;
+    private final Map<String, Integer> simbolos; // Símbolo -> índice no dicionário
+    private long escritos; // Bytes já passados ao canal
+    private RealocacaoTextos realocacaoTextos; // Se definida, regista onde ficam os textos das músicas
+
+    public SaidaBinaria(WritableByteChannel canal) {
+        this.canal = canal;
+        this.buffer = ByteBuffer.allocateDirect(TAMANHO_BUFFER);
+        this.simbolos = new HashMap<>();
+    }
+
+    /**
+     * Cria uma saída em memória, para registros curtos (ex.: eventos do diário)
+     * @param tamanhoInicial Tamanho inicial do buffer em bytes
+     */
+    public SaidaBinaria(int tamanhoInicial) {
+        this.canal = null;
+        this.buffer = ByteBuffer.allocate(tamanhoInicial);
+        this.simbolos = new HashMap<>();
+    }
+
+    /**
+     * Descarta o que foi escrito numa saída em memória, incluindo o dicionário de símbolos,
+     * para a reutilizar num novo registro
+     */
+    public void reiniciar() {
+        buffer.clear();
+        escritos = 0;
+        if (!simbolos.isEmpty()) {
+            simbolos.clear();
+        }
+    }
+
+    /**
+     * Bytes escritos numa saída em memória, de 0 a {@link #getPosicao()}, sem cópia.
+     * Deixam de ser válidos com a escrita seguinte
+     * @return Array do buffer em memória
+     */
+    byte[] getBytesEscritos() {
+        return buffer.array();
+    }
+
+    /**
+     * Retorna o tamanho do buffer, para quem reutiliza uma saída em memória não a deixar crescer sem limite
+     * @return Capacidade do buffer em bytes
+     */
+    public int getCapacidade() {
+        return buffer.capacity();
+    }
+
+    public void escreverByte(int valor) throws IOException {
+        garantir(1);
+        buffer.put((byte) valor);
+    }
+
+    public void escreverBoolean(boolean valor) throws IOException {
+        escreverByte(valor ? 1 : 0);
+    }
+
+    /**
+     * Escreve um inteiro não negativo em varint (7 bits por byte)
+     * @param valor Valor a escrever
+     */
+    public void escreverVarInt(int valor) throws IOException {
+        garantir(5);
+        while ((valor & ~0x7F) != 0) {
+            buffer.put((byte) ((valor & 0x7F) | 0x80));
+            valor >>>= 7;
+        }
+        buffer.put((byte) valor);
+    }
+
+    /**
+     * Escreve um inteiro com sinal em varint zigzag (valores pequenos negativos ficam curtos)
+     * @param valor Valor a escrever
+     */
+    public void escreverVarIntComSinal(int valor) throws IOException {
+        escreverVarInt((valor << 1) ^ (valor >> 31));
+    }
+
+    /**
+     * Escreve um long com sinal em varint zigzag
+     * @param valor Valor a escrever
+     */
+    public void escreverVarLong(long valor) throws IOException {
+        long zigzag = (valor << 1) ^ (valor >> 63);
+        garantir(10);
+        while ((zigzag & ~0x7FL) != 0) {
+            buffer.put((byte) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        buffer.put((byte) zigzag);
+    }
+
+    /**
+     * Escreve um texto (ou null) em UTF-8 precedido do seu tamanho
+     * @param texto Texto a escrever
+     */
+    public void escreverString(String texto) throws IOException {
+        if (texto == null) {
+            escreverVarInt(0);
+            return;
+        }
+        if (texto.length() <= TEXTO_CURTO) {
+            // Nomes e emails: codificar diretamente no buffer, sem o byte[] de getBytes
+            int tamanho = tamanhoUtf8(texto);
+            escreverVarInt(tamanho + 1);
+            garantir(tamanho);
+            codificarUtf8(texto);
+            return;
+        }
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        escreverVarInt(bytes.length + 1);
+        escreverBytes(bytes);
+    }
+
+    /**
+     * Número de bytes de um texto em UTF-8, como em {@code getBytes(UTF_8)}
+     * (um surrogate sem par é substituído por '?')
+     */
+    private static int tamanhoUtf8(String texto) {
+        int tamanho = 0;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c < 0x80) {
+                tamanho++;
+            } else if (c < 0x800) {
+                tamanho += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < texto.length()
+                    && Character.isLowSurrogate(texto.charAt(i + 1))) {
+                tamanho += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                tamanho++;
+            } else {
+                tamanho += 3;
+            }
+        }
+        return tamanho;
+    }
+
+    /**
+     * Escreve um texto em UTF-8 no buffer, que tem de ter espaço para {@link #tamanhoUtf8}
+     */
+    private void codificarUtf8(String texto) {
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < texto.length()
+                    && Character.isLowSurrogate(texto.charAt(i + 1))) {
+                int ponto = Character.toCodePoint(c, texto.charAt(++i));
+                buffer.put((byte) (0xF0 | (ponto >> 18)));
+                buffer.put((byte) (0x80 | ((ponto >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((ponto >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (ponto & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Escreve um símbolo através do dicionário: 0 seguido do texto na primeira ocorrência,
+     * e nas seguintes apenas o índice + 1
+     * @param simbolo Texto repetido a escrever
+     */
+    public void escreverSimbolo(String simbolo) throws IOException {
+        Integer indice = simbolos.get(simbolo);
+        if (indice != null) {
+            escreverVarInt(indice + 1);
+            return;
+        }
+        simbolos.put(simbolo, simbolos.size());
+        escreverVarInt(0);
+        escreverString(simbolo);
+    }
+
+    public void escreverBytes(byte[] bytes) throws IOException {
+        int posicao = 0;
+        while (posicao < bytes.length) {
+            if (!buffer.hasRemaining()) {
+                libertar(bytes.length - posicao);
+            }
+            int n = Math.min(buffer.remaining(), bytes.length - posicao);
+            buffer.put(bytes, posicao, n);
+            posicao += n;
+        }
+    }
+
+    public void escreverBytes(ByteBuffer bytes) throws IOException {
+        ByteBuffer leitura = bytes.duplicate();
+        while (leitura.hasRemaining()) {
+            if (!buffer.hasRemaining()) {
+                libertar(leitura.remaining());
+            }
+            int n = Math.min(buffer.remaining(), leitura.remaining());
+            ByteBuffer parte = leitura.duplicate();
+            parte.limit(parte.position() + n);
+            buffer.put(parte);
+            leitura.position(leitura.position() + n);
+        }
+    }
+
+    /**
+     * Escreve no canal tudo o que estiver no buffer (sem efeito numa saída em memória)
+     */
+    public void esvaziar() throws IOException {
+        if (canal == null) {
+            return;
+        }
+        buffer.flip();
+        escritos += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            canal.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Retorna a posição, a partir do início da escrita, do próximo byte a escrever
+     * @return Posição absoluta
+     */
+    public long getPosicao() {
+        return escritos + buffer.position();
+    }
+
+    public RealocacaoTextos getRealocacaoTextos() {
+        return realocacaoTextos;
+    }
+
+    public void setRealocacaoTextos(RealocacaoTextos realocacaoTextos) {
+        this.realocacaoTextos = realocacaoTextos;
+    }
+
+    /**
+     * Garante espaço no buffer para escrever seguidos até ao tamanho do buffer em bytes
+     * (numa saída em memória, todos os bytes pedidos)
+     */
+    private void garantir(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            libertar(bytes);
+        }
+    }
+
+    /**
+     * Liberta espaço no buffer: esvazia-o no canal ou, em memória, aumenta-o para caberem mais bytes
+     */
+    private void libertar(int bytes) throws IOException {
+        if (canal != null) {
+            esvaziar();
+            return;
+        }
+        ByteBuffer maior = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        buffer.flip();
+        maior.put(buffer);
+        buffer = maior;
+    }
+
+    /**
+     * Esvazia o buffer; o canal continua a pertencer a quem o abriu
+     */
+    @Override
+    public void close() throws IOException {
+        esvaziar();
+    }
+}
@@ -0,0 +1,245 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Simulador de carga: gera um sistema com {@link GeradorDados} e dispara sobre ele, sem
+ * passar pela consola, tráfego de reproduções, pesquisas, playlists e estatísticas
+ * escolhido segundo as mesmas distribuições de popularidade. No fim reporta, para cada
+ * operação, a taxa e as latências p50/p99/p99.9.
+ *
+ * Uso: java SimuladorCarga [--musicas=100000] [--utilizadores=10000] [--reproducoes=10]
+ *      [--operacoes=1000000] [--aquecimento=100000] [--threads=1] [--semente=42] [--zipf=1.0]
+ *      [--mistura=reproduzir:85,pesquisar:5,gerarPlaylist:4,criarPlaylist:1,estatisticas:5]
+ *      [--diario=arquivo.dat]
+ */
+public class SimuladorCarga {
+    private static final String REPRODUZIR = "reproduzir";
+    private static final String PESQUISAR = "pesquisar";
+    private static final String GERAR_PLAYLIST = "gerarPlaylist";
+    private static final String CRIAR_PLAYLIST = "criarPlaylist";
+    private static final String ESTATISTICAS = "estatisticas";
+    private static final String MISTURA_PADRAO =
+        REPRODUZIR + ":85," + PESQUISAR + ":5," + GERAR_PLAYLIST + ":4," + CRIAR_PLAYLIST + ":1," + ESTATISTICAS + ":5";
+
+    private final Sistema sistema;
+    private final GeradorDados gerador;
+    private final String[] operacoes; // Operação -> nome
+    private final int[] pesosAcumulados; // Operação -> soma dos pesos até ela
+    private static volatile Object sumidouro; // Impede o JIT de descartar resultados
+
+    /**
+     * Latências de uma operação numa thread, em nanossegundos
+     */
+    private static class Latencias {
+        private long[] valores = new long[1024];
+        private int tamanho;
+
+        void registrar(long nanos) {
+            if (tamanho == valores.length) {
+                valores = Arrays.copyOf(valores, tamanho * 2);
+            }
+            valores[tamanho++] = nanos;
+        }
+
+        void juntar(Latencias outras) {
+            for (int i = 0; i < outras.tamanho; i++) {
+                registrar(outras.valores[i]);
+            }
+        }
+
+        /**
+         * Retorna o percentil pedido; os valores têm de estar ordenados
+         */
+        long percentil(double p) {
+            int posicao = (int) Math.ceil(p / 100.0 * tamanho) - 1;
+            return valores[Math.max(0, Math.min(posicao, tamanho - 1))];
+        }
+    }
+
+    /**
+     * @param sistema Sistema gerado por gerador
+     * @param gerador Gerador usado para sortear utilizadores, músicas e gêneros
+     * @param mistura Pesos das operações, no formato operacao:peso,operacao:peso
+     */
+    public SimuladorCarga(Sistema sistema, GeradorDados gerador, String mistura) {
+        this.sistema = sistema;
+        this.gerador = gerador;
+        String[] partes = mistura.split(",");
+        this.operacoes = new String[partes.length];
+        this.pesosAcumulados = new int[partes.length];
+        int soma = 0;
+        for (int i = 0; i < partes.length; i++) {
+            String[] operacaoPeso = partes[i].trim().split(":");
+            operacoes[i] = operacaoPeso[0];
+            soma += Integer.parseInt(operacaoPeso[1]);
+            pesosAcumulados[i] = soma;
+            if (!Arrays.asList(REPRODUZIR, PESQUISAR, GERAR_PLAYLIST, CRIAR_PLAYLIST, ESTATISTICAS)
+                    .contains(operacoes[i])) {
+                throw new IllegalArgumentException("Operação desconhecida: " + operacoes[i]);
+            }
+        }
+        if (soma <= 0) {
+            throw new IllegalArgumentException("A mistura precisa de pelo menos um peso positivo");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opcoes = new LinkedHashMap<>();
+        for (String arg : args) {
+            int igual = arg.indexOf('=');
+            if (!arg.startsWith("--") || igual < 0) {
+                throw new IllegalArgumentException("Opção inválida: " + arg);
+            }
+            opcoes.put(arg.substring(2, igual), arg.substring(igual + 1));
+        }
+        long semente = Long.parseLong(opcoes.getOrDefault("semente", "42"));
+        GeradorDados gerador = new GeradorDados(semente,
+            Integer.parseInt(opcoes.getOrDefault("musicas", "100000")),
+            Integer.parseInt(opcoes.getOrDefault("utilizadores", "10000")),
+            Integer.parseInt(opcoes.getOrDefault("reproducoes", "10")),
+            Double.parseDouble(opcoes.getOrDefault("zipf", "1.0")));
+
+        long inicio = System.nanoTime();
+        Sistema sistema = gerador.gerar();
+        System.out.printf("Dados gerados em %d ms: %d músicas, %d utilizadores%n",
+            (System.nanoTime() - inicio) / 1_000_000, gerador.getMusicas().size(), gerador.getUtilizadores().size());
+        if (gerador.getMusicas().isEmpty() || gerador.getUtilizadores().isEmpty()) {
+            throw new IllegalArgumentException("São precisas músicas e utilizadores para simular carga");
+        }
+
+        String diario = opcoes.get("diario");
+        if (diario != null && !sistema.ativarDiario(diario)) {
+            throw new IllegalStateException("Não foi possível ativar o diário em " + diario);
+        }
+        try {
+            SimuladorCarga simulador = new SimuladorCarga(sistema, gerador, opcoes.getOrDefault("mistura", MISTURA_PADRAO));
+            simulador.executar(Integer.parseInt(opcoes.getOrDefault("threads", "1")),
+                               Long.parseLong(opcoes.getOrDefault("aquecimento", "100000")),
+                               Long.parseLong(opcoes.getOrDefault("operacoes", "1000000")),
+                               semente);
+        } finally {
+            sistema.fechar();
+        }
+    }
+
+    /**
+     * Executa a carga e escreve o relatório
+     * @param numeroThreads Threads a disparar operações em simultâneo
+     * @param aquecimento Operações por executar antes de medir (não entram no relatório)
+     * @param numeroOperacoes Operações medidas, repartidas pelas threads
+     * @param semente Semente dos sorteios de cada thread
+     */
+    public void executar(int numeroThreads, long aquecimento, long numeroOperacoes, long semente)
+            throws InterruptedException {
+        executarThreads(numeroThreads, aquecimento, semente ^ 0x5DEECE66DL);
+
+        long inicio = System.nanoTime();
+        List<Map<String, Latencias>> porThread = executarThreads(numeroThreads, numeroOperacoes, semente);
+        long decorrido = System.nanoTime() - inicio;
+
+        Map<String, Latencias> total = new LinkedHashMap<>();
+        for (String operacao : operacoes) {
+            total.put(operacao, new Latencias());
+        }
+        for (Map<String, Latencias> latencias : porThread) {
+            latencias.forEach((operacao, valores) -> total.get(operacao).juntar(valores));
+        }
+
+        double segundos = decorrido / 1e9;
+        System.out.printf("%d operações em %.2f s com %d thread(s): %.0f op/s%n",
+            numeroOperacoes, segundos, numeroThreads, numeroOperacoes / segundos);
+        System.out.printf("%-16s %10s %12s %10s %10s %10s %10s%n",
+            "Operação", "N", "op/s", "p50 µs", "p99 µs", "p99.9 µs", "máx µs");
+        for (Map.Entry<String, Latencias> entry : total.entrySet()) {
+            Latencias latencias = entry.getValue();
+            if (latencias.tamanho == 0) {
+                continue;
+            }
+            Arrays.sort(latencias.valores, 0, latencias.tamanho);
+            System.out.printf("%-16s %10d %12.0f %10.1f %10.1f %10.1f %10.1f%n", entry.getKey(),
+                latencias.tamanho, latencias.tamanho / segundos,
+                latencias.percentil(50) / 1e3, latencias.percentil(99) / 1e3,
+                latencias.percentil(99.9) / 1e3, latencias.percentil(100) / 1e3);
+        }
+    }
+
+    private List<Map<String, Latencias>> executarThreads(int numeroThreads, long numeroOperacoes, long semente)
+            throws InterruptedException {
+        List<Map<String, Latencias>> resultados = new ArrayList<>();
+        Thread[] threads = new Thread[numeroThreads];
+        for (int t = 0; t < numeroThreads; t++) {
+            Map<String, Latencias> latencias = new LinkedHashMap<>();
+            resultados.add(latencias);
+            Random random = new Random(semente + t);
+            long quota = numeroOperacoes / numeroThreads + (t < numeroOperacoes % numeroThreads ? 1 : 0);
+            threads[t] = new Thread(() -> {
+                for (long i = 0; i < quota; i++) {
+                    String operacao = sortearOperacao(random);
+                    long inicio = System.nanoTime();
+                    sumidouro = executarOperacao(operacao, random, i);
+                    latencias.computeIfAbsent(operacao, o -> new Latencias()).registrar(System.nanoTime() - inicio);
+                }
+            }, "simulador-" + t);
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return resultados;
+    }
+
+    private String sortearOperacao(Random random) {
+        int sorteio = random.nextInt(pesosAcumulados[pesosAcumulados.length - 1]);
+        for (int i = 0; i < pesosAcumulados.length; i++) {
+            if (sorteio < pesosAcumulados[i]) {
+                return operacoes[i];
+            }
+        }
+        return operacoes[operacoes.length - 1];
+    }
+
+    private Object executarOperacao(String operacao, Random random, long execucao) {
+        Utilizador utilizador = gerador.sortearUtilizador(random);
+        switch (operacao) {
+            case REPRODUZIR:
+                sistema.registrarReproducao(utilizador, gerador.sortearMusica(random));
+                return utilizador;
+            case PESQUISAR:
+                return sistema.buscarMusicasPorGenero(gerador.sortearGenero(random));
+            case GERAR_PLAYLIST:
+                // Utilizadores Premium Top recebem playlists por preferências; os restantes, aleatórias
+                if (utilizador.getPlano() instanceof PlanoPremiumTop) {
+                    return random.nextBoolean()
+                        ? sistema.gerarPlaylistPreferencias(utilizador)
+                        : sistema.gerarPlaylistPreferenciasTempo(utilizador, 3600);
+                }
+                return sistema.gerarPlaylistAleatoria();
+            case CRIAR_PLAYLIST:
+                Playlist playlist = sistema.criarPlaylist(utilizador, "Simulada " + execucao);
+                if (playlist != null) {
+                    for (int i = 0; i < 5; i++) {
+                        sistema.adicionarMusicaPlaylist(utilizador, playlist, gerador.sortearMusica(random));
+                    }
+                }
+                return playlist;
+            default:
+                return consultarEstatistica(random.nextInt(7));
+        }
+    }
+
+    private Object consultarEstatistica(int qual) {
+        switch (qual) {
+            case 0: return sistema.getMusicaMaisReproduzida();
+            case 1: return sistema.getInterpreteMaisEscutado();
+            case 2: return sistema.getUtilizadorQueMaisOuviu();
+            case 3: return sistema.getUtilizadorComMaisPontos();
+            case 4: return sistema.getGeneroMaisReproduzido();
+            case 5: return sistema.getUtilizadorComMaisPlaylists();
+            default: return sistema.getMusicasMaisReproduzidas(10);
+        }
+    }
+}
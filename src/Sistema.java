@@ -1,24 +1,127 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class Sistema implements Serializable {
     private static final long serialVersionUID = 1L;
     private static final String ARQUIVO_SISTEMA = "spotifum.dat";
+    private static final int ASSINATURA_ESTADO = 0x5350554D; // "SPUM"
+    private static final int VERSAO_ESTADO = 5;
+    private static final int VERSAO_ESTADO_CHAVES = 4; // Contagens das músicas por utilizador pela chave
+    private static final int EVENTO_UTILIZADOR = 1;
+    private static final int EVENTO_ALBUM = 2;
+    private static final int EVENTO_REPRODUCAO = 3;
+    private static final int EVENTO_PLAYLIST = 4;
+    private static final int EVENTO_PLANO = 5;
+    private static final int EVENTO_MUSICA_PLAYLIST = 6; // Música adicionada ou removida de uma playlist criada
+    private static final int EVENTO_PUBLICACAO = 7; // Playlist criada tornada pública
+    private static final int EVENTO_PLAYLIST_PUBLICA = 8; // Playlist pública sem dono registrado
+    private static final int EVENTO_ALBUM_GUARDADO = 9;
+    private static final int EVENTO_PLAYLIST_GUARDADA = 10;
+    private static final int EVENTO_MUSICA_ALBUM = 11; // Música adicionada ou removida de um álbum do sistema
+    private static final long LIMITE_DIARIO = 16L << 20; // Bytes de eventos que forçam um checkpoint
+    private static final long INTERVALO_CHECKPOINT = 5 * 60_000L; // Máximo entre checkpoints com eventos
+    private static final long INTERVALO_VERIFICACAO = 10; // Segundos entre verificações
+    private static final int MUSICAS_POR_GENERO_PREFERENCIAS = 5;
+    private static final int TAMANHO_LOTE_PREFERENCIAS = 64; // Utilizadores por tarefa na geração em lote
     
     private Map<String, Utilizador> utilizadores; // Email -> Utilizador
     private Map<String, Album> albuns; // Nome -> Album
-    private List<Playlist> playlistsPublicas;
-    private Map<String, Integer> contagemPorGenero; // Gênero -> Contagem
-    private Map<String, Integer> contagemPorInterprete; // Intérprete -> Contagem
+    private List<Playlist> playlistsPublicas; // Por ordem de publicação, mantida por catalogoPlaylists
+    // As classificações são atualizadas quando consultadas, a partir dos contadores e dos
+    // utilizadores alterados, para as reproduções não disputarem os seus bloqueios
+    private Classificacao<String> classificacaoGeneros; // Gênero -> Contagem (indexada pelo código do gênero)
+    private Classificacao<String> classificacaoInterpretes; // Intérprete -> Contagem (indexada pelo código)
+    private Classificacao<String> classificacaoReproducoes; // Email -> Músicas ouvidas
+    private Classificacao<String> classificacaoPontos; // Email -> Pontos
+    private Classificacao<String> classificacaoPlaylists; // Email -> Playlists criadas
+    private Catalogo catalogo; // Índices sobre as músicas dos álbuns
+    private AgregadoReproducoes agregado; // Reproduções por utilizador em minutos/horas/dias/meses/anos
+    private LongAdder reproducoesTotais; // Reproduções de todos os utilizadores registrados
+    // Partilhado pelas alterações (que se coordenam pelo utilizador/estrutura que alteram)
+    // e exclusivo ao salvar, para o estado gravado corresponder a um ponto do diário
+    private transient ReentrantReadWriteLock trincoEstado;
+    private transient volatile DiarioEventos diario; // Eventos desde o último checkpoint (null se inativo)
+    private transient ScheduledExecutorService checkpoints;
+    private transient long geracaoDiario; // Primeira geração do diário ainda não incluída no estado
+    private transient long ultimoCheckpoint;
+    // Arquivo de onde as músicas carregadas leem a letra e o conteúdo musical (null se estão no heap)
+    private transient ArmazemTexto armazemTexto;
+    private transient Path textosTemporarios; // Arquivo do armazém, se a renomeação para o destino falhou
+    // Completação dos nomes dos utilizadores, construída na primeira pesquisa (null até lá)
+    private transient volatile IndiceCompletacao<Utilizador> completacaoUtilizadores;
+    private transient Map<String, Integer> entradaUtilizador; // Email -> entrada (e trinco da completação)
+    private transient ContadoresReproducoes reproducoesPorGenero; // Código do gênero -> reproduções
+    private transient ContadoresReproducoes reproducoesPorInterprete; // Código do intérprete -> reproduções
+    private transient Set<Utilizador> utilizadoresAlterados; // Ainda por refletir nas classificações e sugestões
+    private transient Map<String, Utilizador> utilizadoresPorEmail; // Email normalizado -> Utilizador (o primeiro)
+    private transient Map<String, Sessao> sessoes; // Email -> sessão dos utilizadores com login feito
+    private transient CatalogoPlaylists catalogoPlaylists; // Playlists públicas por nome, dono e popularidade
     
+    /**
+     * Sessões abertas de um utilizador (pode ter login em mais de um sítio)
+     */
+    private static class Sessao {
+        final Utilizador utilizador;
+        int abertas;
+
+        Sessao(Utilizador utilizador) {
+            this.utilizador = utilizador;
+        }
+    }
+    
+    /**
+     * Escreve os dados de um evento do diário
+     */
+    private interface EscritaEvento {
+        void escrever(SaidaBinaria saida) throws IOException;
+    }
+    
+    /**
+     * Cria um sistema vazio. Pode ser usado por várias threads em simultâneo: reproduções
+     * de utilizadores diferentes não partilham bloqueios (as classificações globais são
+     * atualizadas por quem as consulta).
+     */
     public Sistema() {
-        this.utilizadores = new HashMap<>();
-        this.albuns = new HashMap<>();
+        this.utilizadores = new ConcurrentHashMap<>();
+        this.albuns = new ConcurrentHashMap<>();
         this.playlistsPublicas = new ArrayList<>();
-        this.contagemPorGenero = new HashMap<>();
-        this.contagemPorInterprete = new HashMap<>();
+        this.catalogoPlaylists = new CatalogoPlaylists(playlistsPublicas);
+        this.classificacaoGeneros = new Classificacao<>();
+        this.classificacaoInterpretes = new Classificacao<>();
+        this.classificacaoReproducoes = new Classificacao<>();
+        this.classificacaoPontos = new Classificacao<>();
+        this.classificacaoPlaylists = new Classificacao<>();
+        this.catalogo = new Catalogo();
+        this.agregado = new AgregadoReproducoes();
+        this.reproducoesTotais = new LongAdder();
+        this.reproducoesPorGenero = new ContadoresReproducoes(ContadoresReproducoes.FAIXAS_POR_PROCESSADOR);
+        this.reproducoesPorInterprete = new ContadoresReproducoes();
+        this.trincoEstado = new ReentrantReadWriteLock();
+        this.entradaUtilizador = new HashMap<>();
+        this.utilizadoresAlterados = ConcurrentHashMap.newKeySet();
+        this.utilizadoresPorEmail = new ConcurrentHashMap<>();
+        this.sessoes = new ConcurrentHashMap<>();
     }
     
     /**
@@ -27,39 +130,395 @@ public class Sistema implements Serializable {
      * @return true se registrado com sucesso, false se o email já existe
      */
     public boolean registrarUtilizador(Utilizador utilizador) {
-        String email = utilizador.getEmail();
-        if (utilizadores.containsKey(email)) {
-            return false;
+        long sequencia;
+        trincoEstado.readLock().lock();
+        try {
+            synchronized (utilizadores) {
+                String email = utilizador.getEmail();
+                if (utilizadores.containsKey(email)) {
+                    return false;
+                }
+                // Anexar antes de publicar: nenhum evento do utilizador pode chegar ao diário antes deste
+                sequencia = registrarEvento(EVENTO_UTILIZADOR,
+                    saida -> utilizador.escrever(saida, catalogo, new IdentityHashMap<>()));
+                utilizadores.put(email, utilizador);
+                indexarEmail(utilizador);
+            }
+            // Entra já nas classificações, pela ordem de registro (que desempata)
+            atualizarClassificacoes(utilizador);
+            marcarAlterado(utilizador);
+            if (completacaoUtilizadores != null) {
+                indexarUtilizador(utilizador);
+            }
+        } finally {
+            trincoEstado.readLock().unlock();
         }
-        utilizadores.put(email, utilizador);
+        aguardarDiario(sequencia);
         return true;
     }
     
+    /**
+     * Procura um utilizador pelo email sem copiar o mapa de utilizadores. Se não houver um com
+     * o email exato, aceita-o sem espaços nas pontas e sem distinguir maiúsculas de minúsculas
+     * @param email Email do utilizador
+     * @return O utilizador ou null se não existir
+     */
+    public Utilizador findUtilizador(String email) {
+        if (email == null) {
+            return null;
+        }
+        Utilizador utilizador = utilizadores.get(email);
+        return utilizador != null ? utilizador : utilizadoresPorEmail.get(normalizarEmail(email));
+    }
+    
+    /**
+     * Faz login de um utilizador, mantendo-o no registro de sessões até {@link #terminarSessao}
+     * @param email Email do utilizador (ver {@link #findUtilizador})
+     * @return O utilizador ou null se não existir
+     */
+    public Utilizador iniciarSessao(String email) {
+        Utilizador utilizador = findUtilizador(email);
+        if (utilizador != null) {
+            sessoes.compute(utilizador.getEmail(), (e, sessao) -> {
+                Sessao aberta = sessao != null ? sessao : new Sessao(utilizador);
+                aberta.abertas++;
+                return aberta;
+            });
+        }
+        return utilizador;
+    }
+    
+    /**
+     * Fecha uma sessão de um utilizador; sai do registro quando fechar a última
+     * @param utilizador Utilizador que faz logout
+     */
+    public void terminarSessao(Utilizador utilizador) {
+        sessoes.computeIfPresent(utilizador.getEmail(),
+            (e, sessao) -> --sessao.abertas > 0 ? sessao : null);
+    }
+    
+    /**
+     * Retorna um utilizador com login feito, sem passar pelo mapa de todos os utilizadores
+     * @param email Email exato do utilizador
+     * @return O utilizador ou null se não tiver sessão aberta
+     */
+    public Utilizador getUtilizadorEmSessao(String email) {
+        Sessao sessao = email != null ? sessoes.get(email) : null;
+        return sessao != null ? sessao.utilizador : null;
+    }
+    
+    /**
+     * Retorna o número de utilizadores com pelo menos uma sessão aberta
+     * @return Utilizadores com login feito
+     */
+    public int getNumeroSessoesAtivas() {
+        return sessoes.size();
+    }
+    
+    /**
+     * Adiciona um utilizador ao índice de emails normalizados (em colisões fica o primeiro)
+     */
+    private void indexarEmail(Utilizador utilizador) {
+        utilizadoresPorEmail.putIfAbsent(normalizarEmail(utilizador.getEmail()), utilizador);
+    }
+    
+    private static String normalizarEmail(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+    
     /**
      * Adiciona um álbum ao sistema
      * @param album Álbum a ser adicionado
      * @return true se adicionado com sucesso, false se já existe
      */
     public boolean adicionarAlbum(Album album) {
-        String nome = album.getNome();
-        if (albuns.containsKey(nome)) {
-            return false;
+        long sequencia;
+        trincoEstado.readLock().lock();
+        try {
+            synchronized (albuns) {
+                String nome = album.getNome();
+                if (albuns.containsKey(nome)) {
+                    return false;
+                }
+                catalogo.registrarAlbum(album);
+                // Depois do registro, para o evento guardar os identificadores atribuídos às músicas,
+                // e antes de publicar, para nenhuma reprodução destas músicas chegar antes ao diário
+                sequencia = registrarEvento(EVENTO_ALBUM, saida -> album.escrever(saida, catalogo));
+                albuns.put(nome, album);
+            }
+        } finally {
+            trincoEstado.readLock().unlock();
         }
-        albuns.put(nome, album);
+        aguardarDiario(sequencia);
         return true;
     }
     
     /**
-     * Adiciona uma playlist pública ao sistema
+     * Adiciona uma música a um álbum do sistema, indexando-a no catálogo
+     * @param album Álbum registrado no sistema
+     * @param musica Música a adicionar
+     * @return true se adicionada, false se o álbum não está no sistema ou já tem uma música com o mesmo nome
+     */
+    public boolean adicionarMusicaAlbum(Album album, Musica musica) {
+        long sequencia;
+        trincoEstado.readLock().lock();
+        try {
+            synchronized (albuns) {
+                if (albuns.get(album.getNome()) != album || !album.inserirMusica(musica)) {
+                    return false;
+                }
+                // A música completa, com o identificador atribuído no registro
+                sequencia = registrarEvento(EVENTO_MUSICA_ALBUM, saida -> {
+                    saida.escreverString(album.getNome());
+                    saida.escreverBoolean(true);
+                    musica.escrever(saida);
+                });
+            }
+        } finally {
+            trincoEstado.readLock().unlock();
+        }
+        aguardarDiario(sequencia);
+        return true;
+    }
+    
+    /**
+     * Remove uma música de um álbum do sistema e dos índices do catálogo
+     * @param album Álbum registrado no sistema
+     * @param nomeMusica Nome da música a remover
+     * @return true se removida, false se o álbum não está no sistema ou não tem a música
+     */
+    public boolean removerMusicaAlbum(Album album, String nomeMusica) {
+        long sequencia;
+        trincoEstado.readLock().lock();
+        try {
+            synchronized (albuns) {
+                if (albuns.get(album.getNome()) != album || !album.retirarMusica(nomeMusica)) {
+                    return false;
+                }
+                sequencia = registrarEvento(EVENTO_MUSICA_ALBUM, saida -> {
+                    saida.escreverString(album.getNome());
+                    saida.escreverBoolean(false);
+                    saida.escreverString(nomeMusica);
+                });
+            }
+        } finally {
+            trincoEstado.readLock().unlock();
+        }
+        aguardarDiario(sequencia);
+        return true;
+    }
+    
+    /**
+     * Adiciona uma playlist pública ao sistema. Se for uma playlist criada por um utilizador
+     * registrado, equivale a {@link #publicarPlaylist}
      * @param playlist Playlist a ser adicionada
-     * @return true se adicionada com sucesso
+     * @return true se adicionada com sucesso, false se não é pública ou já tinha sido adicionada
      */
     public boolean adicionarPlaylistPublica(Playlist playlist) {
-        if (playlist.isPublica()) {
-            playlistsPublicas.add(playlist);
-            return true;
+        Utilizador dono = playlist.getDono() != null ? utilizadores.get(playlist.getDono()) : null;
+        if (dono != null && dono.indicePlaylistCriada(playlist) >= 0) {
+            return playlist.isPublica() && publicarPlaylist(dono, playlist);
         }
-        return false;
+        long sequencia = 0;
+        trincoEstado.readLock().lock();
+        try {
+            synchronized (catalogoPlaylists) {
+                if (!catalogoPlaylists.adicionar(playlist)) {
+                    return false;
+                }
+                sequencia = registrarEvento(EVENTO_PLAYLIST_PUBLICA, saida -> playlist.escrever(saida, catalogo));
+            }
+        } finally {
+            trincoEstado.readLock().unlock();
+        }
+        aguardarDiario(sequencia);
+        return true;
+    }
+    
+    /**
+     * Torna pública uma playlist criada por um utilizador e adiciona-a às playlists públicas
+     * @param utilizador Utilizador que criou a playlist
+     * @param playlist Playlist criada pelo utilizador (a retornada por {@link #criarPlaylist})
+     * @return true se publicada, false se não foi criada pelo utilizador ou já era pública no sistema
+     */
+    public boolean publicarPlaylist(Utilizador utilizador, Playlist playlist) {
+        long sequencia = 0;
+        trincoEstado.readLock().lock();
+        try {
+            synchronized (utilizador) {
+                int indice = utilizador.indicePlaylistCriada(playlist);
+                if (indice < 0) {
+                    return false;
+                }
+                playlist.tornarPublica();
+                if (!catalogoPlaylists.adicionar(playlist)) {
+                    return false;
+                }
+                if (utilizadores.get(utilizador.getEmail()) == utilizador) {
+                    sequencia = registrarEvento(EVENTO_PUBLICACAO, saida -> {
+                        saida.escreverString(utilizador.getEmail());
+                        saida.escreverVarInt(indice);
+                    });
+                }
+            }
+        } finally {
+            trincoEstado.readLock().unlock();
+        }
+        aguardarDiario(sequencia);
+        return true;
+    }
+    
+    /**
+     * Adiciona uma música a uma playlist criada por um utilizador
+     * @param utilizador Utilizador que criou a playlist
+     * @param playlist Playlist criada pelo utilizador (a retornada por {@link #criarPlaylist})
+     * @param musica Música a adicionar
+     * @return true se adicionada, false se a playlist não foi criada pelo utilizador ou recusou a música
+     */
+    public boolean adicionarMusicaPlaylist(Utilizador utilizador, Playlist playlist, Musica musica) {
+        return alterarPlaylist(utilizador, playlist, musica, true);
+    }
+    
+    /**
+     * Remove uma música de uma playlist criada por um utilizador
+     * @param utilizador Utilizador que criou a playlist
+     * @param playlist Playlist criada pelo utilizador (a retornada por {@link #criarPlaylist})
+     * @param musica Música a remover (a primeira ocorrência)
+     * @return true se removida, false se a playlist não foi criada pelo utilizador ou não tinha a música
+     */
+    public boolean removerMusicaPlaylist(Utilizador utilizador, Playlist playlist, Musica musica) {
+        return alterarPlaylist(utilizador, playlist, musica, false);
+    }
+    
+    private boolean alterarPlaylist(Utilizador utilizador, Playlist playlist, Musica musica, boolean adicionar) {
+        long sequencia = 0;
+        trincoEstado.readLock().lock();
+        try {
+            synchronized (utilizador) {
+                int indice = utilizador.indicePlaylistCriada(playlist);
+                if (indice < 0 || !(adicionar ? playlist.inserirMusica(musica) : playlist.retirarMusica(musica))) {
+                    return false;
+                }
+                if (utilizadores.get(utilizador.getEmail()) == utilizador) {
+                    sequencia = registrarEvento(EVENTO_MUSICA_PLAYLIST, saida -> {
+                        saida.escreverString(utilizador.getEmail());
+                        saida.escreverVarInt(indice);
+                        saida.escreverBoolean(adicionar);
+                        Musica.escreverReferencia(saida, musica, catalogo);
+                    });
+                }
+            }
+        } finally {
+            trincoEstado.readLock().unlock();
+        }
+        aguardarDiario(sequencia);
+        return true;
+    }
+    
+    /**
+     * Guarda uma cópia de um álbum do sistema na biblioteca de um utilizador
+     * @param utilizador Utilizador que guarda o álbum
+     * @param album Álbum registrado no sistema
+     * @return true se guardado com sucesso, false se o plano não o permite ou o álbum não está no sistema
+     */
+    public boolean guardarAlbum(Utilizador utilizador, Album album) {
+        long sequencia = 0;
+        trincoEstado.readLock().lock();
+        try {
+            if (albuns.get(album.getNome()) != album) {
+                return false;
+            }
+            synchronized (utilizador) {
+                if (!utilizador.guardarAlbum(album)) {
+                    return false;
+                }
+                if (utilizadores.get(utilizador.getEmail()) == utilizador) {
+                    sequencia = registrarEvento(EVENTO_ALBUM_GUARDADO, saida -> {
+                        saida.escreverString(utilizador.getEmail());
+                        saida.escreverString(album.getNome());
+                    });
+                }
+            }
+        } finally {
+            trincoEstado.readLock().unlock();
+        }
+        aguardarDiario(sequencia);
+        return true;
+    }
+    
+    /**
+     * Guarda uma cópia de uma playlist na biblioteca de um utilizador, contando-a na
+     * popularidade da playlist pública de onde veio
+     * @param utilizador Utilizador que guarda a playlist
+     * @param playlist Playlist a guardar
+     * @return true se guardada com sucesso, false se o plano não o permite
+     */
+    public boolean guardarPlaylist(Utilizador utilizador, Playlist playlist) {
+        long sequencia = 0;
+        trincoEstado.readLock().lock();
+        try {
+            synchronized (utilizador) {
+                // Uma playlist guardada com o mesmo nome é substituída e deixa de contar
+                Playlist anterior = utilizador.getPlaylistsGuardadas().get(playlist.getNome());
+                if (!utilizador.guardarPlaylist(playlist)) {
+                    return false;
+                }
+                catalogoPlaylists.contarCopia(anterior, utilizador.getEmail(), -1);
+                catalogoPlaylists.contarCopia(playlist, utilizador.getEmail(), 1);
+                if (utilizadores.get(utilizador.getEmail()) == utilizador) {
+                    // A playlist completa: a cópia guardada não muda se a original mudar depois
+                    sequencia = registrarEvento(EVENTO_PLAYLIST_GUARDADA, saida -> {
+                        saida.escreverString(utilizador.getEmail());
+                        playlist.escrever(saida, catalogo);
+                    });
+                }
+            }
+        } finally {
+            trincoEstado.readLock().unlock();
+        }
+        aguardarDiario(sequencia);
+        return true;
+    }
+    
+    /**
+     * Lista uma página das playlists públicas, das mais para as menos guardadas
+     * @param cursor null para a primeira página, ou o cursor da página anterior
+     * @param tamanho Número máximo de playlists na página
+     * @return Página pedida, com o cursor da seguinte
+     */
+    public CatalogoPlaylists.Pagina listarPlaylistsPublicas(String cursor, int tamanho) {
+        return catalogoPlaylists.listarPorPopularidade(cursor, tamanho);
+    }
+    
+    /**
+     * Lista uma página das playlists públicas cujo nome começa pelo prefixo, por ordem alfabética
+     * @param prefixo Início do nome, sem distinguir acentos nem maiúsculas
+     * @param cursor null para a primeira página, ou o cursor da página anterior
+     * @param tamanho Número máximo de playlists na página
+     * @return Página pedida, com o cursor da seguinte
+     */
+    public CatalogoPlaylists.Pagina procurarPlaylistsPublicas(String prefixo, String cursor, int tamanho) {
+        return catalogoPlaylists.listarPorNome(prefixo, cursor, tamanho);
+    }
+    
+    /**
+     * Lista uma página das playlists públicas criadas por um utilizador, por ordem de publicação
+     * @param email Email do dono
+     * @param cursor null para a primeira página, ou o cursor da página anterior
+     * @param tamanho Número máximo de playlists na página
+     * @return Página pedida, com o cursor da seguinte
+     */
+    public CatalogoPlaylists.Pagina listarPlaylistsPublicasDe(String email, String cursor, int tamanho) {
+        return catalogoPlaylists.listarPorDono(email, cursor, tamanho);
+    }
+    
+    /**
+     * Retorna quantos utilizadores (além do dono) guardaram uma playlist pública
+     * @param playlist Playlist pública
+     * @return Número de cópias guardadas
+     */
+    public int getVezesGuardada(Playlist playlist) {
+        return catalogoPlaylists.getGuardadas(playlist);
     }
     
     /**
@@ -68,14 +527,320 @@ public class Sistema implements Serializable {
      * @param musica Música reproduzida
      */
     public void registrarReproducao(Utilizador utilizador, Musica musica) {
-        utilizador.ouvirMusica(musica);
+        long sequencia;
+        trincoEstado.readLock().lock();
+        try {
+            sequencia = aplicarReproducao(utilizador, musica, System.currentTimeMillis());
+        } finally {
+            trincoEstado.readLock().unlock();
+        }
+        aguardarDiario(sequencia);
+    }
+    
+    /**
+     * Registra um lote de reproduções, como chegam dos clientes em rajadas. O resultado é o mesmo
+     * de chamar {@link #registrarReproducao} para cada posição, mas as reproduções são agrupadas
+     * por utilizador (um bloqueio, uma reserva do histórico e uma atualização das classificações
+     * de utilizadores por utilizador) e por música, gênero e intérprete (uma atualização das
+     * classificações globais por cada um). Com o diário ativo espera-se uma única gravação.
+     * @param utilizadores Utilizador de cada reprodução
+     * @param musicas Música de cada reprodução
+     * @param instantes Epoch millis de cada reprodução
+     * @throws IllegalArgumentException Se os arrays não tiverem o mesmo tamanho
+     */
+    public void registrarReproducoes(Utilizador[] utilizadores, Musica[] musicas, long[] instantes) {
+        int n = utilizadores.length;
+        if (musicas.length != n || instantes.length != n) {
+            throw new IllegalArgumentException("Lote com tamanhos diferentes: " + n + " utilizadores, "
+                + musicas.length + " músicas, " + instantes.length + " instantes");
+        }
+        if (n == 0) {
+            return;
+        }
         
-        // Atualizar estatísticas globais
-        String genero = musica.getGenero();
-        contagemPorGenero.put(genero, contagemPorGenero.getOrDefault(genero, 0) + 1);
+        // Agrupar as posições por utilizador (ordenação por contagem, estável dentro de cada grupo)
+        Map<Utilizador, Integer> grupos = new IdentityHashMap<>();
+        int[] grupoDe = new int[n];
+        int[] inicioGrupo = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            Integer grupo = grupos.get(utilizadores[i]);
+            if (grupo == null) {
+                grupo = grupos.size();
+                grupos.put(utilizadores[i], grupo);
+            }
+            grupoDe[i] = grupo;
+            inicioGrupo[grupo + 1]++;
+        }
+        int numeroGrupos = grupos.size();
+        for (int g = 0; g < numeroGrupos; g++) {
+            inicioGrupo[g + 1] += inicioGrupo[g];
+        }
+        int[] posicoes = new int[n];
+        int[] proxima = Arrays.copyOf(inicioGrupo, numeroGrupos);
+        for (int i = 0; i < n; i++) {
+            posicoes[proxima[grupoDe[i]]++] = i;
+        }
+        
+        long sequencia = 0;
+        trincoEstado.readLock().lock();
+        try {
+            for (int g = 0; g < numeroGrupos; g++) {
+                int inicio = inicioGrupo[g];
+                int fim = inicioGrupo[g + 1];
+                sequencia = Math.max(sequencia, aplicarReproducoes(utilizadores[posicoes[inicio]], musicas, instantes, posicoes, inicio, fim));
+            }
+            
+            // Contagens das músicas e estatísticas globais: uma atualização por música, gênero e intérprete.
+            // Agrupadas pelo contador que cada música incrementa: o id no catálogo (partilhado pelos
+            // clones da mesma música) ou, fora do catálogo, o da própria instância
+            ContadorInteiros porId = new ContadorInteiros(n); // Id no catálogo -> reproduções
+            Map<Musica, Integer> foraDoCatalogo = null; // Música sem id no catálogo -> reproduções
+            ContadorInteiros porGenero = new ContadorInteiros(Math.min(n, 64));
+            ContadorInteiros porInterprete = new ContadorInteiros(n);
+            for (int i = 0; i < n; i++) {
+                Musica musica = musicas[i];
+                if (musica.getId() >= 0 && musica.pertenceA(catalogo)) {
+                    porId.incrementar(musica.getId(), 1);
+                } else {
+                    if (foraDoCatalogo == null) {
+                        foraDoCatalogo = new IdentityHashMap<>();
+                    }
+                    foraDoCatalogo.merge(musica, 1, Integer::sum);
+                }
+                porGenero.incrementar(codigoGenero(musica), 1);
+                porInterprete.incrementar(codigoInterprete(musica), 1);
+            }
+            porId.paraCada(catalogo::incrementarContagem);
+            if (foraDoCatalogo != null) {
+                foraDoCatalogo.forEach(Musica::incrementarContagem);
+            }
+            porGenero.paraCada((codigo, vezes) ->
+                contar(reproducoesPorGenero, classificacaoGeneros, codigo, vezes));
+            porInterprete.paraCada((codigo, vezes) ->
+                contar(reproducoesPorInterprete, classificacaoInterpretes, codigo, vezes));
+        } finally {
+            trincoEstado.readLock().unlock();
+        }
+        aguardarDiario(sequencia);
+    }
+    
+    /**
+     * Aplica as reproduções de um utilizador num lote (posições posicoes[inicio..fim[)
+     * @return Sequência do último evento anexado ao diário (0 se nenhum)
+     */
+    private long aplicarReproducoes(Utilizador utilizador, Musica[] musicas, long[] instantes,
+                                    int[] posicoes, int inicio, int fim) {
+        long sequencia = 0;
+        synchronized (utilizador) {
+            int primeira = utilizador.getTamanhoHistorico();
+            utilizador.ouvirMusicas(musicas, instantes, posicoes, inicio, fim);
+            String email = utilizador.getEmail();
+            if (utilizadores.get(email) != utilizador) {
+                return 0;
+            }
+            long inicioSeguidas = 0; // Instante da primeira reprodução ainda por agregar
+            int seguidas = 0; // Reproduções seguidas no mesmo minuto ainda por agregar
+            for (int i = inicio; i < fim; i++) {
+                // Instante guardado no histórico (pode ter sido ajustado se o relógio recuou)
+                long registrado = utilizador.getInstanteHistorico(primeira + i - inicio);
+                if (seguidas > 0 && !AgregadoReproducoes.mesmoIntervalo(inicioSeguidas, registrado)) {
+                    agregado.registrar(email, inicioSeguidas, seguidas);
+                    seguidas = 0;
+                }
+                if (seguidas++ == 0) {
+                    inicioSeguidas = registrado;
+                }
+                if (diario != null) {
+                    sequencia = registrarEventoReproducao(email, musicas[posicoes[i]], registrado);
+                }
+            }
+            agregado.registrar(email, inicioSeguidas, seguidas);
+            marcarAlterado(utilizador);
+            reproducoesTotais.add(fim - inicio);
+        }
+        return sequencia;
+    }
+    
+    /**
+     * Aplica uma reprodução e, se o diário estiver ativo, anexa o evento
+     * @return Sequência do evento no diário (0 se não foi registrado)
+     */
+    private long aplicarReproducao(Utilizador utilizador, Musica musica, long instante) {
+        long sequencia = 0;
+        // O bloqueio do utilizador ordena as suas reproduções no histórico, nas classificações e no diário
+        synchronized (utilizador) {
+            utilizador.ouvirMusica(musica, instante);
+            String email = utilizador.getEmail();
+            if (utilizadores.get(email) == utilizador) {
+                // Usar o instante guardado no histórico (pode ter sido ajustado se o relógio recuou)
+                long registrado = utilizador.getInstanteHistorico(utilizador.getTamanhoHistorico() - 1);
+                agregado.registrar(email, registrado);
+                marcarAlterado(utilizador);
+                reproducoesTotais.increment();
+                if (diario != null) {
+                    sequencia = registrarEventoReproducao(email, musica, registrado);
+                }
+            }
+        }
         
-        String interprete = musica.getInterprete();
-        contagemPorInterprete.put(interprete, contagemPorInterprete.getOrDefault(interprete, 0) + 1);
+        // Atualizar estatísticas globais
+        contar(reproducoesPorGenero, classificacaoGeneros, codigoGenero(musica), 1);
+        contar(reproducoesPorInterprete, classificacaoInterpretes, codigoInterprete(musica), 1);
+        return sequencia;
+    }
+    
+    /**
+     * Retorna o código do gênero da música na tabela de símbolos do catálogo, procurando-o
+     * pelo texto só para as músicas que não pertencem ao catálogo
+     */
+    private int codigoGenero(Musica musica) {
+        return musica.pertenceA(catalogo) ? musica.getCodigoGenero() : catalogo.getSimbolos().codigo(musica.getGenero());
+    }
+    
+    private int codigoInterprete(Musica musica) {
+        return musica.pertenceA(catalogo) ? musica.getCodigoInterprete() : catalogo.getSimbolos().codigo(musica.getInterprete());
+    }
+    
+    /**
+     * Conta reproduções de um gênero ou intérprete pelo seu código na tabela de símbolos do catálogo
+     */
+    private static void contar(ContadoresReproducoes contadores, Classificacao<String> classificacao,
+                               int codigo, int vezes) {
+        if (codigo >= 0) {
+            contadores.incrementar(codigo, vezes);
+        } else {
+            classificacao.incrementar(null, vezes); // Sem gênero/intérprete: raro, direto na classificação
+        }
+    }
+    
+    /**
+     * Reflete nas classificações de gêneros e intérpretes as contagens alteradas desde a última consulta
+     */
+    private void atualizarGenerosEInterpretes() {
+        // O bloqueio da classificação impede duas atualizações em simultâneo (ver paraCadaAlterado)
+        TabelaSimbolos simbolos = catalogo.getSimbolos();
+        synchronized (classificacaoGeneros) {
+            reproducoesPorGenero.paraCadaAlterado((codigo, valor) ->
+                classificacaoGeneros.definir(codigo, simbolos.simbolo(codigo), valor));
+        }
+        synchronized (classificacaoInterpretes) {
+            reproducoesPorInterprete.paraCadaAlterado((codigo, valor) ->
+                classificacaoInterpretes.definir(codigo, simbolos.simbolo(codigo), valor));
+        }
+    }
+    
+    /**
+     * Altera o plano de subscrição de um utilizador, mantendo as classificações atualizadas
+     * @param utilizador Utilizador a atualizar
+     * @param plano Novo plano de subscrição
+     */
+    public void atualizarPlano(Utilizador utilizador, PlanoSubscricao plano) {
+        long sequencia = 0;
+        trincoEstado.readLock().lock();
+        try {
+            synchronized (utilizador) {
+                utilizador.setPlano(plano);
+                marcarAlterado(utilizador);
+                if (utilizadores.get(utilizador.getEmail()) == utilizador) {
+                    sequencia = registrarEvento(EVENTO_PLANO, saida -> {
+                        saida.escreverString(utilizador.getEmail());
+                        Utilizador.escreverPlano(saida, plano);
+                    });
+                }
+            }
+        } finally {
+            trincoEstado.readLock().unlock();
+        }
+        aguardarDiario(sequencia);
+    }
+    
+    /**
+     * Cria uma playlist para um utilizador, mantendo as classificações atualizadas
+     * @param utilizador Utilizador que cria a playlist
+     * @param nome Nome da playlist
+     * @return Playlist criada ou null se o plano não permitir
+     */
+    public Playlist criarPlaylist(Utilizador utilizador, String nome) {
+        Playlist playlist;
+        long sequencia = 0;
+        trincoEstado.readLock().lock();
+        try {
+            synchronized (utilizador) {
+                playlist = utilizador.criarPlaylist(nome);
+                if (playlist != null) {
+                    marcarAlterado(utilizador);
+                    if (utilizadores.get(utilizador.getEmail()) == utilizador) {
+                        sequencia = registrarEvento(EVENTO_PLAYLIST, saida -> {
+                            saida.escreverString(utilizador.getEmail());
+                            saida.escreverString(nome);
+                        });
+                    }
+                }
+            }
+        } finally {
+            trincoEstado.readLock().unlock();
+        }
+        aguardarDiario(sequencia);
+        return playlist;
+    }
+    
+    /**
+     * Atualiza a posição de um utilizador registrado nas classificações globais
+     * @param utilizador Utilizador cujos valores mudaram
+     * @return Músicas ouvidas pelo utilizador (-1 se não estiver registrado)
+     */
+    private int atualizarClassificacoes(Utilizador utilizador) {
+        String email = utilizador.getEmail();
+        if (utilizadores.get(email) != utilizador) {
+            return -1; // Utilizadores não registrados não entram nas estatísticas
+        }
+        int reproducoes;
+        int pontos;
+        int playlists;
+        synchronized (utilizador) {
+            reproducoes = utilizador.getNumeroTotalReproducoes();
+            pontos = utilizador.getPontos();
+            playlists = utilizador.getNumeroPlaylists();
+        }
+        classificacaoReproducoes.definir(email, reproducoes);
+        classificacaoPontos.definir(email, pontos);
+        classificacaoPlaylists.definir(email, playlists);
+        return reproducoes;
+    }
+    
+    /**
+     * Marca um utilizador cujas reproduções, pontos ou playlists mudaram. Só custa uma inserção
+     * num conjunto concorrente; as classificações e a completação refletem-no na consulta seguinte
+     */
+    private void marcarAlterado(Utilizador utilizador) {
+        utilizadoresAlterados.add(utilizador);
+    }
+    
+    /**
+     * Reflete nas classificações de utilizadores, e na completação se já existir,
+     * os utilizadores marcados desde a última consulta
+     */
+    private void atualizarUtilizadoresAlterados() {
+        if (utilizadoresAlterados.isEmpty()) {
+            return;
+        }
+        // Um de cada vez, para valores lidos antes não substituírem outros lidos depois
+        synchronized (utilizadoresAlterados) {
+            for (Iterator<Utilizador> it = utilizadoresAlterados.iterator(); it.hasNext(); ) {
+                Utilizador utilizador = it.next();
+                // Retirar antes de ler: uma alteração depois da leitura volta a marcá-lo
+                it.remove();
+                int reproducoes = atualizarClassificacoes(utilizador);
+                if (reproducoes >= 0 && completacaoUtilizadores != null) {
+                    synchronized (entradaUtilizador) {
+                        Integer entrada = entradaUtilizador.get(utilizador.getEmail());
+                        if (entrada != null) {
+                            completacaoUtilizadores.definirPopularidade(entrada, reproducoes);
+                        }
+                    }
+                }
+            }
+        }
     }
     
     /**
@@ -83,19 +848,20 @@ public class Sistema implements Serializable {
      * @return A música mais reproduzida ou null se não houver músicas
      */
     public Musica getMusicaMaisReproduzida() {
-        Musica musicaMaisReproduzida = null;
-        int maxReproducoes = 0;
-        
-        for (Album album : albuns.values()) {
-            for (Musica musica : album.getMusicas().values()) {
-                if (musica.getContagemReproducoes() > maxReproducoes) {
-                    maxReproducoes = musica.getContagemReproducoes();
-                    musicaMaisReproduzida = musica;
-                }
-            }
+        List<Musica> top = catalogo.getMusicasMaisReproduzidas(1);
+        if (top.isEmpty() || top.get(0).getContagemReproducoes() == 0) {
+            return null;
         }
-        
-        return musicaMaisReproduzida;
+        return top.get(0);
+    }
+    
+    /**
+     * Retorna as músicas mais reproduzidas no sistema
+     * @param k Número máximo de músicas
+     * @return Lista com até K músicas por ordem decrescente de reproduções
+     */
+    public List<Musica> getMusicasMaisReproduzidas(int k) {
+        return catalogo.getMusicasMaisReproduzidas(k);
     }
     
     /**
@@ -103,10 +869,18 @@ public class Sistema implements Serializable {
      * @return O nome do intérprete mais escutado ou null se não houver dados
      */
     public String getInterpreteMaisEscutado() {
-        return contagemPorInterprete.entrySet().stream()
-            .max(Map.Entry.comparingByValue())
-            .map(Map.Entry::getKey)
-            .orElse(null);
+        atualizarGenerosEInterpretes();
+        return classificacaoInterpretes.getPrimeiro();
+    }
+    
+    /**
+     * Retorna os intérpretes mais escutados no sistema
+     * @param k Número máximo de intérpretes
+     * @return Lista com até K intérpretes por ordem decrescente
+     */
+    public List<String> getInterpretesMaisEscutados(int k) {
+        atualizarGenerosEInterpretes();
+        return classificacaoInterpretes.getTop(k);
     }
     
     /**
@@ -114,9 +888,18 @@ public class Sistema implements Serializable {
      * @return O utilizador que mais músicas ouviu ou null se não houver dados
      */
     public Utilizador getUtilizadorQueMaisOuviu() {
-        return utilizadores.values().stream()
-            .max(Comparator.comparingInt(Utilizador::getNumeroTotalReproducoes))
-            .orElse(null);
+        atualizarUtilizadoresAlterados();
+        return getUtilizador(classificacaoReproducoes.getPrimeiro());
+    }
+    
+    /**
+     * Retorna os utilizadores que mais músicas ouviram
+     * @param k Número máximo de utilizadores
+     * @return Lista com até K utilizadores por ordem decrescente
+     */
+    public List<Utilizador> getUtilizadoresQueMaisOuviram(int k) {
+        atualizarUtilizadoresAlterados();
+        return getUtilizadores(classificacaoReproducoes.getTop(k));
     }
     
     /**
@@ -126,67 +909,177 @@ public class Sistema implements Serializable {
      * @return O utilizador que mais músicas ouviu no período ou null se não houver dados
      */
     public Utilizador getUtilizadorQueMaisOuviuPeriodo(LocalDateTime inicio, LocalDateTime fim) {
-        return utilizadores.values().stream()
-            .max(Comparator.comparingInt(u -> u.getNumeroBusicasOuvidasPeriodo(inicio, fim)))
+        Map<String, Integer> contagens = agregado.contarPorUtilizador(
+            AgregadoReproducoes.inicioExclusivoEmMillis(inicio),
+            AgregadoReproducoes.fimExclusivoEmMillis(fim),
+            utilizadores);
+        return contagens.entrySet().stream()
+            .max(Map.Entry.comparingByValue())
+            .map(entry -> utilizadores.get(entry.getKey()))
             .orElse(null);
     }
     
     /**
-     * Retorna o utilizador com mais pontos
-     * @return O utilizador com mais pontos ou null se não houver dados
+     * Retorna o utilizador com mais pontos
+     * @return O utilizador com mais pontos ou null se não houver dados
+     */
+    public Utilizador getUtilizadorComMaisPontos() {
+        atualizarUtilizadoresAlterados();
+        return getUtilizador(classificacaoPontos.getPrimeiro());
+    }
+    
+    /**
+     * Retorna os utilizadores com mais pontos
+     * @param k Número máximo de utilizadores
+     * @return Lista com até K utilizadores por ordem decrescente
+     */
+    public List<Utilizador> getUtilizadoresComMaisPontos(int k) {
+        atualizarUtilizadoresAlterados();
+        return getUtilizadores(classificacaoPontos.getTop(k));
+    }
+    
+    /**
+     * Retorna o gênero musical mais reproduzido
+     * @return O gênero mais reproduzido ou null se não houver dados
+     */
+    public String getGeneroMaisReproduzido() {
+        atualizarGenerosEInterpretes();
+        return classificacaoGeneros.getPrimeiro();
+    }
+    
+    /**
+     * Retorna os gêneros musicais mais reproduzidos
+     * @param k Número máximo de gêneros
+     * @return Lista com até K gêneros por ordem decrescente
+     */
+    public List<String> getGenerosMaisReproduzidos(int k) {
+        atualizarGenerosEInterpretes();
+        return classificacaoGeneros.getTop(k);
+    }
+    
+    /**
+     * Retorna o número de playlists públicas no sistema
+     * @return Quantidade de playlists públicas
+     */
+    public int getNumeroPlaylistsPublicas() {
+        return catalogoPlaylists.getTamanho();
+    }
+    
+    /**
+     * Retorna o utilizador com mais playlists
+     * @return O utilizador com mais playlists ou null se não houver dados
+     */
+    public Utilizador getUtilizadorComMaisPlaylists() {
+        atualizarUtilizadoresAlterados();
+        return getUtilizador(classificacaoPlaylists.getPrimeiro());
+    }
+    
+    /**
+     * Retorna os utilizadores com mais playlists
+     * @param k Número máximo de utilizadores
+     * @return Lista com até K utilizadores por ordem decrescente
+     */
+    public List<Utilizador> getUtilizadoresComMaisPlaylists(int k) {
+        atualizarUtilizadoresAlterados();
+        return getUtilizadores(classificacaoPlaylists.getTop(k));
+    }
+    
+    private Utilizador getUtilizador(String email) {
+        return email != null ? utilizadores.get(email) : null;
+    }
+    
+    private List<Utilizador> getUtilizadores(List<String> emails) {
+        List<Utilizador> resultado = new ArrayList<>(emails.size());
+        for (String email : emails) {
+            resultado.add(utilizadores.get(email));
+        }
+        return resultado;
+    }
+    
+    /**
+     * Busca por músicas de um determinado gênero através do índice do catálogo,
+     * com custo proporcional ao número de resultados
+     * @param genero Gênero musical a ser buscado
+     * @return Lista de músicas do gênero especificado
+     */
+    public List<Musica> buscarMusicasPorGenero(String genero) {
+        return catalogo.listarMusicasPorGenero(genero);
+    }
+    
+    /**
+     * Pesquisa músicas por palavras do nome, intérprete, álbum, letra ou conteúdo musical,
+     * ignorando acentos e maiúsculas, por relevância decrescente
+     * @param consulta Palavras a procurar
+     * @param limite Número máximo de resultados
+     * @return Músicas encontradas (primeiro as que têm todas as palavras)
      */
-    public Utilizador getUtilizadorComMaisPontos() {
-        return utilizadores.values().stream()
-            .max(Comparator.comparingInt(Utilizador::getPontos))
-            .orElse(null);
+    public List<Musica> pesquisarMusicas(String consulta, int limite) {
+        return catalogo.pesquisar(consulta, limite);
     }
     
     /**
-     * Retorna o gênero musical mais reproduzido
-     * @return O gênero mais reproduzido ou null se não houver dados
+     * Sugere músicas cujo nome começa pelo prefixo, ignorando acentos e maiúsculas,
+     * das mais para as menos reproduzidas
+     * @param prefixo Início do nome
+     * @param limite Número máximo de sugestões (até {@value CompletacaoCatalogo#MAXIMO_SUGESTOES})
+     * @return Músicas sugeridas
      */
-    public String getGeneroMaisReproduzido() {
-        return contagemPorGenero.entrySet().stream()
-            .max(Map.Entry.comparingByValue())
-            .map(Map.Entry::getKey)
-            .orElse(null);
+    public List<Musica> completarMusicas(String prefixo, int limite) {
+        return catalogo.completarMusicas(prefixo, limite);
     }
     
     /**
-     * Retorna o número de playlists públicas no sistema
-     * @return Quantidade de playlists públicas
+     * Sugere álbuns cujo nome começa pelo prefixo, dos que têm mais reproduções para os que têm menos
+     * @param prefixo Início do nome
+     * @param limite Número máximo de sugestões (até {@value CompletacaoCatalogo#MAXIMO_SUGESTOES})
+     * @return Álbuns sugeridos
      */
-    public int getNumeroPlaylistsPublicas() {
-        return playlistsPublicas.size();
+    public List<Album> completarAlbuns(String prefixo, int limite) {
+        return catalogo.completarAlbuns(prefixo, limite);
     }
     
     /**
-     * Retorna o utilizador com mais playlists
-     * @return O utilizador com mais playlists ou null se não houver dados
+     * Sugere intérpretes cujo nome começa pelo prefixo, dos que têm mais reproduções para os que têm menos
+     * @param prefixo Início do nome
+     * @param limite Número máximo de sugestões (até {@value CompletacaoCatalogo#MAXIMO_SUGESTOES})
+     * @return Nomes dos intérpretes sugeridos
      */
-    public Utilizador getUtilizadorComMaisPlaylists() {
-        return utilizadores.values().stream()
-            .max(Comparator.comparingInt(Utilizador::getNumeroPlaylists))
-            .orElse(null);
+    public List<String> completarInterpretes(String prefixo, int limite) {
+        return catalogo.completarInterpretes(prefixo, limite);
     }
     
     /**
-     * Busca por músicas de um determinado gênero
-     * @param genero Gênero musical a ser buscado
-     * @return Lista de músicas do gênero especificado
+     * Sugere utilizadores cujo nome começa pelo prefixo, dos que ouviram mais músicas para os que ouviram menos.
+     * O índice só é construído na primeira chamada, para não pesar em quem nunca o usa
+     * @param prefixo Início do nome
+     * @param limite Número máximo de sugestões (até {@value CompletacaoCatalogo#MAXIMO_SUGESTOES})
+     * @return Utilizadores sugeridos
      */
-    public List<Musica> buscarMusicasPorGenero(String genero) {
-        List<Musica> resultado = new ArrayList<>();
-        
-        for (Album album : albuns.values()) {
-            for (Musica musica : album.getMusicas().values()) {
-                if (musica.getGenero().equalsIgnoreCase(genero)) {
-                    resultado.add(musica);
+    public List<Utilizador> completarUtilizadores(String prefixo, int limite) {
+        // Antes do bloqueio da completação, que a atualização também usa
+        atualizarUtilizadoresAlterados();
+        synchronized (entradaUtilizador) {
+            if (completacaoUtilizadores == null) {
+                // Publicar antes de percorrer: reproduções a partir daqui ficam marcadas
+                completacaoUtilizadores = new IndiceCompletacao<>(CompletacaoCatalogo.MAXIMO_SUGESTOES);
+                for (Utilizador utilizador : utilizadores.values()) {
+                    indexarUtilizador(utilizador);
                 }
             }
+            return completacaoUtilizadores.completar(prefixo, limite);
+        }
+    }
+    
+    /**
+     * Adiciona um utilizador à completação já construída (sem efeito se já estiver)
+     */
+    private void indexarUtilizador(Utilizador utilizador) {
+        synchronized (entradaUtilizador) {
+            if (!entradaUtilizador.containsKey(utilizador.getEmail())) {
+                entradaUtilizador.put(utilizador.getEmail(), completacaoUtilizadores.adicionar(
+                    utilizador.getNome(), utilizador, utilizador.getNumeroTotalReproducoes()));
+            }
         }
-        
-        return resultado;
     }
     
     /**
@@ -217,32 +1110,113 @@ public class Sistema implements Serializable {
             return null; // Apenas utilizadores Premium Top têm acesso a esta funcionalidade
         }
         
-        ListaFavoritos listaFavoritos = new ListaFavoritos("Favoritos de " + utilizador.getNome());
+        return montarPlaylistPreferencias(utilizador,
+            genero -> catalogo.getMusicasMaisReproduzidasPorGenero(genero, MUSICAS_POR_GENERO_PREFERENCIAS, false));
+    }
+    
+    /**
+     * Gera as playlists de preferências de todos os utilizadores Premium Top (ex.: mix diário),
+     * repartindo-os em lotes pelas threads do pool. Todas as playlists usam o mesmo instantâneo
+     * da popularidade do catálogo, tirado no início, e cada playlist é entregue ao destino
+     * assim que é gerada, para que nenhuma thread acumule mais do que um lote.
+     * @param pool Pool onde gerar as playlists
+     * @param destino Recebe cada utilizador e a sua playlist (chamado por várias threads)
+     * @param progresso Recebe o número de utilizadores já tratados no fim de cada lote (pode ser null)
+     * @return Número de playlists geradas
+     */
+    public int gerarPlaylistsPreferenciasEmLote(ForkJoinPool pool, BiConsumer<Utilizador, ListaFavoritos> destino,
+                                                IntConsumer progresso) {
+        List<Utilizador> elegiveis = new ArrayList<>();
+        for (Utilizador utilizador : utilizadores.values()) {
+            if (utilizador.getPlano() instanceof PlanoPremiumTop) {
+                elegiveis.add(utilizador);
+            }
+        }
+        Map<String, List<Musica>> topPorGenero = catalogo.getMusicasMaisReproduzidasPorGenero(MUSICAS_POR_GENERO_PREFERENCIAS);
+        Function<String, List<Musica>> topGenero =
+            genero -> topPorGenero.getOrDefault(Catalogo.chaveGenero(genero), Collections.emptyList());
+        
+        pool.invoke(new LotePreferencias(elegiveis, 0, elegiveis.size(), topGenero, destino, progresso,
+                                         new AtomicInteger()));
+        return elegiveis.size();
+    }
+    
+    /**
+     * Tarefa que gera as playlists de preferências de um intervalo de utilizadores,
+     * dividindo-o ao meio enquanto for maior do que um lote
+     */
+    private static class LotePreferencias extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final List<Utilizador> elegiveis;
+        private final int inicio;
+        private final int fim;
+        private final Function<String, List<Musica>> topGenero;
+        private final BiConsumer<Utilizador, ListaFavoritos> destino;
+        private final IntConsumer progresso;
+        private final AtomicInteger concluidos;
         
-        // Obter gêneros mais ouvidos
-        Map<String, Integer> generosFavoritos = utilizador.getGenerosMaisOuvidos();
+        LotePreferencias(List<Utilizador> elegiveis, int inicio, int fim, Function<String, List<Musica>> topGenero,
+                         BiConsumer<Utilizador, ListaFavoritos> destino, IntConsumer progresso, AtomicInteger concluidos) {
+            this.elegiveis = elegiveis;
+            this.inicio = inicio;
+            this.fim = fim;
+            this.topGenero = topGenero;
+            this.destino = destino;
+            this.progresso = progresso;
+            this.concluidos = concluidos;
+        }
         
-        // Adicionar músicas dos gêneros favoritos
-        for (Map.Entry<String, Integer> entry : generosFavoritos.entrySet()) {
-            String genero = entry.getKey();
-            List<Musica> musicasGenero = buscarMusicasPorGenero(genero);
-            
-            // Ordenar por popularidade (número de reproduções)
-            musicasGenero.sort((m1, m2) -> Integer.compare(m2.getContagemReproducoes(), m1.getContagemReproducoes()));
-            
-            // Adicionar até 5 músicas por gênero
-            int count = 0;
-            for (Musica musica : musicasGenero) {
-                if (count >= 5) break;
-                if (listaFavoritos.adicionarMusica(musica)) {
-                    count++;
-                }
+        @Override
+        protected void compute() {
+            if (fim - inicio > TAMANHO_LOTE_PREFERENCIAS) {
+                int meio = (inicio + fim) >>> 1;
+                invokeAll(new LotePreferencias(elegiveis, inicio, meio, topGenero, destino, progresso, concluidos),
+                          new LotePreferencias(elegiveis, meio, fim, topGenero, destino, progresso, concluidos));
+                return;
+            }
+            for (int i = inicio; i < fim; i++) {
+                Utilizador utilizador = elegiveis.get(i);
+                destino.accept(utilizador, montarPlaylistPreferencias(utilizador, topGenero));
+            }
+            int total = concluidos.addAndGet(fim - inicio);
+            if (progresso != null) {
+                progresso.accept(total);
+            }
+        }
+    }
+    
+    /**
+     * Monta a playlist de preferências com as músicas mais populares de cada gênero favorito
+     * @param topGenero Gênero -> músicas mais reproduzidas do gênero
+     */
+    private static ListaFavoritos montarPlaylistPreferencias(Utilizador utilizador,
+                                                             Function<String, List<Musica>> topGenero) {
+        ListaFavoritos listaFavoritos = new ListaFavoritos("Favoritos de " + utilizador.getNome());
+        
+        // Adicionar as músicas mais populares (número de reproduções) de cada gênero favorito
+        for (String genero : generosFavoritos(utilizador)) {
+            for (Musica musica : topGenero.apply(genero)) {
+                listaFavoritos.adicionarMusica(musica);
             }
         }
         
         return listaFavoritos;
     }
     
+    /**
+     * Retorna os gêneros mais ouvidos por um utilizador, um por chave do catálogo: as grafias
+     * que só diferem em maiúsculas ("Rock" e "rock") são o mesmo gênero e as mesmas músicas
+     * @param utilizador Utilizador
+     * @return Chaves dos gêneros ouvidos (ver {@link Catalogo#chaveGenero})
+     */
+    private static Set<String> generosFavoritos(Utilizador utilizador) {
+        Set<String> generos = new LinkedHashSet<>();
+        for (String genero : utilizador.getGenerosMaisOuvidos().keySet()) {
+            generos.add(Catalogo.chaveGenero(genero));
+        }
+        return generos;
+    }
+    
     /**
      * Gera uma playlist com base nas preferências e tempo máximo
      * @param utilizador Utilizador para quem gerar a playlist
@@ -257,21 +1231,32 @@ public class Sistema implements Serializable {
         ListaFavoritos listaFavoritos = new ListaFavoritos("Favoritos Limitados de " + utilizador.getNome(),
                                                            null, duracaoMaxima, false);
         
-        Map<String, Integer> generosFavoritos = utilizador.getGenerosMaisOuvidos();
-        
-        for (Map.Entry<String, Integer> entry : generosFavoritos.entrySet()) {
-            String genero = entry.getKey();
-            List<Musica> musicasGenero = buscarMusicasPorGenero(genero);
-            
-            musicasGenero.sort((m1, m2) -> Integer.compare(m2.getContagemReproducoes(), m1.getContagemReproducoes()));
-            
-            for (Musica musica : musicasGenero) {
-                if (listaFavoritos.getDuracaoTotal() + musica.getDuracao() <= duracaoMaxima) {
-                    listaFavoritos.adicionarMusica(musica);
+        // Candidatas agrupadas por duração; em cada duração, pela ordem de preferência
+        // (gêneros favoritos e, dentro de cada um, as mais reproduzidas primeiro)
+        TreeMap<Integer, Deque<Musica>> candidatas = new TreeMap<>();
+        Set<Musica> vistas = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (String genero : generosFavoritos(utilizador)) {
+            for (Musica musica : catalogo.getMusicasMaisReproduzidasPorGenero(genero, Integer.MAX_VALUE, false)) {
+                if (musica.getDuracao() <= duracaoMaxima && vistas.add(musica)) {
+                    candidatas.computeIfAbsent(musica.getDuracao(), d -> new ArrayDeque<>()).addLast(musica);
                 }
             }
         }
         
+        // Best fit: escolher sempre a música mais longa que ainda cabe no tempo restante,
+        // o que aproxima o preenchimento do limite em O(n log n)
+        int restante = duracaoMaxima;
+        Map.Entry<Integer, Deque<Musica>> melhor;
+        while ((melhor = candidatas.floorEntry(restante)) != null) {
+            Musica musica = melhor.getValue().pollFirst();
+            if (melhor.getValue().isEmpty()) {
+                candidatas.remove(melhor.getKey());
+            }
+            if (listaFavoritos.adicionarMusica(musica)) {
+                restante -= musica.getDuracao();
+            }
+        }
+        
         return listaFavoritos;
     }
     
@@ -288,19 +1273,9 @@ public class Sistema implements Serializable {
         ListaFavoritos listaFavoritos = new ListaFavoritos("Favoritos Explícitos de " + utilizador.getNome(),
                                                            null, -1, true);
         
-        Map<String, Integer> generosFavoritos = utilizador.getGenerosMaisOuvidos();
-        
-        for (Map.Entry<String, Integer> entry : generosFavoritos.entrySet()) {
-            String genero = entry.getKey();
-            List<Musica> musicasGenero = buscarMusicasPorGenero(genero);
-            
-            // Filtrar apenas músicas explícitas
-            musicasGenero = musicasGenero.stream()
-                .filter(musica -> musica instanceof MusicaExplicita)
-                .sorted((m1, m2) -> Integer.compare(m2.getContagemReproducoes(), m1.getContagemReproducoes()))
-                .collect(Collectors.toList());
-            
-            for (Musica musica : musicasGenero) {
+        for (String genero : generosFavoritos(utilizador)) {
+            // Músicas explícitas do gênero, já por ordem de popularidade
+            for (Musica musica : catalogo.getMusicasMaisReproduzidasPorGenero(genero, Integer.MAX_VALUE, true)) {
                 listaFavoritos.adicionarMusica(musica);
             }
         }
@@ -315,19 +1290,9 @@ public class Sistema implements Serializable {
     public PlaylistAleatoria gerarPlaylistAleatoria() {
         PlaylistAleatoria playlist = new PlaylistAleatoria("Playlist Aleatória");
         
-        List<Musica> todasMusicas = new ArrayList<>();
-        for (Album album : albuns.values()) {
-            todasMusicas.addAll(album.getMusicas().values());
-        }
-        
-        // Adicionar até 10 músicas aleatórias (ou todas, se forem menos que 10)
-        Random random = new Random();
-        int numMusicas = Math.min(10, todasMusicas.size());
-        
-        for (int i = 0; i < numMusicas; i++) {
-            int indice = random.nextInt(todasMusicas.size());
-            playlist.adicionarMusica(todasMusicas.get(indice));
-            todasMusicas.remove(indice); // Evitar duplicatas
+        // Até 10 músicas distintas (ou todas, se forem menos que 10)
+        for (Musica musica : catalogo.sortearMusicas(10, ThreadLocalRandom.current())) {
+            playlist.adicionarMusica(musica);
         }
         
         return playlist;
@@ -338,13 +1303,7 @@ public class Sistema implements Serializable {
      * @return true se salvou com sucesso, false caso contrário
      */
     public boolean salvarEstado() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(ARQUIVO_SISTEMA))) {
-            oos.writeObject(this);
-            return true;
-        } catch (IOException e) {
-            System.err.println("Erro ao salvar estado: " + e.getMessage());
-            return false;
-        }
+        return salvarEstado(ARQUIVO_SISTEMA);
     }
     
     /**
@@ -352,35 +1311,422 @@ public class Sistema implements Serializable {
      * @return O sistema carregado ou null se falhou
      */
     public static Sistema carregarEstado() {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(ARQUIVO_SISTEMA))) {
-            return (Sistema) ois.readObject();
-        } catch (IOException | ClassNotFoundException e) {
-            System.err.println("Erro ao carregar estado: " + e.getMessage());
-            return null;
-        }
+        return carregarEstado(ARQUIVO_SISTEMA);
     }
     
     /**
-     * Salva o estado atual do sistema em um arquivo específico
+     * Salva o estado atual do sistema em um arquivo específico, no formato binário versionado.
+     * O estado é escrito num ficheiro temporário que só substitui o anterior depois de completo.
+     * Se o diário de eventos estiver ativo sobre este arquivo, é feito um checkpoint.
      * @param nomeArquivo Nome do arquivo para salvar
      * @return true se salvou com sucesso, false caso contrário
      */
     public boolean salvarEstado(String nomeArquivo) {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(nomeArquivo))) {
-            oos.writeObject(this);
+        Path destino = Paths.get(nomeArquivo);
+        DiarioEventos atual = diario;
+        if (atual != null && atual.getBase().equals(destino)) {
+            return fazerCheckpoint();
+        }
+        trincoEstado.writeLock().lock();
+        try {
+            escreverArquivo(destino, geracaoDiario);
             return true;
         } catch (IOException e) {
             System.err.println("Erro ao salvar estado: " + e.getMessage());
             return false;
+        } finally {
+            trincoEstado.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Escreve o estado num arquivo temporário e renomeia-o para o destino. Antes da renomeação,
+     * as músicas que liam o texto do arquivo anterior passam a lê-lo do novo e o anterior é
+     * fechado, para nenhum processo ter o destino aberto quando ele é substituído.
+     * Chamado com o trinco de estado exclusivo.
+     */
+    private void escreverArquivo(Path destino, long geracao) throws IOException {
+        // Nome único: se a renomeação falhar, as músicas ficam a ler do temporário e o
+        // seguinte não o pode truncar
+        Path temporario = Files.createTempFile(destino.toAbsolutePath().getParent(),
+            destino.getFileName().toString(), ".tmp");
+        RealocacaoTextos realocacao = new RealocacaoTextos();
+        try (FileChannel canal = FileChannel.open(temporario, StandardOpenOption.WRITE)) {
+            SaidaBinaria saida = new SaidaBinaria(canal);
+            saida.setRealocacaoTextos(realocacao);
+            escreverEstado(saida, geracao);
+            saida.esvaziar();
+            canal.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporario);
+            throw e;
+        }
+        if (armazemTexto != null) {
+            ArmazemTexto novo = new ArmazemTexto(temporario);
+            realocacao.aplicar(novo);
+            fecharArmazem();
+            armazemTexto = novo;
+            textosTemporarios = temporario;
+        }
+        Files.move(temporario, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (temporario.equals(textosTemporarios)) {
+            textosTemporarios = null; // O canal aberto acompanha a renomeação
+        }
+    }
+    
+    /**
+     * Fecha o armazém de texto atual e apaga-o se era um temporário que não chegou a ser renomeado
+     */
+    private void fecharArmazem() {
+        if (armazemTexto == null) {
+            return;
+        }
+        try {
+            armazemTexto.close();
+            if (textosTemporarios != null) {
+                Files.deleteIfExists(textosTemporarios);
+            }
+        } catch (IOException e) {
+            System.err.println("Erro ao fechar arquivo de estado: " + e.getMessage());
+        } finally {
+            armazemTexto = null;
+            textosTemporarios = null;
+        }
+    }
+    
+    /**
+     * Fecha o diário e o arquivo de onde as músicas leem o texto. Chamado quando o sistema deixa
+     * de ser usado (ao sair ou ao ser substituído por outro carregado): a partir daí a letra e o
+     * conteúdo musical das músicas carregadas deixam de estar disponíveis.
+     */
+    public void fechar() {
+        fecharDiario();
+        trincoEstado.writeLock().lock();
+        try {
+            fecharArmazem();
+        } finally {
+            trincoEstado.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Passa a registrar num diário cada evento que altera o sistema (reproduções, utilizadores,
+     * álbuns e as suas músicas, playlists criadas e o seu conteúdo, publicações, bibliotecas e
+     * planos), com checkpoints periódicos em segundo plano. As alterações feitas diretamente nos
+     * objetos, sem passar pelo sistema, não são registradas.
+     * Começa por salvar o estado completo no arquivo dado.
+     * @param nomeArquivo Arquivo de estado a que o diário pertence
+     * @return true se o diário ficou ativo
+     */
+    public synchronized boolean ativarDiario(String nomeArquivo) {
+        if (diario != null) {
+            return diario.getBase().equals(Paths.get(nomeArquivo));
+        }
+        Path base = Paths.get(nomeArquivo);
+        try {
+            diario = new DiarioEventos(base, Math.max(geracaoDiario, DiarioEventos.proximaGeracao(base)));
+        } catch (IOException e) {
+            System.err.println("Erro ao abrir diário de eventos: " + e.getMessage());
+            return false;
+        }
+        if (!fazerCheckpoint()) {
+            fecharDiario();
+            return false;
+        }
+        checkpoints = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+            Thread thread = new Thread(tarefa, "spotifum-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checkpoints.scheduleWithFixedDelay(this::verificarCheckpoint,
+            INTERVALO_VERIFICACAO, INTERVALO_VERIFICACAO, TimeUnit.SECONDS);
+        return true;
+    }
+    
+    public boolean ativarDiario() {
+        return ativarDiario(ARQUIVO_SISTEMA);
+    }
+    
+    /**
+     * Para os checkpoints e fecha o diário. Os eventos já registrados continuam em disco.
+     */
+    public void fecharDiario() {
+        ScheduledExecutorService agendador;
+        synchronized (this) {
+            agendador = checkpoints;
+            checkpoints = null;
+        }
+        if (agendador != null) {
+            agendador.shutdown();
+            try {
+                agendador.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            // Sem alterações a meio, para nenhuma tentar anexar a um diário já fechado
+            trincoEstado.writeLock().lock();
+            try {
+                if (diario != null) {
+                    diario.close();
+                }
+            } catch (IOException e) {
+                System.err.println("Erro ao fechar diário de eventos: " + e.getMessage());
+            } finally {
+                diario = null;
+                trincoEstado.writeLock().unlock();
+            }
+        }
+    }
+    
+    /**
+     * Compacta o diário no arquivo de estado: abre uma nova geração do diário, salva o estado
+     * completo e apaga as gerações que ele já inclui
+     * @return true se o checkpoint foi feito
+     */
+    public boolean fazerCheckpoint() {
+        trincoEstado.writeLock().lock();
+        try {
+            return fazerCheckpointBloqueado();
+        } finally {
+            trincoEstado.writeLock().unlock();
+        }
+    }
+    
+    private boolean fazerCheckpointBloqueado() {
+        if (diario == null) {
+            return false;
+        }
+        Path base = diario.getBase();
+        try {
+            long geracao = diario.rodar();
+            escreverArquivo(base, geracao);
+            geracaoDiario = geracao;
+            ultimoCheckpoint = System.currentTimeMillis();
+            DiarioEventos.apagarAnteriores(base, geracao);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            // As gerações anteriores continuam em disco e são reaplicadas ao carregar
+            System.err.println("Erro ao salvar estado: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    private void verificarCheckpoint() {
+        DiarioEventos atual = diario;
+        if (atual == null) {
+            return;
+        }
+        long tamanho = atual.getTamanho();
+        if (tamanho >= LIMITE_DIARIO
+                || (tamanho > 0 && System.currentTimeMillis() - ultimoCheckpoint >= INTERVALO_CHECKPOINT)) {
+            fazerCheckpoint();
+        }
+    }
+    
+    /**
+     * Anexa um evento ao diário, se estiver ativo. Chamado com o utilizador ou a estrutura
+     * alterada bloqueados, para que a ordem no diário seja a ordem em que foram aplicados.
+     * @return Sequência a aguardar fora do bloqueio (0 se não houver diário)
+     */
+    private long registrarEvento(int tipo, EscritaEvento escrita) {
+        if (diario == null) {
+            return 0;
+        }
+        try {
+            SaidaBinaria saida = diario.iniciarEvento();
+            saida.escreverByte(tipo);
+            escrita.escrever(saida);
+            return diario.anexarEvento();
+        } catch (IOException e) {
+            System.err.println("Erro no diário de eventos: " + e.getMessage());
+        } catch (UncheckedIOException e) {
+            System.err.println("Erro no diário de eventos: " + e.getCause().getMessage());
+        }
+        return 0;
+    }
+    
+    /**
+     * Anexa uma reprodução ao diário como {@link #registrarEvento}, mas sem a lambda da escrita:
+     * cada reprodução é registrada no caminho mais frequente do sistema, que não deve alocar
+     * @return Sequência a aguardar fora do bloqueio
+     */
+    private long registrarEventoReproducao(String email, Musica musica, long instante) {
+        DiarioEventos atual = diario;
+        if (atual == null) {
+            return 0;
+        }
+        try {
+            SaidaBinaria saida = atual.iniciarEvento();
+            saida.escreverByte(EVENTO_REPRODUCAO);
+            saida.escreverString(email);
+            Musica.escreverReferencia(saida, musica, catalogo);
+            saida.escreverVarLong(instante);
+            return atual.anexarEvento();
+        } catch (IOException e) {
+            System.err.println("Erro no diário de eventos: " + e.getMessage());
+        } catch (UncheckedIOException e) {
+            System.err.println("Erro no diário de eventos: " + e.getCause().getMessage());
+        }
+        return 0;
+    }
+    
+    /**
+     * Espera que um evento fique gravado; eventos anexados em simultâneo partilham o mesmo fsync
+     */
+    private void aguardarDiario(long sequencia) {
+        DiarioEventos atual = diario;
+        if (sequencia == 0 || atual == null) {
+            return;
+        }
+        try {
+            atual.aguardar(sequencia);
+        } catch (UncheckedIOException e) {
+            System.err.println("Erro no diário de eventos: " + e.getCause().getMessage());
+        }
+    }
+    
+    /**
+     * Reaplica um evento lido do diário
+     */
+    private void aplicarEvento(EntradaBinaria evento) throws IOException {
+        int tipo = evento.lerByte();
+        if (tipo == EVENTO_UTILIZADOR) {
+            registrarUtilizador(Utilizador.ler(evento, catalogo, new ArrayList<>()));
+        } else if (tipo == EVENTO_ALBUM) {
+            adicionarAlbum(Album.ler(evento, catalogo));
+        } else if (tipo == EVENTO_REPRODUCAO) {
+            Utilizador utilizador = lerUtilizadorEvento(evento);
+            Musica musica = Musica.lerReferencia(evento, catalogo);
+            aplicarReproducao(utilizador, musica, evento.lerVarLong());
+        } else if (tipo == EVENTO_PLAYLIST) {
+            criarPlaylist(lerUtilizadorEvento(evento), evento.lerString());
+        } else if (tipo == EVENTO_PLANO) {
+            atualizarPlano(lerUtilizadorEvento(evento), Utilizador.lerPlano(evento));
+        } else if (tipo == EVENTO_MUSICA_PLAYLIST) {
+            Utilizador utilizador = lerUtilizadorEvento(evento);
+            Playlist playlist = lerPlaylistCriadaEvento(evento, utilizador);
+            boolean adicionar = evento.lerBoolean();
+            Musica musica = Musica.lerReferencia(evento, catalogo);
+            if (adicionar) {
+                adicionarMusicaPlaylist(utilizador, playlist, musica);
+            } else {
+                removerMusicaPlaylist(utilizador, playlist, musica);
+            }
+        } else if (tipo == EVENTO_PUBLICACAO) {
+            Utilizador utilizador = lerUtilizadorEvento(evento);
+            publicarPlaylist(utilizador, lerPlaylistCriadaEvento(evento, utilizador));
+        } else if (tipo == EVENTO_PLAYLIST_PUBLICA) {
+            adicionarPlaylistPublica(Playlist.ler(evento, catalogo));
+        } else if (tipo == EVENTO_ALBUM_GUARDADO) {
+            Utilizador utilizador = lerUtilizadorEvento(evento);
+            guardarAlbum(utilizador, lerAlbumEvento(evento));
+        } else if (tipo == EVENTO_PLAYLIST_GUARDADA) {
+            Utilizador utilizador = lerUtilizadorEvento(evento);
+            guardarPlaylist(utilizador, Playlist.ler(evento, catalogo));
+        } else if (tipo == EVENTO_MUSICA_ALBUM) {
+            Album album = lerAlbumEvento(evento);
+            if (evento.lerBoolean()) {
+                adicionarMusicaAlbum(album, Musica.ler(evento, catalogo));
+            } else {
+                removerMusicaAlbum(album, evento.lerString());
+            }
+        } else {
+            throw new IOException("Evento desconhecido no diário: " + tipo);
         }
     }
     
+    private Utilizador lerUtilizadorEvento(EntradaBinaria evento) throws IOException {
+        String email = evento.lerString();
+        Utilizador utilizador = utilizadores.get(email);
+        if (utilizador == null) {
+            throw new IOException("Utilizador desconhecido no diário: " + email);
+        }
+        return utilizador;
+    }
+    
+    private static Playlist lerPlaylistCriadaEvento(EntradaBinaria evento, Utilizador utilizador) throws IOException {
+        int indice = evento.lerVarInt();
+        Playlist playlist = utilizador.getPlaylistCriada(indice);
+        if (playlist == null) {
+            throw new IOException("Playlist desconhecida no diário: " + utilizador.getEmail() + " #" + indice);
+        }
+        return playlist;
+    }
+    
+    private Album lerAlbumEvento(EntradaBinaria evento) throws IOException {
+        String nome = evento.lerString();
+        Album album = albuns.get(nome);
+        if (album == null) {
+            throw new IOException("Álbum desconhecido no diário: " + nome);
+        }
+        return album;
+    }
+    
     /**
-     * Carrega o estado do sistema a partir de um arquivo específico
+     * Carrega o estado do sistema a partir de um arquivo específico e reaplica os eventos do
+     * diário registrados depois dele. A letra e o conteúdo musical das músicas não são lidos:
+     * ficam no arquivo, que o sistema mantém aberto até {@link #fechar}, até serem pedidos.
+     * Arquivos no formato antigo (serialização Java) continuam a ser aceites.
      * @param nomeArquivo Nome do arquivo para carregar
      * @return O sistema carregado ou null se falhou
      */
     public static Sistema carregarEstado(String nomeArquivo) {
+        Path arquivo = Paths.get(nomeArquivo);
+        Sistema sistema = null;
+        try {
+            if (Files.exists(arquivo) || !DiarioEventos.existe(arquivo)) {
+                sistema = lerArquivo(arquivo);
+                if (sistema == null) {
+                    return null;
+                }
+            } else {
+                sistema = new Sistema(); // Falha antes do primeiro checkpoint: só existe o diário
+            }
+            sistema.geracaoDiario = DiarioEventos.reaplicar(arquivo, sistema.geracaoDiario, sistema::aplicarEvento);
+            return sistema;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Erro ao carregar estado: " + e.getMessage());
+            if (sistema != null) {
+                sistema.fechar();
+            }
+            return null;
+        }
+    }
+    
+    private static Sistema lerArquivo(Path arquivo) {
+        String nomeArquivo = arquivo.toString();
+        ArmazemTexto armazem = null;
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            EntradaBinaria entrada = new EntradaBinaria(canal);
+            if (ByteBuffer.wrap(entrada.lerBytes(4)).getInt() != ASSINATURA_ESTADO) {
+                return carregarEstadoSerializado(nomeArquivo);
+            }
+            // O armazém pertence ao sistema carregado; salvarEstado substitui o arquivo por
+            // renomeação, pelo que o conteúdo lido nunca muda
+            armazem = new ArmazemTexto(arquivo);
+            entrada.setArmazemTexto(armazem);
+            Sistema sistema = lerEstado(entrada);
+            sistema.armazemTexto = armazem;
+            return sistema;
+        } catch (IOException | UncheckedIOException e) {
+            if (armazem != null) {
+                try {
+                    armazem.close();
+                } catch (IOException erro) {
+                    e.addSuppressed(erro);
+                }
+            }
+            System.err.println("Erro ao carregar estado: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Carrega um estado gravado com serialização Java (formato anterior)
+     */
+    private static Sistema carregarEstadoSerializado(String nomeArquivo) {
         try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(nomeArquivo))) {
             return (Sistema) ois.readObject();
         } catch (IOException | ClassNotFoundException e) {
@@ -389,25 +1735,198 @@ public class Sistema implements Serializable {
         }
     }
     
+    /**
+     * Escreve o estado completo: contagens do catálogo, álbuns, utilizadores e playlists públicas.
+     * Classificações e agregados não são gravados; são reconstruídos ao carregar.
+     */
+    private void escreverEstado(SaidaBinaria saida, long geracao) throws IOException {
+        saida.escreverBytes(ByteBuffer.allocate(4).putInt(ASSINATURA_ESTADO).array());
+        saida.escreverVarInt(VERSAO_ESTADO);
+        saida.escreverVarLong(geracao); // Primeira geração do diário a reaplicar
+        
+        saida.escreverVarInt(catalogo.getNumeroIds());
+        for (int id = 0; id < catalogo.getNumeroIds(); id++) {
+            saida.escreverVarInt(catalogo.getContagemReproducoes(id));
+        }
+        
+        saida.escreverVarInt(albuns.size());
+        for (Map.Entry<String, Album> entry : albuns.entrySet()) {
+            saida.escreverString(entry.getKey());
+            entry.getValue().escrever(saida, catalogo);
+        }
+        
+        Map<Playlist, Integer> playlistsCriadas = new IdentityHashMap<>();
+        saida.escreverVarInt(utilizadores.size());
+        for (Utilizador utilizador : utilizadores.values()) {
+            utilizador.escrever(saida, catalogo, playlistsCriadas);
+        }
+        
+        // Playlists públicas são normalmente as próprias playlists criadas pelos utilizadores
+        saida.escreverVarInt(playlistsPublicas.size());
+        for (Playlist playlist : playlistsPublicas) {
+            Integer indice = playlistsCriadas.get(playlist);
+            if (indice != null) {
+                saida.escreverVarInt(indice + 1);
+            } else {
+                saida.escreverVarInt(0);
+                playlist.escrever(saida, catalogo);
+            }
+        }
+    }
+    
+    private static Sistema lerEstado(EntradaBinaria entrada) throws IOException {
+        int versao = entrada.lerVarInt();
+        if (versao != VERSAO_ESTADO && versao != VERSAO_ESTADO_CHAVES) {
+            throw new IOException("Versão do estado não suportada: " + versao);
+        }
+        Sistema sistema = new Sistema();
+        sistema.geracaoDiario = entrada.lerVarLong();
+        
+        int[] contagens = new int[entrada.lerVarInt()];
+        for (int id = 0; id < contagens.length; id++) {
+            contagens[id] = entrada.lerVarInt();
+        }
+        sistema.catalogo.prepararRestauro(contagens);
+        
+        int numeroAlbuns = entrada.lerVarInt();
+        for (int i = 0; i < numeroAlbuns; i++) {
+            String nome = entrada.lerString();
+            Album album = Album.ler(entrada, sistema.catalogo);
+            sistema.albuns.put(nome, album);
+            sistema.catalogo.registrarAlbum(album);
+        }
+        
+        Map<String, Integer> idsPorChave = versao == VERSAO_ESTADO_CHAVES ? sistema.catalogo.getIdsPorChave() : null;
+        List<Playlist> playlistsCriadas = new ArrayList<>();
+        int numeroUtilizadores = entrada.lerVarInt();
+        for (int i = 0; i < numeroUtilizadores; i++) {
+            Utilizador utilizador = Utilizador.ler(entrada, sistema.catalogo, playlistsCriadas, idsPorChave);
+            sistema.utilizadores.put(utilizador.getEmail(), utilizador);
+            sistema.indexarEmail(utilizador);
+        }
+        
+        int numeroPublicas = entrada.lerVarInt();
+        for (int i = 0; i < numeroPublicas; i++) {
+            int referencia = entrada.lerVarInt();
+            sistema.catalogoPlaylists.adicionar(referencia > 0
+                ? playlistsCriadas.get(referencia - 1)
+                : Playlist.ler(entrada, sistema.catalogo));
+        }
+        
+        sistema.contarCopiasGuardadas();
+        sistema.reconstruirEstatisticas();
+        return sistema;
+    }
+    
+    /**
+     * Conta nas playlists públicas as cópias guardadas nas bibliotecas (a popularidade não é gravada à parte)
+     */
+    private void contarCopiasGuardadas() {
+        for (Utilizador utilizador : utilizadores.values()) {
+            synchronized (utilizador) {
+                for (Playlist copia : utilizador.getPlaylistsGuardadas().values()) {
+                    catalogoPlaylists.contarCopia(copia, utilizador.getEmail(), 1);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Reconstrói classificações e agregados a partir dos dados de cada utilizador
+     */
+    private void reconstruirEstatisticas() {
+        classificacaoReproducoes = new Classificacao<>();
+        classificacaoPontos = new Classificacao<>();
+        classificacaoPlaylists = new Classificacao<>();
+        classificacaoGeneros = new Classificacao<>();
+        classificacaoInterpretes = new Classificacao<>();
+        reproducoesPorGenero = new ContadoresReproducoes(ContadoresReproducoes.FAIXAS_POR_PROCESSADOR);
+        reproducoesPorInterprete = new ContadoresReproducoes();
+        agregado = new AgregadoReproducoes();
+        reproducoesTotais = new LongAdder();
+        TabelaSimbolos simbolos = catalogo.getSimbolos();
+        for (Utilizador utilizador : utilizadores.values()) {
+            atualizarClassificacoes(utilizador);
+            reproducoesTotais.add(utilizador.getNumeroTotalReproducoes());
+            // As contagens globais são a soma das contagens de cada utilizador
+            utilizador.getGenerosMaisOuvidos().forEach((genero, vezes) ->
+                contar(reproducoesPorGenero, classificacaoGeneros, simbolos.codigo(genero), vezes));
+            utilizador.getInterpretesMaisOuvidos().forEach((interprete, vezes) ->
+                contar(reproducoesPorInterprete, classificacaoInterpretes, simbolos.codigo(interprete), vezes));
+            for (int i = 0; i < utilizador.getTamanhoHistorico(); i++) {
+                agregado.registrar(utilizador.getEmail(), utilizador.getInstanteHistorico(i));
+            }
+        }
+    }
+    
+    /**
+     * Reconstrói índices e classificações ao carregar estados gravados antes de existirem
+     */
+    private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+        ois.defaultReadObject();
+        trincoEstado = new ReentrantReadWriteLock();
+        utilizadores = new ConcurrentHashMap<>(utilizadores);
+        albuns = new ConcurrentHashMap<>(albuns);
+        playlistsPublicas = new ArrayList<>(playlistsPublicas);
+        catalogoPlaylists = new CatalogoPlaylists(playlistsPublicas); // Retira repetidas de estados antigos
+        contarCopiasGuardadas();
+        entradaUtilizador = new HashMap<>();
+        utilizadoresAlterados = ConcurrentHashMap.newKeySet();
+        utilizadoresPorEmail = new ConcurrentHashMap<>();
+        sessoes = new ConcurrentHashMap<>();
+        for (Utilizador utilizador : utilizadores.values()) {
+            indexarEmail(utilizador);
+        }
+        if (catalogo == null) {
+            catalogo = new Catalogo();
+            for (Album album : albuns.values()) {
+                catalogo.registrarAlbum(album);
+            }
+        } else {
+            catalogo.indexarAlbuns(albuns.values()); // O índice de pesquisa não é gravado
+        }
+        // As contagens das músicas de cada utilizador foram gravadas pela chave: passar para os ids
+        Map<String, Integer> idsPorChave = catalogo.getIdsPorChave();
+        for (Utilizador utilizador : utilizadores.values()) {
+            utilizador.ligarCatalogo(catalogo, idsPorChave);
+        }
+        // Os contadores de gêneros e intérpretes não são gravados: reconstruir sempre
+        reconstruirEstatisticas();
+    }
+    
     // Getters
     
     public Map<String, Utilizador> getUtilizadores() {
         return new HashMap<>(utilizadores);
     }
     
+    public int getNumeroAlbuns() {
+        return albuns.size();
+    }
+    
     public Map<String, Album> getAlbuns() {
-        return new HashMap<>(albuns);
+        return Collections.unmodifiableMap(albuns); // Vista só de leitura, sem cópias
     }
     
     public List<Playlist> getPlaylistsPublicas() {
-        return new ArrayList<>(playlistsPublicas);
+        return catalogoPlaylists.listar();
+    }
+    
+    /**
+     * Retorna o número total de reproduções feitas pelos utilizadores registrados
+     * @return Total de reproduções
+     */
+    public long getNumeroTotalReproducoes() {
+        return reproducoesTotais.sum();
     }
     
     public Map<String, Integer> getContagemPorGenero() {
-        return new HashMap<>(contagemPorGenero);
+        atualizarGenerosEInterpretes();
+        return new HashMap<>(classificacaoGeneros.paraMapa());
     }
     
     public Map<String, Integer> getContagemPorInterprete() {
-        return new HashMap<>(contagemPorInterprete);
+        atualizarGenerosEInterpretes();
+        return new HashMap<>(classificacaoInterpretes.paraMapa());
     }
 }
\ No newline at end of file
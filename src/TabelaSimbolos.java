@@ -0,0 +1,69 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dicionário dos atributos repetidos das músicas de um catálogo (gêneros, intérpretes, editoras).
+ * Cada valor distinto é guardado uma única vez e recebe um código inteiro pequeno e denso,
+ * que serve de índice em contadores e classificações sem chaves String.
+ * Cada {@link Catalogo} tem a sua tabela, libertada com ele; os códigos valem apenas
+ * durante a execução: o estado gravado guarda sempre os textos.
+ */
+public class TabelaSimbolos {
+    private final Map<String, Integer> codigos = new ConcurrentHashMap<>(); // Símbolo -> Código
+    private volatile String[] simbolos = new String[64]; // Código -> Símbolo
+    private int tamanho; // Protegido pelo bloqueio da tabela
+
+    /**
+     * Retorna o código de um símbolo, registrando-o se ainda não existir
+     * @param simbolo Texto do símbolo
+     * @return Código do símbolo (-1 se for null)
+     */
+    public int codigo(String simbolo) {
+        if (simbolo == null) {
+            return -1;
+        }
+        Integer codigo = codigos.get(simbolo);
+        return codigo != null ? codigo : registrar(simbolo);
+    }
+
+    /**
+     * Retorna o símbolo com o código dado
+     * @param codigo Código retornado por {@link #codigo}
+     * @return Texto canônico do símbolo (null se o código for -1)
+     */
+    public String simbolo(int codigo) {
+        return codigo >= 0 ? simbolos[codigo] : null;
+    }
+
+    /**
+     * Retorna a instância canônica de um símbolo, partilhada por todos os que o usam
+     * @param simbolo Texto do símbolo
+     * @return Instância canônica igual a simbolo (null se simbolo for null)
+     */
+    public String canonico(String simbolo) {
+        return simbolo(codigo(simbolo));
+    }
+
+    /**
+     * Retorna o número de símbolos registrados (todos os códigos são menores)
+     * @return Quantidade de símbolos
+     */
+    public synchronized int getTamanho() {
+        return tamanho;
+    }
+
+    private synchronized int registrar(String simbolo) {
+        Integer existente = codigos.get(simbolo);
+        if (existente != null) {
+            return existente;
+        }
+        if (tamanho == simbolos.length) {
+            simbolos = Arrays.copyOf(simbolos, tamanho * 2);
+        }
+        // O símbolo fica no array antes de o código ser publicado no mapa
+        simbolos[tamanho] = simbolo;
+        codigos.put(simbolo, tamanho);
+        return tamanho++;
+    }
+}
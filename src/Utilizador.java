@@ -1,23 +1,43 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Utilizador implements Serializable, Cloneable {
     private static final long serialVersionUID = 1L;
+    private static final int PLANO_FREE = 0;
+    private static final int PLANO_PREMIUM_BASE = 1;
+    private static final int PLANO_PREMIUM_TOP = 2;
     
     private String nome;
     private String email;
     private String morada;
     private PlanoSubscricao plano;
     private int pontos;
+    // Concorrentes: as vistas devolvidas pelos getters podem ser percorridas sem o bloqueio do utilizador
     private Map<String, Album> albunsGuardados;
     private Map<String, Playlist> playlistsGuardadas;
     private List<Playlist> playlistsCriadas;
-    private Map<String, Integer> contagemPorMusica; // Música -> Número de reproduções
-    private Map<String, Integer> contagemPorGenero; // Gênero -> Número de reproduções
-    private Map<String, Integer> contagemPorInterprete; // Intérprete -> Número de reproduções
+    // Contagens de reproduções das músicas pelo id no catálogo e dos gêneros e intérpretes
+    // pelos códigos da tabela de símbolos do catálogo
+    private transient Catalogo catalogo; // Catálogo dos ids e códigos das contagens (null antes da primeira)
+    private transient ContadorInteiros contagemMusicas; // Id da música -> Número de reproduções
+    private transient ContadorInteiros contagemGeneros; // Gênero -> Número de reproduções
+    private transient ContadorInteiros contagemInterpretes; // Intérprete -> Número de reproduções
+    private transient ContagensTexto contagemTexto; // Sem id nem códigos (null se não houver)
+    // Forma serializada das contagens (null fora da serialização Java)
+    private Map<String, Integer> contagemPorMusica;
+    private Map<String, Integer> contagemPorGenero;
+    private Map<String, Integer> contagemPorInterprete;
     private int numeroTotalReproducoes;
-    private Map<LocalDateTime, String> historicoReproducoes; // Registro de quando cada música foi reproduzida
+    // Histórico de reproduções só de acréscimo, ordenado no tempo, em colunas paralelas:
+    // 12 bytes por reprodução (8 do instante + 4 do id), até ao dobro enquanto os arrays crescem
+    private long[] instantesReproducao; // Epoch millis de cada reprodução
+    private int[] musicasReproduzidas; // Id da música de cada reprodução (-1 se fora do catálogo)
+    private int tamanhoHistorico;
     
     /**
      * Construtor para novo utilizador com plano Free por padrão
@@ -31,14 +51,16 @@ public class Utilizador implements Serializable, Cloneable {
         this.morada = morada;
         this.plano = new PlanoFree();
         this.pontos = 0;
-        this.albunsGuardados = new HashMap<>();
-        this.playlistsGuardadas = new HashMap<>();
+        this.albunsGuardados = new ConcurrentHashMap<>();
+        this.playlistsGuardadas = new ConcurrentHashMap<>();
         this.playlistsCriadas = new ArrayList<>();
-        this.contagemPorMusica = new HashMap<>();
-        this.contagemPorGenero = new HashMap<>();
-        this.contagemPorInterprete = new HashMap<>();
+        this.contagemMusicas = new ContadorInteiros();
+        this.contagemGeneros = new ContadorInteiros();
+        this.contagemInterpretes = new ContadorInteiros();
         this.numeroTotalReproducoes = 0;
-        this.historicoReproducoes = new HashMap<>();
+        this.instantesReproducao = new long[8];
+        this.musicasReproduzidas = new int[8];
+        this.tamanhoHistorico = 0;
     }
     
     /**
@@ -58,45 +80,150 @@ public class Utilizador implements Serializable, Cloneable {
      * @param musica Música ouvida
      */
     public void ouvirMusica(Musica musica) {
+        ouvirMusica(musica, System.currentTimeMillis());
+    }
+    
+    /**
+     * Registra que o utilizador ouviu uma música num instante dado
+     * @param musica Música ouvida
+     * @param instante Epoch millis da reprodução
+     */
+    public synchronized void ouvirMusica(Musica musica, long instante) {
         // Incrementar contagem de reproduções
         numeroTotalReproducoes++;
         
-        // Registrar reprodução da música específica
-        String nomeMusicaKey = musica.getNome() + "-" + musica.getInterprete();
-        contagemPorMusica.put(nomeMusicaKey, contagemPorMusica.getOrDefault(nomeMusicaKey, 0) + 1);
-        
-        // Registrar reprodução por gênero
-        String genero = musica.getGenero();
-        contagemPorGenero.put(genero, contagemPorGenero.getOrDefault(genero, 0) + 1);
-        
-        // Registrar reprodução por intérprete
-        String interprete = musica.getInterprete();
-        contagemPorInterprete.put(interprete, contagemPorInterprete.getOrDefault(interprete, 0) + 1);
+        // Registrar reprodução da música específica, do gênero e do intérprete
+        contarMusica(musica);
         
         // Calcular e adicionar pontos
         int pontosGanhos = plano.calcularPontosPorMusica(pontos);
         pontos += pontosGanhos;
         
         // Registrar no histórico
-        historicoReproducoes.put(LocalDateTime.now(), nomeMusicaKey);
+        registrarNoHistorico(instante, musica.getId());
         
-        // Se for uma música nova, incrementar contagem da própria música
+        // Contar a reprodução no registro central da música (uma vez por reprodução)
         musica.incrementarContagem();
     }
     
+    /**
+     * Registra várias reproduções seguidas do utilizador, reservando o histórico uma única vez.
+     * Ao contrário de {@link #ouvirMusica(Musica, long)}, não conta as reproduções nas músicas:
+     * quem chama agrupa-as por música e usa {@link Musica#incrementarContagem(int)}
+     * @param musicas Músicas do lote
+     * @param instantes Epoch millis de cada reprodução do lote
+     * @param posicoes Posições do lote que pertencem a este utilizador, pela ordem a aplicar
+     * @param inicio Primeira posição a usar de posicoes
+     * @param fim Posição seguinte à última a usar de posicoes
+     */
+    synchronized void ouvirMusicas(Musica[] musicas, long[] instantes, int[] posicoes, int inicio, int fim) {
+        reservarHistorico(tamanhoHistorico + fim - inicio);
+        for (int i = inicio; i < fim; i++) {
+            Musica musica = musicas[posicoes[i]];
+            numeroTotalReproducoes++;
+            contarMusica(musica);
+            pontos += plano.calcularPontosPorMusica(pontos);
+            registrarNoHistorico(instantes[posicoes[i]], musica.getId());
+        }
+    }
+    
+    /**
+     * Contagens pelos textos, para as músicas que não pertencem a um catálogo e para as
+     * dos estados antigos, até o utilizador ser ligado ao catálogo
+     */
+    private static final class ContagensTexto {
+        final Map<String, Integer> musicas; // Chave da música -> Número de reproduções
+        final Map<String, Integer> generos;
+        final Map<String, Integer> interpretes;
+        
+        ContagensTexto() {
+            this.musicas = new HashMap<>();
+            this.generos = new HashMap<>();
+            this.interpretes = new HashMap<>();
+        }
+        
+        ContagensTexto(ContagensTexto outras) {
+            this.musicas = new HashMap<>(outras.musicas);
+            this.generos = new HashMap<>(outras.generos);
+            this.interpretes = new HashMap<>(outras.interpretes);
+        }
+    }
+    
+    /**
+     * Conta uma reprodução da música pelo seu id e pelos códigos do gênero e do intérprete
+     * no catálogo, sem alocar; só as músicas fora de um catálogo são contadas pelos textos
+     */
+    private void contarMusica(Musica musica) {
+        Catalogo daMusica = musica.getCatalogo();
+        if (daMusica == null) {
+            ContagensTexto texto = contagensTexto();
+            texto.musicas.merge(musica.getChave(), 1, Integer::sum);
+            texto.generos.merge(musica.getGenero(), 1, Integer::sum);
+            texto.interpretes.merge(musica.getInterprete(), 1, Integer::sum);
+            return;
+        }
+        if (catalogo == null) {
+            catalogo = daMusica;
+        }
+        contagemMusicas.incrementar(musica.getId(), 1);
+        contagemGeneros.incrementar(musica.getCodigoGenero(), 1);
+        contagemInterpretes.incrementar(musica.getCodigoInterprete(), 1);
+    }
+    
+    private ContagensTexto contagensTexto() {
+        if (contagemTexto == null) {
+            contagemTexto = new ContagensTexto();
+        }
+        return contagemTexto;
+    }
+    
+    /**
+     * Liga as contagens ao catálogo do sistema, passando para os ids e códigos do catálogo as
+     * contagens que só têm os textos (estados antigos, gravados pelos textos das chaves)
+     * @param catalogo Catálogo do sistema
+     * @param idsPorChave Id de cada música do catálogo pela sua chave ({@link Catalogo#getIdsPorChave})
+     */
+    synchronized void ligarCatalogo(Catalogo catalogo, Map<String, Integer> idsPorChave) {
+        this.catalogo = catalogo;
+        if (contagemTexto == null) {
+            return;
+        }
+        TabelaSimbolos simbolos = catalogo.getSimbolos();
+        contagemTexto.generos.forEach((genero, vezes) -> contagemGeneros.incrementar(simbolos.codigo(genero), vezes));
+        contagemTexto.generos.clear();
+        contagemTexto.interpretes.forEach((interprete, vezes) ->
+            contagemInterpretes.incrementar(simbolos.codigo(interprete), vezes));
+        contagemTexto.interpretes.clear();
+        // As músicas que já não estão no catálogo ficam pela chave
+        Iterator<Map.Entry<String, Integer>> entradas = contagemTexto.musicas.entrySet().iterator();
+        while (entradas.hasNext()) {
+            Map.Entry<String, Integer> entrada = entradas.next();
+            Integer id = idsPorChave.get(entrada.getKey());
+            if (id != null) {
+                contagemMusicas.incrementar(id, entrada.getValue());
+                entradas.remove();
+            }
+        }
+        if (contagemTexto.musicas.isEmpty()) {
+            contagemTexto = null;
+        }
+    }
+    
     /**
      * Cria uma nova playlist (somente permitido para utilizadores Premium)
      * @param nome Nome da playlist
      * @return Playlist criada ou null se não permitido
      */
-    public Playlist criarPlaylist(String nome) {
+    public synchronized Playlist criarPlaylist(String nome) {
         if (!plano.permiteCriarPlaylist()) {
             return null;
         }
         
         PlaylistPersonalizada playlist = new PlaylistPersonalizada(nome);
+        playlist.setDono(email);
         playlistsCriadas.add(playlist);
         guardarPlaylist(playlist);
+        playlist.tornarSoLeitura(); // Alterada através do Sistema, que regista as alterações
         return playlist;
     }
     
@@ -105,12 +232,14 @@ public class Utilizador implements Serializable, Cloneable {
      * @param album Álbum a ser guardado
      * @return true se guardado com sucesso, false caso contrário
      */
-    public boolean guardarAlbum(Album album) {
+    public synchronized boolean guardarAlbum(Album album) {
         if (!plano.permiteSalvarBiblioteca()) {
             return false;
         }
         
-        albunsGuardados.put(album.getNome(), album.clone());
+        Album copia = album.clone();
+        copia.tornarSoLeitura();
+        albunsGuardados.put(album.getNome(), copia);
         return true;
     }
     
@@ -119,12 +248,14 @@ public class Utilizador implements Serializable, Cloneable {
      * @param playlist Playlist a ser guardada
      * @return true se guardada com sucesso, false caso contrário
      */
-    public boolean guardarPlaylist(Playlist playlist) {
+    public synchronized boolean guardarPlaylist(Playlist playlist) {
         if (!plano.permiteSalvarBiblioteca()) {
             return false;
         }
         
-        playlistsGuardadas.put(playlist.getNome(), playlist.clone());
+        Playlist copia = playlist.clone();
+        copia.tornarSoLeitura();
+        playlistsGuardadas.put(playlist.getNome(), copia);
         return true;
     }
     
@@ -133,10 +264,10 @@ public class Utilizador implements Serializable, Cloneable {
      * @param nome Nome da playlist
      * @return true se a operação foi bem sucedida, false caso contrário
      */
-    public boolean tornarPlaylistPublica(String nome) {
+    public synchronized boolean tornarPlaylistPublica(String nome) {
         for (Playlist playlist : playlistsCriadas) {
             if (playlist.getNome().equals(nome)) {
-                playlist.setPublica(true);
+                playlist.tornarPublica();
                 return true;
             }
         }
@@ -148,28 +279,69 @@ public class Utilizador implements Serializable, Cloneable {
      * @param limite Número máximo de músicas a retornar
      * @return Lista de músicas mais ouvidas
      */
-    public List<String> getMusicasMaisOuvidas(int limite) {
-        return contagemPorMusica.entrySet().stream()
-            .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
-            .limit(limite)
-            .map(Map.Entry::getKey)
-            .collect(java.util.stream.Collectors.toList());
+    public synchronized List<String> getMusicasMaisOuvidas(int limite) {
+        List<Map.Entry<String, Integer>> ordenadas = new ArrayList<>(contagemPorChave().entrySet());
+        // Mais ouvidas primeiro; em caso de empate, pela chave, para a ordem não depender dos ids
+        ordenadas.sort(Map.Entry.<String, Integer>comparingByValue().reversed()
+            .thenComparing(Map.Entry.comparingByKey()));
+        List<String> resultado = new ArrayList<>();
+        for (int i = 0; i < ordenadas.size() && resultado.size() < limite; i++) {
+            resultado.add(ordenadas.get(i).getKey());
+        }
+        return resultado;
+    }
+    
+    /**
+     * Junta as contagens das músicas pela chave ("nome-intérprete"), como eram guardadas antes
+     * dos ids; as músicas entretanto removidas do catálogo deixam de aparecer
+     */
+    private Map<String, Integer> contagemPorChave() {
+        Map<String, Integer> mapa = contagemTexto != null ? new HashMap<>(contagemTexto.musicas) : new HashMap<>();
+        contagemMusicas.paraCada((id, contagem) -> {
+            Musica musica = catalogo != null ? catalogo.getMusica(id) : null;
+            if (musica != null) {
+                mapa.merge(musica.getChave(), contagem, Integer::sum);
+            }
+        });
+        return mapa;
     }
     
     /**
      * Obtém gêneros mais ouvidos pelo utilizador
      * @return Mapa de gêneros e suas contagens
      */
-    public Map<String, Integer> getGenerosMaisOuvidos() {
-        return new HashMap<>(contagemPorGenero);
+    public synchronized Map<String, Integer> getGenerosMaisOuvidos() {
+        return paraMapa(contagemGeneros, contagemTexto != null ? contagemTexto.generos : null);
     }
     
     /**
      * Obtém intérpretes mais ouvidos pelo utilizador
      * @return Mapa de intérpretes e suas contagens
      */
-    public Map<String, Integer> getInterpretesMaisOuvidos() {
-        return new HashMap<>(contagemPorInterprete);
+    public synchronized Map<String, Integer> getInterpretesMaisOuvidos() {
+        return paraMapa(contagemInterpretes, contagemTexto != null ? contagemTexto.interpretes : null);
+    }
+    
+    /**
+     * Converte contagens indexadas pelos códigos do catálogo num mapa pelos textos,
+     * juntando as contagens que só têm o texto
+     */
+    private Map<String, Integer> paraMapa(ContadorInteiros contagens, Map<String, Integer> porTexto) {
+        Map<String, Integer> mapa = porTexto != null ? new HashMap<>(porTexto) : new HashMap<>();
+        if (catalogo != null) {
+            TabelaSimbolos simbolos = catalogo.getSimbolos();
+            contagens.paraCada((codigo, contagem) -> mapa.merge(simbolos.simbolo(codigo), contagem, Integer::sum));
+        }
+        return mapa;
+    }
+    
+    /**
+     * Acrescenta as contagens de um mapa pelos textos às que esperam pelo catálogo
+     */
+    private static void somarMapa(Map<String, Integer> contagens, Map<String, Integer> mapa) {
+        if (mapa != null) {
+            mapa.forEach((texto, vezes) -> contagens.merge(texto, vezes, Integer::sum));
+        }
     }
     
     /**
@@ -179,16 +351,72 @@ public class Utilizador implements Serializable, Cloneable {
      * @return Número de músicas ouvidas no período
      */
     public int getNumeroBusicasOuvidasPeriodo(LocalDateTime inicio, LocalDateTime fim) {
-        return (int) historicoReproducoes.keySet().stream()
-            .filter(data -> data.isAfter(inicio) && data.isBefore(fim))
-            .count();
+        return getNumeroMusicasOuvidasEntre(AgregadoReproducoes.inicioExclusivoEmMillis(inicio),
+                                            AgregadoReproducoes.fimExclusivoEmMillis(fim));
+    }
+    
+    /**
+     * Conta as reproduções com instante em [inicio, fim) por pesquisa binária, em O(log n)
+     * @param inicio Epoch millis inicial (inclusivo)
+     * @param fim Epoch millis final (exclusivo)
+     * @return Número de reproduções no intervalo
+     */
+    public synchronized int getNumeroMusicasOuvidasEntre(long inicio, long fim) {
+        if (fim <= inicio) {
+            return 0;
+        }
+        return primeiraPosicaoDesde(fim) - primeiraPosicaoDesde(inicio);
+    }
+    
+    /**
+     * Acrescenta uma reprodução ao histórico, mantendo-o ordenado mesmo que o relógio recue
+     */
+    private void registrarNoHistorico(long instante, int idMusica) {
+        if (tamanhoHistorico == instantesReproducao.length) {
+            reservarHistorico(tamanhoHistorico + 1);
+        }
+        if (tamanhoHistorico > 0 && instante < instantesReproducao[tamanhoHistorico - 1]) {
+            instante = instantesReproducao[tamanhoHistorico - 1];
+        }
+        instantesReproducao[tamanhoHistorico] = instante;
+        musicasReproduzidas[tamanhoHistorico] = idMusica;
+        tamanhoHistorico++;
+    }
+    
+    /**
+     * Garante espaço no histórico para o número de reproduções dado (pelo menos o dobro ao crescer)
+     */
+    private void reservarHistorico(int necessario) {
+        if (necessario > instantesReproducao.length) {
+            int capacidade = Math.max(Math.max(8, necessario), instantesReproducao.length * 2);
+            instantesReproducao = Arrays.copyOf(instantesReproducao, capacidade);
+            musicasReproduzidas = Arrays.copyOf(musicasReproduzidas, capacidade);
+        }
     }
     
+    /**
+     * Retorna a primeira posição do histórico com instante maior ou igual ao dado
+     */
+    private int primeiraPosicaoDesde(long instante) {
+        int baixo = 0;
+        int alto = tamanhoHistorico;
+        while (baixo < alto) {
+            int meio = (baixo + alto) >>> 1;
+            if (instantesReproducao[meio] < instante) {
+                baixo = meio + 1;
+            } else {
+                alto = meio;
+            }
+        }
+        return baixo;
+    }
+
+    
     /**
      * Define um novo plano de subscrição para o utilizador
      * @param novoPlano Novo plano de subscrição
      */
-    public void setPlano(PlanoSubscricao novoPlano) {
+    public synchronized void setPlano(PlanoSubscricao novoPlano) {
         this.plano = novoPlano;
         
         // Se for upgrade para Premium Top, adicionar bônus inicial
@@ -197,18 +425,285 @@ public class Utilizador implements Serializable, Cloneable {
         }
     }
     
+    /**
+     * Escreve o utilizador no formato binário do estado do sistema, com o histórico em colunas
+     * (instantes em deltas seguidos dos identificadores das músicas)
+     * @param saida Destino da escrita
+     * @param catalogo Catálogo do sistema, usado para referenciar músicas
+     * @param playlistsEscritas Recebe cada playlist criada com o seu índice global, para referências
+     */
+    synchronized void escrever(SaidaBinaria saida, Catalogo catalogo, Map<Playlist, Integer> playlistsEscritas) throws IOException {
+        saida.escreverString(nome);
+        saida.escreverString(email);
+        saida.escreverString(morada);
+        escreverPlano(saida, plano);
+        saida.escreverVarInt(pontos);
+        saida.escreverVarInt(numeroTotalReproducoes);
+        
+        // Músicas pelo id; as que não têm id (-1) seguidas da chave
+        Map<String, Integer> semId = contagemTexto != null ? contagemTexto.musicas : Map.of();
+        saida.escreverVarInt(contagemMusicas.getTamanho() + semId.size());
+        for (int id : contagemMusicas.getChaves()) {
+            saida.escreverVarIntComSinal(id);
+            saida.escreverVarInt(contagemMusicas.getValor(id));
+        }
+        for (Map.Entry<String, Integer> entry : semId.entrySet()) {
+            saida.escreverVarIntComSinal(-1);
+            saida.escreverString(entry.getKey());
+            saida.escreverVarInt(entry.getValue());
+        }
+        // Gêneros e intérpretes pelos textos: os códigos só valem na tabela do catálogo em memória
+        escreverContagens(saida, getGenerosMaisOuvidos());
+        escreverContagens(saida, getInterpretesMaisOuvidos());
+        
+        saida.escreverVarInt(tamanhoHistorico);
+        long anterior = 0;
+        for (int i = 0; i < tamanhoHistorico; i++) {
+            saida.escreverVarLong(instantesReproducao[i] - anterior);
+            anterior = instantesReproducao[i];
+        }
+        for (int i = 0; i < tamanhoHistorico; i++) {
+            saida.escreverVarIntComSinal(musicasReproduzidas[i]);
+        }
+        
+        saida.escreverVarInt(albunsGuardados.size());
+        for (Map.Entry<String, Album> entry : albunsGuardados.entrySet()) {
+            saida.escreverString(entry.getKey());
+            entry.getValue().escrever(saida, catalogo);
+        }
+        saida.escreverVarInt(playlistsGuardadas.size());
+        for (Map.Entry<String, Playlist> entry : playlistsGuardadas.entrySet()) {
+            saida.escreverString(entry.getKey());
+            entry.getValue().escrever(saida, catalogo);
+        }
+        saida.escreverVarInt(playlistsCriadas.size());
+        for (Playlist playlist : playlistsCriadas) {
+            playlistsEscritas.put(playlist, playlistsEscritas.size());
+            playlist.escrever(saida, catalogo);
+        }
+    }
+    
+    private static void escreverContagens(SaidaBinaria saida, Map<String, Integer> contagens) throws IOException {
+        saida.escreverVarInt(contagens.size());
+        for (Map.Entry<String, Integer> entry : contagens.entrySet()) {
+            saida.escreverSimbolo(entry.getKey());
+            saida.escreverVarInt(entry.getValue());
+        }
+    }
+    
+    /**
+     * Escreve o tipo de um plano de subscrição
+     * @param saida Destino da escrita
+     * @param plano Plano a escrever
+     */
+    static void escreverPlano(SaidaBinaria saida, PlanoSubscricao plano) throws IOException {
+        saida.escreverByte(plano instanceof PlanoPremiumTop ? PLANO_PREMIUM_TOP
+                         : plano instanceof PlanoPremiumBase ? PLANO_PREMIUM_BASE
+                         : PLANO_FREE);
+    }
+    
+    /**
+     * Lê um plano escrito por {@link #escreverPlano}
+     * @param entrada Origem da leitura
+     * @return Um novo plano do tipo lido
+     */
+    static PlanoSubscricao lerPlano(EntradaBinaria entrada) throws IOException {
+        int plano = entrada.lerByte();
+        return plano == PLANO_PREMIUM_TOP ? new PlanoPremiumTop()
+             : plano == PLANO_PREMIUM_BASE ? new PlanoPremiumBase()
+             : new PlanoFree();
+    }
+    
+    /**
+     * Lê um utilizador escrito por {@link #escrever}
+     * @param entrada Origem da leitura
+     * @param catalogo Catálogo do sistema, já carregado
+     * @param playlistsLidas Recebe cada playlist criada, pela ordem dos índices globais
+     * @return O utilizador lido
+     */
+    static Utilizador ler(EntradaBinaria entrada, Catalogo catalogo, List<Playlist> playlistsLidas) throws IOException {
+        return ler(entrada, catalogo, playlistsLidas, null);
+    }
+    
+    /**
+     * Lê um utilizador escrito por {@link #escrever}, ou pela versão anterior do estado, que
+     * guardava as contagens das músicas pela chave em vez do id
+     * @param entrada Origem da leitura
+     * @param catalogo Catálogo do sistema, já carregado
+     * @param playlistsLidas Recebe cada playlist criada, pela ordem dos índices globais
+     * @param idsPorChave Id de cada música pela chave, se o estado for da versão anterior (senão null)
+     * @return O utilizador lido
+     */
+    static Utilizador ler(EntradaBinaria entrada, Catalogo catalogo, List<Playlist> playlistsLidas,
+                          Map<String, Integer> idsPorChave) throws IOException {
+        Utilizador utilizador = new Utilizador(entrada.lerString(), entrada.lerString(), entrada.lerString());
+        // Atribuir diretamente para não voltar a conceder o bônus do Premium Top
+        utilizador.plano = lerPlano(entrada);
+        utilizador.pontos = entrada.lerVarInt();
+        utilizador.numeroTotalReproducoes = entrada.lerVarInt();
+        
+        int n = entrada.lerVarInt();
+        for (int i = 0; i < n; i++) {
+            int id = idsPorChave != null ? -1 : entrada.lerVarIntComSinal();
+            if (id >= 0) {
+                utilizador.contagemMusicas.incrementar(id, entrada.lerVarInt());
+            } else {
+                utilizador.contagensTexto().musicas.merge(entrada.lerString(), entrada.lerVarInt(), Integer::sum);
+            }
+        }
+        TabelaSimbolos simbolos = catalogo.getSimbolos();
+        n = entrada.lerVarInt();
+        for (int i = 0; i < n; i++) {
+            utilizador.contagemGeneros.incrementar(simbolos.codigo(entrada.lerSimbolo()), entrada.lerVarInt());
+        }
+        n = entrada.lerVarInt();
+        for (int i = 0; i < n; i++) {
+            utilizador.contagemInterpretes.incrementar(simbolos.codigo(entrada.lerSimbolo()), entrada.lerVarInt());
+        }
+        utilizador.ligarCatalogo(catalogo, idsPorChave != null ? idsPorChave : Map.of());
+        
+        n = entrada.lerVarInt();
+        utilizador.instantesReproducao = new long[Math.max(8, n)];
+        utilizador.musicasReproduzidas = new int[Math.max(8, n)];
+        long instante = 0;
+        for (int i = 0; i < n; i++) {
+            instante += entrada.lerVarLong();
+            utilizador.instantesReproducao[i] = instante;
+        }
+        for (int i = 0; i < n; i++) {
+            utilizador.musicasReproduzidas[i] = entrada.lerVarIntComSinal();
+        }
+        utilizador.tamanhoHistorico = n;
+        
+        n = entrada.lerVarInt();
+        for (int i = 0; i < n; i++) {
+            utilizador.albunsGuardados.put(entrada.lerString(), Album.ler(entrada, catalogo));
+        }
+        n = entrada.lerVarInt();
+        for (int i = 0; i < n; i++) {
+            utilizador.playlistsGuardadas.put(entrada.lerString(), Playlist.ler(entrada, catalogo));
+        }
+        n = entrada.lerVarInt();
+        for (int i = 0; i < n; i++) {
+            Playlist playlist = Playlist.ler(entrada, catalogo);
+            utilizador.playlistsCriadas.add(playlist);
+            playlistsLidas.add(playlist);
+        }
+        utilizador.protegerBiblioteca();
+        return utilizador;
+    }
+    
+    /**
+     * As contagens são serializadas como mapas pelos textos, o formato dos estados antigos
+     */
+    private synchronized void writeObject(ObjectOutputStream oos) throws IOException {
+        contagemPorMusica = contagemPorChave();
+        contagemPorGenero = getGenerosMaisOuvidos();
+        contagemPorInterprete = getInterpretesMaisOuvidos();
+        try {
+            oos.defaultWriteObject();
+        } finally {
+            contagemPorMusica = null;
+            contagemPorGenero = null;
+            contagemPorInterprete = null;
+        }
+    }
+    
+    /**
+     * Lê os campos um a um para aceitar estados antigos: o histórico gravado antes das colunas
+     * (instante -> chave da música) é convertido, por ordem cronológica, com as músicas fora
+     * do catálogo (id -1); as playlists criadas antes de guardarem o dono recebem este utilizador
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField campos = ois.readFields();
+        nome = (String) campos.get("nome", null);
+        email = (String) campos.get("email", null);
+        morada = (String) campos.get("morada", null);
+        plano = (PlanoSubscricao) campos.get("plano", null);
+        if (plano == null) {
+            plano = new PlanoFree();
+        }
+        pontos = campos.get("pontos", 0);
+        Map<String, Album> albuns = (Map<String, Album>) campos.get("albunsGuardados", null);
+        albunsGuardados = albuns != null ? new ConcurrentHashMap<>(albuns) : new ConcurrentHashMap<>();
+        Map<String, Playlist> playlists = (Map<String, Playlist>) campos.get("playlistsGuardadas", null);
+        playlistsGuardadas = playlists != null ? new ConcurrentHashMap<>(playlists) : new ConcurrentHashMap<>();
+        playlistsCriadas = (List<Playlist>) campos.get("playlistsCriadas", null);
+        if (playlistsCriadas == null) {
+            playlistsCriadas = new ArrayList<>();
+        }
+        numeroTotalReproducoes = campos.get("numeroTotalReproducoes", 0);
+
+        contagemMusicas = new ContadorInteiros();
+        contagemGeneros = new ContadorInteiros();
+        contagemInterpretes = new ContadorInteiros();
+        // As contagens ficam pelos textos até o sistema ligar o utilizador ao catálogo
+        Map<String, Integer> porMusica = (Map<String, Integer>) campos.get("contagemPorMusica", null);
+        if (porMusica != null) {
+            ContagensTexto texto = contagensTexto();
+            somarMapa(texto.musicas, porMusica);
+            somarMapa(texto.generos, (Map<String, Integer>) campos.get("contagemPorGenero", null));
+            somarMapa(texto.interpretes, (Map<String, Integer>) campos.get("contagemPorInterprete", null));
+        }
+
+        instantesReproducao = (long[]) campos.get("instantesReproducao", null);
+        musicasReproduzidas = (int[]) campos.get("musicasReproduzidas", null);
+        tamanhoHistorico = campos.get("tamanhoHistorico", 0);
+        if (instantesReproducao == null) {
+            instantesReproducao = new long[8];
+            musicasReproduzidas = new int[8];
+            tamanhoHistorico = 0;
+            if (campos.getObjectStreamClass().getField("historicoReproducoes") != null) {
+                Map<LocalDateTime, String> historico = (Map<LocalDateTime, String>) campos.get("historicoReproducoes", null);
+                if (historico != null) {
+                    converterHistorico(historico.keySet());
+                }
+            }
+        }
+
+        for (Playlist playlist : playlistsCriadas) {
+            if (playlist.getDono() == null) {
+                playlist.setDono(email); // Playlists criadas antes de guardarem o dono
+            }
+        }
+        protegerBiblioteca();
+    }
+
+    /**
+     * Torna só de leitura os álbuns e playlists da biblioteca e as playlists criadas,
+     * que só o Sistema altera
+     */
+    private void protegerBiblioteca() {
+        albunsGuardados.values().forEach(Album::tornarSoLeitura);
+        playlistsGuardadas.values().forEach(Playlist::tornarSoLeitura);
+        playlistsCriadas.forEach(Playlist::tornarSoLeitura);
+    }
+    
+    /**
+     * Passa para as colunas do histórico os instantes do histórico antigo, ordenados
+     */
+    private void converterHistorico(Collection<LocalDateTime> instantes) {
+        List<LocalDateTime> ordenados = new ArrayList<>(instantes);
+        ordenados.sort(null);
+        reservarHistorico(ordenados.size());
+        for (LocalDateTime instante : ordenados) {
+            registrarNoHistorico(AgregadoReproducoes.paraMillis(instante), -1);
+        }
+    }
+    
     @Override
     public Utilizador clone() {
         try {
             Utilizador clone = (Utilizador) super.clone();
             
             // Clonar as estruturas de dados para evitar compartilhamento de referências
-            clone.albunsGuardados = new HashMap<>();
+            clone.albunsGuardados = new ConcurrentHashMap<>();
             for (Map.Entry<String, Album> entry : this.albunsGuardados.entrySet()) {
                 clone.albunsGuardados.put(entry.getKey(), entry.getValue().clone());
             }
             
-            clone.playlistsGuardadas = new HashMap<>();
+            clone.playlistsGuardadas = new ConcurrentHashMap<>();
             for (Map.Entry<String, Playlist> entry : this.playlistsGuardadas.entrySet()) {
                 clone.playlistsGuardadas.put(entry.getKey(), entry.getValue().clone());
             }
@@ -218,10 +713,13 @@ public class Utilizador implements Serializable, Cloneable {
                 clone.playlistsCriadas.add(playlist.clone());
             }
             
-            clone.contagemPorMusica = new HashMap<>(this.contagemPorMusica);
-            clone.contagemPorGenero = new HashMap<>(this.contagemPorGenero);
-            clone.contagemPorInterprete = new HashMap<>(this.contagemPorInterprete);
-            clone.historicoReproducoes = new HashMap<>(this.historicoReproducoes);
+            clone.contagemMusicas = new ContadorInteiros(this.contagemMusicas);
+            clone.contagemTexto = this.contagemTexto != null ? new ContagensTexto(this.contagemTexto) : null;
+            clone.contagemGeneros = new ContadorInteiros(this.contagemGeneros);
+            clone.contagemInterpretes = new ContadorInteiros(this.contagemInterpretes);
+            clone.instantesReproducao = Arrays.copyOf(this.instantesReproducao, this.instantesReproducao.length);
+            clone.musicasReproduzidas = Arrays.copyOf(this.musicasReproduzidas, this.musicasReproduzidas.length);
+            clone.protegerBiblioteca();
             
             return clone;
         } catch (CloneNotSupportedException e) {
@@ -243,23 +741,35 @@ public class Utilizador implements Serializable, Cloneable {
         return morada;
     }
     
-    public PlanoSubscricao getPlano() {
+    public synchronized PlanoSubscricao getPlano() {
         return plano;
     }
     
-    public int getPontos() {
+    public synchronized int getPontos() {
         return pontos;
     }
     
-    public int getNumeroTotalReproducoes() {
+    public synchronized int getNumeroTotalReproducoes() {
         return numeroTotalReproducoes;
     }
     
-    public int getNumeroPlaylists() {
+    public synchronized int getTamanhoHistorico() {
+        return tamanhoHistorico;
+    }
+    
+    public synchronized long getInstanteHistorico(int posicao) {
+        return instantesReproducao[posicao];
+    }
+    
+    public synchronized int getMusicaHistorico(int posicao) {
+        return musicasReproduzidas[posicao];
+    }
+    
+    public synchronized int getNumeroPlaylists() {
         return playlistsCriadas.size();
     }
     
-    public List<Playlist> getPlaylistsCriadas() {
+    public synchronized List<Playlist> getPlaylistsCriadas() {
         List<Playlist> copia = new ArrayList<>();
         for (Playlist playlist : playlistsCriadas) {
             copia.add(playlist.clone());
@@ -267,20 +777,35 @@ public class Utilizador implements Serializable, Cloneable {
         return copia;
     }
     
-    public Map<String, Album> getAlbunsGuardados() {
-        Map<String, Album> copia = new HashMap<>();
-        for (Map.Entry<String, Album> entry : albunsGuardados.entrySet()) {
-            copia.put(entry.getKey(), entry.getValue().clone());
+    /**
+     * Retorna a posição de uma playlist entre as criadas pelo utilizador, para o diário a referenciar
+     * @param playlist Playlist criada (comparada por identidade, não uma cópia)
+     * @return Posição ou -1 se não foi criada por este utilizador
+     */
+    synchronized int indicePlaylistCriada(Playlist playlist) {
+        for (int i = 0; i < playlistsCriadas.size(); i++) {
+            if (playlistsCriadas.get(i) == playlist) {
+                return i;
+            }
         }
-        return copia;
+        return -1;
+    }
+    
+    /**
+     * Retorna uma playlist criada pelo utilizador pela sua posição (a própria, não uma cópia)
+     * @param indice Posição retornada por {@link #indicePlaylistCriada}
+     * @return A playlist ou null se não existir
+     */
+    synchronized Playlist getPlaylistCriada(int indice) {
+        return indice >= 0 && indice < playlistsCriadas.size() ? playlistsCriadas.get(indice) : null;
+    }
+    
+    public Map<String, Album> getAlbunsGuardados() {
+        return Collections.unmodifiableMap(albunsGuardados); // Vista só de leitura, sem cópias nem bloqueios
     }
     
     public Map<String, Playlist> getPlaylistsGuardadas() {
-        Map<String, Playlist> copia = new HashMap<>();
-        for (Map.Entry<String, Playlist> entry : playlistsGuardadas.entrySet()) {
-            copia.put(entry.getKey(), entry.getValue().clone());
-        }
-        return copia;
+        return Collections.unmodifiableMap(playlistsGuardadas); // Vista só de leitura, sem cópias nem bloqueios
     }
     
     // Setters
@@ -0,0 +1,78 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * As contagens por período têm de ser exatas em qualquer período: com os intervalos finos
+ * ainda guardados, com os já expirados e atravessando meses e anos
+ */
+public class TesteAgregadoReproducoes {
+    private static final long DIA = 86_400_000L;
+
+    @Test
+    public void contagensIguaisAsDoHistorico() {
+        Random aleatorio = new Random(42);
+        long agora = System.currentTimeMillis();
+        long origem = LocalDate.now(ZoneOffset.UTC).minusYears(3).withDayOfYear(1).toEpochSecond(LocalTime.MIDNIGHT, ZoneOffset.UTC) * 1000;
+        Musica musica = new Musica("Canção", "Banda", "Editora", "letra", "Rock", 180);
+        Map<String, Utilizador> utilizadores = new HashMap<>();
+        Map<String, List<Long>> instantes = new HashMap<>();
+        AgregadoReproducoes agregado = new AgregadoReproducoes();
+        for (int u = 0; u < 20; u++) {
+            String email = "u" + u + "@mail.pt";
+            Utilizador utilizador = new Utilizador("U" + u, email, "Braga", new PlanoFree());
+            List<Long> lista = new ArrayList<>();
+            long instante = origem + aleatorio.nextInt(1000) * 60_000L;
+            while (instante < agora) {
+                utilizador.ouvirMusica(musica, instante);
+                agregado.registrar(email, instante);
+                lista.add(instante);
+                // Sessões de várias músicas seguidas, separadas por pausas de minutos a dias
+                instante += aleatorio.nextInt(10) < 7
+                    ? 1 + aleatorio.nextInt(240_000)
+                    : 1 + (long) (aleatorio.nextDouble() * 20 * DIA);
+            }
+            utilizadores.put(email, utilizador);
+            instantes.put(email, lista);
+        }
+
+        List<long[]> periodos = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            long a = origem + (long) (aleatorio.nextDouble() * (agora + DIA - origem));
+            // Períodos de minutos a anos, uns recentes (níveis finos guardados) e outros antigos
+            long duracao = (long) Math.pow(10, 3 + aleatorio.nextDouble() * 8);
+            periodos.add(new long[] {a, a + duracao});
+            periodos.add(new long[] {agora - duracao, agora + 1});
+        }
+        // Limites exatos de meses e anos
+        periodos.add(new long[] {origem, agora + 1});
+        periodos.add(new long[] {origem + 31 * DIA, origem + 59 * DIA});
+        periodos.add(new long[] {origem + 365 * DIA, origem + 730 * DIA});
+
+        for (long[] periodo : periodos) {
+            Map<String, Integer> esperado = new HashMap<>();
+            instantes.forEach((email, lista) -> {
+                int n = 0;
+                for (long instante : lista) {
+                    if (instante >= periodo[0] && instante < periodo[1]) {
+                        n++;
+                    }
+                }
+                if (n > 0) {
+                    esperado.put(email, n);
+                }
+            });
+            assertEquals(esperado, agregado.contarPorUtilizador(periodo[0], periodo[1], utilizadores),
+                "Período [" + periodo[0] + ", " + periodo[1] + ")");
+        }
+    }
+}
@@ -0,0 +1,75 @@
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Uma reprodução, depois de aquecida, não aloca: nem no utilizador, nem nas contagens globais,
+ * nem nos agregados, nem no diário de eventos quando está ativo (o histórico só cresce ao
+ * duplicar, fora da parte medida)
+ */
+public class TesteAlocacao {
+    private static final int AQUECIMENTO = 200_000; // Abaixo dos 262 144 do histórico depois de duplicar
+    private static final int MEDIDAS = 50_000;
+    // Com o diário cada reprodução espera pelo seu fsync: menos reproduções, abaixo dos 32 768 do histórico
+    private static final int AQUECIMENTO_DIARIO = 20_000;
+    private static final int MEDIDAS_DIARIO = 10_000;
+
+    @TempDir
+    Path pasta;
+
+    @Test
+    public void reproducaoNaoAloca() {
+        Sistema sistema = new Sistema();
+        Utilizador utilizador = preparar(sistema);
+        long porReproducao = medir(sistema, utilizador, AQUECIMENTO, MEDIDAS);
+        // A mudança de minuto cria intervalos novos nos agregados: tolerar essas poucas alocações
+        assertTrue(porReproducao < 1, porReproducao + " bytes por reprodução");
+        sistema.fechar();
+    }
+
+    @Test
+    public void reproducaoComDiarioNaoAloca() {
+        Sistema sistema = new Sistema();
+        Utilizador utilizador = preparar(sistema);
+        assertTrue(sistema.ativarDiario(pasta.resolve("spotifum.dat").toString()));
+        long porReproducao = medir(sistema, utilizador, AQUECIMENTO_DIARIO, MEDIDAS_DIARIO);
+        assertTrue(porReproducao < 1, porReproducao + " bytes por reprodução com o diário ativo");
+        sistema.fechar();
+    }
+
+    private static Utilizador preparar(Sistema sistema) {
+        Album album = new Album("Álbum", "Banda", 2001);
+        for (int i = 0; i < 8; i++) {
+            album.adicionarMusica(new Musica("Música " + i, "Banda " + i % 3, "Editora", "letra", i % 2 == 0 ? "Rock" : "Jazz", 180));
+        }
+        sistema.adicionarAlbum(album);
+        Utilizador utilizador = new Utilizador("Ana", "ana@mail.pt", "Braga", new PlanoPremiumTop());
+        sistema.registrarUtilizador(utilizador);
+        return utilizador;
+    }
+
+    /**
+     * Aquece e depois mede os bytes alocados pela thread atual em cada reprodução
+     */
+    private static long medir(Sistema sistema, Utilizador utilizador, int aquecimento, int medidas) {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        Musica[] musicas = sistema.getAlbuns().get("Álbum").getMusicas().values().toArray(new Musica[0]);
+        for (int i = 0; i < aquecimento; i++) {
+            sistema.registrarReproducao(utilizador, musicas[i % musicas.length]);
+        }
+        long thread = Thread.currentThread().getId();
+        long antes = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < medidas; i++) {
+            sistema.registrarReproducao(utilizador, musicas[i % musicas.length]);
+        }
+        return (threads.getThreadAllocatedBytes(thread) - antes) / medidas;
+    }
+}
@@ -0,0 +1,77 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Os textos das músicas carregadas ficam no arquivo de estado: salvar por cima dele tem de
+ * continuar a funcionar, e as músicas passam a ler do arquivo novo
+ */
+public class TesteArmazemTexto {
+    @TempDir
+    Path pasta;
+
+    private static Sistema criarSistema() {
+        Sistema sistema = new Sistema();
+        Album album = new Album("Álbum", "Banda", 2001);
+        Musica musica = new Musica("Canção", "Banda", "Editora", "primeira linha da letra", "Rock", 180);
+        musica.adicionarLinhaMusical("Dó Ré Mi");
+        album.adicionarMusica(musica);
+        album.adicionarMusica(new Musica("Outra", "Banda", "Editora", "outra letra", "Rock", 200));
+        sistema.adicionarAlbum(album);
+        return sistema;
+    }
+
+    private static Musica cancao(Sistema sistema) {
+        return sistema.getAlbuns().get("Álbum").getMusicas().get("Canção");
+    }
+
+    @Test
+    public void salvarPorCimaDoArquivoCarregado() throws IOException {
+        String arquivo = pasta.resolve("spotifum.dat").toString();
+        assertTrue(criarSistema().salvarEstado(arquivo));
+
+        Sistema carregado = Sistema.carregarEstado(arquivo);
+        assertNotNull(carregado);
+        Musica musica = cancao(carregado);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(carregado.salvarEstado(arquivo));
+            assertEquals("primeira linha da letra", musica.getLetra());
+            assertEquals(List.of("Dó Ré Mi"), musica.getConteudoMusical());
+        }
+        try (Stream<Path> arquivos = Files.list(pasta)) {
+            assertEquals(1, arquivos.count(), "Não devem ficar arquivos temporários");
+        }
+
+        Sistema recarregado = Sistema.carregarEstado(arquivo);
+        assertNotNull(recarregado);
+        assertEquals("primeira linha da letra", cancao(recarregado).getLetra());
+        assertEquals("outra letra", recarregado.getAlbuns().get("Álbum").getMusicas().get("Outra").getLetra());
+        carregado.fechar();
+        recarregado.fechar();
+        Files.delete(pasta.resolve("spotifum.dat"));
+    }
+
+    @Test
+    public void salvarNoutroArquivoLibertaOAnterior() throws IOException {
+        String original = pasta.resolve("original.dat").toString();
+        String copia = pasta.resolve("copia.dat").toString();
+        assertTrue(criarSistema().salvarEstado(original));
+
+        Sistema carregado = Sistema.carregarEstado(original);
+        assertNotNull(carregado);
+        assertTrue(carregado.salvarEstado(copia));
+        Files.delete(pasta.resolve("original.dat"));
+
+        assertEquals("primeira linha da letra", cancao(carregado).getLetra());
+        carregado.fechar();
+    }
+}
@@ -0,0 +1,184 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Reproduções registradas por várias threads, com consultas em simultâneo: nenhuma se pode
+ * perder e as classificações têm de refletir todas no fim (a escala com o número de threads
+ * é medida em ReproducoesBenchmark, no módulo jmh/). Os sorteios das playlists aleatórias correm em simultâneo entre si e com as alterações ao
+ * catálogo, sem esperar pelo seu monitor
+ */
+public class TesteConcorrencia {
+    private static final String[] GENEROS = {"Rock", "Pop", "Jazz", "Fado", "Hip-Hop", "Metal", "Blues", "Electronic"};
+    private static final int ALBUNS = 50;
+    private static final int MUSICAS_POR_ALBUM = 40;
+    private static final int UTILIZADORES = 64;
+    private static final int REPRODUCOES_POR_THREAD = 50_000;
+
+    @Test
+    public void reproducoesEmSimultaneoNaoSePerdem() throws InterruptedException {
+        for (int threads : new int[] {1, 2, 4, 8}) {
+            executar(threads);
+        }
+    }
+
+    private static void executar(int numeroThreads) throws InterruptedException {
+        Sistema sistema = new Sistema();
+        List<Musica> musicas = new ArrayList<>();
+        Random random = new Random(1);
+        for (int a = 0; a < ALBUNS; a++) {
+            Album album = new Album("Álbum " + a, "Artista " + (a % 7), 2000);
+            for (int m = 0; m < MUSICAS_POR_ALBUM; m++) {
+                album.adicionarMusica(new Musica("Faixa " + m, "Artista " + (a % 7), "Editora", "letra",
+                    GENEROS[random.nextInt(GENEROS.length)], 200));
+            }
+            sistema.adicionarAlbum(album);
+            musicas.addAll(sistema.getAlbuns().get(album.getNome()).getMusicas().values());
+        }
+        List<Utilizador> utilizadores = new ArrayList<>();
+        for (int u = 0; u < UTILIZADORES; u++) {
+            Utilizador utilizador = new Utilizador("Utilizador " + u, "u" + u + "@mail.pt", "Braga", new PlanoPremiumBase());
+            sistema.registrarUtilizador(utilizador);
+            utilizadores.add(utilizador);
+        }
+
+        AtomicBoolean terminado = new AtomicBoolean();
+        Thread consultas = new Thread(() -> {
+            while (!terminado.get()) {
+                sistema.getMusicaMaisReproduzida();
+                sistema.getUtilizadorQueMaisOuviu();
+                sistema.getGeneroMaisReproduzido();
+                sistema.getInterpreteMaisEscutado();
+                sistema.completarMusicas("faixa 1", 5);
+            }
+        });
+        consultas.start();
+        Thread[] threads = new Thread[numeroThreads];
+        for (int t = 0; t < numeroThreads; t++) {
+            int indice = t;
+            threads[t] = new Thread(() -> {
+                Random sorteio = new Random(indice);
+                for (int i = 0; i < REPRODUCOES_POR_THREAD; i++) {
+                    sistema.registrarReproducao(utilizadores.get(sorteio.nextInt(UTILIZADORES)),
+                        musicas.get(sorteio.nextInt(musicas.size())));
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        terminado.set(true);
+        consultas.join();
+
+        long total = (long) numeroThreads * REPRODUCOES_POR_THREAD;
+        assertEquals(total, sistema.getNumeroTotalReproducoes());
+        assertEquals(total, musicas.stream().mapToLong(Musica::getContagemReproducoes).sum());
+        assertEquals(total, utilizadores.stream().mapToLong(Utilizador::getNumeroTotalReproducoes).sum());
+        assertEquals(total, soma(sistema.getContagemPorGenero()));
+        assertEquals(total, soma(sistema.getContagemPorInterprete()));
+
+        // As classificações consultadas durante as reproduções acabam com os valores finais
+        int maisReproduzida = musicas.stream().mapToInt(Musica::getContagemReproducoes).max().orElse(0);
+        assertEquals(maisReproduzida, sistema.getMusicaMaisReproduzida().getContagemReproducoes());
+        int maisOuviu = utilizadores.stream().mapToInt(Utilizador::getNumeroTotalReproducoes).max().orElse(0);
+        assertEquals(maisOuviu, sistema.getUtilizadorQueMaisOuviu().getNumeroTotalReproducoes());
+        String genero = sistema.getGeneroMaisReproduzido();
+        assertEquals(sistema.getContagemPorGenero().values().stream().mapToInt(Integer::intValue).max().orElse(0),
+            sistema.getContagemPorGenero().get(genero));
+    }
+
+    @Test
+    public void playlistsAleatoriasEmSimultaneo() throws InterruptedException {
+        Sistema sistema = new Sistema();
+        Album fixo = new Album("Fixo", "Artista", 2000);
+        for (int m = 0; m < 40; m++) {
+            fixo.adicionarMusica(new Musica("Faixa " + m, "Artista", "Editora", "letra", GENEROS[m % GENEROS.length], 200));
+        }
+        sistema.adicionarAlbum(fixo);
+        Set<Musica> registradas = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        registradas.addAll(fixo.getMusicas().values());
+
+        // Uma thread vai acrescentando e removendo músicas enquanto as outras sorteiam
+        AtomicBoolean terminado = new AtomicBoolean();
+        List<Throwable> erros = new CopyOnWriteArrayList<>();
+        Album variavel = new Album("Variável", "Outro", 2001);
+        sistema.adicionarAlbum(variavel);
+        Album doSistema = sistema.getAlbuns().get("Variável");
+        Thread alteracoes = new Thread(() -> {
+            for (int i = 0; !terminado.get(); i++) {
+                Musica musica = new Musica("Nova " + i, "Outro", "Editora", "letra", "Pop", 180);
+                registradas.add(musica);
+                sistema.adicionarMusicaAlbum(doSistema, musica);
+                if (i % 2 == 1) {
+                    sistema.removerMusicaAlbum(doSistema, "Nova " + (i - 1));
+                }
+            }
+        });
+        alteracoes.start();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 20_000; i++) {
+                        List<Musica> playlist = sistema.gerarPlaylistAleatoria().getMusicas();
+                        assertEquals(10, playlist.size());
+                        Map<Musica, Boolean> distintas = new IdentityHashMap<>();
+                        for (Musica musica : playlist) {
+                            assertNotNull(musica);
+                            assertTrue(registradas.contains(musica), musica.getNome());
+                            distintas.put(musica, true);
+                        }
+                        assertEquals(10, distintas.size(), "Músicas repetidas: " + playlist);
+                    }
+                } catch (Throwable erro) {
+                    erros.add(erro);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        terminado.set(true);
+        alteracoes.join();
+        assertTrue(erros.isEmpty(), () -> erros.get(0).toString());
+    }
+
+    @Test
+    public void sorteioNaoEsperaPeloCatalogo() throws InterruptedException {
+        Catalogo catalogo = new Catalogo();
+        for (int m = 0; m < 20; m++) {
+            catalogo.registrarMusica(new Musica("Faixa " + m, "Artista", "Editora", "letra", "Rock", 200));
+        }
+        List<List<Musica>> sorteios = new CopyOnWriteArrayList<>();
+        Thread sorteio = new Thread(() -> sorteios.add(catalogo.sortearMusicas(10, ThreadLocalRandom.current())));
+        // Uma pesquisa ou estatística lenta segura o monitor do catálogo: o sorteio não fica à espera
+        synchronized (catalogo) {
+            sorteio.start();
+            sorteio.join(TimeUnit.SECONDS.toMillis(10));
+            assertFalse(sorteio.isAlive(), "O sorteio bloqueou no monitor do catálogo");
+        }
+        assertEquals(10, sorteios.get(0).size());
+    }
+
+    private static long soma(Map<String, Integer> contagens) {
+        return contagens.values().stream().mapToLong(Integer::longValue).sum();
+    }
+}
@@ -0,0 +1,151 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Um sistema carregado depois de uma falha (sem checkpoint) tem de ficar igual ao que estava
+ * em memória: todas as alterações feitas pelo sistema são reaplicadas a partir do diário
+ */
+public class TesteDiarioEventos {
+    @TempDir
+    Path pasta;
+
+    private static Album criarAlbum(String nome, String... musicas) {
+        Album album = new Album(nome, "Banda", 2001);
+        for (String musica : musicas) {
+            album.adicionarMusica(new Musica(musica, "Banda", "Editora", "letra de " + musica, "Rock", 180));
+        }
+        return album;
+    }
+
+    /**
+     * Descreve tudo o que o diário tem de repor, de forma independente da ordem dos mapas
+     */
+    private static String descrever(Sistema sistema) {
+        StringBuilder texto = new StringBuilder();
+        for (Album album : new TreeMap<>(sistema.getAlbuns()).values()) {
+            texto.append(album.getNome()).append(new TreeMap<>(album.getMusicas()).keySet()).append('\n');
+            for (Musica musica : new TreeMap<>(album.getMusicas()).values()) {
+                texto.append("  ").append(musica).append(" x").append(musica.getContagemReproducoes()).append('\n');
+            }
+        }
+        for (Utilizador utilizador : new TreeMap<>(sistema.getUtilizadores()).values()) {
+            texto.append(utilizador).append('\n');
+            texto.append("  álbuns ").append(new TreeMap<>(utilizador.getAlbunsGuardados()).keySet()).append('\n');
+            for (Map.Entry<String, Playlist> entry : new TreeMap<>(utilizador.getPlaylistsGuardadas()).entrySet()) {
+                texto.append("  guardada ").append(entry.getKey()).append(' ').append(musicas(entry.getValue())).append('\n');
+            }
+            for (Playlist playlist : utilizador.getPlaylistsCriadas()) {
+                texto.append("  criada ").append(playlist).append(' ').append(musicas(playlist)).append('\n');
+            }
+        }
+        for (Playlist playlist : sistema.getPlaylistsPublicas()) {
+            texto.append("pública ").append(playlist).append(" guardada ")
+                .append(sistema.getVezesGuardada(playlist)).append('\n');
+        }
+        return texto.toString();
+    }
+
+    private static List<String> musicas(Playlist playlist) {
+        List<String> nomes = new ArrayList<>();
+        for (Musica musica : playlist.getMusicas()) {
+            nomes.add(musica.getNome());
+        }
+        return nomes;
+    }
+
+    @Test
+    public void reaplicaTodasAsAlteracoes() {
+        String arquivo = pasta.resolve("spotifum.dat").toString();
+        Sistema sistema = new Sistema();
+        Album album = criarAlbum("Primeiro", "Um", "Dois", "Três");
+        sistema.adicionarAlbum(album);
+        Utilizador ana = new Utilizador("Ana", "ana@mail.pt", "Braga", new PlanoPremiumTop());
+        sistema.registrarUtilizador(ana);
+        assertTrue(sistema.ativarDiario(arquivo));
+
+        // Alterações depois do checkpoint inicial: só ficam no diário
+        Utilizador rui = new Utilizador("Rui", "rui@mail.pt", "Porto", new PlanoFree());
+        sistema.registrarUtilizador(rui);
+        Album segundo = criarAlbum("Segundo", "Quatro");
+        sistema.adicionarAlbum(segundo);
+        Musica um = album.getMusica("Um");
+        Musica quatro = segundo.getMusica("Quatro");
+        sistema.registrarReproducao(ana, um);
+        sistema.registrarReproducao(rui, quatro);
+        sistema.registrarReproducao(ana, quatro);
+
+        Playlist playlist = sistema.criarPlaylist(ana, "Favoritas");
+        assertTrue(sistema.adicionarMusicaPlaylist(ana, playlist, um));
+        assertTrue(sistema.adicionarMusicaPlaylist(ana, playlist, quatro));
+        assertTrue(sistema.adicionarMusicaPlaylist(ana, playlist, album.getMusica("Dois")));
+        assertTrue(sistema.removerMusicaPlaylist(ana, playlist, um));
+        assertTrue(sistema.publicarPlaylist(ana, playlist));
+        PlaylistPersonalizada externa = new PlaylistPersonalizada("Da rádio");
+        externa.adicionarMusica(album.getMusica("Três"));
+        externa.setPublica(true);
+        assertTrue(sistema.adicionarPlaylistPublica(externa));
+
+        sistema.atualizarPlano(rui, new PlanoPremiumBase());
+        assertTrue(sistema.guardarAlbum(rui, segundo));
+        assertTrue(sistema.guardarPlaylist(rui, playlist));
+
+        assertTrue(sistema.adicionarMusicaAlbum(segundo, new Musica("Cinco", "Banda", "Editora", "letra", "Jazz", 200)));
+        assertTrue(sistema.removerMusicaAlbum(album, "Três"));
+        sistema.registrarReproducao(rui, segundo.getMusica("Cinco"));
+
+        String esperado = descrever(sistema);
+        sistema.fechar(); // Sem checkpoint: o estado salvo é o do início
+
+        Sistema carregado = Sistema.carregarEstado(arquivo);
+        assertNotNull(carregado);
+        assertEquals(esperado, descrever(carregado));
+        assertEquals(1, carregado.pesquisarMusicas("cinco", 10).size());
+        carregado.fechar();
+    }
+
+    @Test
+    public void referenciaDesconhecidaTerminaODiario() {
+        String arquivo = pasta.resolve("spotifum.dat").toString();
+        Sistema sistema = new Sistema();
+        sistema.adicionarAlbum(criarAlbum("Álbum", "Um"));
+        sistema.adicionarAlbum(criarAlbum("Outro", "Dois"));
+        assertTrue(sistema.ativarDiario(arquivo));
+        Utilizador ana = new Utilizador("Ana", "ana@mail.pt", "Braga", new PlanoPremiumTop());
+        sistema.registrarUtilizador(ana);
+        Musica um = sistema.getAlbuns().get("Álbum").getMusica("Um");
+        Musica dois = sistema.getAlbuns().get("Outro").getMusica("Dois");
+        assertTrue(dois.getId() > um.getId());
+        sistema.registrarReproducao(ana, dois);
+        sistema.registrarReproducao(ana, um);
+        sistema.fechar();
+
+        // Estado salvo sem a segunda música: a primeira reprodução do diário fica por resolver
+        Sistema anterior = new Sistema();
+        anterior.adicionarAlbum(criarAlbum("Álbum", "Um"));
+        assertTrue(anterior.salvarEstado(arquivo));
+
+        Sistema carregado = Sistema.carregarEstado(arquivo);
+        assertNotNull(carregado);
+        Utilizador lida = carregado.findUtilizador("ana@mail.pt");
+        assertNotNull(lida, "Os eventos antes da referência desconhecida são reaplicados");
+        assertEquals(0, lida.getNumeroTotalReproducoes(), "Os eventos a partir dela são ignorados");
+
+        // O diário seguinte começa depois das gerações com eventos ignorados
+        assertTrue(carregado.ativarDiario(arquivo));
+        carregado.fechar();
+        Sistema recarregado = Sistema.carregarEstado(arquivo);
+        assertNotNull(recarregado);
+        assertEquals(0, recarregado.findUtilizador("ana@mail.pt").getNumeroTotalReproducoes());
+        recarregado.fechar();
+    }
+}
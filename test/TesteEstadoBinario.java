@@ -0,0 +1,160 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * O estado gravado em binário volta igual ao carregar, e os estados antigos (serialização
+ * Java) continuam a ser lidos e podem ser regravados no formato novo
+ */
+public class TesteEstadoBinario {
+    @TempDir
+    Path pasta;
+
+    private static Sistema criarSistema() {
+        Sistema sistema = new Sistema();
+        Album album = new Album("Primeiro", "Banda", 2001);
+        Musica cancao = new Musica("Canção", "Banda", "Editora", "primeira linha\nsegunda linha", "Rock", 180);
+        cancao.adicionarLinhaMusical("♪ Dó Ré Mi ♪");
+        album.adicionarMusica(cancao);
+        album.adicionarMusica(new MusicaExplicita("Explícita", "Banda", "Editora", "letra", "rock", 240, "Linguagem"));
+        album.adicionarMusica(new Musica("Balada", "Outra Banda", "Outra Editora", "letra", "Jazz", 200));
+        sistema.adicionarAlbum(album);
+
+        Utilizador ana = new Utilizador("Ana", "ana@mail.pt", "Braga", new PlanoPremiumTop());
+        Utilizador rui = new Utilizador("Rui", "rui@mail.pt", "Porto", new PlanoPremiumBase());
+        Utilizador eva = new Utilizador("Eva", "eva@mail.pt", "Faro", new PlanoFree());
+        sistema.registrarUtilizador(ana);
+        sistema.registrarUtilizador(rui);
+        sistema.registrarUtilizador(eva);
+
+        Musica[] musicas = album.getMusicas().values().toArray(new Musica[0]);
+        Utilizador[] quem = new Utilizador[30];
+        Musica[] oque = new Musica[30];
+        long[] quando = new long[30];
+        long inicio = AgregadoReproducoes.paraMillis(LocalDateTime.of(2025, 1, 1, 10, 0));
+        Utilizador[] todos = {ana, rui, eva};
+        for (int i = 0; i < quem.length; i++) {
+            quem[i] = todos[i % 3];
+            oque[i] = musicas[i % musicas.length];
+            quando[i] = inicio + i * 3_600_000L;
+        }
+        sistema.registrarReproducoes(quem, oque, quando);
+
+        Playlist playlist = sistema.criarPlaylist(ana, "Favoritas");
+        sistema.adicionarMusicaPlaylist(ana, playlist, album.getMusica("Canção"));
+        sistema.adicionarMusicaPlaylist(ana, playlist, album.getMusica("Balada"));
+        sistema.publicarPlaylist(ana, playlist);
+        sistema.guardarAlbum(rui, album);
+        sistema.guardarPlaylist(rui, playlist);
+        return sistema;
+    }
+
+    /**
+     * Descreve tudo o que o estado gravado tem de repor, de forma independente da ordem dos mapas
+     */
+    private static String descrever(Sistema sistema) {
+        StringBuilder texto = new StringBuilder();
+        for (Album album : new TreeMap<>(sistema.getAlbuns()).values()) {
+            texto.append(album).append('\n');
+            for (Musica musica : new TreeMap<>(album.getMusicas()).values()) {
+                texto.append("  ").append(musica).append(' ').append(musica.getGenero()).append(' ')
+                    .append(musica.getEditora()).append(" x").append(musica.getContagemReproducoes())
+                    .append(' ').append(musica.getLetra()).append(' ').append(musica.getConteudoMusical()).append('\n');
+            }
+        }
+        for (Utilizador utilizador : new TreeMap<>(sistema.getUtilizadores()).values()) {
+            texto.append(utilizador).append(' ').append(utilizador.getMorada()).append('\n');
+            texto.append("  histórico");
+            for (int i = 0; i < utilizador.getTamanhoHistorico(); i++) {
+                texto.append(' ').append(utilizador.getInstanteHistorico(i)).append(':').append(utilizador.getMusicaHistorico(i));
+            }
+            texto.append('\n');
+            texto.append("  gêneros ").append(new TreeMap<>(utilizador.getGenerosMaisOuvidos())).append('\n');
+            texto.append("  músicas ").append(utilizador.getMusicasMaisOuvidas(10)).append('\n');
+            texto.append("  álbuns ").append(new TreeMap<>(utilizador.getAlbunsGuardados()).keySet()).append('\n');
+            for (Map.Entry<String, Playlist> entry : new TreeMap<>(utilizador.getPlaylistsGuardadas()).entrySet()) {
+                texto.append("  guardada ").append(entry.getKey()).append(' ').append(musicas(entry.getValue())).append('\n');
+            }
+            for (Playlist playlist : utilizador.getPlaylistsCriadas()) {
+                texto.append("  criada ").append(playlist).append(' ').append(musicas(playlist)).append('\n');
+            }
+        }
+        for (Playlist playlist : sistema.getPlaylistsPublicas()) {
+            texto.append("pública ").append(playlist).append(" guardada ")
+                .append(sistema.getVezesGuardada(playlist)).append('\n');
+        }
+        texto.append("total ").append(sistema.getNumeroTotalReproducoes())
+            .append(" gêneros ").append(new TreeMap<>(sistema.getContagemPorGenero()))
+            .append(" intérpretes ").append(new TreeMap<>(sistema.getContagemPorInterprete())).append('\n');
+        return texto.toString();
+    }
+
+    private static List<String> musicas(Playlist playlist) {
+        List<String> nomes = new ArrayList<>();
+        for (Musica musica : playlist.getMusicas()) {
+            nomes.add(musica.getNome());
+        }
+        return nomes;
+    }
+
+    @Test
+    public void gravarECarregarRepoeOEstado() {
+        Sistema sistema = criarSistema();
+        String arquivo = pasta.resolve("spotifum.dat").toString();
+        assertTrue(sistema.salvarEstado(arquivo));
+
+        Sistema carregado = Sistema.carregarEstado(arquivo);
+        assertNotNull(carregado);
+        assertEquals(descrever(sistema), descrever(carregado));
+        assertEquals("Canção", carregado.getMusicaMaisReproduzida().getNome());
+        assertEquals("rock", carregado.getGeneroMaisReproduzido().toLowerCase());
+        LocalDateTime dia = LocalDateTime.of(2025, 1, 1, 9, 0);
+        assertEquals(sistema.getUtilizadorQueMaisOuviuPeriodo(dia, dia.plusHours(5)).getEmail(),
+            carregado.getUtilizadorQueMaisOuviuPeriodo(dia, dia.plusHours(5)).getEmail());
+
+        // Regravar o estado carregado (com os textos ainda no arquivo) dá o mesmo estado
+        String copia = pasta.resolve("copia.dat").toString();
+        assertTrue(carregado.salvarEstado(copia));
+        Sistema recarregado = Sistema.carregarEstado(copia);
+        assertNotNull(recarregado);
+        assertEquals(descrever(sistema), descrever(recarregado));
+        carregado.fechar();
+        recarregado.fechar();
+    }
+
+    @Test
+    public void estadoAntigoPassaParaOFormatoBinario() throws IOException {
+        Path antigo = pasta.resolve("spotifum.dat");
+        Files.copy(Path.of("src", "spotifum.dat"), antigo);
+        String arquivo = antigo.toString();
+
+        Sistema carregado = Sistema.carregarEstado(arquivo);
+        assertNotNull(carregado);
+        assertFalse(carregado.getAlbuns().isEmpty());
+        String esperado = descrever(carregado);
+
+        assertTrue(carregado.salvarEstado(arquivo));
+        carregado.fechar();
+        byte[] cabecalho = Arrays.copyOf(Files.readAllBytes(antigo), 4);
+        assertEquals("SPUM", new String(cabecalho, StandardCharsets.US_ASCII));
+        Sistema recarregado = Sistema.carregarEstado(arquivo);
+        assertNotNull(recarregado);
+        assertEquals(esperado, descrever(recarregado));
+        recarregado.fechar();
+    }
+}
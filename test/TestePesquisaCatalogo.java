@@ -0,0 +1,49 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * O índice de pesquisa só é construído na primeira pesquisa: tem de encontrar as músicas
+ * carregadas e as adicionadas antes e depois dela
+ */
+public class TestePesquisaCatalogo {
+    @TempDir
+    Path pasta;
+
+    private static List<String> nomes(List<Musica> musicas) {
+        return musicas.stream().map(Musica::getNome).toList();
+    }
+
+    @Test
+    public void pesquisaDepoisDeCarregar() {
+        Sistema sistema = new Sistema();
+        Album album = new Album("Mar Salgado", "Banda", 2001);
+        album.adicionarMusica(new Musica("Canção do Mar", "Banda", "Editora", "ondas e gaivotas", "Fado", 180));
+        album.adicionarMusica(new Musica("Outra", "Banda", "Editora", "montanhas", "Fado", 200));
+        sistema.adicionarAlbum(album);
+        String arquivo = pasta.resolve("spotifum.dat").toString();
+        assertTrue(sistema.salvarEstado(arquivo));
+
+        Sistema carregado = Sistema.carregarEstado(arquivo);
+        assertNotNull(carregado);
+        Album novo = new Album("Serra", "Outra Banda", 2003);
+        novo.adicionarMusica(new Musica("Subida", "Outra Banda", "Editora", "gaivotas na serra", "Folk", 150));
+        carregado.adicionarAlbum(novo);
+
+        assertEquals(List.of("Canção do Mar"), nomes(carregado.pesquisarMusicas("ondas", 10)));
+        assertEquals(List.of("Outra"), nomes(carregado.pesquisarMusicas("salgado montanhas", 10)));
+        assertEquals(2, carregado.pesquisarMusicas("gaivotas", 10).size());
+
+        Album depois = new Album("Vale", "Outra Banda", 2005);
+        depois.adicionarMusica(new Musica("Descida", "Outra Banda", "Editora", "o rio corre", "Folk", 160));
+        carregado.adicionarAlbum(depois);
+        assertEquals(List.of("Descida"), nomes(carregado.pesquisarMusicas("rio", 10)));
+        carregado.fechar();
+    }
+}
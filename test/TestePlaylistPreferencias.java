@@ -0,0 +1,35 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Gêneros que só diferem em maiúsculas são o mesmo gênero no catálogo: a playlist de
+ * preferências não pode repetir as suas músicas
+ */
+public class TestePlaylistPreferencias {
+    @Test
+    public void grafiasDoMesmoGeneroNaoRepetemMusicas() {
+        Sistema sistema = new Sistema();
+        Album album = new Album("Álbum", "Banda", 2001);
+        for (int i = 0; i < 8; i++) {
+            album.adicionarMusica(new Musica("Faixa " + i, "Banda", "Editora", "letra", i % 2 == 0 ? "Rock" : "rock", 180));
+        }
+        album.adicionarMusica(new Musica("Balada", "Banda", "Editora", "letra", "Jazz", 200));
+        sistema.adicionarAlbum(album);
+        Utilizador ana = new Utilizador("Ana", "ana@mail.pt", "Braga", new PlanoPremiumTop());
+        sistema.registrarUtilizador(ana);
+        for (Musica musica : album.getMusicas().values()) {
+            sistema.registrarReproducao(ana, musica);
+        }
+
+        List<Musica> musicas = sistema.gerarPlaylistPreferencias(ana).getMusicas();
+        Map<Musica, Boolean> distintas = new IdentityHashMap<>();
+        musicas.forEach(musica -> distintas.put(musica, true));
+        assertEquals(musicas.size(), distintas.size(), "Músicas repetidas: " + musicas);
+        assertEquals(6, musicas.size(), "5 do rock (em qualquer grafia) e 1 do jazz");
+    }
+}
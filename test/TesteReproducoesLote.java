@@ -0,0 +1,94 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * O registo em lote tem de dar o mesmo resultado que registar cada reprodução à vez
+ */
+public class TesteReproducoesLote {
+    /**
+     * Sistema com duas músicas com o mesmo nome e intérprete, em álbuns diferentes
+     */
+    private static Sistema criarSistema() {
+        Sistema sistema = new Sistema();
+        Album original = new Album("Original", "Banda", 2001);
+        original.adicionarMusica(new Musica("Canção", "Banda", "Editora", "letra", "Rock", 180));
+        Album aoVivo = new Album("Ao Vivo", "Banda", 2005);
+        aoVivo.adicionarMusica(new Musica("Canção", "Banda", "Editora", "letra ao vivo", "Rock", 240));
+        aoVivo.adicionarMusica(new Musica("Outra", "Outra Banda", "Editora", "letra", "Jazz", 200));
+        sistema.adicionarAlbum(original);
+        sistema.adicionarAlbum(aoVivo);
+        sistema.registrarUtilizador(new Utilizador("Ana", "ana@mail.pt", "Braga", new PlanoPremiumTop()));
+        sistema.registrarUtilizador(new Utilizador("Rui", "rui@mail.pt", "Porto", new PlanoFree()));
+        return sistema;
+    }
+
+    private static Musica musica(Sistema sistema, String album, String nome) {
+        return sistema.getAlbuns().get(album).getMusicas().get(nome);
+    }
+
+    @Test
+    public void musicasComAMesmaChaveContamSeparadas() {
+        Sistema sistema = criarSistema();
+        Musica m1 = musica(sistema, "Original", "Canção");
+        Musica m2 = musica(sistema, "Ao Vivo", "Canção");
+        Utilizador ana = sistema.findUtilizador("ana@mail.pt");
+        long agora = System.currentTimeMillis();
+
+        sistema.registrarReproducoes(new Utilizador[] {ana, ana, ana}, new Musica[] {m1, m2, m2},
+            new long[] {agora, agora, agora});
+
+        assertEquals(1, m1.getContagemReproducoes());
+        assertEquals(2, m2.getContagemReproducoes());
+    }
+
+    @Test
+    public void loteIgualAoLaco() {
+        Sistema lote = criarSistema();
+        Sistema laco = criarSistema();
+        String[][] reproducoes = {
+            {"ana@mail.pt", "Original", "Canção"},
+            {"rui@mail.pt", "Ao Vivo", "Canção"},
+            {"ana@mail.pt", "Ao Vivo", "Canção"},
+            {"ana@mail.pt", "Ao Vivo", "Outra"},
+            {"rui@mail.pt", "Original", "Canção"},
+            {"ana@mail.pt", "Ao Vivo", "Canção"},
+        };
+        int n = reproducoes.length;
+        Utilizador[] utilizadores = new Utilizador[n];
+        Musica[] musicas = new Musica[n];
+        long[] instantes = new long[n];
+        long agora = System.currentTimeMillis();
+        for (int i = 0; i < n; i++) {
+            utilizadores[i] = lote.findUtilizador(reproducoes[i][0]);
+            musicas[i] = musica(lote, reproducoes[i][1], reproducoes[i][2]);
+            instantes[i] = agora;
+            laco.registrarReproducao(laco.findUtilizador(reproducoes[i][0]),
+                musica(laco, reproducoes[i][1], reproducoes[i][2]));
+        }
+        lote.registrarReproducoes(utilizadores, musicas, instantes);
+
+        for (String[] reproducao : reproducoes) {
+            assertEquals(musica(laco, reproducao[1], reproducao[2]).getContagemReproducoes(),
+                musica(lote, reproducao[1], reproducao[2]).getContagemReproducoes(),
+                reproducao[1] + "/" + reproducao[2]);
+        }
+        for (String email : List.of("ana@mail.pt", "rui@mail.pt")) {
+            Utilizador esperado = laco.findUtilizador(email);
+            Utilizador obtido = lote.findUtilizador(email);
+            assertEquals(esperado.getNumeroTotalReproducoes(), obtido.getNumeroTotalReproducoes(), email);
+            assertEquals(esperado.getPontos(), obtido.getPontos(), email);
+            assertEquals(esperado.getGenerosMaisOuvidos(), obtido.getGenerosMaisOuvidos(), email);
+        }
+        assertEquals(laco.getNumeroTotalReproducoes(), lote.getNumeroTotalReproducoes());
+        assertEquals(laco.getContagemPorGenero(), lote.getContagemPorGenero());
+        assertEquals(laco.getContagemPorInterprete(), lote.getContagemPorInterprete());
+        assertEquals(descrever(laco.getMusicasMaisReproduzidas(3)), descrever(lote.getMusicasMaisReproduzidas(3)));
+    }
+
+    private static List<String> descrever(List<Musica> musicas) {
+        return musicas.stream().map(musica -> musica + " x" + musica.getContagemReproducoes()).toList();
+    }
+}
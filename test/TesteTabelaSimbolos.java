@@ -0,0 +1,51 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Cada catálogo tem a sua tabela de símbolos: os gêneros e intérpretes de um sistema não
+ * ficam registrados nos outros nem sobrevivem ao catálogo
+ */
+public class TesteTabelaSimbolos {
+    @Test
+    public void cadaCatalogoTemASuaTabela() {
+        Catalogo primeiro = new Catalogo();
+        for (int i = 0; i < 100; i++) {
+            primeiro.registrarMusica(new Musica("Faixa " + i, "Intérprete " + i, "Editora " + i, "letra", "Gênero " + i, 180));
+        }
+        assertEquals(300, primeiro.getSimbolos().getTamanho());
+
+        Catalogo segundo = new Catalogo();
+        assertEquals(0, segundo.getSimbolos().getTamanho());
+        Musica musica = new Musica("Faixa", "Intérprete 99", "Editora", "letra", "Gênero 99", 180);
+        assertEquals(-1, musica.getCodigoGenero()); // Fora de um catálogo não tem códigos
+        segundo.registrarMusica(musica);
+        assertEquals(0, musica.getCodigoInterprete());
+        assertEquals(1, musica.getCodigoGenero());
+        assertSame(segundo.getSimbolos().simbolo(1), musica.getGenero());
+    }
+
+    @Test
+    public void reproducoesForaDoCatalogoContamPeloTexto() {
+        Sistema sistema = new Sistema();
+        Album album = new Album("Álbum", "Banda", 2001);
+        album.adicionarMusica(new Musica("Canção", "Banda", "Editora", "letra", "Rock", 180));
+        sistema.adicionarAlbum(album);
+        Utilizador utilizador = new Utilizador("Ana", "ana@mail.pt", "Braga");
+        sistema.registrarUtilizador(utilizador);
+
+        Musica solta = new Musica("Solta", "Outra Banda", "Editora", "letra", "Jazz", 200);
+        sistema.registrarReproducao(utilizador, solta);
+        sistema.registrarReproducao(utilizador, sistema.getAlbuns().get("Álbum").getMusica("Canção"));
+        sistema.registrarReproducao(utilizador, new Musica("Outra", "Banda", "Editora", "letra", "Rock", 200));
+
+        assertEquals(Map.of("Rock", 2, "Jazz", 1), utilizador.getGenerosMaisOuvidos());
+        assertEquals(Map.of("Banda", 2, "Outra Banda", 1), utilizador.getInterpretesMaisOuvidos());
+        assertEquals(Map.of("Rock", 2, "Jazz", 1), sistema.getContagemPorGenero());
+        assertEquals("Rock", sistema.getGeneroMaisReproduzido());
+        sistema.fechar();
+    }
+}
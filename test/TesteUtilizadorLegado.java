@@ -0,0 +1,55 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Utilizadores gravados antes do histórico em colunas mantêm as reproduções
+ */
+public class TesteUtilizadorLegado {
+    @Test
+    public void historicoAntigoPassaParaAsColunasPorOrdem() throws Exception {
+        LocalDateTime base = LocalDateTime.of(2024, 3, 10, 21, 0);
+        legado.Utilizador antigo = new legado.Utilizador("Ana", "ana@mail.pt", "Braga");
+        // Fora de ordem de propósito: o histórico antigo era um HashMap
+        antigo.ouvir(base.plusMinutes(30), "Canção", "Banda", "Rock");
+        antigo.ouvir(base, "Canção", "Banda", "Rock");
+        antigo.ouvir(base.plusDays(1), "Outra", "Outra Banda", "Jazz");
+
+        Utilizador utilizador = lerComoUtilizador(antigo);
+
+        assertEquals(3, utilizador.getTamanhoHistorico());
+        assertEquals(AgregadoReproducoes.paraMillis(base), utilizador.getInstanteHistorico(0));
+        assertEquals(AgregadoReproducoes.paraMillis(base.plusMinutes(30)), utilizador.getInstanteHistorico(1));
+        assertEquals(AgregadoReproducoes.paraMillis(base.plusDays(1)), utilizador.getInstanteHistorico(2));
+        assertEquals(3, utilizador.getNumeroTotalReproducoes());
+        assertEquals(Map.of("Rock", 2, "Jazz", 1), utilizador.getGenerosMaisOuvidos());
+        // Sem catálogo, as músicas ficam pela chave antiga
+        assertEquals(List.of("Canção-Banda", "Outra-Outra Banda"), utilizador.getMusicasMaisOuvidas(10));
+        assertEquals(2, utilizador.getNumeroBusicasOuvidasPeriodo(base.minusSeconds(1), base.plusHours(1)));
+    }
+
+    private static Utilizador lerComoUtilizador(legado.Utilizador antigo) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream saida = new ObjectOutputStream(bytes)) {
+            saida.writeObject(antigo);
+        }
+        try (ObjectInputStream entrada = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())) {
+            @Override
+            protected Class<?> resolveClass(ObjectStreamClass descricao) throws IOException, ClassNotFoundException {
+                return descricao.getName().equals("legado.Utilizador") ? Utilizador.class : super.resolveClass(descricao);
+            }
+        }) {
+            return (Utilizador) entrada.readObject();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Os getters do sistema entregam os próprios álbuns, playlists e músicas, sem cópias: as
+ * alterações só podem ser feitas através do sistema, que as regista no diário
+ */
+public class TesteVistasSoLeitura {
+    @Test
+    public void objetosDoSistemaSoMudamAtravesDele() {
+        Sistema sistema = new Sistema();
+        Album album = new Album("Álbum", "Banda", 2001);
+        Musica musica = new Musica("Canção", "Banda", "Editora", "letra", "Rock", 180);
+        musica.adicionarLinhaMusical("Dó Ré Mi");
+        album.adicionarMusica(musica);
+        assertTrue(sistema.adicionarAlbum(album));
+        Utilizador ana = new Utilizador("Ana", "ana@mail.pt", "Braga", new PlanoPremiumTop());
+        sistema.registrarUtilizador(ana);
+
+        Album doSistema = sistema.getAlbuns().get("Álbum");
+        Musica outra = new Musica("Outra", "Banda", "Editora", "letra", "Rock", 200);
+        assertThrows(IllegalStateException.class, () -> doSistema.adicionarMusica(outra));
+        assertThrows(IllegalStateException.class, () -> doSistema.removerMusica("Canção"));
+        assertThrows(IllegalStateException.class, () -> doSistema.setNome("Outro nome"));
+        assertThrows(IllegalStateException.class, () -> doSistema.getMusica("Canção").adicionarLinhaMusical("Fá"));
+        assertThrows(UnsupportedOperationException.class, () -> doSistema.getMusicas().clear());
+        assertTrue(sistema.adicionarMusicaAlbum(doSistema, outra));
+        assertEquals(2, doSistema.getNumeroMusicas());
+
+        Playlist criada = sistema.criarPlaylist(ana, "Favoritas");
+        assertThrows(IllegalStateException.class, () -> criada.adicionarMusica(musica));
+        assertThrows(IllegalStateException.class, () -> criada.setPublica(true));
+        assertTrue(sistema.adicionarMusicaPlaylist(ana, criada, musica));
+        assertTrue(sistema.publicarPlaylist(ana, criada));
+        assertTrue(criada.isPublica());
+
+        assertTrue(sistema.guardarAlbum(ana, doSistema));
+        Album guardado = ana.getAlbunsGuardados().get("Álbum");
+        assertThrows(IllegalStateException.class, () -> guardado.removerMusica("Canção"));
+        Playlist guardada = ana.getPlaylistsGuardadas().get("Favoritas");
+        assertThrows(IllegalStateException.class, () -> guardada.removerMusica(musica));
+
+        // Cópias explícitas são do chamador
+        Album copia = doSistema.clone();
+        assertTrue(copia.removerMusica("Canção"));
+        assertEquals(2, doSistema.getNumeroMusicas());
+    }
+}
@@ -0,0 +1,48 @@
+package legado;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Campos do Utilizador tal como eram gravados antes do histórico em colunas (sem o plano,
+ * que está no pacote por omissão). A serialização Java ignora o pacote ao comparar os nomes,
+ * pelo que um estado gravado com esta classe é lido como um Utilizador antigo
+ */
+public class Utilizador implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String nome;
+    private String email;
+    private String morada;
+    private int pontos;
+    private Map<String, Object> albunsGuardados = new HashMap<>();
+    private Map<String, Object> playlistsGuardadas = new HashMap<>();
+    private List<Object> playlistsCriadas = new ArrayList<>();
+    private Map<String, Integer> contagemPorMusica = new HashMap<>();
+    private Map<String, Integer> contagemPorGenero = new HashMap<>();
+    private Map<String, Integer> contagemPorInterprete = new HashMap<>();
+    private int numeroTotalReproducoes;
+    private Map<LocalDateTime, String> historicoReproducoes = new HashMap<>();
+
+    public Utilizador(String nome, String email, String morada) {
+        this.nome = nome;
+        this.email = email;
+        this.morada = morada;
+    }
+
+    /**
+     * Regista uma reprodução como o Utilizador antigo a guardava
+     */
+    public void ouvir(LocalDateTime instante, String nome, String interprete, String genero) {
+        String chave = nome + "-" + interprete;
+        contagemPorMusica.merge(chave, 1, Integer::sum);
+        contagemPorGenero.merge(genero, 1, Integer::sum);
+        contagemPorInterprete.merge(interprete, 1, Integer::sum);
+        historicoReproducoes.put(instante, chave);
+        numeroTotalReproducoes++;
+    }
+}